@@ -0,0 +1,31 @@
+package com.booking.jiraslackbot;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Per-thread pseudo-random position in the dataset, so threads do not all hammer the same channel.
+ */
+@State(Scope.Thread)
+public class BenchmarkCursor {
+
+    int channelIndex;
+    int userIndex;
+    // Names of users that are guaranteed not to exist yet, unique per thread
+    long freshUserCounter;
+    final long threadTag = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+    // A user only this thread promotes and demotes, so admin toggling never races with other threads
+    final String targetUserName = "target-" + threadTag;
+
+    void next(BenchmarkDataset dataset) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        channelIndex = random.nextInt(dataset.channelCount);
+        userIndex = random.nextInt(dataset.usersPerChannel);
+    }
+
+    String freshUserName() {
+        return "fresh-" + threadTag + "-" + (freshUserCounter++);
+    }
+}
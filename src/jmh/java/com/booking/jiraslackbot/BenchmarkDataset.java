@@ -0,0 +1,64 @@
+package com.booking.jiraslackbot;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A populated data manager shared by all benchmark threads.
+ * Each channel "channel-N" has usersPerChannel users named "user-M". The first user of every channel is an admin.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDataset {
+
+    @Param({"MEMORY_SET", "INDEXED_MEMORY", "COMPACT_MEMORY", "COLUMNAR_MEMORY", "DURABLE_LOG", "JDBC_H2"})
+    public DataManagerType dataManagerType;
+
+    @Param({"1000", "10000"})
+    public int channelCount;
+
+    @Param({"10", "50"})
+    public int usersPerChannel;
+
+    JiraBotDataManager dataManager;
+    JiraBotActions jiraBotActions;
+    int[] channelIds;
+
+    @Setup
+    public void setUp() {
+        dataManager = dataManagerType.create();
+        jiraBotActions = new JiraBotActions(dataManager);
+        channelIds = new int[channelCount];
+        for (int c = 0; c < channelCount; c++) {
+            int channelId = dataManager.addChannel(channelName(c), "JiraProject" + c, false);
+            channelIds[c] = channelId;
+            Map<String, Boolean> users = new LinkedHashMap<>();
+            for (int u = 0; u < usersPerChannel; u++) {
+                users.put(userName(u), u == 0);
+            }
+            dataManagerType.addChannelUsers(dataManager, channelId, users);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        dataManagerType.dispose(dataManager);
+    }
+
+    static String channelName(int index) {
+        return "channel-" + index;
+    }
+
+    static String userName(int index) {
+        return "user-" + index;
+    }
+
+    static String adminName() {
+        return userName(0);
+    }
+}
@@ -0,0 +1,114 @@
+package com.booking.jiraslackbot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The JiraBotDataManager implementations covered by the benchmarks.
+ * Add new implementations here so they are picked up by every benchmark.
+ */
+public enum DataManagerType {
+
+    MEMORY_SET(false) {
+        @Override
+        JiraBotDataManager create() {
+            return new MemorySetDataManager();
+        }
+
+        @Override
+        void addChannelUsers(JiraBotDataManager dataManager, int channelId, Map<String, Boolean> slackUsers) {
+            // MemorySetDataManager.addChannelUser scans every user, which makes loading large datasets quadratic.
+            // Write straight into the backing set instead; each (channel, user) pair is only loaded once.
+            slackUsers.forEach((slackUser, isAdmin) -> {
+                ChannelUser user = new ChannelUser();
+                user.channelId = channelId;
+                user.slackName = slackUser;
+                user.isAdmin = isAdmin;
+                ((MemorySetDataManager) dataManager).users.add(user);
+            });
+        }
+    },
+
+    INDEXED_MEMORY(true) {
+        @Override
+        JiraBotDataManager create() {
+            return new IndexedMemoryDataManager();
+        }
+    },
+
+    COMPACT_MEMORY(true) {
+        @Override
+        JiraBotDataManager create() {
+            return new CompactMemoryDataManager();
+        }
+    },
+
+    COLUMNAR_MEMORY(true) {
+        @Override
+        JiraBotDataManager create() {
+            return new ColumnarMemoryDataManager();
+        }
+    },
+
+    DURABLE_LOG(true) {
+        @Override
+        JiraBotDataManager create() {
+            try {
+                return new DurableLogDataManager(Files.createTempDirectory("jirabot-bench-"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        void dispose(JiraBotDataManager dataManager) throws Exception {
+            DurableLogDataManager durable = (DurableLogDataManager) dataManager;
+            durable.close();
+            deleteDirectory(durable.getDirectory());
+        }
+    },
+
+    JDBC_H2(true) {
+        @Override
+        JiraBotDataManager create() {
+            return JdbcDataManager.pooled("jdbc:h2:mem:bench-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1", "sa", "", 16);
+        }
+
+        @Override
+        void dispose(JiraBotDataManager dataManager) {
+            ((JdbcDataManager) dataManager).close();
+        }
+    };
+
+    // Implementations which are not thread-safe are only benchmarked single-threaded
+    final boolean threadSafe;
+
+    DataManagerType(boolean threadSafe) {
+        this.threadSafe = threadSafe;
+    }
+
+    abstract JiraBotDataManager create();
+
+    void addChannelUsers(JiraBotDataManager dataManager, int channelId, Map<String, Boolean> slackUsers) {
+        dataManager.addChannelUsers(channelId, slackUsers);
+    }
+
+    /**
+     * Releases anything the data manager holds, e.g. files on disk.
+     */
+    void dispose(JiraBotDataManager dataManager) throws Exception {
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
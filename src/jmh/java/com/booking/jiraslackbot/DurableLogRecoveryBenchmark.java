@@ -0,0 +1,78 @@
+package com.booking.jiraslackbot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start time of DurableLogDataManager: loading the snapshot plus replaying a log tail.
+ * Target: under a second at a million memberships.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DurableLogRecoveryBenchmark {
+
+    @Param({"1000000"})
+    public int memberships;
+
+    @Param({"20"})
+    public int usersPerChannel;
+
+    // Log records written after the last snapshot
+    @Param({"10000"})
+    public int logTail;
+
+    Path directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("jirabot-recovery-");
+        try (DurableLogDataManager dataManager = new DurableLogDataManager(directory, Integer.MAX_VALUE)) {
+            int channelCount = memberships / usersPerChannel;
+            for (int c = 0; c < channelCount; c++) {
+                int channelId = dataManager.addChannel(BenchmarkDataset.channelName(c), "JiraProject" + c, false);
+                Map<String, Boolean> users = new LinkedHashMap<>();
+                for (int u = 0; u < usersPerChannel; u++) {
+                    users.put(BenchmarkDataset.userName(u), u == 0);
+                }
+                dataManager.addChannelUsers(channelId, users);
+            }
+            dataManager.compact();
+            for (int i = 0; i < logTail; i++) {
+                dataManager.addChannelUser(1 + i % channelCount, "late-user-" + i, false);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        DataManagerType.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public JiraBotDataManager coldStart() throws IOException {
+        DurableLogDataManager dataManager = new DurableLogDataManager(directory, Integer.MAX_VALUE);
+        dataManager.close();
+        return dataManager;
+    }
+}
@@ -0,0 +1,76 @@
+package com.booking.jiraslackbot;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Heap retained by each in-memory data manager once loaded with the same memberships, and the GC time
+ * spent loading it. Not a JMH benchmark: the numbers come from the heap after a full GC, once per data manager.
+ * Each channel has usersPerChannel users, drawn from a pool of distinct users so names are shared across channels
+ * the way real users are. Strings for the names are created once up front, so they count the same for every store.
+ *
+ * Usage: HeapFootprint [memberships, default 1000000] [usersPerChannel, default 20]
+ * After mvn -P benchmark test-compile: java -Xmx4g -cp target/classes:target/test-classes com.booking.jiraslackbot.HeapFootprint
+ */
+public class HeapFootprint {
+
+    private static final DataManagerType[] IN_MEMORY = {
+            DataManagerType.MEMORY_SET,
+            DataManagerType.INDEXED_MEMORY,
+            DataManagerType.COMPACT_MEMORY,
+            DataManagerType.COLUMNAR_MEMORY
+    };
+
+    public static void main(String[] args) {
+        int memberships = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int usersPerChannel = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int channelCount = memberships / usersPerChannel;
+        // On average each user belongs to ten channels
+        String[] userNames = new String[Math.max(usersPerChannel, memberships / 10)];
+        for (int u = 0; u < userNames.length; u++) {
+            userNames[u] = BenchmarkDataset.userName(u);
+        }
+        String[] channelNames = new String[channelCount];
+        for (int c = 0; c < channelCount; c++) {
+            channelNames[c] = BenchmarkDataset.channelName(c);
+        }
+
+        System.out.printf("%-16s %12s %14s %12s%n", "Data manager", "Heap MB", "Bytes/member", "Load GC ms");
+        for (DataManagerType type : IN_MEMORY) {
+            long before = usedHeapAfterGc();
+            long gcBefore = gcMillis();
+            JiraBotDataManager dataManager = type.create();
+            for (int c = 0; c < channelCount; c++) {
+                int channelId = dataManager.addChannel(channelNames[c], "JiraProject" + (c % 100), false);
+                Map<String, Boolean> users = new LinkedHashMap<>();
+                for (int u = 0; u < usersPerChannel; u++) {
+                    // Spreads each channel's users over the pool, with no repeats within a channel
+                    users.put(userNames[(int) (((long) c * usersPerChannel + u * 7919L) % userNames.length)], u == 0);
+                }
+                type.addChannelUsers(dataManager, channelId, users);
+            }
+            long loadGc = gcMillis() - gcBefore;
+            long retained = usedHeapAfterGc() - before;
+            System.out.printf("%-16s %12.1f %14.1f %12d%n", type, retained / (1024.0 * 1024.0),
+                    (double) retained / memberships, loadGc);
+            // Keeps the data manager reachable until it has been measured
+            if (dataManager.getChannelById(1) == null) {
+                throw new IllegalStateException("Dataset not loaded into " + type);
+            }
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(gc -> Math.max(0, gc.getCollectionTime())).sum();
+    }
+}
@@ -0,0 +1,59 @@
+package com.booking.jiraslackbot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the successful path of each JiraBotActions command.
+ * The calling user is always the channel admin, so every invocation does the full set of checks plus the write.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JiraBotActionsBenchmark {
+
+    @Benchmark
+    public int registerProject(BenchmarkDataset dataset, BenchmarkCursor cursor) throws Throwable {
+        cursor.next(dataset);
+        // Existing channel, admin caller: updates the channel details
+        return dataset.jiraBotActions.registerProject(BenchmarkDataset.channelName(cursor.channelIndex),
+                "JiraProject", false, BenchmarkDataset.adminName());
+    }
+
+    @Benchmark
+    public void addUser(BenchmarkDataset dataset, BenchmarkCursor cursor) throws Throwable {
+        cursor.next(dataset);
+        // Each invocation adds a brand new user, so the dataset grows slowly over the run
+        dataset.jiraBotActions.addUser(BenchmarkDataset.channelName(cursor.channelIndex),
+                BenchmarkDataset.adminName(), cursor.freshUserName(), false);
+    }
+
+    @Benchmark
+    public void makeAdmin(BenchmarkDataset dataset, BenchmarkCursor cursor) throws Throwable {
+        cursor.next(dataset);
+        // Demote this thread's own target first, so makeAdmin always takes the successful path.
+        // This adds one addChannelUser call to the measured cost.
+        dataset.dataManager.addChannelUser(dataset.channelIds[cursor.channelIndex], cursor.targetUserName, false);
+        dataset.jiraBotActions.makeAdmin(BenchmarkDataset.channelName(cursor.channelIndex),
+                BenchmarkDataset.adminName(), cursor.targetUserName);
+    }
+
+    @Benchmark
+    public void removeAdmin(BenchmarkDataset dataset, BenchmarkCursor cursor) throws Throwable {
+        cursor.next(dataset);
+        // Promote this thread's own target first, so removeAdmin always takes the successful path.
+        // This adds one addChannelUser call to the measured cost.
+        dataset.dataManager.addChannelUser(dataset.channelIds[cursor.channelIndex], cursor.targetUserName, true);
+        dataset.jiraBotActions.removeAdmin(BenchmarkDataset.channelName(cursor.channelIndex),
+                BenchmarkDataset.adminName(), cursor.targetUserName);
+    }
+}
@@ -0,0 +1,39 @@
+package com.booking.jiraslackbot;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+
+/**
+ * Runs the JiraBot benchmarks once per thread count, with the GC profiler attached so that
+ * allocation rate per operation (gc.alloc.rate.norm) is reported alongside ops/sec.
+ * Usage: JiraBotBenchmarkRunner [includeRegex] [threadCounts, e.g. 1,4,16]
+ * From Maven: mvn -P benchmark test-compile exec:exec -Dbenchmark.include=Actions -Dbenchmark.threads=1,8
+ */
+public class JiraBotBenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : ".*";
+        String threadCounts = args.length > 1 ? args[1] : "1";
+
+        for (String threadCount : threadCounts.split(",")) {
+            int threads = Integer.parseInt(threadCount.trim());
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class);
+            if (threads > 1) {
+                // Only benchmark thread-safe implementations concurrently
+                options.param("dataManagerType", Arrays.stream(DataManagerType.values())
+                        .filter(type -> type.threadSafe)
+                        .map(Enum::name)
+                        .toArray(String[]::new));
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
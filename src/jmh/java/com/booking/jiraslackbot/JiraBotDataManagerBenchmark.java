@@ -0,0 +1,77 @@
+package com.booking.jiraslackbot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the individual JiraBotDataManager calls that JiraBotActions is built on.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JiraBotDataManagerBenchmark {
+
+    @Benchmark
+    public ChannelInfo getChannelByName(BenchmarkDataset dataset, BenchmarkCursor cursor) {
+        cursor.next(dataset);
+        return dataset.dataManager.getChannelByName(BenchmarkDataset.channelName(cursor.channelIndex));
+    }
+
+    @Benchmark
+    public ChannelInfo getChannelById(BenchmarkDataset dataset, BenchmarkCursor cursor) {
+        cursor.next(dataset);
+        return dataset.dataManager.getChannelById(dataset.channelIds[cursor.channelIndex]);
+    }
+
+    @Benchmark
+    public boolean isChannelAdmin(BenchmarkDataset dataset, BenchmarkCursor cursor) {
+        cursor.next(dataset);
+        return dataset.dataManager.isChannelAdmin(BenchmarkDataset.userName(cursor.userIndex),
+                dataset.channelIds[cursor.channelIndex]);
+    }
+
+    @Benchmark
+    public ChannelUser getChannelUser(BenchmarkDataset dataset, BenchmarkCursor cursor) {
+        cursor.next(dataset);
+        return dataset.dataManager.getChannelUser(dataset.channelIds[cursor.channelIndex],
+                BenchmarkDataset.userName(cursor.userIndex));
+    }
+
+    @Benchmark
+    public ChannelAccess getChannelAccess(BenchmarkDataset dataset, BenchmarkCursor cursor) {
+        cursor.next(dataset);
+        return dataset.dataManager.getChannelAccess(BenchmarkDataset.channelName(cursor.channelIndex),
+                BenchmarkDataset.adminName(), BenchmarkDataset.userName(cursor.userIndex));
+    }
+
+    @Benchmark
+    public Set<ChannelUser> getChannelUsers(BenchmarkDataset dataset, BenchmarkCursor cursor) {
+        cursor.next(dataset);
+        return dataset.dataManager.getChannelUsers(dataset.channelIds[cursor.channelIndex]);
+    }
+
+    @Benchmark
+    public void updateChannelDetails(BenchmarkDataset dataset, BenchmarkCursor cursor) {
+        cursor.next(dataset);
+        dataset.dataManager.updateChannelDetails(dataset.channelIds[cursor.channelIndex], "JiraProject", false);
+    }
+
+    @Benchmark
+    public void addChannelUserExisting(BenchmarkDataset dataset, BenchmarkCursor cursor) {
+        cursor.next(dataset);
+        // Never touch the admin (user 0), so the dataset shape stays the same
+        int userIndex = Math.max(1, cursor.userIndex);
+        dataset.dataManager.addChannelUser(dataset.channelIds[cursor.channelIndex],
+                BenchmarkDataset.userName(userIndex), false);
+    }
+}
@@ -0,0 +1,42 @@
+package com.booking.jiraslackbot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning away a non-admin, through the exception API and through the result-typed API.
+ * Run with the GC profiler (as JiraBotBenchmarkRunner does) to compare allocation per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RejectionBenchmark {
+
+    @Benchmark
+    public Object rejectedWithException(BenchmarkDataset dataset, BenchmarkCursor cursor) {
+        cursor.next(dataset);
+        try {
+            dataset.jiraBotActions.makeAdmin(BenchmarkDataset.channelName(cursor.channelIndex),
+                    BenchmarkDataset.userName(1), cursor.targetUserName);
+            return null;
+        } catch (Throwable e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public ActionOutcome rejectedWithOutcome(BenchmarkDataset dataset, BenchmarkCursor cursor) {
+        cursor.next(dataset);
+        return dataset.jiraBotActions.tryMakeAdmin(BenchmarkDataset.channelName(cursor.channelIndex),
+                BenchmarkDataset.userName(1), cursor.targetUserName);
+    }
+}
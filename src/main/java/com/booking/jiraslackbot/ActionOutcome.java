@@ -0,0 +1,54 @@
+package com.booking.jiraslackbot;
+
+/**
+ * The outcome of a JiraBotActions operation. Rejections are returned as one of these shared constants,
+ * so turning a request away allocates nothing; the user-facing message is only built if it is asked for.
+ */
+public enum ActionOutcome {
+    SUCCESS(0),
+    UNREGISTERED_CHANNEL(1),
+    UNAUTHORISED(2),
+    ALREADY_REGISTERED(3),
+    ALREADY_ADMIN(4),
+    NOT_ADMIN(5),
+    NOT_REGISTERED_USER(6);
+
+    // Stable numeric code, e.g. for metrics or logs
+    public final int code;
+
+    ActionOutcome(int code) {
+        this.code = code;
+    }
+
+    public boolean isSuccess() {
+        return this == SUCCESS;
+    }
+
+    /**
+     * The message to show the user.
+     * @param slackUser The user named in the message, for UNAUTHORISED and NOT_REGISTERED_USER
+     */
+    public String message(String slackUser) {
+        switch (this) {
+            case SUCCESS:
+                return "Done.";
+            case UNREGISTERED_CHANNEL:
+                return "This channel has not been registered with the JiraBot. " +
+                        "Please call 'project' to register the project first.";
+            case UNAUTHORISED:
+                return "Unauthorised access. Admin access required for this feature. " +
+                        "User '" + slackUser + "' is not an admin of this channel";
+            case ALREADY_REGISTERED:
+                return "User is already registered for this channel.";
+            case ALREADY_ADMIN:
+                return "User is already an admin for this channel.";
+            case NOT_ADMIN:
+                return "User is not an admin for this channel.";
+            case NOT_REGISTERED_USER:
+                return "Only registered users can create tickets in this channel. " +
+                        "User '" + slackUser + "' is not registered for this channel";
+            default:
+                throw new IllegalStateException("Unknown outcome: " + this);
+        }
+    }
+}
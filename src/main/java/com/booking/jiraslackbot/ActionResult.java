@@ -0,0 +1,37 @@
+package com.booking.jiraslackbot;
+
+/**
+ * The outcome of an operation that also returns a channel id, i.e. registering a project.
+ * Rejected results are shared constants; only a successful result is allocated.
+ */
+public final class ActionResult {
+
+    private static final ActionResult[] REJECTED = new ActionResult[ActionOutcome.values().length];
+
+    static {
+        for (ActionOutcome outcome : ActionOutcome.values()) {
+            REJECTED[outcome.ordinal()] = new ActionResult(outcome, 0);
+        }
+    }
+
+    public final ActionOutcome outcome;
+    // Only set on success
+    public final int channelId;
+
+    private ActionResult(ActionOutcome outcome, int channelId) {
+        this.outcome = outcome;
+        this.channelId = channelId;
+    }
+
+    static ActionResult success(int channelId) {
+        return new ActionResult(ActionOutcome.SUCCESS, channelId);
+    }
+
+    static ActionResult rejected(ActionOutcome outcome) {
+        return REJECTED[outcome.ordinal()];
+    }
+
+    public boolean isSuccess() {
+        return outcome.isSuccess();
+    }
+}
@@ -0,0 +1,113 @@
+package com.booking.jiraslackbot;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs a synchronous JiraBotDataManager's calls on the given executor, so callers are not blocked by them.
+ * The combined calls (getChannelAccess, getChannelUsersByName, addChannelUsersIfAbsent) use the store's own
+ * single-round-trip versions rather than the concurrent defaults.
+ * The store must be safe for concurrent use, as calls may run at the same time.
+ */
+public class AsyncDataManagerAdapter implements AsyncJiraBotDataManager {
+
+    private final JiraBotDataManager dataManager;
+    private final Executor executor;
+
+    public AsyncDataManagerAdapter(JiraBotDataManager dataManager, Executor executor) {
+        this.dataManager = dataManager;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<ChannelInfo> getChannelByName(String channelName) {
+        return CompletableFuture.supplyAsync(() -> dataManager.getChannelByName(channelName), executor);
+    }
+
+    @Override
+    public CompletableFuture<ChannelInfo> getChannelById(int channelId) {
+        return CompletableFuture.supplyAsync(() -> dataManager.getChannelById(channelId), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isExistingChannel(String channelName) {
+        return CompletableFuture.supplyAsync(() -> dataManager.isExistingChannel(channelName), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isChannelAdmin(String slackUser, int channelId) {
+        return CompletableFuture.supplyAsync(() -> dataManager.isChannelAdmin(slackUser, channelId), executor);
+    }
+
+    @Override
+    public CompletableFuture<Integer> addChannel(String channelName, String jiraProject, boolean isRestricted) {
+        return CompletableFuture.supplyAsync(() -> dataManager.addChannel(channelName, jiraProject, isRestricted), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateChannelDetails(int channelId, String jiraProject, boolean isRestricted) {
+        return CompletableFuture.runAsync(() -> dataManager.updateChannelDetails(channelId, jiraProject, isRestricted), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> addChannelUser(int channelId, String slackUser, boolean isAdmin) {
+        return CompletableFuture.runAsync(() -> dataManager.addChannelUser(channelId, slackUser, isAdmin), executor);
+    }
+
+    @Override
+    public CompletableFuture<Set<ChannelUser>> getChannelUsers(int channelId) {
+        return CompletableFuture.supplyAsync(() -> dataManager.getChannelUsers(channelId), executor);
+    }
+
+    @Override
+    public CompletableFuture<ChannelUser> getChannelUser(int channelId, String slackUser) {
+        return CompletableFuture.supplyAsync(() -> dataManager.getChannelUser(channelId, slackUser), executor);
+    }
+
+    @Override
+    public CompletableFuture<Set<ChannelInfo>> getChannelsForUser(String slackUser) {
+        return CompletableFuture.supplyAsync(() -> dataManager.getChannelsForUser(slackUser), executor);
+    }
+
+    @Override
+    public CompletableFuture<Set<ChannelInfo>> getAdminChannelsForUser(String slackUser) {
+        return CompletableFuture.supplyAsync(() -> dataManager.getAdminChannelsForUser(slackUser), executor);
+    }
+
+    @Override
+    public CompletableFuture<ChannelInfo> createChannelIfAbsent(String channelName, String jiraProject, boolean isRestricted,
+                                                                String adminUser) {
+        return CompletableFuture.supplyAsync(
+                () -> dataManager.createChannelIfAbsent(channelName, jiraProject, isRestricted, adminUser), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> addChannelUserIfAbsent(int channelId, String slackUser, boolean isAdmin) {
+        return CompletableFuture.supplyAsync(() -> dataManager.addChannelUserIfAbsent(channelId, slackUser, isAdmin), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> compareAndSetAdmin(int channelId, String slackUser, boolean expectedAdmin,
+                                                         boolean newAdmin) {
+        return CompletableFuture.supplyAsync(
+                () -> dataManager.compareAndSetAdmin(channelId, slackUser, expectedAdmin, newAdmin), executor);
+    }
+
+    @Override
+    public CompletableFuture<ChannelAccess> getChannelAccess(String channelName, String callingUser, String targetUser) {
+        return CompletableFuture.supplyAsync(() -> dataManager.getChannelAccess(channelName, callingUser, targetUser), executor);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, ChannelUser>> getChannelUsersByName(int channelId, Collection<String> slackUsers) {
+        return CompletableFuture.supplyAsync(() -> dataManager.getChannelUsersByName(channelId, slackUsers), executor);
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> addChannelUsersIfAbsent(int channelId, Map<String, Boolean> slackUsers) {
+        return CompletableFuture.supplyAsync(() -> dataManager.addChannelUsersIfAbsent(channelId, slackUsers), executor);
+    }
+}
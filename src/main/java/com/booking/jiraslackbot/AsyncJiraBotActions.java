@@ -0,0 +1,247 @@
+package com.booking.jiraslackbot;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of JiraBotActions, over an AsyncJiraBotDataManager.
+ * Each action is a chain of store calls that never blocks the calling thread, and the independent lookups
+ * within an action (e.g. the calling and target users' memberships) are issued together rather than one after another.
+ * As in JiraBotActions, the try... methods complete with an ActionOutcome, and the others fail with the same errors,
+ * and successful changes to a channel's project or members are recorded to the AuditLog, if one is set.
+ */
+public class AsyncJiraBotActions {
+
+    // Completed futures for each outcome, so rejections allocate nothing.
+    // Only ever returned from thenCompose, so callers never see (or complete) the shared instances.
+    private static final CompletableFuture<ActionOutcome>[] OUTCOMES = completedOutcomes();
+
+    AsyncJiraBotDataManager dataManager;
+    volatile AuditLog auditLog;
+
+    public AsyncJiraBotActions(AsyncJiraBotDataManager dataManager) {
+        this.dataManager = dataManager;
+    }
+
+    /**
+     * Records every successful administrative change to the audit log, or stops recording if it is null.
+     */
+    public void setAuditLog(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
+    // Define a channel's project
+    public CompletableFuture<Integer> registerProject(String channelName, String jiraProject, boolean isRestricted,
+                                                      String slackUser) {
+        return tryRegisterProject(channelName, jiraProject, isRestricted, slackUser).thenCompose(result ->
+                result.isSuccess() ? CompletableFuture.completedFuture(result.channelId)
+                        : CompletableFuture.failedFuture(JiraBotActions.toError(result.outcome, slackUser)));
+    }
+
+    public CompletableFuture<ActionResult> tryRegisterProject(String channelName, String jiraProject, boolean isRestricted,
+                                                              String slackUser) {
+        return dataManager.getChannelAccess(channelName, slackUser, null).thenCompose(access -> {
+            if (access.isRegisteredChannel()) {
+                return updateProject(access, channelName, jiraProject, isRestricted, slackUser);
+            }
+            // New channel, with the calling user as its admin, unless someone else registered it first
+            return dataManager.createChannelIfAbsent(channelName, jiraProject, isRestricted, slackUser).thenCompose(created -> {
+                if (created == null) {
+                    return dataManager.getChannelAccess(channelName, slackUser, null)
+                            .thenCompose(latest -> updateProject(latest, channelName, jiraProject, isRestricted, slackUser));
+                }
+                audit(slackUser, AuditEntry.Action.REGISTER_PROJECT, channelName, null,
+                        AuditEntry.NONE, AuditEntry.projectState(jiraProject, isRestricted));
+                return CompletableFuture.completedFuture(ActionResult.success(created.channelId));
+            });
+        });
+    }
+
+    private CompletableFuture<ActionResult> updateProject(ChannelAccess access, String channelName, String jiraProject,
+                                                          boolean isRestricted, String slackUser) {
+        if (!access.isCallerAdmin()) {
+            return CompletableFuture.completedFuture(ActionResult.rejected(ActionOutcome.UNAUTHORISED));
+        }
+        int channelId = access.channelInfo.channelId;
+        String before = AuditEntry.projectState(access.channelInfo.jiraProject, access.channelInfo.restricted);
+        return dataManager.updateChannelDetails(channelId, jiraProject, isRestricted).thenApply(done -> {
+            audit(slackUser, AuditEntry.Action.UPDATE_PROJECT, channelName, null, before,
+                    AuditEntry.projectState(jiraProject, isRestricted));
+            return ActionResult.success(channelId);
+        });
+    }
+
+    public CompletableFuture<Void> addUser(String channel, String callingUser, String newUser, boolean makeAdmin) {
+        return failIfRejected(tryAddUser(channel, callingUser, newUser, makeAdmin), newUser);
+    }
+
+    public CompletableFuture<ActionOutcome> tryAddUser(String channel, String callingUser, String newUser, boolean makeAdmin) {
+        return dataManager.getChannelAccess(channel, callingUser, newUser).thenCompose(access -> {
+            ActionOutcome rejection = checkAdminAccess(access);
+            if (rejection != null) {
+                return completed(rejection);
+            }
+            if (access.isTargetRegistered()) {
+                return completed(ActionOutcome.ALREADY_REGISTERED);
+            }
+            return dataManager.addChannelUserIfAbsent(access.channelInfo.channelId, newUser, makeAdmin).thenCompose(added -> {
+                if (!added) {
+                    return completed(ActionOutcome.ALREADY_REGISTERED);
+                }
+                audit(callingUser, AuditEntry.Action.ADD_USER, channel, newUser, AuditEntry.NONE,
+                        AuditEntry.membershipState(makeAdmin));
+                return completed(ActionOutcome.SUCCESS);
+            });
+        });
+    }
+
+    /**
+     * Adds many users to a channel at once. See JiraBotActions.addUsers.
+     */
+    public CompletableFuture<Map<String, JiraBotActions.AddUserOutcome>> addUsers(String channel, String callingUser,
+                                                                                 Map<String, Boolean> newUsers) {
+        Map<String, JiraBotActions.AddUserOutcome> outcomes = new LinkedHashMap<>();
+        return failIfRejected(tryAddUsers(channel, callingUser, newUsers, outcomes), callingUser)
+                .thenApply(done -> outcomes);
+    }
+
+    /**
+     * As addUsers, filling in the given map with each requested user's outcome if the caller may add users.
+     */
+    public CompletableFuture<ActionOutcome> tryAddUsers(String channel, String callingUser, Map<String, Boolean> newUsers,
+                                                        Map<String, JiraBotActions.AddUserOutcome> outcomes) {
+        return dataManager.getChannelAccess(channel, callingUser, null).thenCompose(access -> {
+            ActionOutcome rejection = checkAdminAccess(access);
+            if (rejection != null) {
+                return completed(rejection);
+            }
+            int channelId = access.channelInfo.channelId;
+            return dataManager.getChannelUsersByName(channelId, newUsers.keySet()).thenCompose(existingUsers -> {
+                Map<String, Boolean> usersToAdd = new LinkedHashMap<>();
+                newUsers.forEach((newUser, makeAdmin) -> {
+                    if (!existingUsers.containsKey(newUser)) {
+                        usersToAdd.put(newUser, makeAdmin);
+                    }
+                });
+                CompletableFuture<Set<String>> added = usersToAdd.isEmpty()
+                        ? CompletableFuture.completedFuture(Collections.emptySet())
+                        : dataManager.addChannelUsersIfAbsent(channelId, usersToAdd);
+                return added.thenApply(addedUsers -> {
+                    for (String newUser : newUsers.keySet()) {
+                        outcomes.put(newUser, addedUsers.contains(newUser) ? JiraBotActions.AddUserOutcome.ADDED
+                                : JiraBotActions.AddUserOutcome.ALREADY_REGISTERED);
+                    }
+                    for (String newUser : addedUsers) {
+                        audit(callingUser, AuditEntry.Action.ADD_USER, channel, newUser, AuditEntry.NONE,
+                                AuditEntry.membershipState(usersToAdd.get(newUser)));
+                    }
+                    return ActionOutcome.SUCCESS;
+                });
+            });
+        });
+    }
+
+    public CompletableFuture<Void> makeAdmin(String channel, String callingUser, String channelUserName) {
+        return failIfRejected(tryMakeAdmin(channel, callingUser, channelUserName), callingUser);
+    }
+
+    public CompletableFuture<ActionOutcome> tryMakeAdmin(String channel, String callingUser, String channelUserName) {
+        // The caller's and the target's memberships are looked up together
+        return dataManager.getChannelAccess(channel, callingUser, channelUserName).thenCompose(access -> {
+            ActionOutcome rejection = checkAdminAccess(access);
+            if (rejection != null) {
+                return completed(rejection);
+            }
+            if (access.isTargetAdmin()) {
+                return completed(ActionOutcome.ALREADY_ADMIN);
+            }
+            String before = AuditEntry.membershipState(access.targetUser);
+            return setAdmin(access.channelInfo.channelId, channelUserName, false, true, ActionOutcome.ALREADY_ADMIN)
+                    .thenCompose(outcome -> audited(outcome, callingUser, AuditEntry.Action.MAKE_ADMIN, channel,
+                            channelUserName, before, AuditEntry.ADMIN));
+        });
+    }
+
+    public CompletableFuture<Void> removeAdmin(String channel, String callingUser, String channelUserName) {
+        return failIfRejected(tryRemoveAdmin(channel, callingUser, channelUserName), callingUser);
+    }
+
+    public CompletableFuture<ActionOutcome> tryRemoveAdmin(String channel, String callingUser, String channelUserName) {
+        return dataManager.getChannelAccess(channel, callingUser, channelUserName).thenCompose(access -> {
+            ActionOutcome rejection = checkAdminAccess(access);
+            if (rejection != null) {
+                return completed(rejection);
+            }
+            if (!access.isTargetAdmin()) {
+                return completed(ActionOutcome.NOT_ADMIN);
+            }
+            return setAdmin(access.channelInfo.channelId, channelUserName, true, false, ActionOutcome.NOT_ADMIN)
+                    .thenCompose(outcome -> audited(outcome, callingUser, AuditEntry.Action.REMOVE_ADMIN, channel,
+                            channelUserName, AuditEntry.ADMIN, AuditEntry.MEMBER));
+        });
+    }
+
+    private CompletableFuture<ActionOutcome> setAdmin(int channelId, String slackUser, boolean expectedAdmin, boolean newAdmin,
+                                                      ActionOutcome conflict) {
+        return dataManager.compareAndSetAdmin(channelId, slackUser, expectedAdmin, newAdmin)
+                .thenCompose(set -> completed(set ? ActionOutcome.SUCCESS : conflict));
+    }
+
+    // Records the change if the outcome is a success, and passes the outcome on
+    private CompletableFuture<ActionOutcome> audited(ActionOutcome outcome, String actor, AuditEntry.Action action,
+                                                     String channel, String target, String before, String after) {
+        if (outcome.isSuccess()) {
+            audit(actor, action, channel, target, before, after);
+        }
+        return completed(outcome);
+    }
+
+    // Queues the entry and returns straight away: the audit log writes it in the background
+    private void audit(String actor, AuditEntry.Action action, String channel, String target, String before, String after) {
+        AuditLog log = auditLog;
+        if (log != null) {
+            log.record(new AuditEntry(System.currentTimeMillis(), actor, action, channel, target, before, after));
+        }
+    }
+
+    public CompletableFuture<Set<ChannelInfo>> getChannelsForUser(String slackUser) {
+        return dataManager.getChannelsForUser(slackUser);
+    }
+
+    public CompletableFuture<Set<ChannelInfo>> getAdminChannelsForUser(String slackUser) {
+        return dataManager.getAdminChannelsForUser(slackUser);
+    }
+
+    // The channel must be registered, and the caller must be one of its admins
+    private static ActionOutcome checkAdminAccess(ChannelAccess access) {
+        if (!access.isRegisteredChannel()) {
+            return ActionOutcome.UNREGISTERED_CHANNEL;
+        }
+        if (!access.isCallerAdmin()) {
+            return ActionOutcome.UNAUTHORISED;
+        }
+        return null;
+    }
+
+    private static CompletableFuture<Void> failIfRejected(CompletableFuture<ActionOutcome> outcome, String slackUser) {
+        return outcome.thenCompose(result -> result.isSuccess() ? CompletableFuture.<Void>completedFuture(null)
+                : CompletableFuture.failedFuture(JiraBotActions.toError(result, slackUser)));
+    }
+
+    private static CompletableFuture<ActionOutcome> completed(ActionOutcome outcome) {
+        return OUTCOMES[outcome.ordinal()];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CompletableFuture<ActionOutcome>[] completedOutcomes() {
+        ActionOutcome[] outcomes = ActionOutcome.values();
+        CompletableFuture<ActionOutcome>[] futures = (CompletableFuture<ActionOutcome>[]) new CompletableFuture<?>[outcomes.length];
+        for (ActionOutcome outcome : outcomes) {
+            futures[outcome.ordinal()] = CompletableFuture.completedFuture(outcome);
+        }
+        return futures;
+    }
+}
@@ -0,0 +1,107 @@
+package com.booking.jiraslackbot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Non-blocking counterpart of JiraBotDataManager: every call returns straight away with a future result,
+ * so a thread can have many store calls outstanding instead of waiting on each in turn.
+ * Methods behave as their JiraBotDataManager equivalents. AsyncDataManagerAdapter wraps any synchronous store.
+ */
+public interface AsyncJiraBotDataManager {
+
+    CompletableFuture<ChannelInfo> getChannelByName(String channelName);
+
+    CompletableFuture<ChannelInfo> getChannelById(int channelId);
+
+    CompletableFuture<Boolean> isExistingChannel(String channelName);
+
+    CompletableFuture<Boolean> isChannelAdmin(String slackUser, int channelId);
+
+    CompletableFuture<Integer> addChannel(String channelName, String jiraProject, boolean isRestricted);
+
+    CompletableFuture<Void> updateChannelDetails(int channelId, String jiraProject, boolean isRestricted);
+
+    CompletableFuture<Void> addChannelUser(int channelId, String slackUser, boolean isAdmin);
+
+    CompletableFuture<Set<ChannelUser>> getChannelUsers(int channelId);
+
+    CompletableFuture<ChannelUser> getChannelUser(int channelId, String slackUser);
+
+    CompletableFuture<Set<ChannelInfo>> getChannelsForUser(String slackUser);
+
+    CompletableFuture<Set<ChannelInfo>> getAdminChannelsForUser(String slackUser);
+
+    CompletableFuture<ChannelInfo> createChannelIfAbsent(String channelName, String jiraProject, boolean isRestricted,
+                                                         String adminUser);
+
+    CompletableFuture<Boolean> addChannelUserIfAbsent(int channelId, String slackUser, boolean isAdmin);
+
+    CompletableFuture<Boolean> compareAndSetAdmin(int channelId, String slackUser, boolean expectedAdmin, boolean newAdmin);
+
+    //---- Combined calls. The defaults issue the independent lookups concurrently; stores with a combined query override them.
+
+    default CompletableFuture<ChannelAccess> getChannelAccess(String channelName, String callingUser, String targetUser) {
+        return composeChannelAccess(this, channelName, callingUser, targetUser);
+    }
+
+    default CompletableFuture<Map<String, ChannelUser>> getChannelUsersByName(int channelId, Collection<String> slackUsers) {
+        return composeChannelUsersByName(this, channelId, slackUsers);
+    }
+
+    default CompletableFuture<Set<String>> addChannelUsersIfAbsent(int channelId, Map<String, Boolean> slackUsers) {
+        Map<String, CompletableFuture<Boolean>> added = new HashMap<>();
+        slackUsers.forEach((slackUser, isAdmin) -> added.put(slackUser, addChannelUserIfAbsent(channelId, slackUser, isAdmin)));
+        return CompletableFuture.allOf(added.values().toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> added.entrySet().stream()
+                        .filter(entry -> entry.getValue().join())
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.toCollection(HashSet::new)));
+    }
+
+    /**
+     * Finds the channel, then looks up the calling and target users' memberships at the same time.
+     */
+    static CompletableFuture<ChannelAccess> composeChannelAccess(AsyncJiraBotDataManager dataManager, String channelName,
+                                                                 String callingUser, String targetUser) {
+        return dataManager.getChannelByName(channelName).thenCompose(channelInfo -> {
+            if (channelInfo == null) {
+                return CompletableFuture.completedFuture(new ChannelAccess(null, null, null));
+            }
+            CompletableFuture<ChannelUser> caller = dataManager.getChannelUser(channelInfo.channelId, callingUser);
+            CompletableFuture<ChannelUser> target = targetUser == null ? CompletableFuture.completedFuture(null)
+                    : dataManager.getChannelUser(channelInfo.channelId, targetUser);
+            return caller.thenCombine(target, (callerUser, targetChannelUser) ->
+                    new ChannelAccess(channelInfo, callerUser, targetChannelUser));
+        });
+    }
+
+    /**
+     * Looks up all the users at the same time.
+     */
+    static CompletableFuture<Map<String, ChannelUser>> composeChannelUsersByName(AsyncJiraBotDataManager dataManager,
+                                                                                 int channelId, Collection<String> slackUsers) {
+        List<String> names = new ArrayList<>(slackUsers);
+        List<CompletableFuture<ChannelUser>> lookups = names.stream()
+                .map(slackUser -> dataManager.getChannelUser(channelId, slackUser))
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> {
+                    Map<String, ChannelUser> found = new HashMap<>();
+                    for (int i = 0; i < names.size(); i++) {
+                        ChannelUser user = lookups.get(i).join();
+                        if (user != null) {
+                            found.put(names.get(i), user);
+                        }
+                    }
+                    return found;
+                });
+    }
+}
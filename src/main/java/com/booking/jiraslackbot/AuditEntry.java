@@ -0,0 +1,97 @@
+package com.booking.jiraslackbot;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * One administrative change, as written to the audit log: who changed what, in which channel, from what to what.
+ * States are short descriptions, e.g. "admin", "member", "none", or "project=JIRA1 restricted=true".
+ */
+public class AuditEntry {
+
+    public enum Action {
+        REGISTER_PROJECT,
+        UPDATE_PROJECT,
+        ADD_USER,
+        MAKE_ADMIN,
+        REMOVE_ADMIN
+    }
+
+    static final String NONE = "none";
+    static final String MEMBER = "member";
+    static final String ADMIN = "admin";
+
+    public long timestamp;
+    public String actor;
+    public Action action;
+    public String channel;
+    // The user the change was made to, or null for changes to the channel itself
+    public String target;
+    public String before;
+    public String after;
+
+    public AuditEntry(long timestamp, String actor, Action action, String channel, String target, String before, String after) {
+        this.timestamp = timestamp;
+        this.actor = actor;
+        this.action = action;
+        this.channel = channel;
+        this.target = target;
+        this.before = before;
+        this.after = after;
+    }
+
+    static String projectState(String jiraProject, boolean restricted) {
+        return "project=" + jiraProject + " restricted=" + restricted;
+    }
+
+    static String membershipState(boolean isAdmin) {
+        return isAdmin ? ADMIN : MEMBER;
+    }
+
+    static String membershipState(ChannelUser user) {
+        return user == null ? NONE : membershipState(user.isAdmin);
+    }
+
+    /**
+     * @return True if the user made the change, or had it made to them
+     */
+    public boolean involves(String slackUser) {
+        return slackUser.equals(actor) || slackUser.equals(target);
+    }
+
+    /**
+     * One line of JSON, as stored in the audit files.
+     */
+    String toJson() {
+        return "{\"time\":" + Json.quote(Instant.ofEpochMilli(timestamp).toString())
+                + ",\"actor\":" + Json.quote(actor)
+                + ",\"action\":" + Json.quote(action.name())
+                + ",\"channel\":" + Json.quote(channel)
+                + ",\"target\":" + quoteOrNull(target)
+                + ",\"before\":" + quoteOrNull(before)
+                + ",\"after\":" + quoteOrNull(after) + "}";
+    }
+
+    private static String quoteOrNull(String value) {
+        return value == null ? "null" : Json.quote(value);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the line is not an audit entry
+     */
+    @SuppressWarnings("unchecked")
+    static AuditEntry fromJson(String line) {
+        Object parsed = Json.parse(line);
+        if (!(parsed instanceof Map)) {
+            throw new IllegalArgumentException("Not an audit entry: " + line);
+        }
+        Map<String, Object> fields = (Map<String, Object>) parsed;
+        try {
+            return new AuditEntry(Instant.parse((String) fields.get("time")).toEpochMilli(), (String) fields.get("actor"),
+                    Action.valueOf((String) fields.get("action")), (String) fields.get("channel"),
+                    (String) fields.get("target"), (String) fields.get("before"), (String) fields.get("after"));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Not an audit entry: " + line, e);
+        }
+    }
+}
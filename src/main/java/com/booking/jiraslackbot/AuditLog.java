@@ -0,0 +1,283 @@
+package com.booking.jiraslackbot;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Records administrative changes to append-only files, without making the command that made the change wait for the disk.
+ *
+ * record() puts the entry on a lock-free queue and returns. A background thread takes up to maxBatchSize entries
+ * at a time and writes them as one buffered write, one JSON line per entry (see AuditEntry), then flushes.
+ * At most bufferCapacity entries wait at once. When the buffer is full the overflow policy decides:
+ * DROP discards the new entry straight away, BLOCK waits up to blockTimeoutMillis for room and then discards it.
+ * Discarded entries are counted, so gaps in the trail are visible.
+ *
+ * Files in the directory:
+ *   audit-N.log  - written in order of N; a file is closed for good once it reaches maxFileBytes
+ * AuditLogQuery reads them back.
+ */
+public class AuditLog implements AutoCloseable {
+
+    static final String FILE_PREFIX = "audit-";
+    static final String FILE_SUFFIX = ".log";
+    // Other files that happen to share the prefix, e.g. "audit-old.log", are left alone
+    private static final Pattern FILE_NAME = Pattern.compile(
+            Pattern.quote(FILE_PREFIX) + "(\\d{1,18})" + Pattern.quote(FILE_SUFFIX));
+
+    public enum OverflowPolicy {
+        DROP,
+        BLOCK
+    }
+
+    public static class Settings {
+        public int bufferCapacity = 10_000;
+        public OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+        public long blockTimeoutMillis = 100;
+        public int maxBatchSize = 500;
+        public long flushIntervalMillis = 200;
+        public long maxFileBytes = 64L * 1024 * 1024;
+    }
+
+    private final Path directory;
+    private final Settings settings;
+    private final Queue<AuditEntry> queue = new ConcurrentLinkedQueue<>();
+    // One permit per free place in the buffer. Given back as entries are written.
+    private final Semaphore room;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // Only used by the writer thread
+    private BufferedWriter file;
+    private long fileNumber;
+    private long fileBytes;
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder writeFailures = new LongAdder();
+
+    public AuditLog(Path directory, Settings settings) throws IOException {
+        this.directory = directory;
+        this.settings = settings;
+        this.room = new Semaphore(settings.bufferCapacity);
+        Files.createDirectories(directory);
+        List<Long> existing = listFiles(directory);
+        // Carries on appending to the last file, rather than starting a new one on every restart
+        this.fileNumber = existing.isEmpty() ? 1 : existing.get(existing.size() - 1);
+        this.writer = new Thread(this::writeBatches, "jirabot-audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues the entry for writing.
+     * @return False if the entry was discarded because the buffer is full or the log is closed
+     */
+    public boolean record(AuditEntry entry) {
+        if (closed || !reserveRoom()) {
+            dropped.increment();
+            return false;
+        }
+        queue.add(entry);
+        // close() may have been called since the check, and the writer stopped before seeing the entry.
+        // Whoever takes the entry out of the queue accounts for it.
+        if (closed && queue.remove(entry)) {
+            room.release();
+            dropped.increment();
+            return false;
+        }
+        recorded.increment();
+        // Wakes the writer early once there is a full batch, rather than waiting for the flush interval
+        if (settings.bufferCapacity - room.availablePermits() >= settings.maxBatchSize) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    private boolean reserveRoom() {
+        if (room.tryAcquire()) {
+            return true;
+        }
+        if (settings.overflowPolicy == OverflowPolicy.DROP) {
+            return false;
+        }
+        LockSupport.unpark(writer);
+        try {
+            return room.tryAcquire(settings.blockTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void writeBatches() {
+        List<AuditEntry> batch = new ArrayList<>(settings.maxBatchSize);
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(settings.flushIntervalMillis);
+        while (true) {
+            AuditEntry entry;
+            while (batch.size() < settings.maxBatchSize && (entry = queue.poll()) != null) {
+                batch.add(entry);
+            }
+            if (batch.isEmpty()) {
+                // Entries recorded before close() was called are all written before the thread stops
+                if (closed && queue.isEmpty()) {
+                    closeFile();
+                    return;
+                }
+                LockSupport.parkNanos(this, flushIntervalNanos);
+                continue;
+            }
+            try {
+                write(batch);
+            } finally {
+                room.release(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<AuditEntry> batch) {
+        int skipped = 0;
+        try {
+            for (AuditEntry entry : batch) {
+                String line;
+                try {
+                    line = entry.toJson();
+                } catch (RuntimeException e) {
+                    // An entry that can not be written is lost on its own, rather than with its batch
+                    writeFailures.increment();
+                    dropped.increment();
+                    skipped++;
+                    continue;
+                }
+                if (file == null || fileBytes >= settings.maxFileBytes) {
+                    openFile();
+                }
+                file.write(line);
+                file.write('\n');
+                // Counts chars, which are bytes for ASCII names. Close enough to decide when to rotate.
+                fileBytes += line.length() + 1;
+            }
+            if (file != null) {
+                file.flush();
+            }
+            written.add(batch.size() - skipped);
+            batches.increment();
+        } catch (IOException | RuntimeException e) {
+            // Counted, and the writer carries on with the next batch in a freshly opened file
+            writeFailures.increment();
+            dropped.add(batch.size() - skipped);
+            closeFile();
+        }
+    }
+
+    private void openFile() throws IOException {
+        if (file != null) {
+            closeFile();
+            fileNumber++;
+        }
+        Path path = filePath(directory, fileNumber);
+        file = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        fileBytes = Files.size(path);
+        if (fileBytes >= settings.maxFileBytes) {
+            openFile();
+        } else if (fileBytes > 0 && !endsWithNewline(path)) {
+            // A line torn by a crash. Ends it, so the next entry starts on a line of its own.
+            file.write('\n');
+            fileBytes++;
+        }
+    }
+
+    private static boolean endsWithNewline(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            return last.get(0) == '\n';
+        }
+    }
+
+    private void closeFile() {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                writeFailures.increment();
+            }
+            file = null;
+        }
+    }
+
+    static Path filePath(Path directory, long fileNumber) {
+        return directory.resolve(FILE_PREFIX + fileNumber + FILE_SUFFIX);
+    }
+
+    /**
+     * @return The numbers of the audit files in the directory, in the order they were written
+     */
+    static List<Long> listFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> FILE_NAME.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(name -> Long.parseLong(name.group(1)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    public long getRecordedCount() {
+        return recorded.sum();
+    }
+
+    /**
+     * @return The entries lost: turned away by a full buffer, or in a batch that failed to write
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getWriteFailureCount() {
+        return writeFailures.sum();
+    }
+
+    /**
+     * Writes the entries already recorded, then closes the file. Entries recorded afterwards are dropped.
+     * Waits up to a minute for the writer; if it is still writing then, it closes the file itself once done.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.MINUTES.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
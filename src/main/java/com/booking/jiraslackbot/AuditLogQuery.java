@@ -0,0 +1,74 @@
+package com.booking.jiraslackbot;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Consumer;
+
+/**
+ * Reads the audit files written by AuditLog, oldest first, picking out the entries for a channel or a user.
+ *
+ * Usage: AuditLogQuery DIRECTORY [--channel NAME] [--user NAME]
+ * Prints the matching entries as they are stored, one JSON line each. A user matches the entries they made,
+ * and the entries made to them. Lines that can not be read (e.g. cut short by a crash) are skipped.
+ */
+public class AuditLogQuery {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            usage();
+            return;
+        }
+        String channel = null;
+        String user = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--channel") && i + 1 < args.length) {
+                channel = args[++i];
+            } else if (args[i].equals("--user") && i + 1 < args.length) {
+                user = args[++i];
+            } else {
+                usage();
+                return;
+            }
+        }
+        query(Paths.get(args[0]), channel, user, entry -> System.out.println(entry.toJson()));
+    }
+
+    private static void usage() {
+        System.err.println("Usage: AuditLogQuery DIRECTORY [--channel NAME] [--user NAME]");
+    }
+
+    /**
+     * Passes each matching entry to the consumer, in the order written. Reads one line at a time, so any size of trail can be searched.
+     * @param channel Only entries for this channel, or null for every channel
+     * @param user Only entries made by or to this Slack user, or null for every user
+     */
+    public static void query(Path directory, String channel, String user, Consumer<AuditEntry> matches) throws IOException {
+        // Values appear in the files as quoted JSON strings
+        String quotedChannel = channel == null ? null : Json.quote(channel);
+        String quotedUser = user == null ? null : Json.quote(user);
+        for (long fileNumber : AuditLog.listFiles(directory)) {
+            try (BufferedReader reader = Files.newBufferedReader(AuditLog.filePath(directory, fileNumber), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // Cheap test on the raw line first, so most lines are never parsed
+                    if ((channel != null && !line.contains(quotedChannel)) || (user != null && !line.contains(quotedUser))) {
+                        continue;
+                    }
+                    AuditEntry entry;
+                    try {
+                        entry = AuditEntry.fromJson(line);
+                    } catch (IllegalArgumentException e) {
+                        continue;
+                    }
+                    if ((channel == null || channel.equals(entry.channel)) && (user == null || entry.involves(user))) {
+                        matches.accept(entry);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.booking.jiraslackbot;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Decorator that answers lookups of unregistered channel names without touching the underlying store.
+ * Most Slack commands arrive from channels that were never registered, and each of those costs a store read that finds nothing.
+ * A Bloom filter (ChannelNameFilter) over the registered names turns nearly all of them into a few memory reads.
+ * Lookups by name that the filter lets through, and everything else, go to the store as before.
+ *
+ * The filter is built from getAllChannels() when the wrapper is created, and every channel created through it is added
+ * before the store write, so the filter never says "absent" for a channel the store has.
+ * Channels created by other bot instances must be fed in, by subscribing the wrapper to their ChangeFeed.
+ * Until a created event arrives, this instance treats that channel as unregistered, as a cache would.
+ * ChangeFeed itself only reaches subscribers in the same process, so with several instances it needs a transport
+ * that carries its events between them. Without one, only the periodic rebuild (every rebuildIntervalMillis)
+ * picks up channels created elsewhere, so it must not be turned off.
+ *
+ * The filter can not grow, so once more names are added than it was sized for, its false positive rate climbs.
+ * It is then rebuilt in the background from a fresh snapshot of the store, sized for twice as many channels;
+ * it can also be rebuilt on a fixed interval. Lookups carry on against the old filter until the new one is swapped in.
+ */
+public class BloomFilterDataManager implements JiraBotDataManager, ChangeListener, AutoCloseable {
+
+    public static class Settings {
+        // The channels the first filter is sized for. Rebuilt filters are sized for at least this many.
+        public int expectedChannels = 100_000;
+        public double falsePositiveRate = 0.01;
+        // Rebuilds from a snapshot this often, or never if 0. Rebuilds also happen when the filter fills up, or after a feed gap.
+        // Bounds how long a channel created by another instance can go unseen, if its created event never arrives.
+        public long rebuildIntervalMillis = TimeUnit.MINUTES.toMillis(5);
+    }
+
+    private final JiraBotDataManager dataManager;
+    private final Settings settings;
+    private final ScheduledExecutorService rebuilder;
+
+    private volatile ChannelNameFilter filter;
+    // The names the current filter was sized for, and the names added to it so far
+    private volatile long capacity;
+    private final AtomicLong names = new AtomicLong();
+    // Set while a rebuild is taking its snapshot. Names created meanwhile are added to it as well.
+    private volatile ChannelNameFilter building;
+    // False after a feed gap, when channels may be missing from the filter. Every lookup then goes to the store.
+    private volatile boolean complete;
+    private final AtomicLong gaps = new AtomicLong();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+    // Held shared while a name is added, and exclusively while the rebuilt filter is swapped in,
+    // so no name created during a rebuild is left out of the new filter
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    private final LongAdder filtered = new LongAdder();
+    private final LongAdder passed = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+    private final LongAdder rebuildFailures = new LongAdder();
+
+    public BloomFilterDataManager(JiraBotDataManager dataManager, Settings settings) {
+        this.dataManager = dataManager;
+        this.settings = settings;
+        this.rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jirabot-filter-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            rebuilder.shutdownNow();
+            throw e;
+        }
+        if (settings.rebuildIntervalMillis > 0) {
+            rebuilder.scheduleWithFixedDelay(this::rebuildQuietly, settings.rebuildIntervalMillis,
+                    settings.rebuildIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Builds a new filter from a snapshot of every channel in the store, then swaps it in.
+     * Only one rebuild runs at a time; lookups and writes carry on meanwhile.
+     */
+    public synchronized void rebuild() {
+        rebuildScheduled.set(false);
+        long gapsBefore = gaps.get();
+        ChannelNameFilter next;
+        long nextCapacity;
+        Set<ChannelInfo> channels;
+        try {
+            ChannelNameFilter current = filter;
+            nextCapacity = Math.max(settings.expectedChannels, current == null ? 0 : 2 * names.get());
+            next = new ChannelNameFilter((int) Math.min(Integer.MAX_VALUE, nextCapacity), settings.falsePositiveRate);
+            // Published before the snapshot is read, so a channel the snapshot misses is added by the write that created it
+            building = next;
+            channels = dataManager.getAllChannels();
+        } catch (RuntimeException e) {
+            building = null;
+            throw e;
+        }
+        for (ChannelInfo channel : channels) {
+            next.add(channel.channelName);
+        }
+        swapLock.writeLock().lock();
+        try {
+            filter = next;
+            capacity = nextCapacity;
+            // Leaves out names created during the rebuild, which only delays the next one a little
+            names.set(channels.size());
+            building = null;
+            // Channels missed before a gap were stored before it was seen, so are in the snapshot unless the gap came later
+            complete = gaps.get() == gapsBefore;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        rebuilds.increment();
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            // Lookups carry on with the old filter, and the next rebuild tries again
+            rebuildFailures.increment();
+        }
+    }
+
+    private void scheduleRebuild() {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            try {
+                rebuilder.execute(this::rebuildQuietly);
+            } catch (RejectedExecutionException e) {
+                // Closed: the filter stays as it is
+            }
+        }
+    }
+
+    private boolean definitelyAbsent(String channelName) {
+        if (complete && channelName != null && !filter.mightContain(channelName)) {
+            filtered.increment();
+            return true;
+        }
+        passed.increment();
+        return false;
+    }
+
+    private void countIfMissing(boolean found) {
+        if (!found) {
+            falsePositives.increment();
+        }
+    }
+
+    //---- Adding names
+
+    private void addName(String channelName) {
+        filter.add(channelName);
+        if (names.incrementAndGet() > capacity) {
+            scheduleRebuild();
+        }
+    }
+
+    @Override
+    public int addChannel(String channelName, String jiraProject, boolean isRestricted) {
+        swapLock.readLock().lock();
+        try {
+            // Added first, so no reader sees the channel in the store but not in the filter
+            addName(channelName);
+            int channelId = dataManager.addChannel(channelName, jiraProject, isRestricted);
+            addToBuilding(channelName);
+            return channelId;
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ChannelInfo createChannelIfAbsent(String channelName, String jiraProject, boolean isRestricted, String adminUser) {
+        swapLock.readLock().lock();
+        try {
+            addName(channelName);
+            ChannelInfo channel = dataManager.createChannelIfAbsent(channelName, jiraProject, isRestricted, adminUser);
+            addToBuilding(channelName);
+            return channel;
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    // A rebuild that started during the write may have read its snapshot before the channel was stored
+    private void addToBuilding(String channelName) {
+        ChannelNameFilter next = building;
+        if (next != null) {
+            next.add(channelName);
+        }
+    }
+
+    @Override
+    public void onChanges(List<ChangeEvent> events) {
+        swapLock.readLock().lock();
+        try {
+            for (ChangeEvent event : events) {
+                if (event.type == ChangeEvent.Type.CHANNEL_CREATED) {
+                    addName(event.channelName);
+                    addToBuilding(event.channelName);
+                }
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onGap(long lastSequenceSeen) {
+        // Some created channels may have been missed. Lookups go to the store until a rebuild has picked them up.
+        gaps.incrementAndGet();
+        complete = false;
+        scheduleRebuild();
+    }
+
+    //---- Lookups by name, answered by the filter when it can
+
+    @Override
+    public ChannelInfo getChannelByName(String channelName) {
+        if (definitelyAbsent(channelName)) {
+            return null;
+        }
+        ChannelInfo channel = dataManager.getChannelByName(channelName);
+        countIfMissing(channel != null);
+        return channel;
+    }
+
+    @Override
+    public boolean isExistingChannel(String channelName) {
+        if (definitelyAbsent(channelName)) {
+            return false;
+        }
+        boolean existing = dataManager.isExistingChannel(channelName);
+        countIfMissing(existing);
+        return existing;
+    }
+
+    @Override
+    public ChannelAccess getChannelAccess(String channelName, String callingUser, String targetUser) {
+        if (definitelyAbsent(channelName)) {
+            return new ChannelAccess(null, null, null);
+        }
+        ChannelAccess access = dataManager.getChannelAccess(channelName, callingUser, targetUser);
+        countIfMissing(access.isRegisteredChannel());
+        return access;
+    }
+
+    //---- Statistics
+
+    /**
+     * @return The lookups answered "not registered" by the filter alone
+     */
+    public long getFilteredCount() {
+        return filtered.sum();
+    }
+
+    /**
+     * @return The lookups passed to the store, because the filter said the name may be registered
+     */
+    public long getPassedCount() {
+        return passed.sum();
+    }
+
+    /**
+     * @return The lookups the filter passed to the store that found no channel
+     */
+    public long getFalsePositiveCount() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * @return The share of lookups for unregistered names that still went to the store
+     */
+    public double getObservedFalsePositiveRate() {
+        long misses = falsePositives.sum();
+        long total = misses + filtered.sum();
+        return total == 0 ? 0 : (double) misses / total;
+    }
+
+    /**
+     * @return The false positive rate expected of the current filter, from how full it is
+     */
+    public double getEstimatedFalsePositiveRate() {
+        return filter.estimatedFalsePositiveRate();
+    }
+
+    public long getRebuildCount() {
+        return rebuilds.sum();
+    }
+
+    public long getRebuildFailureCount() {
+        return rebuildFailures.sum();
+    }
+
+    /**
+     * Stops background rebuilds. Lookups still work, with the filter as it is.
+     */
+    @Override
+    public void close() {
+        rebuilder.shutdownNow();
+    }
+
+    //---- Everything else passes straight through
+
+    @Override
+    public ChannelInfo getChannelById(int channelId) {
+        return dataManager.getChannelById(channelId);
+    }
+
+    @Override
+    public boolean isChannelAdmin(String slackUser, int channelId) {
+        return dataManager.isChannelAdmin(slackUser, channelId);
+    }
+
+    @Override
+    public void updateChannelDetails(int channelId, String jiraProject, boolean isRestricted) {
+        dataManager.updateChannelDetails(channelId, jiraProject, isRestricted);
+    }
+
+    @Override
+    public void addChannelUser(int channelId, String slackUser, boolean isAdmin) {
+        dataManager.addChannelUser(channelId, slackUser, isAdmin);
+    }
+
+    @Override
+    public void addChannelUsers(int channelId, Map<String, Boolean> slackUsers) {
+        dataManager.addChannelUsers(channelId, slackUsers);
+    }
+
+    @Override
+    public boolean addChannelUserIfAbsent(int channelId, String slackUser, boolean isAdmin) {
+        return dataManager.addChannelUserIfAbsent(channelId, slackUser, isAdmin);
+    }
+
+    @Override
+    public Set<String> addChannelUsersIfAbsent(int channelId, Map<String, Boolean> slackUsers) {
+        return dataManager.addChannelUsersIfAbsent(channelId, slackUsers);
+    }
+
+    @Override
+    public boolean compareAndSetAdmin(int channelId, String slackUser, boolean expectedAdmin, boolean newAdmin) {
+        return dataManager.compareAndSetAdmin(channelId, slackUser, expectedAdmin, newAdmin);
+    }
+
+    @Override
+    public ChannelUser getChannelUser(int channelId, String slackUser) {
+        return dataManager.getChannelUser(channelId, slackUser);
+    }
+
+    @Override
+    public Set<ChannelUser> getChannelUsers(int channelId) {
+        return dataManager.getChannelUsers(channelId);
+    }
+
+    @Override
+    public MemberPage getChannelUsersPage(int channelId, String afterCursor, boolean adminsOnly, int pageSize) {
+        return dataManager.getChannelUsersPage(channelId, afterCursor, adminsOnly, pageSize);
+    }
+
+    @Override
+    public Map<String, ChannelUser> getChannelUsersByName(int channelId, Collection<String> slackUsers) {
+        return dataManager.getChannelUsersByName(channelId, slackUsers);
+    }
+
+    @Override
+    public Set<ChannelInfo> getChannelsForUser(String slackUser) {
+        return dataManager.getChannelsForUser(slackUser);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAdminChannelsForUser(String slackUser) {
+        return dataManager.getAdminChannelsForUser(slackUser);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAllChannels() {
+        return dataManager.getAllChannels();
+    }
+}
@@ -0,0 +1,41 @@
+package com.booking.jiraslackbot;
+
+/**
+ * Receives timings from InstrumentedJiraBotActions and InstrumentedDataManager.
+ * Implementations are called on the request path, from many threads at once, so must be thread-safe and cheap.
+ * MetricsRecorder keeps them in memory for PrometheusExporter; other implementations can forward them elsewhere.
+ */
+public interface BotMetrics {
+
+    BotMetrics NONE = new BotMetrics() {
+        @Override
+        public void recordAction(String action, ActionOutcome outcome, Throwable error, long latencyNanos,
+                                 int dataManagerCalls) {
+        }
+
+        @Override
+        public void recordDataManagerCall(String operation, Throwable error, long latencyNanos) {
+        }
+    };
+
+    /**
+     * @param action e.g. "makeAdmin"
+     * @param outcome The action's outcome, or null if it failed with an error or was turned away as busy
+     * @param error The error the action failed with, or null
+     * @param dataManagerCalls How many data manager calls the action made
+     */
+    void recordAction(String action, ActionOutcome outcome, Throwable error, long latencyNanos, int dataManagerCalls);
+
+    /**
+     * Called along with recordAction, with a null outcome and error, for an action turned away because the bot was busy,
+     * e.g. a ticket the TicketPipeline had no room for.
+     */
+    default void recordBusy(String action) {
+    }
+
+    /**
+     * @param operation The JiraBotDataManager method, e.g. "getChannelAccess"
+     * @param error The error the call failed with, or null
+     */
+    void recordDataManagerCall(String operation, Throwable error, long latencyNanos);
+}
@@ -0,0 +1,306 @@
+package com.booking.jiraslackbot;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Write-through caching decorator for a slower JiraBotDataManager.
+ * Caches channel lookups (by name and by id) and channel user lookups, including "not found" results.
+ * Every write goes straight to the underlying store, then invalidates exactly the entries it affects.
+ * Channel user lists (getChannelUsers) and user channel lists (getChannelsForUser) are not cached.
+ * Writes made by other bot instances are picked up by subscribing the cache to their ChangeFeed,
+ * which invalidates the same entries; otherwise they are only seen once the affected entries expire.
+ */
+public class CachingDataManager implements JiraBotDataManager, ChangeListener {
+
+    private final JiraBotDataManager dataManager;
+
+    // A channel's name never changes once registered, so channel details are cached by id only,
+    // and only the id is cached by name. updateChannelDetails then needs a single invalidation.
+    private final LruCache<String, Integer> channelIdsByName;
+    private final LruCache<Integer, ChannelInfo> channelsById;
+    private final LruCache<UserKey, ChannelUser> channelUsers;
+
+    public CachingDataManager(JiraBotDataManager dataManager, int maxEntries, long ttl, TimeUnit ttlUnit) {
+        this(dataManager, maxEntries, ttlUnit.toNanos(ttl), System::nanoTime);
+    }
+
+    CachingDataManager(JiraBotDataManager dataManager, int maxEntries, long ttlNanos, LongSupplier clock) {
+        this.dataManager = dataManager;
+        this.channelIdsByName = new LruCache<>(maxEntries, ttlNanos, clock);
+        this.channelsById = new LruCache<>(maxEntries, ttlNanos, clock);
+        this.channelUsers = new LruCache<>(maxEntries, ttlNanos, clock);
+    }
+
+    @Override
+    public ChannelInfo getChannelByName(String channelName) {
+        LruCache.Entry<Integer> idEntry = channelIdsByName.get(channelName);
+        if (idEntry != null) {
+            return idEntry.value == null ? null : getChannelById(idEntry.value);
+        }
+        long nameStamp = channelIdsByName.stamp();
+        long idStamp = channelsById.stamp();
+        ChannelInfo channelInfo = dataManager.getChannelByName(channelName);
+        cacheChannel(channelName, channelInfo, nameStamp, idStamp);
+        return channelInfo;
+    }
+
+    @Override
+    public ChannelInfo getChannelById(int channelId) {
+        LruCache.Entry<ChannelInfo> entry = channelsById.get(channelId);
+        if (entry != null) {
+            return entry.value;
+        }
+        long stamp = channelsById.stamp();
+        ChannelInfo channelInfo = dataManager.getChannelById(channelId);
+        channelsById.put(channelId, channelInfo, stamp);
+        return channelInfo;
+    }
+
+    @Override
+    public boolean isExistingChannel(String channelName) {
+        return getChannelByName(channelName) != null;
+    }
+
+    @Override
+    public boolean isChannelAdmin(String slackUser, int channelId) {
+        ChannelUser user = getChannelUser(channelId, slackUser);
+        return user != null && user.isAdmin;
+    }
+
+    @Override
+    public ChannelUser getChannelUser(int channelId, String slackUser) {
+        UserKey key = new UserKey(channelId, slackUser);
+        LruCache.Entry<ChannelUser> entry = channelUsers.get(key);
+        if (entry != null) {
+            return entry.value;
+        }
+        long stamp = channelUsers.stamp();
+        ChannelUser user = dataManager.getChannelUser(channelId, slackUser);
+        channelUsers.put(key, user, stamp);
+        return user;
+    }
+
+    @Override
+    public ChannelAccess getChannelAccess(String channelName, String callingUser, String targetUser) {
+        // Serve entirely from the cache if possible, otherwise make the single combined read to the store
+        ChannelAccess cached = getCachedChannelAccess(channelName, callingUser, targetUser);
+        if (cached != null) {
+            return cached;
+        }
+        long nameStamp = channelIdsByName.stamp();
+        long idStamp = channelsById.stamp();
+        long userStamp = channelUsers.stamp();
+        ChannelAccess access = dataManager.getChannelAccess(channelName, callingUser, targetUser);
+        cacheChannel(channelName, access.channelInfo, nameStamp, idStamp);
+        if (access.channelInfo != null) {
+            int channelId = access.channelInfo.channelId;
+            channelUsers.put(new UserKey(channelId, callingUser), access.callingUser, userStamp);
+            if (targetUser != null) {
+                channelUsers.put(new UserKey(channelId, targetUser), access.targetUser, userStamp);
+            }
+        }
+        return access;
+    }
+
+    private ChannelAccess getCachedChannelAccess(String channelName, String callingUser, String targetUser) {
+        LruCache.Entry<Integer> idEntry = channelIdsByName.get(channelName);
+        if (idEntry == null) {
+            return null;
+        }
+        if (idEntry.value == null) {
+            return new ChannelAccess(null, null, null);
+        }
+        int channelId = idEntry.value;
+        LruCache.Entry<ChannelInfo> channelEntry = channelsById.get(channelId);
+        LruCache.Entry<ChannelUser> callerEntry = channelUsers.get(new UserKey(channelId, callingUser));
+        LruCache.Entry<ChannelUser> targetEntry = targetUser == null ? null : channelUsers.get(new UserKey(channelId, targetUser));
+        if (channelEntry == null || channelEntry.value == null || callerEntry == null
+                || (targetUser != null && targetEntry == null)) {
+            return null;
+        }
+        return new ChannelAccess(channelEntry.value, callerEntry.value, targetEntry == null ? null : targetEntry.value);
+    }
+
+    private void cacheChannel(String channelName, ChannelInfo channelInfo, long nameStamp, long idStamp) {
+        channelIdsByName.put(channelName, channelInfo == null ? null : channelInfo.channelId, nameStamp);
+        if (channelInfo != null) {
+            channelsById.put(channelInfo.channelId, channelInfo, idStamp);
+        }
+    }
+
+    @Override
+    public int addChannel(String channelName, String jiraProject, boolean isRestricted) {
+        int channelId = dataManager.addChannel(channelName, jiraProject, isRestricted);
+        // Drop any cached "not registered" result for this name
+        channelIdsByName.invalidate(channelName);
+        channelsById.invalidate(channelId);
+        return channelId;
+    }
+
+    @Override
+    public void updateChannelDetails(int channelId, String jiraProject, boolean isRestricted) {
+        dataManager.updateChannelDetails(channelId, jiraProject, isRestricted);
+        channelsById.invalidate(channelId);
+    }
+
+    @Override
+    public void addChannelUser(int channelId, String slackUser, boolean isAdmin) {
+        dataManager.addChannelUser(channelId, slackUser, isAdmin);
+        channelUsers.invalidate(new UserKey(channelId, slackUser));
+    }
+
+    @Override
+    public void addChannelUsers(int channelId, Map<String, Boolean> slackUsers) {
+        dataManager.addChannelUsers(channelId, slackUsers);
+        for (String slackUser : slackUsers.keySet()) {
+            channelUsers.invalidate(new UserKey(channelId, slackUser));
+        }
+    }
+
+    @Override
+    public ChannelInfo createChannelIfAbsent(String channelName, String jiraProject, boolean isRestricted, String adminUser) {
+        ChannelInfo channelInfo = dataManager.createChannelIfAbsent(channelName, jiraProject, isRestricted, adminUser);
+        channelIdsByName.invalidate(channelName);
+        if (channelInfo != null) {
+            channelsById.invalidate(channelInfo.channelId);
+            channelUsers.invalidate(new UserKey(channelInfo.channelId, adminUser));
+        }
+        return channelInfo;
+    }
+
+    @Override
+    public boolean addChannelUserIfAbsent(int channelId, String slackUser, boolean isAdmin) {
+        boolean added = dataManager.addChannelUserIfAbsent(channelId, slackUser, isAdmin);
+        // Invalidate either way: a failed add means the cache may be missing a user added elsewhere
+        channelUsers.invalidate(new UserKey(channelId, slackUser));
+        return added;
+    }
+
+    @Override
+    public Set<String> addChannelUsersIfAbsent(int channelId, Map<String, Boolean> slackUsers) {
+        Set<String> added = dataManager.addChannelUsersIfAbsent(channelId, slackUsers);
+        for (String slackUser : slackUsers.keySet()) {
+            channelUsers.invalidate(new UserKey(channelId, slackUser));
+        }
+        return added;
+    }
+
+    @Override
+    public boolean compareAndSetAdmin(int channelId, String slackUser, boolean expectedAdmin, boolean newAdmin) {
+        boolean set = dataManager.compareAndSetAdmin(channelId, slackUser, expectedAdmin, newAdmin);
+        channelUsers.invalidate(new UserKey(channelId, slackUser));
+        return set;
+    }
+
+    @Override
+    public Map<String, ChannelUser> getChannelUsersByName(int channelId, Collection<String> slackUsers) {
+        return dataManager.getChannelUsersByName(channelId, slackUsers);
+    }
+
+    @Override
+    public Set<ChannelUser> getChannelUsers(int channelId) {
+        return dataManager.getChannelUsers(channelId);
+    }
+
+    @Override
+    public MemberPage getChannelUsersPage(int channelId, String afterCursor, boolean adminsOnly, int pageSize) {
+        return dataManager.getChannelUsersPage(channelId, afterCursor, adminsOnly, pageSize);
+    }
+
+    @Override
+    public Set<ChannelInfo> getChannelsForUser(String slackUser) {
+        return dataManager.getChannelsForUser(slackUser);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAdminChannelsForUser(String slackUser) {
+        return dataManager.getAdminChannelsForUser(slackUser);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAllChannels() {
+        return dataManager.getAllChannels();
+    }
+
+    //---- Changes made elsewhere, from a ChangeFeed
+
+    @Override
+    public void onChanges(List<ChangeEvent> events) {
+        for (ChangeEvent event : events) {
+            switch (event.type) {
+                case CHANNEL_CREATED:
+                    // Drop any cached "not registered" result for this name
+                    channelIdsByName.invalidate(event.channelName);
+                    channelsById.invalidate(event.channelId);
+                    break;
+                case CHANNEL_UPDATED:
+                    channelsById.invalidate(event.channelId);
+                    break;
+                case MEMBERSHIP_CHANGED:
+                    channelUsers.invalidate(new UserKey(event.channelId, event.slackUser));
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public void onGap(long lastSequenceSeen) {
+        // Some changes were missed, so any entry may be stale
+        channelIdsByName.clear();
+        channelsById.clear();
+        channelUsers.clear();
+    }
+
+    //---- Cache statistics, summed over all the caches
+
+    public long getHitCount() {
+        return channelIdsByName.hits.sum() + channelsById.hits.sum() + channelUsers.hits.sum();
+    }
+
+    public long getMissCount() {
+        return channelIdsByName.misses.sum() + channelsById.misses.sum() + channelUsers.misses.sum();
+    }
+
+    /**
+     * @return The number of entries dropped to stay within the size bound
+     */
+    public long getEvictionCount() {
+        return channelIdsByName.evictions.sum() + channelsById.evictions.sum() + channelUsers.evictions.sum();
+    }
+
+    /**
+     * @return The number of entries dropped because their time-to-live passed
+     */
+    public long getExpirationCount() {
+        return channelIdsByName.expirations.sum() + channelsById.expirations.sum() + channelUsers.expirations.sum();
+    }
+
+    private static class UserKey {
+        final int channelId;
+        final String slackUser;
+
+        UserKey(int channelId, String slackUser) {
+            this.channelId = channelId;
+            this.slackUser = slackUser;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof UserKey)) return false;
+            UserKey other = (UserKey) o;
+            return channelId == other.channelId && slackUser.equals(other.slackUser);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(channelId, slackUser);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.booking.jiraslackbot;
+
+/**
+ * One change to the data store, as published on a ChangeFeed: which channel, or which membership, changed.
+ * Events say what to invalidate, not the new values. ChangeFeedDataManager publishes after the write returns,
+ * so two concurrent writes to the same channel may be published in the opposite order to the one they were stored in;
+ * a consumer re-reads the store for the current values rather than applying values carried by the events.
+ */
+public class ChangeEvent {
+
+    public enum Type {
+        // channelId and channelName are set. A channel's name never changes, so it is safe to carry.
+        CHANNEL_CREATED,
+        // channelId is set
+        CHANNEL_UPDATED,
+        // A user was added to a channel, or their admin flag changed. channelId and slackUser are set
+        MEMBERSHIP_CHANGED
+    }
+
+    // Assigned by the feed: 1 for the first event, increasing by one for each event after it
+    public long sequence;
+    public Type type;
+    public int channelId;
+    public String channelName;
+    public String slackUser;
+
+    static ChangeEvent channelCreated(int channelId, String channelName) {
+        ChangeEvent event = new ChangeEvent();
+        event.type = Type.CHANNEL_CREATED;
+        event.channelId = channelId;
+        event.channelName = channelName;
+        return event;
+    }
+
+    static ChangeEvent channelUpdated(int channelId) {
+        ChangeEvent event = new ChangeEvent();
+        event.type = Type.CHANNEL_UPDATED;
+        event.channelId = channelId;
+        return event;
+    }
+
+    static ChangeEvent membershipChanged(int channelId, String slackUser) {
+        ChangeEvent event = new ChangeEvent();
+        event.type = Type.MEMBERSHIP_CHANGED;
+        event.channelId = channelId;
+        event.slackUser = slackUser;
+        return event;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + type + " channel " + channelId + (slackUser == null ? "" : " user " + slackUser);
+    }
+}
@@ -0,0 +1,201 @@
+package com.booking.jiraslackbot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An ordered feed of data store changes, published by ChangeFeedDataManager.
+ *
+ * Each event gets the next sequence number, and the most recent events are held in a bounded ring,
+ * so a consumer can resume from the last sequence it saw: by subscribing from it, or by polling readFrom
+ * (e.g. from another bot instance). A consumer that falls further behind than the ring holds is told it has a gap.
+ *
+ * Numbering is in memory, so a new feed (e.g. after a restart) starts again at 1. A consumer resuming from a
+ * sequence above getLastSequence() is told it has a gap too, and is given the oldest events held. That can not
+ * catch a new feed that has already passed the consumer's position, so a consumer that keeps its position
+ * across restarts should keep getEpoch() with it, and treat a different epoch as a gap.
+ * Each subscription is delivered on its own thread, in batches of up to maxBatchSize, so a slow consumer
+ * delays only itself and never the writes being published.
+ */
+public class ChangeFeed {
+
+    private final ChangeEvent[] ring;
+    // Tells this feed's numbering apart from that of any feed before or after it
+    private final long epoch = ThreadLocalRandom.current().nextLong();
+    // The last sequence number given out. Guarded by this.
+    private long lastSequence;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+
+    public ChangeFeed(int capacity) {
+        this.ring = new ChangeEvent[capacity];
+    }
+
+    /**
+     * Appends the events, as one contiguous run of sequence numbers, and wakes the subscriptions.
+     */
+    synchronized void publish(List<ChangeEvent> events) {
+        for (ChangeEvent event : events) {
+            event.sequence = ++lastSequence;
+            ring[(int) (event.sequence % ring.length)] = event;
+        }
+        notifyAll();
+    }
+
+    synchronized void publish(ChangeEvent event) {
+        publish(Collections.singletonList(event));
+    }
+
+    /**
+     * @return An id for this feed's numbering of events, different for every feed
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * @return The oldest event the feed still holds, or lastSequence + 1 if it holds none
+     */
+    public synchronized long getOldestSequence() {
+        return Math.max(1, lastSequence - ring.length + 1);
+    }
+
+    /**
+     * Reads the events after the given sequence, without waiting.
+     * If some of them are no longer held, or afterSequence is above the last sequence given out (the consumer saw
+     * an earlier feed), the events start from the oldest held. Either way the first event's sequence is then not
+     * afterSequence + 1, which tells the consumer it has a gap.
+     * @return Up to maxEvents events, in sequence order
+     */
+    public synchronized List<ChangeEvent> readFrom(long afterSequence, int maxEvents) {
+        long from = afterSequence > lastSequence
+                ? getOldestSequence() : Math.max(afterSequence + 1, getOldestSequence());
+        long to = Math.min(lastSequence, from + maxEvents - 1);
+        if (from > to) {
+            return Collections.emptyList();
+        }
+        List<ChangeEvent> events = new ArrayList<>((int) (to - from + 1));
+        for (long sequence = from; sequence <= to; sequence++) {
+            events.add(ring[(int) (sequence % ring.length)]);
+        }
+        return events;
+    }
+
+    /**
+     * As readFrom, waiting up to the timeout for events if there are none yet.
+     */
+    synchronized List<ChangeEvent> awaitFrom(long afterSequence, int maxEvents, long timeoutNanos)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (true) {
+            List<ChangeEvent> events = readFrom(afterSequence, maxEvents);
+            long remaining = deadline - System.nanoTime();
+            if (!events.isEmpty() || remaining <= 0) {
+                return events;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+    }
+
+    /**
+     * Delivers the events after the given sequence to the listener, then every new event as it is published.
+     * @param afterSequence The last sequence the listener has seen: getLastSequence() for only new events,
+     *                      or 0 for every event the feed still holds. If above getLastSequence(), the listener
+     *                      is told it has a gap once the feed has events, and given them from the oldest held.
+     */
+    public Subscription subscribe(long afterSequence, int maxBatchSize, ChangeListener listener) {
+        Subscription subscription = new Subscription(afterSequence, maxBatchSize, listener);
+        synchronized (this) {
+            subscriptions.add(subscription);
+        }
+        subscription.thread.start();
+        return subscription;
+    }
+
+    public synchronized int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    public class Subscription implements AutoCloseable {
+        private final int maxBatchSize;
+        private final ChangeListener listener;
+        private final Thread thread;
+        private volatile long position;
+        private volatile boolean closed;
+        private final LongAdder batches = new LongAdder();
+        private final LongAdder gaps = new LongAdder();
+        private final LongAdder listenerFailures = new LongAdder();
+
+        Subscription(long afterSequence, int maxBatchSize, ChangeListener listener) {
+            this.position = afterSequence;
+            this.maxBatchSize = maxBatchSize;
+            this.listener = listener;
+            this.thread = new Thread(this::deliver, "change-feed-subscription");
+            this.thread.setDaemon(true);
+        }
+
+        private void deliver() {
+            while (!closed) {
+                try {
+                    List<ChangeEvent> events = awaitFrom(position, maxBatchSize, TimeUnit.SECONDS.toNanos(1));
+                    if (events.isEmpty()) {
+                        continue;
+                    }
+                    // Behind the oldest event held, or ahead of the feed because it is a new one
+                    if (events.get(0).sequence != position + 1) {
+                        gaps.increment();
+                        listener.onGap(position);
+                    }
+                    listener.onChanges(events);
+                    batches.increment();
+                    position = events.get(events.size() - 1).sequence;
+                } catch (InterruptedException e) {
+                    return;
+                } catch (RuntimeException e) {
+                    // Redelivered after a pause, so a failing listener does not spin
+                    listenerFailures.increment();
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * The last sequence delivered. Subscribe from it to resume where this subscription stopped.
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        public long getBatchCount() {
+            return batches.sum();
+        }
+
+        public long getGapCount() {
+            return gaps.sum();
+        }
+
+        public long getListenerFailureCount() {
+            return listenerFailures.sum();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            thread.interrupt();
+            synchronized (ChangeFeed.this) {
+                subscriptions.remove(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.booking.jiraslackbot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decorator that publishes every change made through a JiraBotDataManager to a ChangeFeed.
+ * Events are published once the underlying write has returned, and only for writes that changed something:
+ * a conditional write that lost its race publishes nothing. A batch write publishes its events as one run.
+ * Publishing is not atomic with the write, so concurrent writes to one channel may be published in either order;
+ * that is why events only name what changed (see ChangeEvent).
+ * All bot instances sharing the store should write through the same feed.
+ */
+public class ChangeFeedDataManager implements JiraBotDataManager {
+
+    private final JiraBotDataManager dataManager;
+    private final ChangeFeed changeFeed;
+
+    public ChangeFeedDataManager(JiraBotDataManager dataManager, ChangeFeed changeFeed) {
+        this.dataManager = dataManager;
+        this.changeFeed = changeFeed;
+    }
+
+    @Override
+    public int addChannel(String channelName, String jiraProject, boolean isRestricted) {
+        int channelId = dataManager.addChannel(channelName, jiraProject, isRestricted);
+        changeFeed.publish(ChangeEvent.channelCreated(channelId, channelName));
+        return channelId;
+    }
+
+    @Override
+    public void updateChannelDetails(int channelId, String jiraProject, boolean isRestricted) {
+        dataManager.updateChannelDetails(channelId, jiraProject, isRestricted);
+        changeFeed.publish(ChangeEvent.channelUpdated(channelId));
+    }
+
+    @Override
+    public void addChannelUser(int channelId, String slackUser, boolean isAdmin) {
+        dataManager.addChannelUser(channelId, slackUser, isAdmin);
+        changeFeed.publish(ChangeEvent.membershipChanged(channelId, slackUser));
+    }
+
+    @Override
+    public void addChannelUsers(int channelId, Map<String, Boolean> slackUsers) {
+        dataManager.addChannelUsers(channelId, slackUsers);
+        List<ChangeEvent> events = new ArrayList<>(slackUsers.size());
+        slackUsers.keySet().forEach(slackUser -> events.add(ChangeEvent.membershipChanged(channelId, slackUser)));
+        changeFeed.publish(events);
+    }
+
+    @Override
+    public ChannelInfo createChannelIfAbsent(String channelName, String jiraProject, boolean isRestricted, String adminUser) {
+        ChannelInfo channelInfo = dataManager.createChannelIfAbsent(channelName, jiraProject, isRestricted, adminUser);
+        if (channelInfo != null) {
+            List<ChangeEvent> events = new ArrayList<>(2);
+            events.add(ChangeEvent.channelCreated(channelInfo.channelId, channelName));
+            events.add(ChangeEvent.membershipChanged(channelInfo.channelId, adminUser));
+            changeFeed.publish(events);
+        }
+        return channelInfo;
+    }
+
+    @Override
+    public boolean addChannelUserIfAbsent(int channelId, String slackUser, boolean isAdmin) {
+        boolean added = dataManager.addChannelUserIfAbsent(channelId, slackUser, isAdmin);
+        if (added) {
+            changeFeed.publish(ChangeEvent.membershipChanged(channelId, slackUser));
+        }
+        return added;
+    }
+
+    @Override
+    public Set<String> addChannelUsersIfAbsent(int channelId, Map<String, Boolean> slackUsers) {
+        Set<String> added = dataManager.addChannelUsersIfAbsent(channelId, slackUsers);
+        if (!added.isEmpty()) {
+            List<ChangeEvent> events = new ArrayList<>(added.size());
+            // In the order requested, rather than the added set's order
+            for (String slackUser : slackUsers.keySet()) {
+                if (added.contains(slackUser)) {
+                    events.add(ChangeEvent.membershipChanged(channelId, slackUser));
+                }
+            }
+            changeFeed.publish(events);
+        }
+        return added;
+    }
+
+    @Override
+    public boolean compareAndSetAdmin(int channelId, String slackUser, boolean expectedAdmin, boolean newAdmin) {
+        boolean set = dataManager.compareAndSetAdmin(channelId, slackUser, expectedAdmin, newAdmin);
+        if (set) {
+            changeFeed.publish(ChangeEvent.membershipChanged(channelId, slackUser));
+        }
+        return set;
+    }
+
+    //---- Reads pass straight through
+
+    @Override
+    public ChannelInfo getChannelByName(String channelName) {
+        return dataManager.getChannelByName(channelName);
+    }
+
+    @Override
+    public ChannelInfo getChannelById(int channelId) {
+        return dataManager.getChannelById(channelId);
+    }
+
+    @Override
+    public boolean isExistingChannel(String channelName) {
+        return dataManager.isExistingChannel(channelName);
+    }
+
+    @Override
+    public boolean isChannelAdmin(String slackUser, int channelId) {
+        return dataManager.isChannelAdmin(slackUser, channelId);
+    }
+
+    @Override
+    public Set<ChannelUser> getChannelUsers(int channelId) {
+        return dataManager.getChannelUsers(channelId);
+    }
+
+    @Override
+    public MemberPage getChannelUsersPage(int channelId, String afterCursor, boolean adminsOnly, int pageSize) {
+        return dataManager.getChannelUsersPage(channelId, afterCursor, adminsOnly, pageSize);
+    }
+
+    @Override
+    public Set<ChannelInfo> getChannelsForUser(String slackUser) {
+        return dataManager.getChannelsForUser(slackUser);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAdminChannelsForUser(String slackUser) {
+        return dataManager.getAdminChannelsForUser(slackUser);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAllChannels() {
+        return dataManager.getAllChannels();
+    }
+
+    @Override
+    public ChannelUser getChannelUser(int channelId, String slackUser) {
+        return dataManager.getChannelUser(channelId, slackUser);
+    }
+
+    @Override
+    public Map<String, ChannelUser> getChannelUsersByName(int channelId, Collection<String> slackUsers) {
+        return dataManager.getChannelUsersByName(channelId, slackUsers);
+    }
+
+    @Override
+    public ChannelAccess getChannelAccess(String channelName, String callingUser, String targetUser) {
+        return dataManager.getChannelAccess(channelName, callingUser, targetUser);
+    }
+}
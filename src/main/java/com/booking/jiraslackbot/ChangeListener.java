@@ -0,0 +1,21 @@
+package com.booking.jiraslackbot;
+
+import java.util.List;
+
+/**
+ * Receives changes from a ChangeFeed subscription, in sequence order.
+ */
+public interface ChangeListener {
+
+    /**
+     * @param events The next changes, in sequence order, with no gaps since the previous batch
+     */
+    void onChanges(List<ChangeEvent> events);
+
+    /**
+     * Called when changes after the given sequence are no longer held by the feed, or the given sequence is from
+     * an earlier feed, so some were missed.
+     * A cache should drop everything it holds. Delivery then continues from the oldest change the feed still holds.
+     */
+    void onGap(long lastSequenceSeen);
+}
@@ -0,0 +1,38 @@
+package com.booking.jiraslackbot;
+
+/**
+ * Everything a bot command needs to authorise itself, fetched in a single data store read:
+ * the channel, the calling user's membership and the target user's membership.
+ * Any of the fields may be null if the channel or user is not registered.
+ */
+public class ChannelAccess {
+    public ChannelInfo channelInfo;
+    public ChannelUser callingUser;
+    public ChannelUser targetUser;
+
+    public ChannelAccess(ChannelInfo channelInfo, ChannelUser callingUser, ChannelUser targetUser) {
+        this.channelInfo = channelInfo;
+        this.callingUser = callingUser;
+        this.targetUser = targetUser;
+    }
+
+    public boolean isRegisteredChannel() {
+        return channelInfo != null;
+    }
+
+    public boolean isCallerRegistered() {
+        return callingUser != null;
+    }
+
+    public boolean isCallerAdmin() {
+        return callingUser != null && callingUser.isAdmin;
+    }
+
+    public boolean isTargetRegistered() {
+        return targetUser != null;
+    }
+
+    public boolean isTargetAdmin() {
+        return targetUser != null && targetUser.isAdmin;
+    }
+}
@@ -0,0 +1,110 @@
+package com.booking.jiraslackbot;
+
+/**
+ * The users of one channel, stored as an open-addressing hash set of ints: (userId << 1) | adminBit.
+ * About 7 bytes per member at the maximum load factor, with no per-member objects.
+ * Thread-safe. Each channel has its own lock, so unrelated channels never contend.
+ */
+class ChannelMembers {
+
+    static final int ABSENT = -1;
+    static final int BASIC = 0;
+    static final int ADMIN = 1;
+
+    private static final int EMPTY = 0;     // User ids start at 1, so no member is ever encoded as 0
+
+    private int[] slots = new int[8];
+    private int size;
+
+    /**
+     * @return ABSENT, BASIC or ADMIN
+     */
+    synchronized int get(int userId) {
+        int slot = find(slots, userId);
+        return slots[slot] == EMPTY ? ABSENT : slots[slot] & 1;
+    }
+
+    /**
+     * Adds or updates a member.
+     */
+    synchronized void put(int userId, boolean isAdmin) {
+        int slot = find(slots, userId);
+        if (slots[slot] == EMPTY) {
+            if ((size + 1) * 4 > slots.length * 3) {
+                resize();
+                slot = find(slots, userId);
+            }
+            size++;
+        }
+        slots[slot] = (userId << 1) | (isAdmin ? 1 : 0);
+    }
+
+    /**
+     * Adds a member, unless the user is already a member.
+     * @return True if the member was added
+     */
+    synchronized boolean putIfAbsent(int userId, boolean isAdmin) {
+        if (get(userId) != ABSENT) {
+            return false;
+        }
+        put(userId, isAdmin);
+        return true;
+    }
+
+    /**
+     * Sets the member's admin flag if it currently has the expected value. A non-member counts as a non-admin.
+     * @return True if the flag was set
+     */
+    synchronized boolean compareAndSetAdmin(int userId, boolean expectedAdmin, boolean newAdmin) {
+        if ((get(userId) == ADMIN) != expectedAdmin) {
+            return false;
+        }
+        put(userId, newAdmin);
+        return true;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Calls the action with each member's user id and admin flag.
+     * Runs while holding the channel's lock, so the action should be quick and must not write to this channel.
+     */
+    synchronized void forEach(MemberAction action) {
+        for (int member : slots) {
+            if (member != EMPTY) {
+                action.accept(member >>> 1, (member & 1) == 1);
+            }
+        }
+    }
+
+    // Returns the slot holding the user, or the empty slot where it would go
+    private static int find(int[] slots, int userId) {
+        int mask = slots.length - 1;
+        int slot = mix(userId) & mask;
+        while (slots[slot] != EMPTY && (slots[slot] >>> 1) != userId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        int[] larger = new int[slots.length * 2];
+        for (int member : slots) {
+            if (member != EMPTY) {
+                larger[find(larger, member >>> 1)] = member;
+            }
+        }
+        slots = larger;
+    }
+
+    interface MemberAction {
+        void accept(int userId, boolean isAdmin);
+    }
+
+    private static int mix(int value) {
+        int hash = value * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,89 @@
+package com.booking.jiraslackbot;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over channel names. Answers "definitely absent" or "maybe present"; a name once added always gets the latter.
+ * Bits are set with compare-and-set, so adds and lookups never lock and may run concurrently.
+ * There is no removal, which suits channels as they are never deleted.
+ */
+final class ChannelNameFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * Sized so that once expectedNames names have been added, about falsePositiveRate of absent names get "maybe present".
+     */
+    ChannelNameFilter(int expectedNames, double falsePositiveRate) {
+        if (expectedNames < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid filter size: " + expectedNames + " names at " + falsePositiveRate);
+        }
+        double ln2 = Math.log(2);
+        long bits = (long) Math.ceil(-expectedNames * Math.log(falsePositiveRate) / (ln2 * ln2));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) / 64));
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = wordCount * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedNames * ln2));
+    }
+
+    void add(String name) {
+        long hash1 = hash(name, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(name, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+    }
+
+    boolean mightContain(String name) {
+        long hash1 = hash(name, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(name, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The chance an absent name gets "maybe present", from the share of bits set so far
+     */
+    double estimatedFalsePositiveRate() {
+        long set = 0;
+        for (int i = 0; i < words.length(); i++) {
+            set += Long.bitCount(words.get(i));
+        }
+        return Math.pow((double) set / bitCount, hashCount);
+    }
+
+    long getBitCount() {
+        return bitCount;
+    }
+
+    int getHashCount() {
+        return hashCount;
+    }
+
+    // Two independent 64-bit hashes drive the k probes (double hashing), so each name's chars are read twice, not k times
+    private static long hash(String name, long seed) {
+        long hash = seed ^ name.length();
+        for (int i = 0; i < name.length(); i++) {
+            hash = (hash ^ name.charAt(i)) * 0x100000001B3L;
+        }
+        // Murmur3 finaliser, so nearby names land far apart
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,338 @@
+package com.booking.jiraslackbot;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Decorator that lets concurrent identical reads share one call to the underlying data manager (single flight).
+ * The first caller for a key makes the call; callers arriving while it is in flight wait for it and get the same result,
+ * or the same exception. Nothing is kept once the call returns, so unlike CachingDataManager a result is never stale.
+ *
+ * A reader never joins a call that started before a write to the same channel had returned: each write bumps
+ * a version for the channel's id and name once it is done, and a call started under an older version is not shared.
+ * So a caller always sees its own writes, and any write that completed before it started.
+ * Versions are striped, so a write also stops sharing for the few unrelated channels in the same stripes.
+ *
+ * Only the point reads of a channel are shared; listings pass straight through. Shared results go to every caller,
+ * so callers must not modify them - as with the store's own ChannelInfo records.
+ */
+public class CoalescingDataManager implements JiraBotDataManager {
+
+    private enum Operation {
+        CHANNEL_BY_NAME,
+        CHANNEL_BY_ID,
+        EXISTING_CHANNEL,
+        CHANNEL_ADMIN,
+        CHANNEL_USER,
+        CHANNEL_ACCESS
+    }
+
+    private static final class Key {
+        final Operation operation;
+        final int channelId;
+        final String first;
+        final String second;
+        final String third;
+
+        Key(Operation operation, int channelId, String first, String second, String third) {
+            this.operation = operation;
+            this.channelId = channelId;
+            this.first = first;
+            this.second = second;
+            this.third = third;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return operation == key.operation && channelId == key.channelId
+                    && Objects.equals(first, key.first) && Objects.equals(second, key.second) && Objects.equals(third, key.third);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = operation.hashCode() * 31 + channelId;
+            hash = hash * 31 + Objects.hashCode(first);
+            hash = hash * 31 + Objects.hashCode(second);
+            return hash * 31 + Objects.hashCode(third);
+        }
+    }
+
+    private static final class Flight extends CompletableFuture<Object> {
+        final long version;
+
+        Flight(long version) {
+            this.version = version;
+        }
+    }
+
+    private static final int STRIPES = 1024;
+
+    private final JiraBotDataManager dataManager;
+    private final ConcurrentMap<Key, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    // Bumped by a write to a channel whose name is not known here, so reads by any name stop sharing
+    private final AtomicLong unknownNameVersion = new AtomicLong();
+    // Learned from results, so a write by id can also bump the version for the channel's name
+    private final ConcurrentMap<Integer, String> channelNames = new ConcurrentHashMap<>();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public CoalescingDataManager(JiraBotDataManager dataManager) {
+        this.dataManager = dataManager;
+    }
+
+    /**
+     * @return The reads passed to the underlying data manager
+     */
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    /**
+     * @return The reads answered by joining a call already in flight
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    //---- Shared reads
+
+    @Override
+    public ChannelInfo getChannelByName(String channelName) {
+        return learn(coalesce(new Key(Operation.CHANNEL_BY_NAME, 0, channelName, null, null), nameVersion(channelName),
+                () -> dataManager.getChannelByName(channelName)));
+    }
+
+    @Override
+    public ChannelInfo getChannelById(int channelId) {
+        return learn(coalesce(new Key(Operation.CHANNEL_BY_ID, channelId, null, null, null), idVersion(channelId),
+                () -> dataManager.getChannelById(channelId)));
+    }
+
+    @Override
+    public boolean isExistingChannel(String channelName) {
+        return coalesce(new Key(Operation.EXISTING_CHANNEL, 0, channelName, null, null), nameVersion(channelName),
+                () -> dataManager.isExistingChannel(channelName));
+    }
+
+    @Override
+    public boolean isChannelAdmin(String slackUser, int channelId) {
+        return coalesce(new Key(Operation.CHANNEL_ADMIN, channelId, slackUser, null, null), idVersion(channelId),
+                () -> dataManager.isChannelAdmin(slackUser, channelId));
+    }
+
+    @Override
+    public ChannelUser getChannelUser(int channelId, String slackUser) {
+        return coalesce(new Key(Operation.CHANNEL_USER, channelId, slackUser, null, null), idVersion(channelId),
+                () -> dataManager.getChannelUser(channelId, slackUser));
+    }
+
+    @Override
+    public ChannelAccess getChannelAccess(String channelName, String callingUser, String targetUser) {
+        ChannelAccess access = coalesce(new Key(Operation.CHANNEL_ACCESS, 0, channelName, callingUser, targetUser),
+                nameVersion(channelName), () -> dataManager.getChannelAccess(channelName, callingUser, targetUser));
+        learn(access.channelInfo);
+        return access;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T coalesce(Key key, long version, Supplier<T> read) {
+        Flight flight = new Flight(version);
+        while (true) {
+            Flight existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                break;
+            }
+            // A call that started no earlier than this reader's version has seen every write this reader must see
+            if (existing.version >= version) {
+                coalesced.increment();
+                return (T) await(existing);
+            }
+            if (flights.replace(key, existing, flight)) {
+                break;
+            }
+        }
+        calls.increment();
+        try {
+            T result = read.get();
+            flight.complete(result);
+            return result;
+        } catch (Throwable e) {
+            // Errors too, or the callers that joined would wait forever
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    private static Object await(Flight flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            // The caller that made the call threw it; each joiner gets it too
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private ChannelInfo learn(ChannelInfo channel) {
+        if (channel != null) {
+            channelNames.putIfAbsent(channel.channelId, channel.channelName);
+        }
+        return channel;
+    }
+
+    private static int stripe(int hash) {
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private long idVersion(int channelId) {
+        return versions.get(stripe(Integer.hashCode(channelId)));
+    }
+
+    private long nameVersion(String channelName) {
+        return versions.get(stripe(channelName.hashCode())) + unknownNameVersion.get();
+    }
+
+    //---- Writes: once each has returned, reads of the channel stop sharing calls made before it
+
+    private void written(int channelId) {
+        versions.incrementAndGet(stripe(Integer.hashCode(channelId)));
+        String channelName = channelNames.get(channelId);
+        if (channelName != null) {
+            versions.incrementAndGet(stripe(channelName.hashCode()));
+        } else {
+            unknownNameVersion.incrementAndGet();
+        }
+    }
+
+    private void written(String channelName) {
+        versions.incrementAndGet(stripe(channelName.hashCode()));
+    }
+
+    @Override
+    public int addChannel(String channelName, String jiraProject, boolean isRestricted) {
+        int channelId = dataManager.addChannel(channelName, jiraProject, isRestricted);
+        channelNames.put(channelId, channelName);
+        written(channelName);
+        written(channelId);
+        return channelId;
+    }
+
+    @Override
+    public ChannelInfo createChannelIfAbsent(String channelName, String jiraProject, boolean isRestricted, String adminUser) {
+        ChannelInfo channel = learn(dataManager.createChannelIfAbsent(channelName, jiraProject, isRestricted, adminUser));
+        written(channelName);
+        if (channel != null) {
+            written(channel.channelId);
+        }
+        return channel;
+    }
+
+    @Override
+    public void updateChannelDetails(int channelId, String jiraProject, boolean isRestricted) {
+        try {
+            dataManager.updateChannelDetails(channelId, jiraProject, isRestricted);
+        } finally {
+            written(channelId);
+        }
+    }
+
+    @Override
+    public void addChannelUser(int channelId, String slackUser, boolean isAdmin) {
+        try {
+            dataManager.addChannelUser(channelId, slackUser, isAdmin);
+        } finally {
+            written(channelId);
+        }
+    }
+
+    @Override
+    public void addChannelUsers(int channelId, Map<String, Boolean> slackUsers) {
+        try {
+            dataManager.addChannelUsers(channelId, slackUsers);
+        } finally {
+            written(channelId);
+        }
+    }
+
+    @Override
+    public boolean addChannelUserIfAbsent(int channelId, String slackUser, boolean isAdmin) {
+        try {
+            return dataManager.addChannelUserIfAbsent(channelId, slackUser, isAdmin);
+        } finally {
+            written(channelId);
+        }
+    }
+
+    @Override
+    public Set<String> addChannelUsersIfAbsent(int channelId, Map<String, Boolean> slackUsers) {
+        try {
+            return dataManager.addChannelUsersIfAbsent(channelId, slackUsers);
+        } finally {
+            written(channelId);
+        }
+    }
+
+    @Override
+    public boolean compareAndSetAdmin(int channelId, String slackUser, boolean expectedAdmin, boolean newAdmin) {
+        try {
+            return dataManager.compareAndSetAdmin(channelId, slackUser, expectedAdmin, newAdmin);
+        } finally {
+            written(channelId);
+        }
+    }
+
+    //---- Listings pass straight through
+
+    @Override
+    public Set<ChannelUser> getChannelUsers(int channelId) {
+        return dataManager.getChannelUsers(channelId);
+    }
+
+    @Override
+    public MemberPage getChannelUsersPage(int channelId, String afterCursor, boolean adminsOnly, int pageSize) {
+        return dataManager.getChannelUsersPage(channelId, afterCursor, adminsOnly, pageSize);
+    }
+
+    @Override
+    public Map<String, ChannelUser> getChannelUsersByName(int channelId, Collection<String> slackUsers) {
+        return dataManager.getChannelUsersByName(channelId, slackUsers);
+    }
+
+    @Override
+    public Set<ChannelInfo> getChannelsForUser(String slackUser) {
+        return dataManager.getChannelsForUser(slackUser);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAdminChannelsForUser(String slackUser) {
+        return dataManager.getAdminChannelsForUser(slackUser);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAllChannels() {
+        return dataManager.getAllChannels();
+    }
+}
@@ -0,0 +1,536 @@
+package com.booking.jiraslackbot;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory data manager that keeps channels and memberships in primitive column arrays (struct of arrays),
+ * for millions of memberships with almost nothing for the garbage collector to trace.
+ *
+ * A channel is row channelId of the channel columns: its name, and one int packing its Jira project's dictionary id
+ * with the restricted bit. A membership is one row of the membership columns: its channel id, one int packing the
+ * user's dictionary id with the admin bit, and the next row of the same channel and of the same user, so a channel's
+ * members and a user's channels are each a chain through the rows. Names and memberships are found through
+ * open-addressing int tables of row numbers. About 24 bytes per membership in all, with no objects per membership.
+ *
+ * Reads never lock. Writes take the manager's lock, fill in a row, then publish it with a release store, so a reader
+ * that finds a row sees all of it; tables and columns that grow are copied before the larger array is published.
+ * As every write touches the shared columns, writes are serialised by the one lock - fine for admin commands,
+ * but use IndexedMemoryDataManager or CompactMemoryDataManager where writes are heavy.
+ *
+ * The interface methods create ChannelInfo and ChannelUser records for what they return. Hot paths can read
+ * through a ChannelView or MemberView instead, which point into the columns and create nothing.
+ * A channel's member chain is in insertion order, not name order, so each page of getChannelUsersPage walks
+ * the whole chain: paging through n members costs O(n * n / pageSize).
+ */
+public class ColumnarMemoryDataManager implements JiraBotDataManager {
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle NAMES = MethodHandles.arrayElementVarHandle(String[].class);
+
+    // Row 0 of every column is unused, so 0 can mean "none" in the tables and chains
+    private static final int NONE = 0;
+    private static final int INITIAL_ROWS = 1024;
+
+    private final UserDictionary users = new UserDictionary();
+    // Jira projects are shared by many channels, so are stored once each too
+    private final UserDictionary projects = new UserDictionary();
+
+    // Channel columns, index: channelId
+    private volatile int channelCount;
+    private volatile String[] channelNames = new String[INITIAL_ROWS];
+    // (projectId << 1) | restricted, so a reader never sees the project of one update and the flag of another
+    private volatile int[] channelDetails = new int[INITIAL_ROWS];
+    private volatile int[] channelFirstMember = new int[INITIAL_ROWS];
+    // Open-addressing table of channel ids, probed by name hash
+    private volatile int[] channelTable = new int[INITIAL_ROWS * 2];
+
+    // Membership columns, index: row
+    private volatile int membershipCount;
+    private volatile int[] memberChannel = new int[INITIAL_ROWS];
+    // (userId << 1) | admin
+    private volatile int[] memberUser = new int[INITIAL_ROWS];
+    private volatile int[] nextInChannel = new int[INITIAL_ROWS];
+    private volatile int[] nextOfUser = new int[INITIAL_ROWS];
+    // Index: userId
+    private volatile int[] userFirstMembership = new int[INITIAL_ROWS];
+    // Open-addressing table of rows, probed by (channelId, userId) hash
+    private volatile int[] membershipTable = new int[INITIAL_ROWS * 2];
+
+    //---- Flyweight views
+
+    /**
+     * Points at one channel's columns. Reusable: move it to another channel rather than creating a new view.
+     * Not thread-safe; each thread should have its own.
+     */
+    public final class ChannelView {
+        private int channelId;
+
+        /**
+         * @return False if there is no channel with that name
+         */
+        public boolean moveTo(String channelName) {
+            channelId = findChannel(channelName);
+            return channelId != NONE;
+        }
+
+        /**
+         * @return False if there is no channel with that id
+         */
+        public boolean moveTo(int channelId) {
+            this.channelId = channelId > 0 && channelId <= channelCount ? channelId : NONE;
+            return this.channelId != NONE;
+        }
+
+        public int getChannelId() {
+            return channelId;
+        }
+
+        public String getChannelName() {
+            return channelNames[channelId];
+        }
+
+        public String getJiraProject() {
+            return projects.nameOf(details(channelId) >>> 1);
+        }
+
+        public boolean isRestricted() {
+            return (details(channelId) & 1) == 1;
+        }
+
+        public ChannelInfo toChannelInfo() {
+            return channelInfo(channelId);
+        }
+    }
+
+    /**
+     * Steps through the memberships of one channel, or of one user. Reusable, and not thread-safe.
+     * Memberships added after the view was opened may or may not be seen.
+     */
+    public final class MemberView {
+        private int row;
+        private int next;
+        private boolean byUser;
+
+        public void openChannel(int channelId) {
+            int[] first = channelFirstMember;
+            next = channelId > 0 && channelId < first.length ? (int) INTS.getAcquire(first, channelId) : NONE;
+            byUser = false;
+        }
+
+        public void openUser(String slackUser) {
+            int userId = users.idOf(slackUser);
+            int[] first = userFirstMembership;
+            next = userId != UserDictionary.UNKNOWN && userId < first.length ? (int) INTS.getAcquire(first, userId) : NONE;
+            byUser = true;
+        }
+
+        /**
+         * Moves to the next membership, most recently added first.
+         * @return False once there are no more
+         */
+        public boolean next() {
+            if (next == NONE) {
+                return false;
+            }
+            row = next;
+            next = byUser ? nextOfUser[row] : nextInChannel[row];
+            return true;
+        }
+
+        public int getChannelId() {
+            return memberChannel[row];
+        }
+
+        public String getSlackName() {
+            return users.nameOf(member(row) >>> 1);
+        }
+
+        public boolean isAdmin() {
+            return (member(row) & 1) == 1;
+        }
+
+        public ChannelUser toChannelUser() {
+            int member = member(row);
+            return channelUser(memberChannel[row], users.nameOf(member >>> 1), (member & 1) == 1);
+        }
+    }
+
+    public ChannelView newChannelView() {
+        return new ChannelView();
+    }
+
+    public MemberView newMemberView() {
+        return new MemberView();
+    }
+
+    //---- Reads
+
+    @Override
+    public ChannelInfo getChannelByName(String channelName) {
+        int channelId = findChannel(channelName);
+        return channelId == NONE ? null : channelInfo(channelId);
+    }
+
+    @Override
+    public ChannelInfo getChannelById(int channelId) {
+        return channelId > 0 && channelId <= channelCount ? channelInfo(channelId) : null;
+    }
+
+    @Override
+    public boolean isExistingChannel(String channelName) {
+        return findChannel(channelName) != NONE;
+    }
+
+    @Override
+    public boolean isChannelAdmin(String slackUser, int channelId) {
+        int row = findMembership(channelId, users.idOf(slackUser));
+        return row != NONE && (member(row) & 1) == 1;
+    }
+
+    @Override
+    public ChannelUser getChannelUser(int channelId, String slackUser) {
+        int row = findMembership(channelId, users.idOf(slackUser));
+        if (row == NONE) {
+            return null;
+        }
+        // Hand out the dictionary's copy of the name, so callers holding on to users do not keep duplicates
+        int member = member(row);
+        return channelUser(channelId, users.nameOf(member >>> 1), (member & 1) == 1);
+    }
+
+    @Override
+    public ChannelAccess getChannelAccess(String channelName, String callingUser, String targetUser) {
+        int channelId = findChannel(channelName);
+        if (channelId == NONE) {
+            return new ChannelAccess(null, null, null);
+        }
+        return new ChannelAccess(channelInfo(channelId), getChannelUser(channelId, callingUser),
+                targetUser == null ? null : getChannelUser(channelId, targetUser));
+    }
+
+    @Override
+    public Set<ChannelUser> getChannelUsers(int channelId) {
+        Set<ChannelUser> channelUsers = new HashSet<>();
+        MemberView view = new MemberView();
+        view.openChannel(channelId);
+        while (view.next()) {
+            channelUsers.add(view.toChannelUser());
+        }
+        return channelUsers;
+    }
+
+    @Override
+    public MemberPage getChannelUsersPage(int channelId, String afterCursor, boolean adminsOnly, int pageSize) {
+        // Walks all the channel's rows for every page, creating user records only for those on the page
+        MemberPage.Collector page = new MemberPage.Collector(afterCursor, pageSize);
+        MemberView view = new MemberView();
+        view.openChannel(channelId);
+        while (view.next()) {
+            if (!adminsOnly || view.isAdmin()) {
+                page.offer(channelId, view.getSlackName(), view.isAdmin());
+            }
+        }
+        return page.toPage();
+    }
+
+    @Override
+    public Set<ChannelInfo> getChannelsForUser(String slackUser) {
+        return channelsForUser(slackUser, false);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAdminChannelsForUser(String slackUser) {
+        return channelsForUser(slackUser, true);
+    }
+
+    private Set<ChannelInfo> channelsForUser(String slackUser, boolean adminOnly) {
+        Set<ChannelInfo> userChannels = new HashSet<>();
+        MemberView view = new MemberView();
+        view.openUser(slackUser);
+        while (view.next()) {
+            int channelId = view.getChannelId();
+            // Users may be added to ids that were never registered as channels
+            if ((view.isAdmin() || !adminOnly) && channelId <= channelCount) {
+                userChannels.add(channelInfo(channelId));
+            }
+        }
+        return userChannels;
+    }
+
+    @Override
+    public Set<ChannelInfo> getAllChannels() {
+        Set<ChannelInfo> channels = new HashSet<>();
+        int count = channelCount;
+        for (int channelId = 1; channelId <= count; channelId++) {
+            channels.add(channelInfo(channelId));
+        }
+        return channels;
+    }
+
+    private int details(int channelId) {
+        return (int) INTS.getAcquire(channelDetails, channelId);
+    }
+
+    private int member(int row) {
+        return (int) INTS.getAcquire(memberUser, row);
+    }
+
+    private ChannelInfo channelInfo(int channelId) {
+        ChannelInfo channelInfo = new ChannelInfo();
+        int details = details(channelId);
+        channelInfo.channelId = channelId;
+        channelInfo.channelName = channelNames[channelId];
+        channelInfo.jiraProject = projects.nameOf(details >>> 1);
+        channelInfo.restricted = (details & 1) == 1;
+        return channelInfo;
+    }
+
+    private static ChannelUser channelUser(int channelId, String slackUser, boolean isAdmin) {
+        ChannelUser user = new ChannelUser();
+        user.channelId = channelId;
+        user.slackName = slackUser;
+        user.isAdmin = isAdmin;
+        return user;
+    }
+
+    //---- Index tables
+
+    private int findChannel(String channelName) {
+        int[] table = channelTable;
+        String[] names = channelNames;
+        int mask = table.length - 1;
+        int slot = mix(channelName.hashCode()) & mask;
+        int channelId;
+        while ((channelId = (int) INTS.getAcquire(table, slot)) != NONE) {
+            // The table was published after every name in it, but a larger names column may not have been read yet
+            if (channelId >= names.length) {
+                names = channelNames;
+            }
+            if (channelName.equals(names[channelId])) {
+                return channelId;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NONE;
+    }
+
+    private int findMembership(int channelId, int userId) {
+        if (userId == UserDictionary.UNKNOWN) {
+            return NONE;
+        }
+        int[] table = membershipTable;
+        int[] channels = memberChannel;
+        int[] members = memberUser;
+        int mask = table.length - 1;
+        int slot = membershipHash(channelId, userId) & mask;
+        int row;
+        while ((row = (int) INTS.getAcquire(table, slot)) != NONE) {
+            if (row >= channels.length) {
+                channels = memberChannel;
+                members = memberUser;
+            }
+            if (channels[row] == channelId && ((int) INTS.getAcquire(members, row) >>> 1) == userId) {
+                return row;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NONE;
+    }
+
+    private static int membershipHash(int channelId, int userId) {
+        return mix(channelId * 0x9E3779B9 + userId);
+    }
+
+    private static int mix(int value) {
+        int hash = value * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    //---- Writes, all holding the manager's lock
+
+    @Override
+    public synchronized int addChannel(String channelName, String jiraProject, boolean isRestricted) {
+        int channelId = newChannel(channelName, jiraProject, isRestricted);
+        // As with the other stores, a second channel of the same name takes over the name
+        publishChannelName(channelName, channelId);
+        return channelId;
+    }
+
+    @Override
+    public synchronized ChannelInfo createChannelIfAbsent(String channelName, String jiraProject, boolean isRestricted, String adminUser) {
+        if (findChannel(channelName) != NONE) {
+            return null;
+        }
+        int channelId = newChannel(channelName, jiraProject, isRestricted);
+        // Added before the name is published, so the channel is never visible without its admin
+        putMember(channelId, users.intern(adminUser), true, true);
+        publishChannelName(channelName, channelId);
+        return channelInfo(channelId);
+    }
+
+    @Override
+    public synchronized void updateChannelDetails(int channelId, String jiraProject, boolean isRestricted) {
+        if (channelId <= 0 || channelId > channelCount) {
+            throw new RuntimeException("Unable to update channel info. Data not found in data store for channel: " + channelId);
+        }
+        INTS.setRelease(channelDetails, channelId, packDetails(jiraProject, isRestricted));
+    }
+
+    @Override
+    public synchronized void addChannelUser(int channelId, String slackUser, boolean isAdmin) {
+        // If user already exists - overwrite it with the updated values
+        putMember(channelId, users.intern(slackUser), isAdmin, true);
+    }
+
+    @Override
+    public synchronized void addChannelUsers(int channelId, Map<String, Boolean> slackUsers) {
+        slackUsers.forEach((slackUser, isAdmin) -> putMember(channelId, users.intern(slackUser), isAdmin, true));
+    }
+
+    @Override
+    public synchronized boolean addChannelUserIfAbsent(int channelId, String slackUser, boolean isAdmin) {
+        return putMember(channelId, users.intern(slackUser), isAdmin, false);
+    }
+
+    @Override
+    public synchronized Set<String> addChannelUsersIfAbsent(int channelId, Map<String, Boolean> slackUsers) {
+        Set<String> added = new HashSet<>();
+        slackUsers.forEach((slackUser, isAdmin) -> {
+            if (putMember(channelId, users.intern(slackUser), isAdmin, false)) {
+                added.add(slackUser);
+            }
+        });
+        return added;
+    }
+
+    @Override
+    public synchronized boolean compareAndSetAdmin(int channelId, String slackUser, boolean expectedAdmin, boolean newAdmin) {
+        int userId = users.idOf(slackUser);
+        int row = findMembership(channelId, userId);
+        boolean isAdmin = row != NONE && (member(row) & 1) == 1;
+        if (isAdmin != expectedAdmin) {
+            return false;
+        }
+        // Interned only now the member is written, so failed swaps for unknown names leave the dictionary alone
+        putMember(channelId, userId == UserDictionary.UNKNOWN ? users.intern(slackUser) : userId, newAdmin, true);
+        return true;
+    }
+
+    private int packDetails(String jiraProject, boolean isRestricted) {
+        return (projects.intern(jiraProject) << 1) | (isRestricted ? 1 : 0);
+    }
+
+    // Fills in the channel's row. It can be found by id once channelCount is published, and by name once its name is.
+    private int newChannel(String channelName, String jiraProject, boolean isRestricted) {
+        int channelId = channelCount + 1;
+        if (channelId >= channelNames.length) {
+            int length = channelNames.length * 2;
+            channelNames = Arrays.copyOf(channelNames, length);
+            channelDetails = Arrays.copyOf(channelDetails, length);
+        }
+        channelNames[channelId] = channelName;
+        INTS.setRelease(channelDetails, channelId, packDetails(jiraProject, isRestricted));
+        channelCount = channelId;
+        return channelId;
+    }
+
+    private void publishChannelName(String channelName, int channelId) {
+        int[] table = channelTable;
+        int mask = table.length - 1;
+        int slot = mix(channelName.hashCode()) & mask;
+        int existing;
+        while ((existing = table[slot]) != NONE) {
+            if (channelName.equals(channelNames[existing])) {
+                INTS.setRelease(table, slot, channelId);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // Keeps the table at most half full, as each channel takes a single int
+        if (channelId * 2 > table.length) {
+            channelTable = rehash(table, table.length * 2, id -> mix(channelNames[id].hashCode()), channelId);
+            publishChannelName(channelName, channelId);
+            return;
+        }
+        INTS.setRelease(table, slot, channelId);
+    }
+
+    /**
+     * Adds the membership, or if the user is already a member sets their admin flag when overwrite is true.
+     * @return True if the membership was added or changed
+     */
+    private boolean putMember(int channelId, int userId, boolean isAdmin, boolean overwrite) {
+        if (channelId <= 0) {
+            throw new IllegalArgumentException("Invalid channel id: " + channelId);
+        }
+        int packed = (userId << 1) | (isAdmin ? 1 : 0);
+        int row = findMembership(channelId, userId);
+        if (row != NONE) {
+            if (!overwrite) {
+                return false;
+            }
+            INTS.setRelease(memberUser, row, packed);
+            return true;
+        }
+        row = membershipCount + 1;
+        if (row >= memberChannel.length) {
+            int length = memberChannel.length * 2;
+            memberChannel = Arrays.copyOf(memberChannel, length);
+            memberUser = Arrays.copyOf(memberUser, length);
+            nextInChannel = Arrays.copyOf(nextInChannel, length);
+            nextOfUser = Arrays.copyOf(nextOfUser, length);
+        }
+        if (channelId >= channelFirstMember.length) {
+            channelFirstMember = Arrays.copyOf(channelFirstMember, Math.max(channelId + 1, channelFirstMember.length * 2));
+        }
+        if (userId >= userFirstMembership.length) {
+            userFirstMembership = Arrays.copyOf(userFirstMembership, Math.max(userId + 1, userFirstMembership.length * 2));
+        }
+        memberChannel[row] = channelId;
+        memberUser[row] = packed;
+        nextInChannel[row] = channelFirstMember[channelId];
+        nextOfUser[row] = userFirstMembership[userId];
+        // Each release store publishes the row filled in above
+        INTS.setRelease(channelFirstMember, channelId, row);
+        INTS.setRelease(userFirstMembership, userId, row);
+        int[] table = membershipTable;
+        // At most three quarters full
+        if (row * 4 > table.length * 3) {
+            table = rehash(table, table.length * 2, r -> membershipHash(memberChannel[r], memberUser[r] >>> 1), row - 1);
+            membershipTable = table;
+        }
+        int mask = table.length - 1;
+        int slot = membershipHash(channelId, userId) & mask;
+        while (table[slot] != NONE) {
+            slot = (slot + 1) & mask;
+        }
+        INTS.setRelease(table, slot, row);
+        membershipCount = row;
+        return true;
+    }
+
+    // Copies the rows 1..lastRow of a table into a new table of the given size, to be published once complete
+    private static int[] rehash(int[] table, int length, RowHash hash, int lastRow) {
+        int[] larger = new int[length];
+        int mask = length - 1;
+        for (int row : table) {
+            if (row != NONE && row <= lastRow) {
+                int slot = hash.of(row) & mask;
+                while (larger[slot] != NONE) {
+                    slot = (slot + 1) & mask;
+                }
+                larger[slot] = row;
+            }
+        }
+        return larger;
+    }
+
+    private interface RowHash {
+        int of(int row);
+    }
+}
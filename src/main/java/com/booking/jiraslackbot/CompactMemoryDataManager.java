@@ -0,0 +1,254 @@
+package com.booking.jiraslackbot;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory data manager for very large numbers of memberships.
+ * Each Slack user name is stored once in a UserDictionary and memberships are stored as ints in per-channel
+ * primitive hash sets (ChannelMembers), instead of one ChannelUser object per membership.
+ * Membership checks such as isChannelAdmin are one dictionary lookup (the name's hash is cached by String)
+ * followed by an int probe, with no String comparisons against other members.
+ * ChannelUser objects are only created when a caller asks for one.
+ * Members are not kept in name order, so each page of getChannelUsersPage scans the whole channel:
+ * paging through n members costs O(n * n / pageSize). Use IndexedMemoryDataManager for very large channels
+ * that are paged through often.
+ */
+public class CompactMemoryDataManager implements JiraBotDataManager {
+
+    // Channel data is small, so it is kept in the usual indexes
+    private final IndexedMemoryDataManager channels = new IndexedMemoryDataManager();
+    private final UserDictionary users = new UserDictionary();
+    private final ConcurrentMap<Integer, ChannelMembers> membersByChannel = new ConcurrentHashMap<>();
+    // Reverse index: userId -> the user's channels. ChannelMembers works for any positive int id, here channel ids.
+    private final ConcurrentMap<Integer, ChannelMembers> channelsByUser = new ConcurrentHashMap<>();
+
+    @Override
+    public ChannelInfo getChannelByName(String channelName) {
+        return channels.getChannelByName(channelName);
+    }
+
+    @Override
+    public ChannelInfo getChannelById(int channelId) {
+        return channels.getChannelById(channelId);
+    }
+
+    @Override
+    public boolean isExistingChannel(String channelName) {
+        return channels.isExistingChannel(channelName);
+    }
+
+    @Override
+    public int addChannel(String channelName, String jiraProject, boolean isRestricted) {
+        return channels.addChannel(channelName, jiraProject, isRestricted);
+    }
+
+    @Override
+    public void updateChannelDetails(int channelId, String jiraProject, boolean isRestricted) {
+        channels.updateChannelDetails(channelId, jiraProject, isRestricted);
+    }
+
+    @Override
+    public boolean isChannelAdmin(String slackUser, int channelId) {
+        return membership(channelId, slackUser) == ChannelMembers.ADMIN;
+    }
+
+    @Override
+    public ChannelUser getChannelUser(int channelId, String slackUser) {
+        ChannelMembers members = membersByChannel.get(channelId);
+        int userId = users.idOf(slackUser);
+        if (members == null || userId == UserDictionary.UNKNOWN) {
+            return null;
+        }
+        // Hand out the dictionary's copy of the name, so callers holding on to users do not keep duplicates
+        return channelUser(channelId, users.nameOf(userId), members.get(userId));
+    }
+
+    @Override
+    public ChannelAccess getChannelAccess(String channelName, String callingUser, String targetUser) {
+        ChannelInfo channelInfo = channels.getChannelByName(channelName);
+        if (channelInfo == null) {
+            return new ChannelAccess(null, null, null);
+        }
+        int channelId = channelInfo.channelId;
+        return new ChannelAccess(channelInfo, getChannelUser(channelId, callingUser),
+                targetUser == null ? null : getChannelUser(channelId, targetUser));
+    }
+
+    @Override
+    public void addChannelUser(int channelId, String slackUser, boolean isAdmin) {
+        // If user already exists - overwrite it with the updated values
+        int userId = users.intern(slackUser);
+        ChannelMembers members = members(channelId);
+        synchronized (members) {
+            members.put(userId, isAdmin);
+            indexUserChannel(userId, channelId, isAdmin);
+        }
+    }
+
+    @Override
+    public void addChannelUsers(int channelId, Map<String, Boolean> slackUsers) {
+        ChannelMembers members = members(channelId);
+        slackUsers.forEach((slackUser, isAdmin) -> {
+            int userId = users.intern(slackUser);
+            synchronized (members) {
+                members.put(userId, isAdmin);
+                indexUserChannel(userId, channelId, isAdmin);
+            }
+        });
+    }
+
+    @Override
+    public ChannelInfo createChannelIfAbsent(String channelName, String jiraProject, boolean isRestricted, String adminUser) {
+        return channels.createChannelIfAbsent(channelName, jiraProject, isRestricted,
+                channelId -> addChannelUser(channelId, adminUser, true));
+    }
+
+    @Override
+    public boolean addChannelUserIfAbsent(int channelId, String slackUser, boolean isAdmin) {
+        int userId = users.intern(slackUser);
+        ChannelMembers members = members(channelId);
+        synchronized (members) {
+            if (!members.putIfAbsent(userId, isAdmin)) {
+                return false;
+            }
+            indexUserChannel(userId, channelId, isAdmin);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean compareAndSetAdmin(int channelId, String slackUser, boolean expectedAdmin, boolean newAdmin) {
+        int userId = users.idOf(slackUser);
+        if (userId == UserDictionary.UNKNOWN) {
+            // A name never seen is no member, so the swap fails unless it adds one. Only then is the name interned.
+            if (expectedAdmin) {
+                return false;
+            }
+            userId = users.intern(slackUser);
+        }
+        ChannelMembers members = members(channelId);
+        synchronized (members) {
+            if (!members.compareAndSetAdmin(userId, expectedAdmin, newAdmin)) {
+                return false;
+            }
+            indexUserChannel(userId, channelId, newAdmin);
+            return true;
+        }
+    }
+
+    /**
+     * @return The distinct Slack users the store holds a name for, however many channels each is in.
+     * Names are kept once added, so this is what sizes the dictionary.
+     */
+    public int getUserCount() {
+        return users.size();
+    }
+
+    private ChannelMembers members(int channelId) {
+        return membersByChannel.computeIfAbsent(channelId, id -> new ChannelMembers());
+    }
+
+    // Called holding the channel's lock, so the reverse index is updated in the same order as the channel
+    private void indexUserChannel(int userId, int channelId, boolean isAdmin) {
+        channelsByUser.computeIfAbsent(userId, id -> new ChannelMembers()).put(channelId, isAdmin);
+    }
+
+    @Override
+    public Map<String, ChannelUser> getChannelUsersByName(int channelId, Collection<String> slackUsers) {
+        Map<String, ChannelUser> found = new HashMap<>();
+        for (String slackUser : slackUsers) {
+            ChannelUser user = getChannelUser(channelId, slackUser);
+            if (user != null) {
+                found.put(slackUser, user);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Set<ChannelUser> getChannelUsers(int channelId) {
+        Set<ChannelUser> channelUsers = new HashSet<>();
+        ChannelMembers members = membersByChannel.get(channelId);
+        if (members != null) {
+            members.forEach((userId, isAdmin) ->
+                    channelUsers.add(channelUser(channelId, users.nameOf(userId), isAdmin ? ChannelMembers.ADMIN : ChannelMembers.BASIC)));
+        }
+        return channelUsers;
+    }
+
+    @Override
+    public MemberPage getChannelUsersPage(int channelId, String afterCursor, boolean adminsOnly, int pageSize) {
+        // Scans all the channel's packed members for every page, creating user records only for those on the page
+        MemberPage.Collector page = new MemberPage.Collector(afterCursor, pageSize);
+        ChannelMembers members = membersByChannel.get(channelId);
+        if (members != null) {
+            members.forEach((userId, isAdmin) -> {
+                if (isAdmin || !adminsOnly) {
+                    page.offer(channelId, users.nameOf(userId), isAdmin);
+                }
+            });
+        }
+        return page.toPage();
+    }
+
+    @Override
+    public Set<ChannelInfo> getChannelsForUser(String slackUser) {
+        return channelsForUser(slackUser, false);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAdminChannelsForUser(String slackUser) {
+        return channelsForUser(slackUser, true);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAllChannels() {
+        return channels.getAllChannels();
+    }
+
+    private Set<ChannelInfo> channelsForUser(String slackUser, boolean adminOnly) {
+        Set<ChannelInfo> userChannels = new HashSet<>();
+        int userId = users.idOf(slackUser);
+        ChannelMembers memberships = userId == UserDictionary.UNKNOWN ? null : channelsByUser.get(userId);
+        if (memberships != null) {
+            memberships.forEach((channelId, isAdmin) -> {
+                if (isAdmin || !adminOnly) {
+                    ChannelInfo channelInfo = channels.getChannelById(channelId);
+                    if (channelInfo != null) {
+                        userChannels.add(channelInfo);
+                    }
+                }
+            });
+        }
+        return userChannels;
+    }
+
+    /**
+     * @return ABSENT, BASIC or ADMIN - see ChannelMembers
+     */
+    private int membership(int channelId, String slackUser) {
+        ChannelMembers members = membersByChannel.get(channelId);
+        if (members == null) {
+            return ChannelMembers.ABSENT;
+        }
+        int userId = users.idOf(slackUser);
+        return userId == UserDictionary.UNKNOWN ? ChannelMembers.ABSENT : members.get(userId);
+    }
+
+    private static ChannelUser channelUser(int channelId, String slackUser, int membership) {
+        if (membership == ChannelMembers.ABSENT) {
+            return null;
+        }
+        ChannelUser user = new ChannelUser();
+        user.channelId = channelId;
+        user.slackName = slackUser;
+        user.isAdmin = membership == ChannelMembers.ADMIN;
+        return user;
+    }
+}
@@ -0,0 +1,775 @@
+package com.booking.jiraslackbot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Persistent data manager with no external database.
+ * Every write is appended to a write-ahead log and fsync'd before the call returns; writers that arrive
+ * while an fsync is in progress share the next one (group commit). All reads are served from memory.
+ * Every compactEvery records the log is compacted into a binary snapshot, which is memory-mapped on start-up,
+ * so a restart only has to replay the log written since the last snapshot.
+ *
+ * Files in the data directory:
+ *   snapshot.bin     - the full state as of the start of log segment N (N is recorded in the snapshot)
+ *   wal-N.log        - log segments, replayed in order from segment N
+ * A log record is: [int payload length][int CRC32 of payload][payload]. A torn record at the end of
+ * the last segment (from a crash mid-write) is discarded on start-up. A write that must survive whole,
+ * like a channel created with its admin, is a single record.
+ *
+ * A write that fails to reach the log is cut back off it, so later records never follow a partial one.
+ * If that is not possible, or an fsync fails, what is on disk is no longer known: the store is then failed,
+ * and every later write throws until it is reopened, which recovers from what the disk actually holds.
+ * A write whose fsync failed has already been applied in memory, so it stays visible to readers
+ * even though its caller got an error, and may be lost on reopening.
+ */
+public class DurableLogDataManager implements JiraBotDataManager, AutoCloseable {
+
+    public static final int DEFAULT_COMPACT_EVERY = 100_000;
+
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int SNAPSHOT_MAGIC = 0x4A534253;   // "JSBS"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    // Log record types
+    private static final byte ADD_CHANNEL = 1;
+    private static final byte UPDATE_CHANNEL = 2;
+    private static final byte ADD_CHANNEL_USER = 3;
+    // A channel and its admin in one record, so a torn tail can not restore the channel without its admin
+    private static final byte CREATE_CHANNEL = 4;
+
+    private final Path directory;
+    private final int compactEvery;
+    // Working set. All reads are served from here.
+    private final IndexedMemoryDataManager memory = new IndexedMemoryDataManager();
+
+    // Guards the log, so records are appended and applied to memory in the same order
+    private final Object writeLock = new Object();
+    private FileChannel log;
+    private long segment;
+    private long writeSequence;
+    private int recordsSinceCompaction;
+
+    // Only one fsync at a time. Writers queue here, and most find their record was synced by the writer ahead of them.
+    private final Object syncLock = new Object();
+    private final AtomicLong syncedSequence = new AtomicLong();
+
+    private final Object compactionLock = new Object();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jirabot-log-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile IOException lastCompactionFailure;
+    // Set once the log may hold something other than what was acknowledged. Writes are refused from then on.
+    private volatile IOException failure;
+
+    public DurableLogDataManager(Path directory) throws IOException {
+        this(directory, DEFAULT_COMPACT_EVERY);
+    }
+
+    /**
+     * Opens the store in the given directory, recovering any existing data.
+     * @param compactEvery Number of log records to write between snapshots
+     */
+    public DurableLogDataManager(Path directory, int compactEvery) throws IOException {
+        this.directory = directory;
+        this.compactEvery = compactEvery;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    //---- Reads: all served from memory
+
+    @Override
+    public ChannelInfo getChannelByName(String channelName) {
+        return memory.getChannelByName(channelName);
+    }
+
+    @Override
+    public ChannelInfo getChannelById(int channelId) {
+        return memory.getChannelById(channelId);
+    }
+
+    @Override
+    public boolean isExistingChannel(String channelName) {
+        return memory.isExistingChannel(channelName);
+    }
+
+    @Override
+    public boolean isChannelAdmin(String slackUser, int channelId) {
+        return memory.isChannelAdmin(slackUser, channelId);
+    }
+
+    @Override
+    public ChannelUser getChannelUser(int channelId, String slackUser) {
+        return memory.getChannelUser(channelId, slackUser);
+    }
+
+    @Override
+    public Set<ChannelUser> getChannelUsers(int channelId) {
+        return memory.getChannelUsers(channelId);
+    }
+
+    @Override
+    public MemberPage getChannelUsersPage(int channelId, String afterCursor, boolean adminsOnly, int pageSize) {
+        return memory.getChannelUsersPage(channelId, afterCursor, adminsOnly, pageSize);
+    }
+
+    @Override
+    public Set<ChannelInfo> getChannelsForUser(String slackUser) {
+        return memory.getChannelsForUser(slackUser);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAdminChannelsForUser(String slackUser) {
+        return memory.getAdminChannelsForUser(slackUser);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAllChannels() {
+        return memory.getAllChannels();
+    }
+
+    @Override
+    public Map<String, ChannelUser> getChannelUsersByName(int channelId, Collection<String> slackUsers) {
+        return memory.getChannelUsersByName(channelId, slackUsers);
+    }
+
+    @Override
+    public ChannelAccess getChannelAccess(String channelName, String callingUser, String targetUser) {
+        return memory.getChannelAccess(channelName, callingUser, targetUser);
+    }
+
+    //---- Writes: logged, applied to memory, then synced
+
+    @Override
+    public int addChannel(String channelName, String jiraProject, boolean isRestricted) {
+        RecordBuffer records = new RecordBuffer();
+        long sequence;
+        int channelId;
+        synchronized (writeLock) {
+            channelId = memory.getLastChannelId() + 1;
+            records.begin(ADD_CHANNEL);
+            records.putInt(channelId);
+            records.putString(channelName);
+            records.putString(jiraProject);
+            records.putBoolean(isRestricted);
+            records.end();
+            sequence = append(records);
+            memory.restoreChannel(channelId, channelName, jiraProject, isRestricted);
+        }
+        sync(sequence);
+        return channelId;
+    }
+
+    @Override
+    public void updateChannelDetails(int channelId, String jiraProject, boolean isRestricted) {
+        RecordBuffer records = new RecordBuffer();
+        long sequence;
+        synchronized (writeLock) {
+            if (memory.getChannelById(channelId) == null) {
+                throw new RuntimeException("Unable to update channel info. Data not found in data store for channel: " + channelId);
+            }
+            records.begin(UPDATE_CHANNEL);
+            records.putInt(channelId);
+            records.putString(jiraProject);
+            records.putBoolean(isRestricted);
+            records.end();
+            sequence = append(records);
+            memory.updateChannelDetails(channelId, jiraProject, isRestricted);
+        }
+        sync(sequence);
+    }
+
+    @Override
+    public void addChannelUser(int channelId, String slackUser, boolean isAdmin) {
+        RecordBuffer records = new RecordBuffer();
+        putChannelUser(records, channelId, slackUser, isAdmin);
+        long sequence;
+        synchronized (writeLock) {
+            sequence = append(records);
+            memory.addChannelUser(channelId, slackUser, isAdmin);
+        }
+        sync(sequence);
+    }
+
+    @Override
+    public void addChannelUsers(int channelId, Map<String, Boolean> slackUsers) {
+        // One append and one fsync for the whole batch
+        RecordBuffer records = new RecordBuffer();
+        slackUsers.forEach((slackUser, isAdmin) -> putChannelUser(records, channelId, slackUser, isAdmin));
+        long sequence;
+        synchronized (writeLock) {
+            sequence = append(records);
+            memory.addChannelUsers(channelId, slackUsers);
+        }
+        sync(sequence);
+    }
+
+    // The conditional writes check memory and append to the log under the same lock that orders the log,
+    // so the check and the write are one step. The log is a single sequence, so this lock is held briefly by every write;
+    // the fsync, which is the slow part, happens after it is released.
+
+    @Override
+    public ChannelInfo createChannelIfAbsent(String channelName, String jiraProject, boolean isRestricted, String adminUser) {
+        RecordBuffer records = new RecordBuffer();
+        long sequence;
+        int channelId;
+        synchronized (writeLock) {
+            if (memory.isExistingChannel(channelName)) {
+                return null;
+            }
+            channelId = memory.getLastChannelId() + 1;
+            records.begin(CREATE_CHANNEL);
+            records.putInt(channelId);
+            records.putString(channelName);
+            records.putString(jiraProject);
+            records.putBoolean(isRestricted);
+            records.putString(adminUser);
+            records.end();
+            sequence = append(records);
+            // Admin first, so the channel is never visible without its admin
+            memory.addChannelUser(channelId, adminUser, true);
+            memory.restoreChannel(channelId, channelName, jiraProject, isRestricted);
+        }
+        sync(sequence);
+        return memory.getChannelById(channelId);
+    }
+
+    @Override
+    public boolean addChannelUserIfAbsent(int channelId, String slackUser, boolean isAdmin) {
+        RecordBuffer records = new RecordBuffer();
+        putChannelUser(records, channelId, slackUser, isAdmin);
+        long sequence;
+        synchronized (writeLock) {
+            if (memory.getChannelUser(channelId, slackUser) != null) {
+                return false;
+            }
+            sequence = append(records);
+            memory.addChannelUser(channelId, slackUser, isAdmin);
+        }
+        sync(sequence);
+        return true;
+    }
+
+    @Override
+    public Set<String> addChannelUsersIfAbsent(int channelId, Map<String, Boolean> slackUsers) {
+        // One append and one fsync for the whole batch
+        RecordBuffer records = new RecordBuffer();
+        Map<String, Boolean> added = new LinkedHashMap<>();
+        long sequence;
+        synchronized (writeLock) {
+            slackUsers.forEach((slackUser, isAdmin) -> {
+                if (memory.getChannelUser(channelId, slackUser) == null) {
+                    putChannelUser(records, channelId, slackUser, isAdmin);
+                    added.put(slackUser, isAdmin);
+                }
+            });
+            if (added.isEmpty()) {
+                return added.keySet();
+            }
+            sequence = append(records);
+            memory.addChannelUsers(channelId, added);
+        }
+        sync(sequence);
+        return added.keySet();
+    }
+
+    @Override
+    public boolean compareAndSetAdmin(int channelId, String slackUser, boolean expectedAdmin, boolean newAdmin) {
+        RecordBuffer records = new RecordBuffer();
+        putChannelUser(records, channelId, slackUser, newAdmin);
+        long sequence;
+        synchronized (writeLock) {
+            if (memory.isChannelAdmin(slackUser, channelId) != expectedAdmin) {
+                return false;
+            }
+            sequence = append(records);
+            memory.addChannelUser(channelId, slackUser, newAdmin);
+        }
+        sync(sequence);
+        return true;
+    }
+
+    private void putChannelUser(RecordBuffer records, int channelId, String slackUser, boolean isAdmin) {
+        records.begin(ADD_CHANNEL_USER);
+        records.putInt(channelId);
+        records.putString(slackUser);
+        records.putBoolean(isAdmin);
+        records.end();
+    }
+
+    /**
+     * Writes the records to the end of the log. Must hold writeLock.
+     * @return The sequence number of the last record written, to pass to sync()
+     */
+    private long append(RecordBuffer records) {
+        checkNotFailed();
+        ByteBuffer buffer = records.flip();
+        long start = -1;
+        try {
+            start = log.position();
+            while (buffer.hasRemaining()) {
+                log.write(buffer);
+            }
+        } catch (IOException e) {
+            // Cuts off whatever part was written, so the next record does not follow a torn one
+            if (start >= 0) {
+                try {
+                    log.truncate(start);
+                    log.position(start);
+                } catch (IOException truncateFailure) {
+                    e.addSuppressed(truncateFailure);
+                    failure = e;
+                }
+            }
+            throw new UncheckedIOException("Unable to write to the data store log", e);
+        }
+        writeSequence += records.count;
+        recordsSinceCompaction += records.count;
+        if (recordsSinceCompaction >= compactEvery && compactionScheduled.compareAndSet(false, true)) {
+            compactor.execute(this::compactInBackground);
+        }
+        return writeSequence;
+    }
+
+    /**
+     * Returns once every record up to the given sequence number is on disk.
+     * A single fsync covers every record appended before it started, so concurrent writers share fsyncs.
+     */
+    private void sync(long sequence) {
+        synchronized (syncLock) {
+            while (syncedSequence.get() < sequence) {
+                // After a failed fsync a retry may succeed without the lost pages ever reaching the disk
+                checkNotFailed();
+                long target;
+                FileChannel channel;
+                synchronized (writeLock) {
+                    target = writeSequence;
+                    channel = log;
+                }
+                try {
+                    channel.force(false);
+                    syncedSequence.accumulateAndGet(target, Math::max);
+                } catch (ClosedChannelException e) {
+                    // The segment was rotated or closed, which syncs it first. Check again.
+                } catch (IOException e) {
+                    failure = e;
+                    throw new UncheckedIOException("Unable to sync the data store log", e);
+                }
+            }
+        }
+    }
+
+    private void checkNotFailed() {
+        IOException failed = failure;
+        if (failed != null) {
+            throw new UncheckedIOException("The data store log failed earlier. Reopen the store to recover it.", failed);
+        }
+    }
+
+    /**
+     * @return The error that failed the store, or null if it is taking writes
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    //---- Compaction
+
+    /**
+     * Writes a snapshot of the current state and deletes the log segments it covers.
+     * Writes are paused while the log is switched to a new segment and the state is collected, which copies
+     * a reference to every channel and membership but none of their contents. They carry on while the snapshot
+     * is written and synced, the slow part.
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            List<ChannelInfo> channels = new ArrayList<>();
+            List<ChannelUser> users = new ArrayList<>();
+            long snapshotSegment;
+            int lastChannelId;
+            synchronized (writeLock) {
+                // Everything up to here goes in the snapshot; everything after goes in the new segment.
+                // Stored records are never mutated, so collecting the references is a consistent copy.
+                try {
+                    rotateSegment();
+                } catch (IOException e) {
+                    // The old segment may be closed unsynced, or no new one open
+                    failure = e;
+                    throw e;
+                }
+                snapshotSegment = segment;
+                lastChannelId = memory.getLastChannelId();
+                memory.forEachChannel(channels::add);
+                memory.forEachChannelUser(users::add);
+                recordsSinceCompaction = 0;
+            }
+            writeSnapshot(snapshotSegment, lastChannelId, channels, users);
+            for (long oldSegment : listSegments()) {
+                if (oldSegment < snapshotSegment) {
+                    Files.deleteIfExists(segmentPath(oldSegment));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The error from the last background compaction, or null if it succeeded.
+     * A failed compaction loses no data; the log just keeps growing until a compaction succeeds.
+     */
+    public IOException getLastCompactionFailure() {
+        return lastCompactionFailure;
+    }
+
+    private void compactInBackground() {
+        try {
+            compact();
+            lastCompactionFailure = null;
+        } catch (IOException e) {
+            lastCompactionFailure = e;
+        } finally {
+            compactionScheduled.set(false);
+        }
+    }
+
+    // Must hold writeLock
+    private void rotateSegment() throws IOException {
+        log.force(false);
+        syncedSequence.accumulateAndGet(writeSequence, Math::max);
+        log.close();
+        segment++;
+        log = openSegment(segment);
+    }
+
+    private void writeSnapshot(long snapshotSegment, int lastChannelId, List<ChannelInfo> channels, List<ChannelUser> users)
+            throws IOException {
+        Path temp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream file = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), crc))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(snapshotSegment);
+            out.writeInt(lastChannelId);
+            out.writeInt(channels.size());
+            out.writeInt(users.size());
+            for (ChannelInfo channel : channels) {
+                out.writeInt(channel.channelId);
+                writeString(out, channel.channelName);
+                writeString(out, channel.jiraProject);
+                out.writeBoolean(channel.restricted);
+            }
+            for (ChannelUser user : users) {
+                out.writeInt(user.channelId);
+                writeString(out, user.slackName);
+                out.writeBoolean(user.isAdmin);
+            }
+            out.flush();
+            // The checksum covers everything before it, so it is written straight to the file
+            DataOutputStream trailer = new DataOutputStream(file);
+            trailer.writeInt((int) crc.getValue());
+            trailer.flush();
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void syncDirectory() {
+        // Makes the rename durable. Not supported on every platform, in which case the rename is durable at the next sync.
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Ignore - see above
+        }
+    }
+
+    //---- Recovery
+
+    private void recover() throws IOException {
+        long firstSegment = 0;
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            firstSegment = loadSnapshot(snapshot);
+        }
+        List<Long> segments = listSegments();
+        segment = firstSegment;
+        for (int i = 0; i < segments.size(); i++) {
+            long existing = segments.get(i);
+            if (existing < firstSegment) {
+                // Left over from a compaction that did not finish cleaning up
+                Files.deleteIfExists(segmentPath(existing));
+                continue;
+            }
+            replaySegment(existing, i == segments.size() - 1);
+            segment = existing;
+        }
+        log = openSegment(segment);
+        log.position(log.size());
+    }
+
+    /**
+     * @return The first log segment not included in the snapshot
+     */
+    private long loadSnapshot(Path snapshot) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            // Header is 28 bytes, plus the 4 byte checksum at the end
+            int contentLength = buffer.limit() - 4;
+            CRC32 crc = new CRC32();
+            if (contentLength >= 28) {
+                crc.update(buffer.duplicate().limit(contentLength));
+            }
+            if (contentLength < 28 || buffer.getInt(contentLength) != (int) crc.getValue()
+                    || buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Corrupt data store snapshot: " + snapshot);
+            }
+            long firstSegment = buffer.getLong();
+            int lastChannelId = buffer.getInt();
+            int channelCount = buffer.getInt();
+            int userCount = buffer.getInt();
+            for (int i = 0; i < channelCount; i++) {
+                int channelId = buffer.getInt();
+                String channelName = readString(buffer);
+                String jiraProject = readString(buffer);
+                memory.restoreChannel(channelId, channelName, jiraProject, buffer.get() != 0);
+            }
+            for (int i = 0; i < userCount; i++) {
+                int channelId = buffer.getInt();
+                String slackUser = readString(buffer);
+                memory.addChannelUser(channelId, slackUser, buffer.get() != 0);
+            }
+            memory.reserveChannelIds(lastChannelId);
+            return firstSegment;
+        }
+    }
+
+    private void replaySegment(long segmentNumber, boolean isLastSegment) throws IOException {
+        Path path = segmentPath(segmentNumber);
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read the whole segment
+            }
+            buffer.flip();
+        }
+        int validEnd = 0;
+        CRC32 crc = new CRC32();
+        while (buffer.limit() - validEnd >= 8) {
+            int length = buffer.getInt(validEnd);
+            int checksum = buffer.getInt(validEnd + 4);
+            if (length <= 0 || length > buffer.limit() - validEnd - 8) {
+                break;
+            }
+            ByteBuffer payload = buffer.duplicate().position(validEnd + 8).limit(validEnd + 8 + length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            applyRecord(payload);
+            validEnd += 8 + length;
+        }
+        if (validEnd < buffer.limit()) {
+            if (!isLastSegment) {
+                throw new IOException("Corrupt data store log segment: " + path);
+            }
+            // Torn write from a crash. Those writes were never acknowledged, so drop them.
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(validEnd);
+                channel.force(true);
+            }
+        }
+    }
+
+    private void applyRecord(ByteBuffer payload) throws IOException {
+        byte type = payload.get();
+        switch (type) {
+            case ADD_CHANNEL: {
+                int channelId = payload.getInt();
+                String channelName = readString(payload);
+                String jiraProject = readString(payload);
+                memory.restoreChannel(channelId, channelName, jiraProject, payload.get() != 0);
+                break;
+            }
+            case UPDATE_CHANNEL: {
+                int channelId = payload.getInt();
+                String jiraProject = readString(payload);
+                memory.updateChannelDetails(channelId, jiraProject, payload.get() != 0);
+                break;
+            }
+            case ADD_CHANNEL_USER: {
+                int channelId = payload.getInt();
+                String slackUser = readString(payload);
+                memory.addChannelUser(channelId, slackUser, payload.get() != 0);
+                break;
+            }
+            case CREATE_CHANNEL: {
+                int channelId = payload.getInt();
+                String channelName = readString(payload);
+                String jiraProject = readString(payload);
+                boolean isRestricted = payload.get() != 0;
+                memory.addChannelUser(channelId, readString(payload), true);
+                memory.restoreChannel(channelId, channelName, jiraProject, isRestricted);
+                break;
+            }
+            default:
+                throw new IOException("Unknown data store log record type: " + type);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //---- Files
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    private Path segmentPath(long segmentNumber) {
+        return directory.resolve(SEGMENT_PREFIX + segmentNumber + SEGMENT_SUFFIX);
+    }
+
+    private FileChannel openSegment(long segmentNumber) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(segmentNumber), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        syncDirectory();
+        return channel;
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (writeLock) {
+            log.force(false);
+            syncedSequence.accumulateAndGet(writeSequence, Math::max);
+            log.close();
+        }
+    }
+
+    /**
+     * Builds framed log records in a growable buffer: [int length][int CRC32][payload]
+     */
+    private static class RecordBuffer {
+        private ByteBuffer buffer = ByteBuffer.allocate(128);
+        private int recordStart;
+        int count;
+
+        void begin(byte type) {
+            ensureCapacity(9);
+            recordStart = buffer.position();
+            buffer.position(recordStart + 8);
+            buffer.put(type);
+        }
+
+        void putInt(int value) {
+            ensureCapacity(4);
+            buffer.putInt(value);
+        }
+
+        void putBoolean(boolean value) {
+            ensureCapacity(1);
+            buffer.put((byte) (value ? 1 : 0));
+        }
+
+        void putString(String value) {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensureCapacity(bytes.length);
+            buffer.put(bytes);
+        }
+
+        void end() {
+            int length = buffer.position() - recordStart - 8;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), recordStart + 8, length);
+            buffer.putInt(recordStart, length);
+            buffer.putInt(recordStart + 4, (int) crc.getValue());
+            count++;
+        }
+
+        ByteBuffer flip() {
+            return buffer.flip();
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+    }
+}
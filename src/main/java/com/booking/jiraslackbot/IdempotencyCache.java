@@ -0,0 +1,195 @@
+package com.booking.jiraslackbot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers a value per request id for a fixed window, e.g. the reply to a Slack command, so a redelivered request
+ * gets the first delivery's reply instead of running again.
+ *
+ * Lock-free and bounded: keys hash to one of a fixed number of buckets, each holding at most WAYS entries in
+ * an immutable array that is replaced with compare-and-set. Adding to a full bucket drops its expired entries
+ * and then, if still full, its oldest. An entry is never returned once its window has passed, even before
+ * it is dropped, so expiry is exact while memory stays within maxEntries.
+ */
+public class IdempotencyCache<V> {
+
+    public static class Settings {
+        public int maxEntries = 65_536;
+        // How long a request id is remembered. Slack gives up redelivering well within this.
+        public long windowMillis = TimeUnit.MINUTES.toMillis(5);
+    }
+
+    static final int WAYS = 8;
+
+    private static final class Entry<V> {
+        final String key;
+        final long expiresAt;
+        final V value;
+
+        Entry(String key, long expiresAt, V value) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+            this.value = value;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry<V>[]> buckets;
+    private final int mask;
+    private final long windowNanos;
+    private final LongSupplier clock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stored = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public IdempotencyCache(Settings settings) {
+        this(settings, System::nanoTime);
+    }
+
+    IdempotencyCache(Settings settings, LongSupplier clock) {
+        if (settings.maxEntries < WAYS) {
+            throw new IllegalArgumentException("maxEntries must be at least " + WAYS + ": " + settings.maxEntries);
+        }
+        // Rounded down to a power of two, so memory never goes past maxEntries
+        int bucketCount = Integer.highestOneBit(settings.maxEntries / WAYS);
+        this.buckets = new AtomicReferenceArray<>(bucketCount);
+        this.mask = bucketCount - 1;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(settings.windowMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * @return The value remembered for the request id, or null if there is none or its window has passed
+     */
+    public V get(String key) {
+        Entry<V> entry = find(buckets.get(bucket(key)), key, clock.getAsLong());
+        if (entry == null) {
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Remembers the value for the request id, unless a value is already remembered for it.
+     * Of several concurrent calls for the same id, exactly one stores its value.
+     * @return The value already remembered, or null if this value was stored
+     */
+    public V putIfAbsent(String key, V value) {
+        int index = bucket(key);
+        while (true) {
+            Entry<V>[] bucket = buckets.get(index);
+            long now = clock.getAsLong();
+            Entry<V> existing = find(bucket, key, now);
+            if (existing != null) {
+                hits.increment();
+                return existing.value;
+            }
+            int live = bucket == null ? 0 : countLive(bucket, now);
+            Entry<V>[] updated = newBucket(Math.min(live + 1, WAYS));
+            // Keeps the newest live entries, oldest first, so the one dropped next time is at the front
+            int skip = live + 1 > WAYS ? 1 : 0;
+            int next = 0;
+            if (bucket != null) {
+                for (Entry<V> entry : bucket) {
+                    if (entry.expiresAt - now > 0 && skip-- <= 0) {
+                        updated[next++] = entry;
+                    }
+                }
+            }
+            updated[next] = new Entry<>(key, now + windowNanos, value);
+            if (buckets.compareAndSet(index, bucket, updated)) {
+                stored.increment();
+                if (live + 1 > WAYS) {
+                    evictions.increment();
+                }
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Forgets the request id if it still holds the given value, e.g. so a request that failed can be retried.
+     * @return True if the entry was removed
+     */
+    public boolean remove(String key, V value) {
+        int index = bucket(key);
+        while (true) {
+            Entry<V>[] bucket = buckets.get(index);
+            int position = -1;
+            for (int i = 0; bucket != null && i < bucket.length; i++) {
+                if (bucket[i].key.equals(key) && bucket[i].value == value) {
+                    position = i;
+                }
+            }
+            if (position < 0) {
+                return false;
+            }
+            Entry<V>[] updated = newBucket(bucket.length - 1);
+            System.arraycopy(bucket, 0, updated, 0, position);
+            System.arraycopy(bucket, position + 1, updated, position, bucket.length - position - 1);
+            if (buckets.compareAndSet(index, bucket, updated)) {
+                return true;
+            }
+        }
+    }
+
+    private Entry<V> find(Entry<V>[] bucket, String key, long now) {
+        if (bucket != null) {
+            for (Entry<V> entry : bucket) {
+                if (entry.key.equals(key) && entry.expiresAt - now > 0) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int countLive(Entry<?>[] bucket, long now) {
+        int live = 0;
+        for (Entry<?> entry : bucket) {
+            if (entry.expiresAt - now > 0) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Entry<V>[] newBucket(int size) {
+        return (Entry<V>[]) new Entry<?>[size];
+    }
+
+    private int bucket(String key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * @return The lookups that found a remembered value, i.e. redelivered requests
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getStoredCount() {
+        return stored.sum();
+    }
+
+    /**
+     * @return The entries dropped before their window had passed, to stay within maxEntries
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The most entries held at once
+     */
+    public int getCapacity() {
+        return buckets.length() * WAYS;
+    }
+}
@@ -0,0 +1,336 @@
+package com.booking.jiraslackbot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * In-memory data manager backed by hash indexes, safe for concurrent Slack requests.
+ * Channels are indexed by name and by id, and users are indexed per channel by Slack name,
+ * so every lookup is O(1) rather than a scan over all channels or all memberships.
+ * Each channel's user names are also kept sorted, so a page of members is read from the cursor on.
+ * Stored records are replaced rather than mutated, so readers never see a half-applied update.
+ */
+public class IndexedMemoryDataManager implements JiraBotDataManager {
+
+    // Data store
+    private final ConcurrentMap<String, ChannelInfo> channelsByName = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, ChannelInfo> channelsById = new ConcurrentHashMap<>();
+    // Key: channelId -> (slackUser -> ChannelUser)
+    private final ConcurrentMap<Integer, ConcurrentMap<String, ChannelUser>> usersByChannel = new ConcurrentHashMap<>();
+    // Sorted index for paging. Key: channelId -> slackUsers. Users are never removed, so it only grows.
+    private final ConcurrentMap<Integer, NavigableSet<String>> userNamesByChannel = new ConcurrentHashMap<>();
+    // Reverse index. Key: slackUser -> (channelId -> isAdmin)
+    private final ConcurrentMap<String, ConcurrentMap<Integer, Boolean>> channelsByUser = new ConcurrentHashMap<>();
+    private final AtomicInteger lastChannelId = new AtomicInteger();
+    // Striped locks for creating channels by name, so unrelated channel names do not contend
+    private final Object[] channelNameLocks = new Object[64];
+
+    public IndexedMemoryDataManager() {
+        for (int i = 0; i < channelNameLocks.length; i++) {
+            channelNameLocks[i] = new Object();
+        }
+    }
+
+    @Override
+    public ChannelInfo getChannelByName(String channelName) {
+        return channelsByName.get(channelName);
+    }
+
+    @Override
+    public ChannelInfo getChannelById(int channelId) {
+        return channelsById.get(channelId);
+    }
+
+    @Override
+    public boolean isExistingChannel(String channelName) {
+        return channelsByName.containsKey(channelName);
+    }
+
+    @Override
+    public ChannelUser getChannelUser(int channelId, String slackUser) {
+        Map<String, ChannelUser> channelUsers = usersByChannel.get(channelId);
+        return channelUsers == null ? null : channelUsers.get(slackUser);
+    }
+
+    @Override
+    public boolean isChannelAdmin(String slackUser, int channelId) {
+        ChannelUser user = getChannelUser(channelId, slackUser);
+        return user != null && user.isAdmin;
+    }
+
+    @Override
+    public ChannelAccess getChannelAccess(String channelName, String callingUser, String targetUser) {
+        ChannelInfo channelInfo = channelsByName.get(channelName);
+        if (channelInfo == null) {
+            return new ChannelAccess(null, null, null);
+        }
+        Map<String, ChannelUser> channelUsers = usersByChannel.get(channelInfo.channelId);
+        if (channelUsers == null) {
+            return new ChannelAccess(channelInfo, null, null);
+        }
+        return new ChannelAccess(channelInfo, channelUsers.get(callingUser),
+                targetUser == null ? null : channelUsers.get(targetUser));
+    }
+
+    /**
+     * Registers a new Slack channel for a Jira project
+     * @param channelName The name of the Slack channel
+     * @param jiraProject The name of the Jira Project to associate with this Slack channel
+     * @param isRestricted If true, only authorised users can create ticket in the channel
+     */
+    @Override
+    public int addChannel(String channelName, String jiraProject, boolean isRestricted) {
+        ChannelInfo channelInfo = new ChannelInfo();
+        channelInfo.channelName = channelName;
+        channelInfo.jiraProject = jiraProject;
+        channelInfo.restricted = isRestricted;
+        channelInfo.channelId = lastChannelId.incrementAndGet();
+        // Publish by id first, so anything found by name can always be found by id
+        channelsById.put(channelInfo.channelId, channelInfo);
+        channelsByName.put(channelName, channelInfo);
+        return channelInfo.channelId;
+    }
+
+    /**
+     * Updates the data store to record an entry for the Channel
+     * @param channelId The internal channelId of the channel
+     * @param jiraProject The name of the Jira Project to associate with this Slack channel
+     * @param isRestricted If true, only authorised users can create ticket in this channel
+     */
+    @Override
+    public void updateChannelDetails(int channelId, String jiraProject, boolean isRestricted) {
+        ChannelInfo updated = channelsById.computeIfPresent(channelId, (id, existing) -> {
+            ChannelInfo channelInfo = new ChannelInfo();
+            channelInfo.channelId = existing.channelId;
+            channelInfo.channelName = existing.channelName;
+            // Update the values that can be changed.
+            channelInfo.jiraProject = jiraProject;
+            channelInfo.restricted = isRestricted;
+            return channelInfo;
+        });
+        if (updated == null) {
+            throw new RuntimeException("Unable to update channel info. Data not found in data store for channel: " + channelId);
+        }
+        // Only replace the name entry if it still refers to this channel
+        channelsByName.computeIfPresent(updated.channelName,
+                (name, existing) -> existing.channelId == channelId ? updated : existing);
+    }
+
+    @Override
+    public void addChannelUser(int channelId, String slackUser, boolean isAdmin) {
+        // If user already exists - overwrite it with the updated values
+        ChannelUser user = newChannelUser(channelId, slackUser, isAdmin);
+        channelUsers(channelId).compute(slackUser, (name, existing) -> {
+            indexUserChannel(slackUser, channelId, isAdmin);
+            return user;
+        });
+    }
+
+    @Override
+    public ChannelInfo createChannelIfAbsent(String channelName, String jiraProject, boolean isRestricted, String adminUser) {
+        return createChannelIfAbsent(channelName, jiraProject, isRestricted,
+                channelId -> addChannelUser(channelId, adminUser, true));
+    }
+
+    /**
+     * Registers a new channel unless one with that name exists, calling beforePublish with the new id
+     * before the channel can be found by name (e.g. to add its first admin).
+     * @return The new channel, or null if a channel with that name already exists
+     */
+    ChannelInfo createChannelIfAbsent(String channelName, String jiraProject, boolean isRestricted, IntConsumer beforePublish) {
+        synchronized (channelNameLocks[Math.floorMod(channelName.hashCode(), channelNameLocks.length)]) {
+            if (channelsByName.containsKey(channelName)) {
+                return null;
+            }
+            ChannelInfo channelInfo = new ChannelInfo();
+            channelInfo.channelName = channelName;
+            channelInfo.jiraProject = jiraProject;
+            channelInfo.restricted = isRestricted;
+            channelInfo.channelId = lastChannelId.incrementAndGet();
+            channelsById.put(channelInfo.channelId, channelInfo);
+            beforePublish.accept(channelInfo.channelId);
+            channelsByName.put(channelName, channelInfo);
+            return channelInfo;
+        }
+    }
+
+    @Override
+    public boolean addChannelUserIfAbsent(int channelId, String slackUser, boolean isAdmin) {
+        boolean[] added = new boolean[1];
+        channelUsers(channelId).computeIfAbsent(slackUser, name -> {
+            indexUserChannel(slackUser, channelId, isAdmin);
+            added[0] = true;
+            return newChannelUser(channelId, slackUser, isAdmin);
+        });
+        return added[0];
+    }
+
+    @Override
+    public boolean compareAndSetAdmin(int channelId, String slackUser, boolean expectedAdmin, boolean newAdmin) {
+        boolean[] set = new boolean[1];
+        channelUsers(channelId).compute(slackUser, (name, existing) -> {
+            boolean isAdmin = existing != null && existing.isAdmin;
+            if (isAdmin != expectedAdmin) {
+                return existing;
+            }
+            indexUserChannel(slackUser, channelId, newAdmin);
+            set[0] = true;
+            return newChannelUser(channelId, slackUser, newAdmin);
+        });
+        return set[0];
+    }
+
+    private ConcurrentMap<String, ChannelUser> channelUsers(int channelId) {
+        return usersByChannel.computeIfAbsent(channelId, id -> new ConcurrentHashMap<>());
+    }
+
+    private static ChannelUser newChannelUser(int channelId, String slackUser, boolean isAdmin) {
+        ChannelUser user = new ChannelUser();
+        user.channelId = channelId;
+        user.slackName = slackUser;
+        user.isAdmin = isAdmin;
+        return user;
+    }
+
+    // Called while the user's entry in usersByChannel is locked, so both indexes are updated in the same order
+    private void indexUserChannel(String slackUser, int channelId, boolean isAdmin) {
+        channelsByUser.computeIfAbsent(slackUser, name -> new ConcurrentHashMap<>()).put(channelId, isAdmin);
+        // Indexed before the user record is stored, so paging skips a name whose record is not there yet
+        userNamesByChannel.computeIfAbsent(channelId, id -> new ConcurrentSkipListSet<>()).add(slackUser);
+    }
+
+    @Override
+    public void addChannelUsers(int channelId, Map<String, Boolean> slackUsers) {
+        ConcurrentMap<String, ChannelUser> channelUsers = channelUsers(channelId);
+        slackUsers.forEach((slackUser, isAdmin) -> {
+            ChannelUser user = newChannelUser(channelId, slackUser, isAdmin);
+            channelUsers.compute(slackUser, (name, existing) -> {
+                indexUserChannel(slackUser, channelId, isAdmin);
+                return user;
+            });
+        });
+    }
+
+    @Override
+    public Map<String, ChannelUser> getChannelUsersByName(int channelId, Collection<String> slackUsers) {
+        Map<String, ChannelUser> found = new HashMap<>();
+        Map<String, ChannelUser> channelUsers = usersByChannel.get(channelId);
+        if (channelUsers == null) {
+            return found;
+        }
+        for (String slackUser : slackUsers) {
+            ChannelUser user = channelUsers.get(slackUser);
+            if (user != null) {
+                found.put(slackUser, user);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Set<ChannelUser> getChannelUsers(int channelId) {
+        Map<String, ChannelUser> channelUsers = usersByChannel.get(channelId);
+        return channelUsers == null ? new HashSet<>() : new HashSet<>(channelUsers.values());
+    }
+
+    @Override
+    public MemberPage getChannelUsersPage(int channelId, String afterCursor, boolean adminsOnly, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        // Reads names from the cursor on, so a page costs O(log n + pageSize), plus the non-admins skipped if adminsOnly
+        List<ChannelUser> users = new ArrayList<>();
+        NavigableSet<String> names = userNamesByChannel.get(channelId);
+        Map<String, ChannelUser> channelUsers = usersByChannel.get(channelId);
+        if (names != null && channelUsers != null) {
+            for (String name : afterCursor == null ? names : names.tailSet(afterCursor, false)) {
+                ChannelUser user = channelUsers.get(name);
+                if (user != null && (user.isAdmin || !adminsOnly)) {
+                    users.add(user);
+                    if (users.size() > pageSize) {
+                        break;
+                    }
+                }
+            }
+        }
+        return MemberPage.fromSorted(users, pageSize);
+    }
+
+    @Override
+    public Set<ChannelInfo> getChannelsForUser(String slackUser) {
+        return channelsForUser(slackUser, false);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAdminChannelsForUser(String slackUser) {
+        return channelsForUser(slackUser, true);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAllChannels() {
+        return new HashSet<>(channelsById.values());
+    }
+
+    private Set<ChannelInfo> channelsForUser(String slackUser, boolean adminOnly) {
+        Set<ChannelInfo> channels = new HashSet<>();
+        Map<Integer, Boolean> userChannels = channelsByUser.get(slackUser);
+        if (userChannels != null) {
+            userChannels.forEach((channelId, isAdmin) -> {
+                if (isAdmin || !adminOnly) {
+                    ChannelInfo channelInfo = channelsById.get(channelId);
+                    if (channelInfo != null) {
+                        channels.add(channelInfo);
+                    }
+                }
+            });
+        }
+        return channels;
+    }
+
+    //---- Used by stores that keep their working set in memory, e.g. to restore from disk
+
+    /**
+     * Adds a channel with a known id, as recorded by a persistent store.
+     */
+    void restoreChannel(int channelId, String channelName, String jiraProject, boolean isRestricted) {
+        ChannelInfo channelInfo = new ChannelInfo();
+        channelInfo.channelId = channelId;
+        channelInfo.channelName = channelName;
+        channelInfo.jiraProject = jiraProject;
+        channelInfo.restricted = isRestricted;
+        channelsById.put(channelId, channelInfo);
+        channelsByName.put(channelName, channelInfo);
+        lastChannelId.accumulateAndGet(channelId, Math::max);
+    }
+
+    /**
+     * Makes sure new channels are given ids above the given id.
+     */
+    void reserveChannelIds(int channelId) {
+        lastChannelId.accumulateAndGet(channelId, Math::max);
+    }
+
+    int getLastChannelId() {
+        return lastChannelId.get();
+    }
+
+    void forEachChannel(Consumer<ChannelInfo> action) {
+        channelsById.values().forEach(action);
+    }
+
+    void forEachChannelUser(Consumer<ChannelUser> action) {
+        usersByChannel.values().forEach(channelUsers -> channelUsers.values().forEach(action));
+    }
+}
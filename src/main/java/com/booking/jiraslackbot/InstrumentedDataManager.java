@@ -0,0 +1,262 @@
+package com.booking.jiraslackbot;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decorator that times every call to a JiraBotDataManager, and reports it to a BotMetrics.
+ * Wraps any store, and passes the combined calls (getChannelAccess, the batch reads and writes) straight through,
+ * so each is timed as the single call it is rather than as the calls a default method would make.
+ * Also counts the calls made on each thread, for InstrumentedJiraBotActions to attribute to the action running there.
+ */
+public class InstrumentedDataManager implements JiraBotDataManager {
+
+    private final JiraBotDataManager dataManager;
+    private final BotMetrics metrics;
+    private final ThreadLocal<int[]> callsOnThread = ThreadLocal.withInitial(() -> new int[1]);
+
+    public InstrumentedDataManager(JiraBotDataManager dataManager, BotMetrics metrics) {
+        this.dataManager = dataManager;
+        this.metrics = metrics;
+    }
+
+    /**
+     * The number of calls made on this thread so far. The difference between two readings is the calls made in between.
+     */
+    int getCallsOnThread() {
+        return callsOnThread.get()[0];
+    }
+
+    @Override
+    public ChannelInfo getChannelByName(String channelName) {
+        long start = begin();
+        try {
+            return done("getChannelByName", start, dataManager.getChannelByName(channelName));
+        } catch (RuntimeException e) {
+            throw failed("getChannelByName", start, e);
+        }
+    }
+
+    @Override
+    public ChannelInfo getChannelById(int channelId) {
+        long start = begin();
+        try {
+            return done("getChannelById", start, dataManager.getChannelById(channelId));
+        } catch (RuntimeException e) {
+            throw failed("getChannelById", start, e);
+        }
+    }
+
+    @Override
+    public boolean isExistingChannel(String channelName) {
+        long start = begin();
+        try {
+            return done("isExistingChannel", start, dataManager.isExistingChannel(channelName));
+        } catch (RuntimeException e) {
+            throw failed("isExistingChannel", start, e);
+        }
+    }
+
+    @Override
+    public boolean isChannelAdmin(String slackUser, int channelId) {
+        long start = begin();
+        try {
+            return done("isChannelAdmin", start, dataManager.isChannelAdmin(slackUser, channelId));
+        } catch (RuntimeException e) {
+            throw failed("isChannelAdmin", start, e);
+        }
+    }
+
+    @Override
+    public int addChannel(String channelName, String jiraProject, boolean isRestricted) {
+        long start = begin();
+        try {
+            return done("addChannel", start, dataManager.addChannel(channelName, jiraProject, isRestricted));
+        } catch (RuntimeException e) {
+            throw failed("addChannel", start, e);
+        }
+    }
+
+    @Override
+    public void updateChannelDetails(int channelId, String jiraProject, boolean isRestricted) {
+        long start = begin();
+        try {
+            dataManager.updateChannelDetails(channelId, jiraProject, isRestricted);
+            done("updateChannelDetails", start, null);
+        } catch (RuntimeException e) {
+            throw failed("updateChannelDetails", start, e);
+        }
+    }
+
+    @Override
+    public void addChannelUser(int channelId, String slackUser, boolean isAdmin) {
+        long start = begin();
+        try {
+            dataManager.addChannelUser(channelId, slackUser, isAdmin);
+            done("addChannelUser", start, null);
+        } catch (RuntimeException e) {
+            throw failed("addChannelUser", start, e);
+        }
+    }
+
+    @Override
+    public Set<ChannelUser> getChannelUsers(int channelId) {
+        long start = begin();
+        try {
+            return done("getChannelUsers", start, dataManager.getChannelUsers(channelId));
+        } catch (RuntimeException e) {
+            throw failed("getChannelUsers", start, e);
+        }
+    }
+
+    @Override
+    public MemberPage getChannelUsersPage(int channelId, String afterCursor, boolean adminsOnly, int pageSize) {
+        long start = begin();
+        try {
+            return done("getChannelUsersPage", start,
+                    dataManager.getChannelUsersPage(channelId, afterCursor, adminsOnly, pageSize));
+        } catch (RuntimeException e) {
+            throw failed("getChannelUsersPage", start, e);
+        }
+    }
+
+    @Override
+    public Set<ChannelInfo> getChannelsForUser(String slackUser) {
+        long start = begin();
+        try {
+            return done("getChannelsForUser", start, dataManager.getChannelsForUser(slackUser));
+        } catch (RuntimeException e) {
+            throw failed("getChannelsForUser", start, e);
+        }
+    }
+
+    @Override
+    public Set<ChannelInfo> getAdminChannelsForUser(String slackUser) {
+        long start = begin();
+        try {
+            return done("getAdminChannelsForUser", start, dataManager.getAdminChannelsForUser(slackUser));
+        } catch (RuntimeException e) {
+            throw failed("getAdminChannelsForUser", start, e);
+        }
+    }
+
+    @Override
+    public Set<ChannelInfo> getAllChannels() {
+        long start = begin();
+        try {
+            return done("getAllChannels", start, dataManager.getAllChannels());
+        } catch (RuntimeException e) {
+            throw failed("getAllChannels", start, e);
+        }
+    }
+
+    @Override
+    public ChannelUser getChannelUser(int channelId, String slackUser) {
+        long start = begin();
+        try {
+            return done("getChannelUser", start, dataManager.getChannelUser(channelId, slackUser));
+        } catch (RuntimeException e) {
+            throw failed("getChannelUser", start, e);
+        }
+    }
+
+    @Override
+    public Map<String, ChannelUser> getChannelUsersByName(int channelId, Collection<String> slackUsers) {
+        long start = begin();
+        try {
+            return done("getChannelUsersByName", start, dataManager.getChannelUsersByName(channelId, slackUsers));
+        } catch (RuntimeException e) {
+            throw failed("getChannelUsersByName", start, e);
+        }
+    }
+
+    @Override
+    public void addChannelUsers(int channelId, Map<String, Boolean> slackUsers) {
+        long start = begin();
+        try {
+            dataManager.addChannelUsers(channelId, slackUsers);
+            done("addChannelUsers", start, null);
+        } catch (RuntimeException e) {
+            throw failed("addChannelUsers", start, e);
+        }
+    }
+
+    @Override
+    public ChannelInfo createChannelIfAbsent(String channelName, String jiraProject, boolean isRestricted, String adminUser) {
+        long start = begin();
+        try {
+            return done("createChannelIfAbsent", start,
+                    dataManager.createChannelIfAbsent(channelName, jiraProject, isRestricted, adminUser));
+        } catch (RuntimeException e) {
+            throw failed("createChannelIfAbsent", start, e);
+        }
+    }
+
+    @Override
+    public boolean addChannelUserIfAbsent(int channelId, String slackUser, boolean isAdmin) {
+        long start = begin();
+        try {
+            return done("addChannelUserIfAbsent", start, dataManager.addChannelUserIfAbsent(channelId, slackUser, isAdmin));
+        } catch (RuntimeException e) {
+            throw failed("addChannelUserIfAbsent", start, e);
+        }
+    }
+
+    @Override
+    public Set<String> addChannelUsersIfAbsent(int channelId, Map<String, Boolean> slackUsers) {
+        long start = begin();
+        try {
+            return done("addChannelUsersIfAbsent", start, dataManager.addChannelUsersIfAbsent(channelId, slackUsers));
+        } catch (RuntimeException e) {
+            throw failed("addChannelUsersIfAbsent", start, e);
+        }
+    }
+
+    @Override
+    public boolean compareAndSetAdmin(int channelId, String slackUser, boolean expectedAdmin, boolean newAdmin) {
+        long start = begin();
+        try {
+            return done("compareAndSetAdmin", start,
+                    dataManager.compareAndSetAdmin(channelId, slackUser, expectedAdmin, newAdmin));
+        } catch (RuntimeException e) {
+            throw failed("compareAndSetAdmin", start, e);
+        }
+    }
+
+    @Override
+    public ChannelAccess getChannelAccess(String channelName, String callingUser, String targetUser) {
+        long start = begin();
+        try {
+            return done("getChannelAccess", start, dataManager.getChannelAccess(channelName, callingUser, targetUser));
+        } catch (RuntimeException e) {
+            throw failed("getChannelAccess", start, e);
+        }
+    }
+
+    private long begin() {
+        callsOnThread.get()[0]++;
+        return System.nanoTime();
+    }
+
+    // Overloads for the primitive results, so recording never boxes
+    private <T> T done(String operation, long start, T result) {
+        metrics.recordDataManagerCall(operation, null, System.nanoTime() - start);
+        return result;
+    }
+
+    private int done(String operation, long start, int result) {
+        metrics.recordDataManagerCall(operation, null, System.nanoTime() - start);
+        return result;
+    }
+
+    private boolean done(String operation, long start, boolean result) {
+        metrics.recordDataManagerCall(operation, null, System.nanoTime() - start);
+        return result;
+    }
+
+    private RuntimeException failed(String operation, long start, RuntimeException error) {
+        metrics.recordDataManagerCall(operation, error, System.nanoTime() - start);
+        return error;
+    }
+}
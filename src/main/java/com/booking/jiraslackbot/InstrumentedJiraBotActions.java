@@ -0,0 +1,155 @@
+package com.booking.jiraslackbot;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * JiraBotActions that reports each action's latency, outcome and data manager calls to a BotMetrics.
+ * The data manager is wrapped in an InstrumentedDataManager, so its calls are timed too.
+ * Both forms of each command are covered, since the exception API runs through the try... methods.
+ */
+public class InstrumentedJiraBotActions extends JiraBotActions {
+
+    private final InstrumentedDataManager instrumentedDataManager;
+    private final BotMetrics metrics;
+
+    public InstrumentedJiraBotActions(JiraBotDataManager jbdm, BotMetrics metrics) {
+        this(jbdm, null, metrics);
+    }
+
+    public InstrumentedJiraBotActions(JiraBotDataManager jbdm, TicketPipeline ticketPipeline, BotMetrics metrics) {
+        this(new InstrumentedDataManager(jbdm, metrics), ticketPipeline, metrics);
+    }
+
+    private InstrumentedJiraBotActions(InstrumentedDataManager jbdm, TicketPipeline ticketPipeline, BotMetrics metrics) {
+        super(jbdm, ticketPipeline);
+        this.instrumentedDataManager = jbdm;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ActionResult tryRegisterProject(String channelName, String jiraProject, boolean isRestricted, String slackUser) {
+        long start = System.nanoTime();
+        int calls = instrumentedDataManager.getCallsOnThread();
+        try {
+            ActionResult result = super.tryRegisterProject(channelName, jiraProject, isRestricted, slackUser);
+            done("registerProject", start, calls, result.outcome);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed("registerProject", start, calls, e);
+        }
+    }
+
+    @Override
+    public ActionOutcome tryAddUser(String channel, String callingUser, String newUser, boolean makeAdmin) {
+        long start = System.nanoTime();
+        int calls = instrumentedDataManager.getCallsOnThread();
+        try {
+            return done("addUser", start, calls, super.tryAddUser(channel, callingUser, newUser, makeAdmin));
+        } catch (RuntimeException e) {
+            throw failed("addUser", start, calls, e);
+        }
+    }
+
+    @Override
+    public ActionOutcome tryAddUsers(String channel, String callingUser, Map<String, Boolean> newUsers,
+                                     Map<String, AddUserOutcome> outcomes) {
+        long start = System.nanoTime();
+        int calls = instrumentedDataManager.getCallsOnThread();
+        try {
+            return done("addUsers", start, calls, super.tryAddUsers(channel, callingUser, newUsers, outcomes));
+        } catch (RuntimeException e) {
+            throw failed("addUsers", start, calls, e);
+        }
+    }
+
+    @Override
+    public ActionOutcome tryMakeAdmin(String channel, String callingUser, String channelUserName) {
+        long start = System.nanoTime();
+        int calls = instrumentedDataManager.getCallsOnThread();
+        try {
+            return done("makeAdmin", start, calls, super.tryMakeAdmin(channel, callingUser, channelUserName));
+        } catch (RuntimeException e) {
+            throw failed("makeAdmin", start, calls, e);
+        }
+    }
+
+    @Override
+    public ActionOutcome tryRemoveAdmin(String channel, String callingUser, String channelUserName) {
+        long start = System.nanoTime();
+        int calls = instrumentedDataManager.getCallsOnThread();
+        try {
+            return done("removeAdmin", start, calls, super.tryRemoveAdmin(channel, callingUser, channelUserName));
+        } catch (RuntimeException e) {
+            throw failed("removeAdmin", start, calls, e);
+        }
+    }
+
+    /**
+     * Times the ticket's checks and hand-over to the pipeline, not the wait for Jira (see TicketPipeline's counters).
+     */
+    @Override
+    public CompletableFuture<TicketResult> createTicket(String channel, String slackUser, String summary, String description) {
+        long start = System.nanoTime();
+        int calls = instrumentedDataManager.getCallsOnThread();
+        try {
+            CompletableFuture<TicketResult> result = super.createTicket(channel, slackUser, summary, description);
+            TicketResult completed = result.getNow(null);
+            if (completed != null && completed.status == TicketResult.Status.BUSY) {
+                busy("createTicket", start, calls);
+            } else {
+                // Queued tickets count as handed over; what Jira makes of them is in TicketPipeline's counters
+                done("createTicket", start, calls, completed != null && completed.status == TicketResult.Status.REJECTED
+                        ? completed.rejection : ActionOutcome.SUCCESS);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            throw failed("createTicket", start, calls, e);
+        }
+    }
+
+    @Override
+    public Set<ChannelInfo> getChannelsForUser(String slackUser) {
+        long start = System.nanoTime();
+        int calls = instrumentedDataManager.getCallsOnThread();
+        try {
+            Set<ChannelInfo> channels = super.getChannelsForUser(slackUser);
+            done("getChannelsForUser", start, calls, ActionOutcome.SUCCESS);
+            return channels;
+        } catch (RuntimeException e) {
+            throw failed("getChannelsForUser", start, calls, e);
+        }
+    }
+
+    @Override
+    public Set<ChannelInfo> getAdminChannelsForUser(String slackUser) {
+        long start = System.nanoTime();
+        int calls = instrumentedDataManager.getCallsOnThread();
+        try {
+            Set<ChannelInfo> channels = super.getAdminChannelsForUser(slackUser);
+            done("getAdminChannelsForUser", start, calls, ActionOutcome.SUCCESS);
+            return channels;
+        } catch (RuntimeException e) {
+            throw failed("getAdminChannelsForUser", start, calls, e);
+        }
+    }
+
+    private ActionOutcome done(String action, long start, int callsBefore, ActionOutcome outcome) {
+        metrics.recordAction(action, outcome, null, System.nanoTime() - start,
+                instrumentedDataManager.getCallsOnThread() - callsBefore);
+        return outcome;
+    }
+
+    private void busy(String action, long start, int callsBefore) {
+        metrics.recordAction(action, null, null, System.nanoTime() - start,
+                instrumentedDataManager.getCallsOnThread() - callsBefore);
+        metrics.recordBusy(action);
+    }
+
+    private RuntimeException failed(String action, long start, int callsBefore, RuntimeException error) {
+        metrics.recordAction(action, null, error, System.nanoTime() - start,
+                instrumentedDataManager.getCallsOnThread() - callsBefore);
+        return error;
+    }
+}
@@ -0,0 +1,607 @@
+package com.booking.jiraslackbot;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Relational data manager over JDBC, for H2 only.
+ * The SQL uses MERGE INTO ... USING (VALUES ...) for upserts, = ANY(?) with an array parameter, and
+ * CREATE INDEX IF NOT EXISTS, which MySQL does not support, and PostgreSQL only partly. Other databases need
+ * their own upsert (e.g. ON DUPLICATE KEY UPDATE or ON CONFLICT) and schema statements.
+ *
+ * Schema: channels(channel_id, channel_name UNIQUE, jira_project, restricted) and
+ * channel_users(channel_id, slack_user, is_admin) keyed by (channel_id, slack_user), and indexed by slack_user.
+ * All SQL is static and parameterised, so H2 reuses parsed statements on each pooled connection.
+ * addChannelUser is a single MERGE (upsert), and getChannelAccess answers a whole command's checks in one query.
+ */
+public class JdbcDataManager implements JiraBotDataManager, AutoCloseable {
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS channels (" +
+                    "channel_id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "channel_name VARCHAR(255) NOT NULL, " +
+                    "jira_project VARCHAR(255), " +
+                    "restricted BOOLEAN NOT NULL)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS channels_by_name ON channels (channel_name)",
+            "CREATE TABLE IF NOT EXISTS channel_users (" +
+                    "channel_id INT NOT NULL, " +
+                    "slack_user VARCHAR(255) NOT NULL, " +
+                    "is_admin BOOLEAN NOT NULL, " +
+                    "PRIMARY KEY (channel_id, slack_user))",
+            "CREATE INDEX IF NOT EXISTS channel_users_by_user ON channel_users (slack_user)"
+    };
+
+    private static final String SELECT_CHANNEL_BY_NAME =
+            "SELECT channel_id, channel_name, jira_project, restricted FROM channels WHERE channel_name = ?";
+    private static final String SELECT_CHANNEL_BY_ID =
+            "SELECT channel_id, channel_name, jira_project, restricted FROM channels WHERE channel_id = ?";
+    private static final String INSERT_CHANNEL =
+            "INSERT INTO channels (channel_name, jira_project, restricted) VALUES (?, ?, ?)";
+    private static final String UPDATE_CHANNEL =
+            "UPDATE channels SET jira_project = ?, restricted = ? WHERE channel_id = ?";
+    private static final String SELECT_CHANNEL_USER =
+            "SELECT channel_id, slack_user, is_admin FROM channel_users WHERE channel_id = ? AND slack_user = ?";
+    private static final String SELECT_CHANNEL_USERS =
+            "SELECT channel_id, slack_user, is_admin FROM channel_users WHERE channel_id = ?";
+    // Walks the primary key (channel_id, slack_user) from the cursor, so reads only the page
+    private static final String SELECT_CHANNEL_USERS_PAGE =
+            "SELECT channel_id, slack_user, is_admin FROM channel_users WHERE channel_id = ? AND slack_user > ? " +
+                    "ORDER BY slack_user LIMIT ?";
+    private static final String SELECT_CHANNEL_ADMINS_PAGE =
+            "SELECT channel_id, slack_user, is_admin FROM channel_users WHERE channel_id = ? AND slack_user > ? " +
+                    "AND is_admin ORDER BY slack_user LIMIT ?";
+    private static final String SELECT_CHANNEL_USERS_BY_NAME =
+            "SELECT channel_id, slack_user, is_admin FROM channel_users WHERE channel_id = ? AND slack_user = ANY(?)";
+    private static final String MERGE_CHANNEL_USER =
+            "MERGE INTO channel_users u USING (VALUES (CAST(? AS INT), CAST(? AS VARCHAR(255)), CAST(? AS BOOLEAN))) " +
+                    "AS v (channel_id, slack_user, is_admin) " +
+                    "ON u.channel_id = v.channel_id AND u.slack_user = v.slack_user " +
+                    "WHEN MATCHED THEN UPDATE SET is_admin = v.is_admin " +
+                    "WHEN NOT MATCHED THEN INSERT (channel_id, slack_user, is_admin) VALUES (v.channel_id, v.slack_user, v.is_admin)";
+    private static final String INSERT_CHANNEL_USER_IF_ABSENT =
+            "MERGE INTO channel_users u USING (VALUES (CAST(? AS INT), CAST(? AS VARCHAR(255)), CAST(? AS BOOLEAN))) " +
+                    "AS v (channel_id, slack_user, is_admin) " +
+                    "ON u.channel_id = v.channel_id AND u.slack_user = v.slack_user " +
+                    "WHEN NOT MATCHED THEN INSERT (channel_id, slack_user, is_admin) VALUES (v.channel_id, v.slack_user, v.is_admin)";
+    private static final String COMPARE_AND_SET_ADMIN =
+            "UPDATE channel_users SET is_admin = ? WHERE channel_id = ? AND slack_user = ? AND is_admin = ?";
+    private static final String SELECT_CHANNELS_FOR_USER =
+            "SELECT c.channel_id, c.channel_name, c.jira_project, c.restricted " +
+                    "FROM channel_users u JOIN channels c ON c.channel_id = u.channel_id WHERE u.slack_user = ?";
+    private static final String SELECT_ADMIN_CHANNELS_FOR_USER = SELECT_CHANNELS_FOR_USER + " AND u.is_admin";
+    private static final String SELECT_ALL_CHANNELS =
+            "SELECT channel_id, channel_name, jira_project, restricted FROM channels";
+    // The channel, joined to the calling and target users' memberships (0, 1 or 2 rows per channel)
+    private static final String SELECT_CHANNEL_ACCESS =
+            "SELECT c.channel_id, c.channel_name, c.jira_project, c.restricted, u.slack_user, u.is_admin " +
+                    "FROM channels c LEFT JOIN channel_users u " +
+                    "ON u.channel_id = c.channel_id AND (u.slack_user = ? OR u.slack_user = ?) " +
+                    "WHERE c.channel_name = ?";
+
+    // Rows fetched per round trip when streaming channel users
+    private static final int FETCH_SIZE = 500;
+
+    private final DataSource dataSource;
+
+    /**
+     * Uses the given data source, which should be a connection pool. Creates the schema if needed.
+     */
+    public JdbcDataManager(DataSource dataSource) {
+        this.dataSource = dataSource;
+        createSchema();
+    }
+
+    /**
+     * Creates a data manager over a new pool of connections to the given database.
+     */
+    public static JdbcDataManager pooled(String jdbcUrl, String user, String password, int poolSize) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername(user);
+        config.setPassword(password);
+        config.setMaximumPoolSize(poolSize);
+        config.setPoolName("jirabot");
+        return new JdbcDataManager(new HikariDataSource(config));
+    }
+
+    private void createSchema() {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            for (String sql : SCHEMA) {
+                statement.execute(sql);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to create the data store schema", e);
+        }
+    }
+
+    @Override
+    public ChannelInfo getChannelByName(String channelName) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_CHANNEL_BY_NAME)) {
+            statement.setString(1, channelName);
+            return readChannel(statement);
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to read channel: " + channelName, e);
+        }
+    }
+
+    @Override
+    public ChannelInfo getChannelById(int channelId) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_CHANNEL_BY_ID)) {
+            statement.setInt(1, channelId);
+            return readChannel(statement);
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to read channel: " + channelId, e);
+        }
+    }
+
+    private ChannelInfo readChannel(PreparedStatement statement) throws SQLException {
+        try (ResultSet results = statement.executeQuery()) {
+            return results.next() ? channelInfo(results) : null;
+        }
+    }
+
+    @Override
+    public boolean isExistingChannel(String channelName) {
+        return getChannelByName(channelName) != null;
+    }
+
+    @Override
+    public boolean isChannelAdmin(String slackUser, int channelId) {
+        ChannelUser user = getChannelUser(channelId, slackUser);
+        return user != null && user.isAdmin;
+    }
+
+    @Override
+    public ChannelAccess getChannelAccess(String channelName, String callingUser, String targetUser) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_CHANNEL_ACCESS)) {
+            statement.setString(1, callingUser);
+            statement.setString(2, targetUser == null ? callingUser : targetUser);
+            statement.setString(3, channelName);
+            ChannelInfo channelInfo = null;
+            ChannelUser caller = null;
+            ChannelUser target = null;
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    if (channelInfo == null) {
+                        channelInfo = channelInfo(results);
+                    }
+                    String slackUser = results.getString("slack_user");
+                    if (slackUser == null) {
+                        continue;
+                    }
+                    ChannelUser user = new ChannelUser();
+                    user.channelId = channelInfo.channelId;
+                    user.slackName = slackUser;
+                    user.isAdmin = results.getBoolean("is_admin");
+                    if (slackUser.equals(callingUser)) {
+                        caller = user;
+                    }
+                    if (slackUser.equals(targetUser)) {
+                        target = user;
+                    }
+                }
+            }
+            return new ChannelAccess(channelInfo, caller, target);
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to read channel: " + channelName, e);
+        }
+    }
+
+    @Override
+    public int addChannel(String channelName, String jiraProject, boolean isRestricted) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(INSERT_CHANNEL, Statement.RETURN_GENERATED_KEYS)) {
+            statement.setString(1, channelName);
+            statement.setString(2, jiraProject);
+            statement.setBoolean(3, isRestricted);
+            statement.executeUpdate();
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                keys.next();
+                return keys.getInt(1);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to add channel: " + channelName, e);
+        }
+    }
+
+    @Override
+    public void updateChannelDetails(int channelId, String jiraProject, boolean isRestricted) {
+        int updated;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(UPDATE_CHANNEL)) {
+            statement.setString(1, jiraProject);
+            statement.setBoolean(2, isRestricted);
+            statement.setInt(3, channelId);
+            updated = statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to update channel: " + channelId, e);
+        }
+        if (updated == 0) {
+            throw new RuntimeException("Unable to update channel info. Data not found in data store for channel: " + channelId);
+        }
+    }
+
+    @Override
+    public void addChannelUser(int channelId, String slackUser, boolean isAdmin) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(MERGE_CHANNEL_USER)) {
+            setChannelUser(statement, channelId, slackUser, isAdmin);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to add user " + slackUser + " to channel: " + channelId, e);
+        }
+    }
+
+    @Override
+    public void addChannelUsers(int channelId, Map<String, Boolean> slackUsers) {
+        // One JDBC batch in one transaction
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(MERGE_CHANNEL_USER)) {
+                for (Map.Entry<String, Boolean> user : slackUsers.entrySet()) {
+                    setChannelUser(statement, channelId, user.getKey(), user.getValue());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to add users to channel: " + channelId, e);
+        }
+    }
+
+    // Conditional writes rely on the unique keys: a concurrent writer that loses the race gets an integrity violation
+
+    @Override
+    public ChannelInfo createChannelIfAbsent(String channelName, String jiraProject, boolean isRestricted, String adminUser) {
+        // The channel and its admin are committed together
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement insertChannel = connection.prepareStatement(INSERT_CHANNEL, Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement insertUser = connection.prepareStatement(MERGE_CHANNEL_USER)) {
+                insertChannel.setString(1, channelName);
+                insertChannel.setString(2, jiraProject);
+                insertChannel.setBoolean(3, isRestricted);
+                insertChannel.executeUpdate();
+                ChannelInfo channelInfo = new ChannelInfo();
+                try (ResultSet keys = insertChannel.getGeneratedKeys()) {
+                    keys.next();
+                    channelInfo.channelId = keys.getInt(1);
+                }
+                channelInfo.channelName = channelName;
+                channelInfo.jiraProject = jiraProject;
+                channelInfo.restricted = isRestricted;
+                setChannelUser(insertUser, channelInfo.channelId, adminUser, true);
+                insertUser.executeUpdate();
+                connection.commit();
+                return channelInfo;
+            } catch (SQLException e) {
+                connection.rollback();
+                if (isIntegrityViolation(e)) {
+                    return null;
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to add channel: " + channelName, e);
+        }
+    }
+
+    @Override
+    public boolean addChannelUserIfAbsent(int channelId, String slackUser, boolean isAdmin) {
+        try (Connection connection = dataSource.getConnection()) {
+            return insertChannelUserIfAbsent(connection, channelId, slackUser, isAdmin);
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to add user " + slackUser + " to channel: " + channelId, e);
+        }
+    }
+
+    @Override
+    public Set<String> addChannelUsersIfAbsent(int channelId, Map<String, Boolean> slackUsers) {
+        // One JDBC batch in one transaction; the update counts say which users were added
+        Set<String> added = new HashSet<>();
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            List<String> batch = new ArrayList<>(slackUsers.keySet());
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_CHANNEL_USER_IF_ABSENT)) {
+                for (String slackUser : batch) {
+                    setChannelUser(statement, channelId, slackUser, slackUsers.get(slackUser));
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                connection.commit();
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] > 0) {
+                        added.add(batch.get(i));
+                    }
+                }
+                return added;
+            } catch (SQLException e) {
+                connection.rollback();
+                if (!isIntegrityViolation(e)) {
+                    throw e;
+                }
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to add users to channel: " + channelId, e);
+        }
+        // Raced with another writer: fall back to one conditional insert per user
+        return JiraBotDataManager.super.addChannelUsersIfAbsent(channelId, slackUsers);
+    }
+
+    @Override
+    public boolean compareAndSetAdmin(int channelId, String slackUser, boolean expectedAdmin, boolean newAdmin) {
+        try (Connection connection = dataSource.getConnection()) {
+            if (updateAdminIf(connection, channelId, slackUser, expectedAdmin, newAdmin)) {
+                return true;
+            }
+            if (expectedAdmin) {
+                return false;
+            }
+            // An unregistered user counts as a non-admin. If someone else registers them first, check again.
+            return insertChannelUserIfAbsent(connection, channelId, slackUser, newAdmin)
+                    || updateAdminIf(connection, channelId, slackUser, false, newAdmin);
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to update user " + slackUser + " in channel: " + channelId, e);
+        }
+    }
+
+    private boolean insertChannelUserIfAbsent(Connection connection, int channelId, String slackUser, boolean isAdmin)
+            throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_CHANNEL_USER_IF_ABSENT)) {
+            setChannelUser(statement, channelId, slackUser, isAdmin);
+            return statement.executeUpdate() > 0;
+        } catch (SQLException e) {
+            if (isIntegrityViolation(e)) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private boolean updateAdminIf(Connection connection, int channelId, String slackUser, boolean expectedAdmin,
+                                  boolean newAdmin) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(COMPARE_AND_SET_ADMIN)) {
+            statement.setBoolean(1, newAdmin);
+            statement.setInt(2, channelId);
+            statement.setString(3, slackUser);
+            statement.setBoolean(4, expectedAdmin);
+            return statement.executeUpdate() > 0;
+        }
+    }
+
+    // SQL state class 23: integrity constraint violation, e.g. a duplicate key
+    private static boolean isIntegrityViolation(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("23");
+    }
+
+    private void setChannelUser(PreparedStatement statement, int channelId, String slackUser, boolean isAdmin)
+            throws SQLException {
+        statement.setInt(1, channelId);
+        statement.setString(2, slackUser);
+        statement.setBoolean(3, isAdmin);
+    }
+
+    @Override
+    public ChannelUser getChannelUser(int channelId, String slackUser) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_CHANNEL_USER)) {
+            statement.setInt(1, channelId);
+            statement.setString(2, slackUser);
+            try (ResultSet results = statement.executeQuery()) {
+                return results.next() ? channelUser(results) : null;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to read user " + slackUser + " of channel: " + channelId, e);
+        }
+    }
+
+    @Override
+    public Map<String, ChannelUser> getChannelUsersByName(int channelId, Collection<String> slackUsers) {
+        Map<String, ChannelUser> found = new HashMap<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_CHANNEL_USERS_BY_NAME)) {
+            Array names = connection.createArrayOf("VARCHAR", slackUsers.toArray());
+            statement.setInt(1, channelId);
+            statement.setArray(2, names);
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    ChannelUser user = channelUser(results);
+                    found.put(user.slackName, user);
+                }
+            }
+            names.free();
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to read users of channel: " + channelId, e);
+        }
+        return found;
+    }
+
+    @Override
+    public Set<ChannelUser> getChannelUsers(int channelId) {
+        try (Stream<ChannelUser> users = streamChannelUsers(channelId)) {
+            return users.collect(Collectors.toSet());
+        }
+    }
+
+    @Override
+    public MemberPage getChannelUsersPage(int channelId, String afterCursor, boolean adminsOnly, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        List<ChannelUser> users = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     adminsOnly ? SELECT_CHANNEL_ADMINS_PAGE : SELECT_CHANNEL_USERS_PAGE)) {
+            statement.setInt(1, channelId);
+            statement.setString(2, afterCursor == null ? "" : afterCursor);
+            // One more than the page, to tell whether there is a next page
+            statement.setInt(3, pageSize + 1);
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    users.add(channelUser(results));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to read users of channel: " + channelId, e);
+        }
+        return MemberPage.fromSorted(users, pageSize);
+    }
+
+    @Override
+    public Set<ChannelInfo> getChannelsForUser(String slackUser) {
+        return channelsForUser(SELECT_CHANNELS_FOR_USER, slackUser);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAdminChannelsForUser(String slackUser) {
+        return channelsForUser(SELECT_ADMIN_CHANNELS_FOR_USER, slackUser);
+    }
+
+    @Override
+    public Set<ChannelInfo> getAllChannels() {
+        Set<ChannelInfo> channels = new HashSet<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_ALL_CHANNELS);
+             ResultSet results = statement.executeQuery()) {
+            while (results.next()) {
+                channels.add(channelInfo(results));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to read channels", e);
+        }
+        return channels;
+    }
+
+    private Set<ChannelInfo> channelsForUser(String sql, String slackUser) {
+        Set<ChannelInfo> channels = new HashSet<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, slackUser);
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    channels.add(channelInfo(results));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to read channels of user: " + slackUser, e);
+        }
+        return channels;
+    }
+
+    /**
+     * Streams a channel's users from the database, fetching FETCH_SIZE rows at a time.
+     * The stream holds a pooled connection, so it must be closed (e.g. with try-with-resources).
+     */
+    public Stream<ChannelUser> streamChannelUsers(int channelId) {
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            PreparedStatement statement = connection.prepareStatement(SELECT_CHANNEL_USERS);
+            statement.setFetchSize(FETCH_SIZE);
+            statement.setInt(1, channelId);
+            ResultSet results = statement.executeQuery();
+            Connection streamConnection = connection;
+            Spliterator<ChannelUser> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.NONNULL) {
+                @Override
+                public boolean tryAdvance(Consumer<? super ChannelUser> action) {
+                    try {
+                        if (!results.next()) {
+                            return false;
+                        }
+                        action.accept(channelUser(results));
+                        return true;
+                    } catch (SQLException e) {
+                        throw new RuntimeException("Unable to read users of channel: " + channelId, e);
+                    }
+                }
+            };
+            return StreamSupport.stream(rows, false).onClose(() -> {
+                // Closes the results, statement and connection in turn, each even if the one before failed,
+                // so the connection always goes back to the pool. Later failures are suppressed into the first.
+                try (streamConnection; statement; results) {
+                    // Nothing to do but close
+                } catch (SQLException e) {
+                    throw new RuntimeException("Unable to close users query for channel: " + channelId, e);
+                }
+            });
+        } catch (SQLException e) {
+            closeQuietly(connection);
+            throw new RuntimeException("Unable to read users of channel: " + channelId, e);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // Already failing - report the original error
+            }
+        }
+    }
+
+    private static ChannelInfo channelInfo(ResultSet results) throws SQLException {
+        ChannelInfo channelInfo = new ChannelInfo();
+        channelInfo.channelId = results.getInt("channel_id");
+        channelInfo.channelName = results.getString("channel_name");
+        channelInfo.jiraProject = results.getString("jira_project");
+        channelInfo.restricted = results.getBoolean("restricted");
+        return channelInfo;
+    }
+
+    private static ChannelUser channelUser(ResultSet results) throws SQLException {
+        ChannelUser user = new ChannelUser();
+        user.channelId = results.getInt("channel_id");
+        user.slackName = results.getString("slack_user");
+        user.isAdmin = results.getBoolean("is_admin");
+        return user;
+    }
+
+    /**
+     * Closes the connection pool, if the data source is one.
+     */
+    @Override
+    public void close() {
+        if (dataSource instanceof HikariDataSource) {
+            ((HikariDataSource) dataSource).close();
+        }
+    }
+}
@@ -1,133 +1,335 @@
 package com.booking.jiraslackbot;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The bot's commands. Each command is available in two forms:
+ * the try... methods return an ActionOutcome (or ActionResult), and are the cheap path for rejected requests,
+ * since a rejection is a shared constant rather than a new exception with a stack trace;
+ * the original methods wrap them, throwing an error for any rejection.
+ * Successful changes to a channel's project or members are recorded to the AuditLog, if one is set.
+ * Tickets from channels that were never registered go to the project a ProjectRouter rule gives them, if one is set.
+ */
 public class JiraBotActions {
 
     JiraBotDataManager dataManager;
+    TicketPipeline ticketPipeline;
+    volatile AuditLog auditLog;
+    volatile ProjectRouter projectRouter;
 
     public JiraBotActions(JiraBotDataManager jbdm) {
+        this(jbdm, null);
+    }
+
+    public JiraBotActions(JiraBotDataManager jbdm, TicketPipeline ticketPipeline) {
         this.dataManager = jbdm;
+        this.ticketPipeline = ticketPipeline;
+    }
+
+    /**
+     * Records every successful administrative change to the audit log, or stops recording if it is null.
+     */
+    public void setAuditLog(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
+    /**
+     * Routes tickets from unregistered channels to a project by channel name pattern, or stops routing if it is null.
+     */
+    public void setProjectRouter(ProjectRouter projectRouter) {
+        this.projectRouter = projectRouter;
     }
 
     // Define a channel's project
     public int registerProject(String channelName, String jiraProject, boolean isRestricted, String slackUser)
             throws UnauthorisedAccessError {
+        ActionResult result = tryRegisterProject(channelName, jiraProject, isRestricted, slackUser);
+        if (!result.isSuccess()) {
+            throw new UnauthorisedAccessError(result.outcome.message(slackUser));
+        }
+        return result.channelId;
+    }
 
-        // First try to get the channel info
-        ChannelInfo channelInfo = dataManager.getChannelByName(channelName);
+    public ActionResult tryRegisterProject(String channelName, String jiraProject, boolean isRestricted, String slackUser) {
 
-        // Existing channel
-        // If channel info exists, update the channel - if the user is a channel admin user, otherwise throw access error
-        if (channelInfo != null) {
-            // Abort if user is not authorised.
-            if (!dataManager.isChannelAdmin(slackUser, channelInfo.channelId)) {
-                throw getUnauthorisedAccessError(slackUser);
+        // First try to get the channel info, along with the calling user's membership
+        ChannelAccess access = dataManager.getChannelAccess(channelName, slackUser, null);
+
+        // New channel
+        if (!access.isRegisteredChannel()) {
+            // Create the channel with the calling user as its admin, unless someone else registered it first
+            ChannelInfo created = dataManager.createChannelIfAbsent(channelName, jiraProject, isRestricted, slackUser);
+            if (created != null) {
+                audit(slackUser, AuditEntry.Action.REGISTER_PROJECT, channelName, null,
+                        AuditEntry.NONE, AuditEntry.projectState(jiraProject, isRestricted));
+                return ActionResult.success(created.channelId);
             }
-            // Update the channel info
-            dataManager.updateChannelDetails(channelInfo.channelId, jiraProject, isRestricted);
-            return channelInfo.channelId;
+            // Lost the race: treat it as an existing channel
+            access = dataManager.getChannelAccess(channelName, slackUser, null);
         }
-        else
-        // New channel
-        {
-            // If new channel, create the channel then create a channel admin user
-            int channelId = dataManager.addChannel(channelName, jiraProject, isRestricted);
-            // Since it's the first time channel creation, set the calling user as a channel admin
-            dataManager.addChannelUser(channelId, slackUser, true);
-            return channelId;
+
+        // Existing channel
+        // If channel info exists, update the channel - if the user is a channel admin user, otherwise reject
+        // Abort if user is not authorised.
+        if (!access.isCallerAdmin()) {
+            return ActionResult.rejected(ActionOutcome.UNAUTHORISED);
         }
+        // Update the channel info
+        int channelId = access.channelInfo.channelId;
+        String before = AuditEntry.projectState(access.channelInfo.jiraProject, access.channelInfo.restricted);
+        dataManager.updateChannelDetails(channelId, jiraProject, isRestricted);
+        audit(slackUser, AuditEntry.Action.UPDATE_PROJECT, channelName, null, before,
+                AuditEntry.projectState(jiraProject, isRestricted));
+        return ActionResult.success(channelId);
     }
 
     public void addUser(String channel, String callingUser, String newUser, boolean makeAdmin) throws UnauthorisedAccessError, UnregisteredChannelError, InvalidActionError {
+        throwIfRejected(tryAddUser(channel, callingUser, newUser, makeAdmin), newUser);
+    }
+
+    public ActionOutcome tryAddUser(String channel, String callingUser, String newUser, boolean makeAdmin) {
+        ChannelAccess access = dataManager.getChannelAccess(channel, callingUser, newUser);
         // Can only add users to a registered channel
-        ChannelInfo channelInfo = dataManager.getChannelByName(channel);
-        if (channelInfo == null) {
-            throw getUnregisteredChannelError();
+        if (!access.isRegisteredChannel()) {
+            return ActionOutcome.UNREGISTERED_CHANNEL;
         }
         // Only an admin can make changes to this channel
-        if (!dataManager.isChannelAdmin(callingUser, channelInfo.channelId)) {
-            throw getUnauthorisedAccessError(newUser);
+        if (!access.isCallerAdmin()) {
+            return ActionOutcome.UNAUTHORISED;
         }
         // Can only add user if user is not already added
-        if (dataManager.getChannelUser(channelInfo.channelId, newUser) != null) {
-            throw new InvalidActionError("User is already registered for this channel.");
+        if (access.isTargetRegistered()) {
+            return ActionOutcome.ALREADY_REGISTERED;
         }
         // Channel is registered and the caller user is an admin for the channel. Proceed!
-        dataManager.addChannelUser(channelInfo.channelId, newUser, makeAdmin);
+        // The add is conditional, so a concurrent add of the same user is reported rather than overwritten
+        if (!dataManager.addChannelUserIfAbsent(access.channelInfo.channelId, newUser, makeAdmin)) {
+            return ActionOutcome.ALREADY_REGISTERED;
+        }
+        audit(callingUser, AuditEntry.Action.ADD_USER, channel, newUser, AuditEntry.NONE, AuditEntry.membershipState(makeAdmin));
+        return ActionOutcome.SUCCESS;
+    }
+
+    /**
+     * Adds many users to a channel at once, e.g. when onboarding a whole team.
+     * The caller is authorised once, existing members are found in one read and all new members are written in one write.
+     * Users who are already registered are left unchanged.
+     * @param newUsers The users to add, mapped to whether each one should be an admin
+     * @return The outcome for each requested user, in the order given
+     */
+    public Map<String, AddUserOutcome> addUsers(String channel, String callingUser, Map<String, Boolean> newUsers)
+            throws UnauthorisedAccessError, UnregisteredChannelError {
+        Map<String, AddUserOutcome> outcomes = new LinkedHashMap<>();
+        ActionOutcome outcome = tryAddUsers(channel, callingUser, newUsers, outcomes);
+        if (outcome == ActionOutcome.UNREGISTERED_CHANNEL) {
+            throw new UnregisteredChannelError(outcome.message(callingUser));
+        }
+        if (outcome == ActionOutcome.UNAUTHORISED) {
+            throw new UnauthorisedAccessError(outcome.message(callingUser));
+        }
+        return outcomes;
+    }
+
+    /**
+     * As addUsers, filling in the given map with each requested user's outcome if the caller may add users.
+     */
+    public ActionOutcome tryAddUsers(String channel, String callingUser, Map<String, Boolean> newUsers,
+                                     Map<String, AddUserOutcome> outcomes) {
+        ChannelAccess access = dataManager.getChannelAccess(channel, callingUser, null);
+        // Can only add users to a registered channel
+        if (!access.isRegisteredChannel()) {
+            return ActionOutcome.UNREGISTERED_CHANNEL;
+        }
+        // Only an admin can make changes to this channel
+        if (!access.isCallerAdmin()) {
+            return ActionOutcome.UNAUTHORISED;
+        }
+        int channelId = access.channelInfo.channelId;
+        Map<String, ChannelUser> existingUsers = dataManager.getChannelUsersByName(channelId, newUsers.keySet());
+
+        // Can only add users that are not already added
+        Map<String, Boolean> usersToAdd = new LinkedHashMap<>();
+        newUsers.forEach((newUser, makeAdmin) -> {
+            if (!existingUsers.containsKey(newUser)) {
+                usersToAdd.put(newUser, makeAdmin);
+            }
+        });
+        // Users added concurrently since the read are not overwritten, and are reported as already registered
+        Set<String> added = usersToAdd.isEmpty() ? Collections.emptySet()
+                : dataManager.addChannelUsersIfAbsent(channelId, usersToAdd);
+        for (String newUser : newUsers.keySet()) {
+            outcomes.put(newUser, added.contains(newUser) ? AddUserOutcome.ADDED : AddUserOutcome.ALREADY_REGISTERED);
+        }
+        for (String newUser : added) {
+            audit(callingUser, AuditEntry.Action.ADD_USER, channel, newUser, AuditEntry.NONE,
+                    AuditEntry.membershipState(usersToAdd.get(newUser)));
+        }
+        return ActionOutcome.SUCCESS;
     }
 
     public void makeAdmin(String channel, String callingUser, String channelUserName) throws UnauthorisedAccessError, UnregisteredChannelError, InvalidActionError {
+        throwIfRejected(tryMakeAdmin(channel, callingUser, channelUserName), callingUser);
+    }
+
+    public ActionOutcome tryMakeAdmin(String channel, String callingUser, String channelUserName) {
+        ChannelAccess access = dataManager.getChannelAccess(channel, callingUser, channelUserName);
         // Can only change users in a registered channel
-        ChannelInfo channelInfo = dataManager.getChannelByName(channel);
-        if (channelInfo == null) {
-            throw getUnregisteredChannelError();
+        if (!access.isRegisteredChannel()) {
+            return ActionOutcome.UNREGISTERED_CHANNEL;
         }
-        int channelId = channelInfo.channelId;
         // Only an admin can make changes to this channel
-        if (!dataManager.isChannelAdmin(callingUser, channelId)) {
-            throw getUnauthorisedAccessError(callingUser);
+        if (!access.isCallerAdmin()) {
+            return ActionOutcome.UNAUTHORISED;
         }
         // If adding an admin who is already an admin - InvalidAction
-        if (dataManager.isChannelAdmin(channelUserName, channelId)) {
-            throw new InvalidActionError("User is already an admin for this channel.");
+        if (access.isTargetAdmin()) {
+            return ActionOutcome.ALREADY_ADMIN;
         }
 
-        // Proceed. Will add new, or upgrade existing user.
-        dataManager.addChannelUser(channelId, channelUserName, true);
+        // Proceed. Will add new, or upgrade existing user, unless they were made an admin concurrently.
+        if (!dataManager.compareAndSetAdmin(access.channelInfo.channelId, channelUserName, false, true)) {
+            return ActionOutcome.ALREADY_ADMIN;
+        }
+        audit(callingUser, AuditEntry.Action.MAKE_ADMIN, channel, channelUserName,
+                AuditEntry.membershipState(access.targetUser), AuditEntry.ADMIN);
+        return ActionOutcome.SUCCESS;
     }
 
     public void removeAdmin(String channel, String callingUser, String channelUserName) throws UnauthorisedAccessError, UnregisteredChannelError, InvalidActionError {
+        throwIfRejected(tryRemoveAdmin(channel, callingUser, channelUserName), callingUser);
+    }
+
+    public ActionOutcome tryRemoveAdmin(String channel, String callingUser, String channelUserName) {
+        ChannelAccess access = dataManager.getChannelAccess(channel, callingUser, channelUserName);
         // Can only change users in a registered channel
-        ChannelInfo channelInfo = dataManager.getChannelByName(channel);
-        if (channelInfo == null) {
-            throw getUnregisteredChannelError();
+        if (!access.isRegisteredChannel()) {
+            return ActionOutcome.UNREGISTERED_CHANNEL;
         }
-        int channelId = channelInfo.channelId;
         // Only an admin can make changes to this channel
-        if (!dataManager.isChannelAdmin(callingUser, channelId)) {
-            throw getUnauthorisedAccessError(callingUser);
+        if (!access.isCallerAdmin()) {
+            return ActionOutcome.UNAUTHORISED;
         }
         // If attempting to removing admin access from basic user - InvalidAction
         // Note: This returns the same whether the user is a Basic user, or just not registered
-        if (!dataManager.isChannelAdmin(channelUserName, channelId)) {
-            throw new InvalidActionError("User is not an admin for this channel.");
+        if (!access.isTargetAdmin()) {
+            return ActionOutcome.NOT_ADMIN;
         }
 
-        // Proceed. Will add new, or upgrade existing user.
-        dataManager.addChannelUser(channelId, channelUserName, true);
+        // Proceed. Downgrade the admin to a basic user, unless their admin rights were removed concurrently.
+        if (!dataManager.compareAndSetAdmin(access.channelInfo.channelId, channelUserName, true, false)) {
+            return ActionOutcome.NOT_ADMIN;
+        }
+        audit(callingUser, AuditEntry.Action.REMOVE_ADMIN, channel, channelUserName, AuditEntry.ADMIN, AuditEntry.MEMBER);
+        return ActionOutcome.SUCCESS;
     }
 
-    private UnregisteredChannelError getUnregisteredChannelError() {
-        return new UnregisteredChannelError("This channel has not been registered with the JiraBot. " +
-                "Please call 'project' to register the project first.");
+    /**
+     * Creates a ticket in the channel's project.
+     * In a restricted channel only registered users may create tickets; otherwise anyone in the channel may.
+     * A channel that is not registered uses the project its name is routed to, where anyone may create tickets.
+     * The ticket is queued for the next bulk call to Jira, so the result completes once Jira has answered;
+     * rejections complete straight away, without reaching Jira.
+     * @throws IllegalStateException if the bot was not given a TicketPipeline
+     */
+    public CompletableFuture<TicketResult> createTicket(String channel, String slackUser, String summary, String description) {
+        if (ticketPipeline == null) {
+            throw new IllegalStateException("Ticket creation is not configured");
+        }
+        ChannelAccess access = dataManager.getChannelAccess(channel, slackUser, null);
+        // The channel must be registered, or routed by a rule, to know which project the ticket belongs to
+        if (!access.isRegisteredChannel()) {
+            ProjectRouter router = projectRouter;
+            String jiraProject = router == null ? null : router.resolve(channel);
+            if (jiraProject == null) {
+                return CompletableFuture.completedFuture(TicketResult.rejected(ActionOutcome.UNREGISTERED_CHANNEL));
+            }
+            return ticketPipeline.submit(new TicketRequest(jiraProject, summary, description, channel, slackUser));
+        }
+        if (access.channelInfo.restricted && !access.isCallerRegistered()) {
+            return CompletableFuture.completedFuture(TicketResult.rejected(ActionOutcome.NOT_REGISTERED_USER));
+        }
+        return ticketPipeline.submit(new TicketRequest(access.channelInfo.jiraProject, summary, description, channel, slackUser));
     }
 
-    private UnauthorisedAccessError getUnauthorisedAccessError(String slackUser) {
-        return new UnauthorisedAccessError("Unauthorised access. Admin access required for this feature. " +
-                "User '" + slackUser + "' is not an admin of this channel");
+    // List the channels a user belongs to (e.g. for '/jira mychannels', or when offboarding a user)
+    public Set<ChannelInfo> getChannelsForUser(String slackUser) {
+        return dataManager.getChannelsForUser(slackUser);
     }
 
-    public class UnauthorisedAccessError extends Throwable {
+    // List the channels a user is an admin of (e.g. to hand over admin rights when offboarding a user)
+    public Set<ChannelInfo> getAdminChannelsForUser(String slackUser) {
+        return dataManager.getAdminChannelsForUser(slackUser);
+    }
+
+    // Queues the entry and returns straight away: the audit log writes it in the background
+    private void audit(String actor, AuditEntry.Action action, String channel, String target, String before, String after) {
+        AuditLog log = auditLog;
+        if (log != null) {
+            log.record(new AuditEntry(System.currentTimeMillis(), actor, action, channel, target, before, after));
+        }
+    }
+
+    private static void throwIfRejected(ActionOutcome outcome, String slackUser)
+            throws UnauthorisedAccessError, UnregisteredChannelError, InvalidActionError {
+        Throwable error = toError(outcome, slackUser);
+        if (error instanceof UnregisteredChannelError) {
+            throw (UnregisteredChannelError) error;
+        }
+        if (error instanceof UnauthorisedAccessError) {
+            throw (UnauthorisedAccessError) error;
+        }
+        if (error instanceof InvalidActionError) {
+            throw (InvalidActionError) error;
+        }
+    }
+
+    /**
+     * The error the exception API uses for an outcome, or null for success.
+     */
+    static Throwable toError(ActionOutcome outcome, String slackUser) {
+        switch (outcome) {
+            case SUCCESS:
+                return null;
+            case UNREGISTERED_CHANNEL:
+                return new UnregisteredChannelError(outcome.message(slackUser));
+            case UNAUTHORISED:
+                return new UnauthorisedAccessError(outcome.message(slackUser));
+            default:
+                return new InvalidActionError(outcome.message(slackUser));
+        }
+    }
+
+    public enum AddUserOutcome {
+        ADDED,
+        ALREADY_REGISTERED
+    }
+
+    // The errors are expected outcomes rather than bugs, so they do not capture a stack trace
+
+    public static class UnauthorisedAccessError extends Throwable {
 
         public UnauthorisedAccessError(String message) {
-            super(message);
+            super(message, null, false, false);
         }
     }
 
-    public class UnregisteredChannelError extends Throwable {
+    public static class UnregisteredChannelError extends Throwable {
         public UnregisteredChannelError(String message) {
-            super(message);
+            super(message, null, false, false);
         }
     }
 
-    public class InvalidActionError extends Throwable {
+    public static class InvalidActionError extends Throwable {
         public InvalidActionError(String message) {
-            super(message);
+            super(message, null, false, false);
         }
     }
 
     // Add a user to a channel's project (Admin function)
 
     // Remove a user from a channel's project (Admin function)
-
-    // Create a ticket in the channel's project
 }
@@ -1,5 +1,10 @@
 package com.booking.jiraslackbot;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 public interface JiraBotDataManager {
@@ -35,5 +40,128 @@ public interface JiraBotDataManager {
 
     Set<ChannelUser> getChannelUsers(int channelId);
 
+    /**
+     * Lists one page of a channel's users, in Slack name order. Users added between pages show up on a later page
+     * if their name sorts after the cursor.
+     * The default reads every user of the channel for each page, so paging through n users costs O(n * n / pageSize);
+     * stores should override it to read no more than the page where they keep users in name order.
+     * @param afterCursor The previous page's nextCursor, or null for the first page
+     * @param adminsOnly If true, lists only the channel's admins
+     * @param pageSize The most users to return
+     */
+    default MemberPage getChannelUsersPage(int channelId, String afterCursor, boolean adminsOnly, int pageSize) {
+        MemberPage.Collector page = new MemberPage.Collector(afterCursor, pageSize);
+        for (ChannelUser user : getChannelUsers(channelId)) {
+            if (user.isAdmin || !adminsOnly) {
+                page.offer(user);
+            }
+        }
+        return page.toPage();
+    }
+
+    /**
+     * Iterates over a channel's users in Slack name order, reading them a page at a time with getChannelUsersPage,
+     * so a large channel is never held in memory at once.
+     */
+    default Iterator<ChannelUser> iterateChannelUsers(int channelId, boolean adminsOnly, int pageSize) {
+        return new MemberIterator(this, channelId, adminsOnly, pageSize);
+    }
+
+    /**
+     * Lists every channel the Slack user is registered for, as a basic user or an admin.
+     */
+    Set<ChannelInfo> getChannelsForUser(String slackUser);
+
+    /**
+     * Lists every channel the Slack user is an admin of.
+     */
+    Set<ChannelInfo> getAdminChannelsForUser(String slackUser);
+
+    /**
+     * Lists every registered channel, e.g. to rebalance shards. Reads the whole store, so is not for the request path.
+     */
+    Set<ChannelInfo> getAllChannels();
+
     ChannelUser getChannelUser(int channelId, String slackUser);
+
+    /**
+     * Looks up several users of a channel in a single read.
+     * Stores with a network round trip per call should override this with a single query.
+     * @return The users that are registered for the channel, keyed by Slack name. Unregistered users are absent.
+     */
+    default Map<String, ChannelUser> getChannelUsersByName(int channelId, Collection<String> slackUsers) {
+        Map<String, ChannelUser> found = new HashMap<>();
+        for (String slackUser : slackUsers) {
+            ChannelUser user = getChannelUser(channelId, slackUser);
+            if (user != null) {
+                found.put(slackUser, user);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Adds or updates several Channel Users in a single write. Key: channelId, slackUser
+     * Stores with a network round trip per call should override this with a single batched write.
+     * @param slackUsers The users to add, mapped to whether each one is an admin
+     */
+    default void addChannelUsers(int channelId, Map<String, Boolean> slackUsers) {
+        slackUsers.forEach((slackUser, isAdmin) -> addChannelUser(channelId, slackUser, isAdmin));
+    }
+
+    //---- Atomic conditional writes. Each one checks and writes as a single step, so concurrent requests can not
+    //---- both succeed. Implementations must not serialise unrelated channels behind a global lock where avoidable.
+
+    /**
+     * Registers a new Slack channel, with the given user as its first admin, unless a channel with that name exists.
+     * The channel is never visible without its admin.
+     * @return The new channel, or null if a channel with that name already exists
+     */
+    ChannelInfo createChannelIfAbsent(String channelName, String jiraProject, boolean isRestricted, String adminUser);
+
+    /**
+     * Adds a Channel User, unless the user is already registered for the channel.
+     * @return True if the user was added
+     */
+    boolean addChannelUserIfAbsent(int channelId, String slackUser, boolean isAdmin);
+
+    /**
+     * Adds several Channel Users, skipping any that are already registered for the channel.
+     * Each user is added atomically. Stores with a network round trip per call should override this with a batched write.
+     * @param slackUsers The users to add, mapped to whether each one is an admin
+     * @return The users that were added
+     */
+    default Set<String> addChannelUsersIfAbsent(int channelId, Map<String, Boolean> slackUsers) {
+        Set<String> added = new HashSet<>();
+        slackUsers.forEach((slackUser, isAdmin) -> {
+            if (addChannelUserIfAbsent(channelId, slackUser, isAdmin)) {
+                added.add(slackUser);
+            }
+        });
+        return added;
+    }
+
+    /**
+     * Sets a user's admin flag, only if it currently has the expected value.
+     * A user who is not registered for the channel counts as a non-admin, and is added if expectedAdmin is false.
+     * @return True if the flag was set
+     */
+    boolean compareAndSetAdmin(int channelId, String slackUser, boolean expectedAdmin, boolean newAdmin);
+
+    /**
+     * Looks up a channel together with the calling and target users' memberships, in a single read.
+     * Stores with a network round trip per call should override this with a single query.
+     * @param channelName The name of the Slack channel
+     * @param callingUser The Slack user running the command
+     * @param targetUser The Slack user the command acts on, or null if there is none
+     */
+    default ChannelAccess getChannelAccess(String channelName, String callingUser, String targetUser) {
+        ChannelInfo channelInfo = getChannelByName(channelName);
+        if (channelInfo == null) {
+            return new ChannelAccess(null, null, null);
+        }
+        ChannelUser caller = getChannelUser(channelInfo.channelId, callingUser);
+        ChannelUser target = targetUser == null ? null : getChannelUser(channelInfo.channelId, targetUser);
+        return new ChannelAccess(channelInfo, caller, target);
+    }
 }
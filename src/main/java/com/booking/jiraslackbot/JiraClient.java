@@ -0,0 +1,183 @@
+package com.booking.jiraslackbot;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal Jira REST client: creates many issues in one call with POST /rest/api/2/issue/bulk.
+ */
+public class JiraClient {
+
+    static final String BULK_CREATE_PATH = "/rest/api/2/issue/bulk";
+
+    private final URI bulkCreateUri;
+    private final String authorization;
+    private final String issueType;
+    private final HttpClient httpClient;
+
+    /**
+     * @param baseUrl e.g. "https://example.atlassian.net"
+     * @param user The Jira user the bot acts as
+     * @param apiToken That user's API token
+     */
+    public JiraClient(String baseUrl, String user, String apiToken) {
+        this(URI.create(baseUrl.replaceAll("/+$", "")), "Basic " + Base64.getEncoder().encodeToString((user + ":" + apiToken).getBytes(StandardCharsets.UTF_8)),
+                "Task");
+    }
+
+    JiraClient(URI baseUri, String authorization, String issueType) {
+        this.bulkCreateUri = baseUri.resolve(BULK_CREATE_PATH);
+        this.authorization = authorization;
+        this.issueType = issueType;
+        this.httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    }
+
+    /**
+     * The result of one bulk call. For a call Jira handled, issueKeys and errors have one entry per ticket,
+     * in the order sent: the new issue's key, or the reason it was not created.
+     */
+    static class BulkResponse {
+        int status;
+        // From the Retry-After header, or -1
+        long retryAfterMillis = -1;
+        String[] issueKeys;
+        String[] errors;
+
+        boolean isRetryable() {
+            return status == 429 || status >= 500;
+        }
+    }
+
+    BulkResponse bulkCreate(List<TicketRequest> tickets) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(bulkCreateUri)
+                .timeout(Duration.ofSeconds(30))
+                .header("Authorization", authorization)
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(bulkCreateBody(tickets)))
+                .build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        BulkResponse bulk = new BulkResponse();
+        bulk.status = response.statusCode();
+        bulk.issueKeys = new String[tickets.size()];
+        bulk.errors = new String[tickets.size()];
+        if (bulk.isRetryable()) {
+            bulk.retryAfterMillis = retryAfterMillis(response.headers().firstValue("Retry-After"));
+            return bulk;
+        }
+        // Jira answers 201 if any issue was created and 400 if none were, listing the failures in both cases
+        if (bulk.status / 100 != 2 && bulk.status != 400) {
+            Arrays.fill(bulk.errors, "Jira returned " + bulk.status);
+            return bulk;
+        }
+        readBulkResult(response.body(), bulk);
+        return bulk;
+    }
+
+    private String bulkCreateBody(List<TicketRequest> tickets) {
+        StringBuilder body = new StringBuilder("{\"issueUpdates\":[");
+        for (int i = 0; i < tickets.size(); i++) {
+            TicketRequest ticket = tickets.get(i);
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append("{\"fields\":{\"project\":{\"key\":").append(Json.quote(ticket.jiraProject))
+                    .append("},\"summary\":").append(Json.quote(ticket.summary))
+                    .append(",\"description\":").append(Json.quote(ticket.description == null ? "" : ticket.description))
+                    .append(",\"issuetype\":{\"name\":").append(Json.quote(issueType))
+                    .append("}}}");
+        }
+        return body.append("]}").toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void readBulkResult(String body, BulkResponse bulk) {
+        Map<String, Object> result;
+        try {
+            result = (Map<String, Object>) Json.parse(body);
+        } catch (IllegalArgumentException | ClassCastException e) {
+            Arrays.fill(bulk.errors, "Unreadable response from Jira (" + bulk.status + ")");
+            return;
+        }
+        // Failures name their position in the request
+        Object errors = result.get("errors");
+        if (errors instanceof List) {
+            for (Object error : (List<Object>) errors) {
+                // Elements of any other shape are skipped; their tickets end up "Not created" below
+                if (!(error instanceof Map)) {
+                    continue;
+                }
+                Map<String, Object> element = (Map<String, Object>) error;
+                Object failed = element.get("failedElementNumber");
+                if (failed instanceof Double && ((Double) failed) >= 0 && ((Double) failed).intValue() < bulk.errors.length) {
+                    bulk.errors[((Double) failed).intValue()] = errorMessage(element.get("elementErrors"));
+                }
+            }
+        }
+        // Created issues are listed in request order, skipping the failures
+        Object issues = result.get("issues");
+        int next = 0;
+        if (issues instanceof List) {
+            for (Object issue : (List<Object>) issues) {
+                while (next < bulk.errors.length && bulk.errors[next] != null) {
+                    next++;
+                }
+                if (next < bulk.issueKeys.length) {
+                    Object key = issue instanceof Map ? ((Map<String, Object>) issue).get("key") : null;
+                    // Still takes its ticket's place, so the issues after it line up with their tickets
+                    if (key instanceof String) {
+                        bulk.issueKeys[next++] = (String) key;
+                    } else {
+                        bulk.errors[next++] = "Unreadable issue in response from Jira (" + bulk.status + ")";
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < bulk.errors.length; i++) {
+            if (bulk.issueKeys[i] == null && bulk.errors[i] == null) {
+                bulk.errors[i] = "Not created by Jira (" + bulk.status + ")";
+            }
+        }
+    }
+
+    // elementErrors: {"errorMessages": [...], "errors": {"field": "message"}}
+    @SuppressWarnings("unchecked")
+    private static String errorMessage(Object elementErrors) {
+        StringBuilder message = new StringBuilder();
+        if (elementErrors instanceof Map) {
+            Map<String, Object> errors = (Map<String, Object>) elementErrors;
+            if (errors.get("errorMessages") instanceof List) {
+                for (Object text : (List<Object>) errors.get("errorMessages")) {
+                    message.append(message.length() > 0 ? "; " : "").append(text);
+                }
+            }
+            if (errors.get("errors") instanceof Map) {
+                ((Map<String, Object>) errors.get("errors")).forEach((field, text) ->
+                        message.append(message.length() > 0 ? "; " : "").append(field).append(": ").append(text));
+            }
+        }
+        return message.length() > 0 ? message.toString() : "Rejected by Jira";
+    }
+
+    private static long retryAfterMillis(Optional<String> retryAfter) {
+        try {
+            // Saturates rather than overflowing, so an absurd value still reads as too long to wait
+            return retryAfter.map(seconds -> TimeUnit.SECONDS.toMillis(Long.parseLong(seconds.trim()))).orElse(-1L);
+        } catch (NumberFormatException e) {
+            // Retry-After may also be an HTTP date; fall back to our own backoff
+            return -1;
+        }
+    }
+}
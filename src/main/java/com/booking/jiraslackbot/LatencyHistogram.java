@@ -0,0 +1,118 @@
+package com.booking.jiraslackbot;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram, in nanoseconds.
+ * Buckets are log-linear: each power of two is split into 32 equal buckets, so a percentile is reported
+ * to within about 3% of the recorded value, from 1ns up to the largest long, in a fixed 15KB.
+ * Recording is one array increment plus two striped counters; concurrent recorders never block each other.
+ * Reads are not a consistent snapshot while recording continues, which is fine for monitoring.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile e.g. 99.9
+     * @return The latency at or below which that percentage of calls completed (never above the maximum), or 0 if empty
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Counts of the values recorded at or below each bound, e.g. for Prometheus histogram buckets.
+     * A value is counted from the first bound at or above the top of its bucket, so it may land one bound late
+     * when it is within about 3% below a bound.
+     * @param boundsNanos Ascending
+     * @return One cumulative count per bound, then the count of every value, all from the same read of the buckets
+     */
+    public long[] getCumulativeCounts(long[] boundsNanos) {
+        long[] cumulative = new long[boundsNanos.length + 1];
+        int bound = 0;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.get(i);
+            if (count == 0) {
+                continue;
+            }
+            long highest = highestValue(i);
+            while (bound < boundsNanos.length && boundsNanos[bound] < highest) {
+                cumulative[bound++] = seen;
+            }
+            seen += count;
+        }
+        while (bound <= boundsNanos.length) {
+            cumulative[bound++] = seen;
+        }
+        return cumulative;
+    }
+
+    // Values below 32 have a bucket each; above that, a bucket covers 1/32 of its power of two
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    // The largest value that falls in the bucket
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
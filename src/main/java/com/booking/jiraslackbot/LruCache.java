@@ -0,0 +1,152 @@
+package com.booking.jiraslackbot;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded, thread-safe cache with least-recently-used eviction and a time-to-live per entry.
+ * Loads are guarded by a stamp: a value read from the store before an invalidation
+ * is never inserted after it, so a concurrent write can not leave a stale entry behind.
+ *
+ * Keys hash to one of up to 16 stripes, each with its own lock, LRU order and share of the size bound,
+ * so lookups of different keys rarely wait on each other. Eviction is least-recently-used within a stripe.
+ * An invalidation only discards the loads in flight for keys of its own stripe.
+ */
+class LruCache<K, V> {
+
+    static final int MAX_STRIPES = 16;
+    // Caches too small to give each stripe this many entries get fewer stripes, so eviction stays close to LRU
+    static final int MIN_STRIPE_SIZE = 64;
+
+    private final Stripe<K, V>[] stripes;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    // Numbers every invalidation. See stamp() and put()
+    private final AtomicLong invalidations = new AtomicLong();
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+    final LongAdder expirations = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    LruCache(int maxSize, long ttlNanos, LongSupplier clock) {
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+        // A power of two, and the stripes' bounds add up to at most maxSize
+        int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(MAX_STRIPES, maxSize / MIN_STRIPE_SIZE)));
+        this.stripes = (Stripe<K, V>[]) new Stripe<?, ?>[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe<>(maxSize / stripeCount, evictions);
+        }
+    }
+
+    private static final class Stripe<K, V> {
+        final Map<K, Entry<V>> entries;
+        // The number of the latest invalidation of this stripe's keys
+        long lastInvalidation;
+
+        Stripe(int maxSize, LongAdder evictions) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                    if (size() > maxSize) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+
+    /**
+     * @return The cached entry, or null if it is missing or expired. A cached entry may itself hold a null value.
+     */
+    Entry<V> get(K key) {
+        Stripe<K, V> stripe = stripe(key);
+        synchronized (stripe) {
+            Entry<V> entry = stripe.entries.get(key);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            if (clock.getAsLong() - entry.expiresAt > 0) {
+                stripe.entries.remove(key);
+                expirations.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry;
+        }
+    }
+
+    /**
+     * Take a stamp before loading a value from the store, and pass it to put() once loaded.
+     * One stamp serves for any number of keys, including keys only known once loaded.
+     */
+    long stamp() {
+        return invalidations.get();
+    }
+
+    /**
+     * Caches a value loaded from the store, unless the key's stripe was invalidated since the stamp was taken.
+     */
+    void put(K key, V value, long stamp) {
+        Stripe<K, V> stripe = stripe(key);
+        synchronized (stripe) {
+            if (stripe.lastInvalidation > stamp) {
+                return;
+            }
+            stripe.entries.put(key, new Entry<>(value, clock.getAsLong() + ttlNanos));
+        }
+    }
+
+    void invalidate(K key) {
+        Stripe<K, V> stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.lastInvalidation = invalidations.incrementAndGet();
+            stripe.entries.remove(key);
+        }
+    }
+
+    void clear() {
+        long invalidation = invalidations.incrementAndGet();
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                // An invalidate() may have got to this stripe first, with a later number
+                stripe.lastInvalidation = Math.max(stripe.lastInvalidation, invalidation);
+                stripe.entries.clear();
+            }
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.entries.size();
+            }
+        }
+        return size;
+    }
+
+    private Stripe<K, V> stripe(K key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    static class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.booking.jiraslackbot;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over a channel's users one page at a time, reading the next page when the current one runs out.
+ * Holds no connection or lock between pages, so it can be abandoned part way without closing.
+ */
+class MemberIterator implements Iterator<ChannelUser> {
+
+    private final JiraBotDataManager dataManager;
+    private final int channelId;
+    private final boolean adminsOnly;
+    private final int pageSize;
+    private MemberPage page;
+    private int next;
+
+    MemberIterator(JiraBotDataManager dataManager, int channelId, boolean adminsOnly, int pageSize) {
+        this.dataManager = dataManager;
+        this.channelId = channelId;
+        this.adminsOnly = adminsOnly;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (page == null) {
+            page = dataManager.getChannelUsersPage(channelId, null, adminsOnly, pageSize);
+        }
+        while (next == page.users.size() && !page.isLastPage()) {
+            page = dataManager.getChannelUsersPage(channelId, page.nextCursor, adminsOnly, pageSize);
+            next = 0;
+        }
+        return next < page.users.size();
+    }
+
+    @Override
+    public ChannelUser next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.users.get(next++);
+    }
+}
@@ -0,0 +1,102 @@
+package com.booking.jiraslackbot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * One page of a channel's users, in Slack name order. See JiraBotDataManager.getChannelUsersPage.
+ */
+public class MemberPage {
+    public List<ChannelUser> users;
+    // Pass to getChannelUsersPage for the following page. Null on the last page.
+    public String nextCursor;
+
+    public MemberPage(List<ChannelUser> users, String nextCursor) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean isLastPage() {
+        return nextCursor == null;
+    }
+
+    /**
+     * Picks a page out of users offered in any order, for stores with no sorted index of members.
+     * Keeps only the pageSize + 1 lowest names after the cursor (the extra one tells whether there is a next page),
+     * so memory is proportional to the page however many users are offered.
+     * Time is not: every page reads all the users, so paging through n of them costs O(n * n / pageSize).
+     */
+    static class Collector {
+        private static final Comparator<ChannelUser> BY_NAME_DESCENDING = (a, b) -> b.slackName.compareTo(a.slackName);
+
+        private final String afterCursor;
+        private final int pageSize;
+        // Max-heap by name, so the highest name kept is the one to drop
+        private final PriorityQueue<ChannelUser> lowest;
+
+        Collector(String afterCursor, int pageSize) {
+            if (pageSize < 1) {
+                throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+            }
+            this.afterCursor = afterCursor;
+            this.pageSize = pageSize;
+            this.lowest = new PriorityQueue<>(Math.min(pageSize + 1, 1024), BY_NAME_DESCENDING);
+        }
+
+        /**
+         * Offers an existing user record, which is kept as it is.
+         */
+        void offer(ChannelUser user) {
+            if (isOnPage(user.slackName)) {
+                add(user);
+            }
+        }
+
+        /**
+         * Offers a user by its fields. A ChannelUser is only created for users that make the page.
+         */
+        void offer(int channelId, String slackName, boolean isAdmin) {
+            if (isOnPage(slackName)) {
+                ChannelUser user = new ChannelUser();
+                user.channelId = channelId;
+                user.slackName = slackName;
+                user.isAdmin = isAdmin;
+                add(user);
+            }
+        }
+
+        private boolean isOnPage(String slackName) {
+            if (afterCursor != null && slackName.compareTo(afterCursor) <= 0) {
+                return false;
+            }
+            return lowest.size() <= pageSize || slackName.compareTo(lowest.peek().slackName) < 0;
+        }
+
+        private void add(ChannelUser user) {
+            lowest.add(user);
+            if (lowest.size() > pageSize + 1) {
+                lowest.poll();
+            }
+        }
+
+        MemberPage toPage() {
+            List<ChannelUser> users = new ArrayList<>(lowest);
+            users.sort(Collections.reverseOrder(BY_NAME_DESCENDING));
+            return fromSorted(users, pageSize);
+        }
+    }
+
+    /**
+     * Makes a page from up to pageSize + 1 users in name order, e.g. from a query with that limit.
+     */
+    static MemberPage fromSorted(List<ChannelUser> users, int pageSize) {
+        if (users.size() <= pageSize) {
+            return new MemberPage(users, null);
+        }
+        List<ChannelUser> page = new ArrayList<>(users.subList(0, pageSize));
+        return new MemberPage(page, page.get(pageSize - 1).slackName);
+    }
+}
@@ -0,0 +1,123 @@
+package com.booking.jiraslackbot;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps metrics in memory: per action and per data manager operation, a latency histogram, call counts,
+ * counts of each outcome (or of being busy) and of each type of error; per action, the data manager calls it made.
+ * Recording is lock-free: statistics for a name are created once, then only read from the map and added to.
+ */
+public class MetricsRecorder implements BotMetrics {
+
+    public static class OperationStats {
+        public final LatencyHistogram latency = new LatencyHistogram();
+        // Indexed by ActionOutcome ordinal. Only used for actions.
+        private final LongAdder[] outcomes = new LongAdder[ActionOutcome.values().length];
+        // Actions turned away as busy, which have no ActionOutcome
+        private final LongAdder busy = new LongAdder();
+        // Keyed by the error's class name
+        private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+        private final LongAdder dataManagerCalls = new LongAdder();
+
+        OperationStats() {
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] = new LongAdder();
+            }
+        }
+
+        public long getCount() {
+            return latency.getCount();
+        }
+
+        public long getOutcomeCount(ActionOutcome outcome) {
+            return outcomes[outcome.ordinal()].sum();
+        }
+
+        public long getBusyCount() {
+            return busy.sum();
+        }
+
+        public Map<String, Long> getErrorCounts() {
+            Map<String, Long> counts = new TreeMap<>();
+            errors.forEach((type, count) -> counts.put(type, count.sum()));
+            return counts;
+        }
+
+        public long getDataManagerCalls() {
+            return dataManagerCalls.sum();
+        }
+
+        private void recordError(Throwable error) {
+            String type = error.getClass().getSimpleName();
+            LongAdder count = errors.get(type);
+            if (count == null) {
+                count = errors.computeIfAbsent(type, key -> new LongAdder());
+            }
+            count.increment();
+        }
+    }
+
+    private final ConcurrentMap<String, OperationStats> actions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, OperationStats> dataManagerCalls = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordAction(String action, ActionOutcome outcome, Throwable error, long latencyNanos,
+                             int dataManagerCalls) {
+        OperationStats stats = stats(actions, action);
+        stats.latency.record(latencyNanos);
+        stats.dataManagerCalls.add(dataManagerCalls);
+        if (outcome != null) {
+            stats.outcomes[outcome.ordinal()].increment();
+        }
+        if (error != null) {
+            stats.recordError(error);
+        }
+    }
+
+    @Override
+    public void recordBusy(String action) {
+        stats(actions, action).busy.increment();
+    }
+
+    @Override
+    public void recordDataManagerCall(String operation, Throwable error, long latencyNanos) {
+        OperationStats stats = stats(dataManagerCalls, operation);
+        stats.latency.record(latencyNanos);
+        if (error != null) {
+            stats.recordError(error);
+        }
+    }
+
+    // Plain get first: computeIfAbsent may lock the bin even when the entry exists
+    private static OperationStats stats(ConcurrentMap<String, OperationStats> all, String name) {
+        OperationStats stats = all.get(name);
+        return stats != null ? stats : all.computeIfAbsent(name, key -> new OperationStats());
+    }
+
+    /**
+     * @return The action's statistics, or null if it has not been called
+     */
+    public OperationStats getActionStats(String action) {
+        return actions.get(action);
+    }
+
+    /**
+     * @return The operation's statistics, or null if it has not been called
+     */
+    public OperationStats getDataManagerStats(String operation) {
+        return dataManagerCalls.get(operation);
+    }
+
+    public Map<String, OperationStats> getAllActionStats() {
+        return Collections.unmodifiableMap(actions);
+    }
+
+    public Map<String, OperationStats> getAllDataManagerStats() {
+        return Collections.unmodifiableMap(dataManagerCalls);
+    }
+}
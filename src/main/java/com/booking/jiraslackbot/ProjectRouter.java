@@ -0,0 +1,322 @@
+package com.booking.jiraslackbot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps channel names to Jira projects by pattern, for channels that are not registered one by one,
+ * e.g. "team-payments-*" or "inc-2026-*" to a single project. JiraBotActions only asks it about channels
+ * that have no ChannelInfo of their own, so an exact registration always takes precedence over any rule.
+ *
+ * A pattern is a glob: '*' matches any run of characters and '?' any one character. When several rules match,
+ * the highest priority wins, then the most specific pattern (the most characters that are not '*'),
+ * then the rule added first.
+ *
+ * Rules are indexed in two tries: by their literal prefix (up to the first wildcard), or, for rules that start with
+ * a wildcard, such as "*-oncall", by their literal suffix (after the last wildcard), read backwards.
+ * Resolving a name walks it once forwards and once backwards, and only pattern-matches the rules whose prefix or
+ * suffix the name has, so lookups do not slow down as unrelated rules are added. Rules with neither, such as "*"
+ * or "*-inc-*", can not be indexed: each of them is matched against every name, so they should stay few.
+ *
+ * The tries are immutable. Adding or removing a rule copies only the nodes on its path, so loading many rules
+ * one by one stays linear. Results are cached by channel name; changing the rules clears the cache.
+ */
+public class ProjectRouter {
+
+    public static final class Rule {
+        public final String pattern;
+        public final String jiraProject;
+        public final int priority;
+        // Position in the order rules were added, for the final tie-break
+        final long order;
+        final int prefixLength;
+        final int suffixLength;
+        final int literalCount;
+
+        Rule(String pattern, String jiraProject, int priority, long order) {
+            this.pattern = pattern;
+            this.jiraProject = jiraProject;
+            this.priority = priority;
+            this.order = order;
+            int wildcard = 0;
+            while (wildcard < pattern.length() && pattern.charAt(wildcard) != '*' && pattern.charAt(wildcard) != '?') {
+                wildcard++;
+            }
+            this.prefixLength = wildcard;
+            int suffixStart = pattern.length();
+            while (suffixStart > 0 && pattern.charAt(suffixStart - 1) != '*' && pattern.charAt(suffixStart - 1) != '?') {
+                suffixStart--;
+            }
+            this.suffixLength = pattern.length() - suffixStart;
+            this.literalCount = (int) pattern.chars().filter(c -> c != '*').count();
+        }
+
+        // Indexed by suffix only if it starts with a wildcard but has a literal suffix
+        boolean bySuffix() {
+            return prefixLength == 0 && suffixLength > 0;
+        }
+
+        // The labels from the trie's root to the rule's node
+        char[] path() {
+            if (!bySuffix()) {
+                return pattern.substring(0, prefixLength).toCharArray();
+            }
+            char[] path = new char[suffixLength];
+            for (int i = 0; i < suffixLength; i++) {
+                path[i] = pattern.charAt(pattern.length() - 1 - i);
+            }
+            return path;
+        }
+
+        boolean beats(Rule other) {
+            if (other == null) {
+                return true;
+            }
+            if (priority != other.priority) {
+                return priority > other.priority;
+            }
+            if (literalCount != other.literalCount) {
+                return literalCount > other.literalCount;
+            }
+            return order < other.order;
+        }
+
+        // Matches the name's characters after the prefix against the rest of the pattern
+        boolean matchesRest(String name) {
+            return glob(pattern, prefixLength, name, prefixLength);
+        }
+    }
+
+    // Immutable. Children are sorted by label, for a binary search per character.
+    private static final class Node {
+        static final Node EMPTY = new Node(new char[0], new Node[0], new Rule[0]);
+
+        final char[] labels;
+        final Node[] children;
+        final Rule[] rules;
+
+        Node(char[] labels, Node[] children, Rule[] rules) {
+            this.labels = labels;
+            this.children = children;
+            this.rules = rules;
+        }
+
+        Node child(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            return index < 0 ? null : children[index];
+        }
+    }
+
+    private static final class Index {
+        static final Index EMPTY = new Index(Node.EMPTY, Node.EMPTY);
+
+        final Node prefixes;
+        final Node suffixes;
+
+        Index(Node prefixes, Node suffixes) {
+            this.prefixes = prefixes;
+            this.suffixes = suffixes;
+        }
+    }
+
+    // By pattern, in the order added
+    private final Map<String, Rule> rules = new LinkedHashMap<>();
+    private long nextOrder;
+    // Both tries in one field, so a lookup never sees one changed without the other
+    private volatile Index index = Index.EMPTY;
+    // Holds "no rule matches" too, as a null value
+    private final LruCache<String, Rule> resolved;
+
+    public ProjectRouter() {
+        this(10_000);
+    }
+
+    /**
+     * @param maxCachedChannels The most channel names to keep resolved results for
+     */
+    public ProjectRouter(int maxCachedChannels) {
+        // Results only change with the rules, which clear the cache, so the time to live just bounds idle entries
+        this.resolved = new LruCache<>(maxCachedChannels, TimeUnit.HOURS.toNanos(1), System::nanoTime);
+    }
+
+    public void addRule(String pattern, String jiraProject) {
+        addRule(pattern, jiraProject, 0);
+    }
+
+    /**
+     * Adds a rule, replacing any rule with the same pattern.
+     * @param priority Rules with a higher priority win over more specific rules with a lower one
+     */
+    public synchronized void addRule(String pattern, String jiraProject, int priority) {
+        if (pattern == null || pattern.isEmpty() || jiraProject == null || jiraProject.isEmpty()) {
+            throw new IllegalArgumentException("A rule needs a pattern and a Jira project: " + pattern + " -> " + jiraProject);
+        }
+        Rule rule = new Rule(pattern, jiraProject, priority, nextOrder++);
+        // Removed first, so a replaced rule moves to the end, as if added anew
+        rules.remove(pattern);
+        rules.put(pattern, rule);
+        rulesChanged(rule, rule);
+    }
+
+    /**
+     * @return False if there was no rule with that pattern
+     */
+    public synchronized boolean removeRule(String pattern) {
+        Rule removed = rules.remove(pattern);
+        if (removed == null) {
+            return false;
+        }
+        rulesChanged(removed, null);
+        return true;
+    }
+
+    public synchronized List<Rule> getRules() {
+        return new ArrayList<>(rules.values());
+    }
+
+    /**
+     * Puts the rule in place of any rule with the same pattern, or removes that rule if added is null.
+     * Both have the same path, as it only depends on the pattern.
+     */
+    private void rulesChanged(Rule onPath, Rule added) {
+        Index current = index;
+        char[] path = onPath.path();
+        Index updated = onPath.bySuffix()
+                ? new Index(current.prefixes, update(current.suffixes, path, 0, onPath.pattern, added))
+                : new Index(update(current.prefixes, path, 0, onPath.pattern, added), current.suffixes);
+        // Published before the cache is cleared, so a result from the old tries can not be cached after the clear
+        index = updated;
+        resolved.clear();
+    }
+
+    /**
+     * @return The Jira project of the winning rule for the channel name, or null if no rule matches
+     */
+    public String resolve(String channelName) {
+        Rule rule = resolveRule(channelName);
+        return rule == null ? null : rule.jiraProject;
+    }
+
+    /**
+     * @return The winning rule for the channel name, or null if no rule matches
+     */
+    public Rule resolveRule(String channelName) {
+        LruCache.Entry<Rule> cached = resolved.get(channelName);
+        if (cached != null) {
+            return cached.value;
+        }
+        long stamp = resolved.stamp();
+        Rule rule = match(index, channelName);
+        resolved.put(channelName, rule, stamp);
+        return rule;
+    }
+
+    private static Rule match(Index index, String name) {
+        Node node = index.prefixes;
+        Rule best = best(null, node.rules, name);
+        for (int i = 0; i < name.length(); i++) {
+            node = node.child(name.charAt(i));
+            if (node == null) {
+                break;
+            }
+            best = best(best, node.rules, name);
+        }
+        node = index.suffixes;
+        for (int i = name.length() - 1; i >= 0; i--) {
+            node = node.child(name.charAt(i));
+            if (node == null) {
+                break;
+            }
+            best = best(best, node.rules, name);
+        }
+        return best;
+    }
+
+    private static Rule best(Rule best, Rule[] rules, String name) {
+        for (Rule rule : rules) {
+            // Skips the pattern match for rules that could not win anyway
+            if (rule.beats(best) && rule.matchesRest(name)) {
+                best = rule;
+            }
+        }
+        return best;
+    }
+
+    public long getCacheHitCount() {
+        return resolved.hits.sum();
+    }
+
+    public long getCacheMissCount() {
+        return resolved.misses.sum();
+    }
+
+    //---- Updating
+
+    /**
+     * @return A copy of the nodes from this one down the path, with the rule of that pattern at the path's end
+     * replaced by added, or removed if added is null. Nodes off the path are shared with the old trie.
+     */
+    private static Node update(Node node, char[] path, int depth, String pattern, Rule added) {
+        if (depth == path.length) {
+            List<Rule> rules = new ArrayList<>(node.rules.length + 1);
+            for (Rule rule : node.rules) {
+                if (!rule.pattern.equals(pattern)) {
+                    rules.add(rule);
+                }
+            }
+            if (added != null) {
+                rules.add(added);
+            }
+            return new Node(node.labels, node.children, rules.toArray(new Rule[0]));
+        }
+        int position = Arrays.binarySearch(node.labels, path[depth]);
+        if (position >= 0) {
+            Node[] children = node.children.clone();
+            children[position] = update(children[position], path, depth + 1, pattern, added);
+            return new Node(node.labels, children, node.rules);
+        }
+        // A removed rule's path always exists, so only an added one gets here
+        int insert = -position - 1;
+        char[] labels = new char[node.labels.length + 1];
+        Node[] children = new Node[node.children.length + 1];
+        System.arraycopy(node.labels, 0, labels, 0, insert);
+        System.arraycopy(node.children, 0, children, 0, insert);
+        labels[insert] = path[depth];
+        children[insert] = update(Node.EMPTY, path, depth + 1, pattern, added);
+        System.arraycopy(node.labels, insert, labels, insert + 1, node.labels.length - insert);
+        System.arraycopy(node.children, insert, children, insert + 1, node.children.length - insert);
+        return new Node(labels, children, node.rules);
+    }
+
+    /**
+     * Glob match of name[n..] against pattern[p..]. Backtracks only to the last '*', so runs in linear time
+     * for the usual patterns, and never worse than the product of the lengths.
+     */
+    static boolean glob(String pattern, int p, String name, int n) {
+        int star = -1;
+        int starMatch = 0;
+        while (n < name.length()) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == name.charAt(n))) {
+                p++;
+                n++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                starMatch = n;
+            } else if (star >= 0) {
+                // Lets the last '*' take one more character, and tries the rest of the pattern again
+                p = star + 1;
+                n = ++starMatch;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+}
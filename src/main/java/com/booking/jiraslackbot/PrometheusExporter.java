@@ -0,0 +1,134 @@
+package com.booking.jiraslackbot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Serves a MetricsRecorder's metrics in the Prometheus text format, e.g. registered as '/metrics' on an HttpServer.
+ * Latencies are histograms in seconds. Their buckets are cumulative counters, so Prometheus can work out quantiles
+ * over any recent window, e.g. histogram_quantile(0.99, rate(jirabot_action_latency_seconds_bucket[5m])),
+ * rather than quantiles over everything since the bot started.
+ */
+public class PrometheusExporter implements HttpHandler {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // From in-memory data manager calls up to Jira round trips
+    private static final double[] BUCKET_SECONDS = {0.00001, 0.000025, 0.00005, 0.0001, 0.00025, 0.0005, 0.001, 0.0025,
+            0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final long[] BUCKET_NANOS = new long[BUCKET_SECONDS.length];
+    private static final String[] BUCKET_LABELS = new String[BUCKET_SECONDS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+            BUCKET_NANOS[i] = Math.round(BUCKET_SECONDS[i] * 1e9);
+            BUCKET_LABELS[i] = BigDecimal.valueOf(BUCKET_SECONDS[i]).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    private final MetricsRecorder metrics;
+
+    public PrometheusExporter(MetricsRecorder metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] bytes = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * The current metrics, in the Prometheus text format.
+     */
+    public String scrape() {
+        StringBuilder text = new StringBuilder();
+        // Sorted, so the output is stable between scrapes
+        Map<String, MetricsRecorder.OperationStats> actions = new TreeMap<>(metrics.getAllActionStats());
+        Map<String, MetricsRecorder.OperationStats> operations = new TreeMap<>(metrics.getAllDataManagerStats());
+
+        writeLatencies(text, "jirabot_action_latency_seconds", "Time spent in each bot action", "action", actions);
+        text.append("# HELP jirabot_action_outcomes_total Actions by outcome\n");
+        text.append("# TYPE jirabot_action_outcomes_total counter\n");
+        actions.forEach((action, stats) -> {
+            for (ActionOutcome outcome : ActionOutcome.values()) {
+                long count = stats.getOutcomeCount(outcome);
+                if (count > 0) {
+                    text.append("jirabot_action_outcomes_total{action=\"").append(escape(action))
+                            .append("\",outcome=\"").append(outcome.name().toLowerCase()).append("\"} ").append(count).append('\n');
+                }
+            }
+            if (stats.getBusyCount() > 0) {
+                text.append("jirabot_action_outcomes_total{action=\"").append(escape(action))
+                        .append("\",outcome=\"busy\"} ").append(stats.getBusyCount()).append('\n');
+            }
+        });
+        writeErrors(text, "jirabot_action_errors_total", "Actions that failed with an error, by error type", "action", actions);
+        text.append("# HELP jirabot_action_datamanager_calls_total Data manager calls made by each action\n");
+        text.append("# TYPE jirabot_action_datamanager_calls_total counter\n");
+        actions.forEach((action, stats) -> text.append("jirabot_action_datamanager_calls_total{action=\"")
+                .append(escape(action)).append("\"} ").append(stats.getDataManagerCalls()).append('\n'));
+
+        writeLatencies(text, "jirabot_datamanager_latency_seconds", "Time spent in each data manager call", "operation",
+                operations);
+        writeErrors(text, "jirabot_datamanager_errors_total", "Data manager calls that failed, by error type", "operation",
+                operations);
+        return text.toString();
+    }
+
+    private static void writeLatencies(StringBuilder text, String name, String help, String label,
+                                       Map<String, MetricsRecorder.OperationStats> all) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" histogram\n");
+        all.forEach((operation, stats) -> {
+            String labels = label + "=\"" + escape(operation) + "\"";
+            long[] counts = stats.latency.getCumulativeCounts(BUCKET_NANOS);
+            for (int i = 0; i < BUCKET_LABELS.length; i++) {
+                text.append(name).append("_bucket{").append(labels).append(",le=\"").append(BUCKET_LABELS[i]).append("\"} ")
+                        .append(counts[i]).append('\n');
+            }
+            long total = counts[BUCKET_LABELS.length];
+            text.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(total).append('\n');
+            text.append(name).append("_sum{").append(labels).append("} ").append(seconds(stats.latency.getSum())).append('\n');
+            // From the same read as the buckets, so it always equals the +Inf bucket
+            text.append(name).append("_count{").append(labels).append("} ").append(total).append('\n');
+        });
+    }
+
+    private static void writeErrors(StringBuilder text, String name, String help, String label,
+                                    Map<String, MetricsRecorder.OperationStats> all) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" counter\n");
+        all.forEach((operation, stats) -> stats.getErrorCounts().forEach((type, count) ->
+                text.append(name).append('{').append(label).append("=\"").append(escape(operation))
+                        .append("\",type=\"").append(escape(type)).append("\"} ").append(count).append('\n')));
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    // Label values escape backslash, double quote and newline
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
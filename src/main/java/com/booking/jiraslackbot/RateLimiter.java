@@ -0,0 +1,117 @@
+package com.booking.jiraslackbot;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets keyed by name (a Slack user or a channel), for turning away commands from whoever sends too many.
+ *
+ * Each key may run permitsPerSecond commands on average, and up to burst at once after being idle.
+ * A bucket is a single timestamp updated by compare-and-set: the time at which it will be full again.
+ * Taking a token moves it on by one token's worth of time, and is refused if that would put it more than
+ * a full bucket ahead of now. So checking a key takes a map lookup and a CAS, with no lock and no allocation
+ * once the key has a bucket, and one busy key never slows down the others.
+ * A bucket that has filled up again holds nothing a new bucket would not, so idle buckets are dropped
+ * whenever there are more than maxBuckets. If every bucket is still in use, new keys share one overflow bucket.
+ */
+public class RateLimiter {
+
+    public static class Settings {
+        public double permitsPerSecond = 1;
+        public int burst = 10;
+        public int maxBuckets = 100_000;
+    }
+
+    private final long nanosPerPermit;
+    private final long burstNanos;
+    private final int maxBuckets;
+    // Key -> when the key's bucket will be full again, in System.nanoTime terms
+    private final ConcurrentMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong overflow = new AtomicLong(Long.MIN_VALUE);
+    // When idle buckets were last dropped. Sweeps are at least a full bucket's time apart, as a bucket
+    // that was busy at the last sweep can not be idle again any sooner.
+    private final AtomicLong lastSweep;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    public RateLimiter(Settings settings) {
+        if (settings.permitsPerSecond <= 0 || settings.burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.nanosPerPermit = Math.max(1, (long) (1_000_000_000L / settings.permitsPerSecond));
+        this.burstNanos = nanosPerPermit * settings.burst;
+        this.maxBuckets = settings.maxBuckets;
+        this.lastSweep = new AtomicLong(System.nanoTime() - burstNanos);
+    }
+
+    /**
+     * Takes a token from the key's bucket, if there is one.
+     * @return True if the key may go ahead
+     */
+    public boolean tryAcquire(String key) {
+        return tryAcquire(key, System.nanoTime());
+    }
+
+    boolean tryAcquire(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = newBucket(key, now);
+        }
+        while (true) {
+            long fullAt = bucket.get();
+            // A bucket that filled up a while ago is simply full
+            long next = Math.max(fullAt, now) + nanosPerPermit;
+            if (next - now > burstNanos) {
+                rejected.increment();
+                return false;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                admitted.increment();
+                return true;
+            }
+        }
+    }
+
+    private AtomicLong newBucket(String key, long now) {
+        if (buckets.size() >= maxBuckets) {
+            long sweptAt = lastSweep.get();
+            if (now - sweptAt >= burstNanos && lastSweep.compareAndSet(sweptAt, now)) {
+                evictIdle(now);
+            }
+            if (buckets.size() >= maxBuckets) {
+                return overflow;
+            }
+        }
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+    }
+
+    // Drops the buckets that are full again. A caller holding one it has just fetched may take a token
+    // from the dropped bucket, which at worst lets that key have one extra command.
+    private void evictIdle(long now) {
+        buckets.forEach((key, bucket) -> {
+            if (bucket.get() - now <= 0 && buckets.remove(key, bucket)) {
+                evicted.increment();
+            }
+        });
+    }
+
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    public long getAdmittedCount() {
+        return admitted.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getEvictedCount() {
+        return evicted.sum();
+    }
+}
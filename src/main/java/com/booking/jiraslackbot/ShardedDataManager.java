@@ -0,0 +1,541 @@
+package com.booking.jiraslackbot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Spreads channels over several underlying data managers (shards), by consistent hash of the channel name.
+ *
+ * A channel and all its memberships live on one shard. Operations on a channel go to that shard alone:
+ * by name through the hash ring, and by id because channel ids carry their shard in the low SHARD_BITS bits,
+ * above which is the shard's own id for the channel. Only the per-user listings visit every shard.
+ *
+ * addShard rebalances online: the channels the new shard takes over (about 1/N of them) are copied to it one at a time,
+ * while the others stay available throughout. A channel keeps its id when it moves; ids of moved channels
+ * are forwarded through a small table. A channel is briefly blocked while it is copied. The underlying stores
+ * have no delete, so the copy left on the old shard is ignored rather than removed.
+ */
+public class ShardedDataManager implements JiraBotDataManager {
+
+    static final int SHARD_BITS = 6;
+    static final int MAX_SHARDS = 1 << SHARD_BITS;
+    private static final int SHARD_MASK = MAX_SHARDS - 1;
+    // Points per shard on the hash ring. More points even out the share of each shard.
+    private static final int VIRTUAL_NODES = 128;
+
+    /**
+     * Which shard owns each channel name. While a shard is being added, previous is the ring before it,
+     * and names that move to the added shard stay with their previous owner until they have been copied.
+     */
+    private static class Routing {
+        final TreeMap<Integer, Integer> ring;
+        final Routing previous;
+        final int addedShard;
+
+        Routing(int shardCount, Routing previous, int addedShard) {
+            this.ring = new TreeMap<>();
+            for (int shard = 0; shard < shardCount; shard++) {
+                for (int point = 0; point < VIRTUAL_NODES; point++) {
+                    ring.put(hash(("shard-" + shard + "-" + point).hashCode()), shard);
+                }
+            }
+            this.previous = previous;
+            this.addedShard = addedShard;
+        }
+
+        int owner(String channelName) {
+            Map.Entry<Integer, Integer> point = ring.ceilingEntry(hash(channelName.hashCode()));
+            return point != null ? point.getValue() : ring.firstEntry().getValue();
+        }
+    }
+
+    private volatile JiraBotDataManager[] shards;
+    private volatile Routing routing;
+    // Names copied to the shard being added. Cleared once it has taken over all of its names.
+    private final Set<String> moved = ConcurrentHashMap.newKeySet();
+    // For channels that have moved: their id -> where they are now (shard and shard id, encoded like an id) ...
+    private final ConcurrentMap<Integer, Integer> forwardedIds = new ConcurrentHashMap<>();
+    // ... and every place they have been -> their id
+    private final ConcurrentMap<Integer, Integer> originalIds = new ConcurrentHashMap<>();
+    // Bumped as each channel moves, so the per-user listings can tell if one moved while they read
+    private final AtomicLong moves = new AtomicLong();
+    // Channel operations hold a read lock, on the stripe for the channel name or id; moving a channel holds both write locks
+    private final ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[64];
+
+    public ShardedDataManager(List<? extends JiraBotDataManager> shards) {
+        if (shards.isEmpty() || shards.size() > MAX_SHARDS) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_SHARDS + " shards are supported, not " + shards.size());
+        }
+        this.shards = shards.toArray(new JiraBotDataManager[0]);
+        this.routing = new Routing(shards.size(), null, -1);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * @return The number of channels moved by rebalancing so far
+     */
+    public long getMovedChannelCount() {
+        return moves.get();
+    }
+
+    /**
+     * The shard a channel currently lives on, e.g. to check the balance.
+     */
+    public int shardOf(int channelId) {
+        return location(channelId) & SHARD_MASK;
+    }
+
+    /**
+     * Adds a shard, and moves to it the channels it now owns. Requests keep being served while channels move.
+     * Returns once every channel is in place. Only one shard is added at a time.
+     * @return The number of channels moved
+     */
+    public synchronized int addShard(JiraBotDataManager shard) {
+        JiraBotDataManager[] current = shards;
+        if (current.length == MAX_SHARDS) {
+            throw new IllegalStateException("Already at the maximum of " + MAX_SHARDS + " shards");
+        }
+        int added = current.length;
+        JiraBotDataManager[] next = Arrays.copyOf(current, added + 1);
+        next[added] = shard;
+        Routing before = routing;
+        Routing rebalancing = new Routing(added + 1, before, added);
+        shards = next;
+        routing = rebalancing;
+        // A channel created on the ring before this one must be on its shard before that shard is listed
+        awaitChannelOperations();
+
+        int count = 0;
+        for (int from = 0; from < added; from++) {
+            for (ChannelInfo channel : current[from].getAllChannels()) {
+                // Skips copies left behind by earlier moves
+                if (rebalancing.owner(channel.channelName) == added && before.owner(channel.channelName) == from
+                        && move(channel.channelName, from, added)) {
+                    count++;
+                }
+            }
+        }
+        // New channels for the added shard were created on it directly, so it now holds all of its channels
+        routing = new Routing(added + 1, null, -1);
+        // Operations still routing by moved must finish before it is cleared
+        awaitChannelOperations();
+        moved.clear();
+        return count;
+    }
+
+    // Takes and releases every write lock, so channel operations that started before are done
+    private void awaitChannelOperations() {
+        for (ReentrantReadWriteLock lock : locks) {
+            lock.writeLock().lock();
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Copies a channel and its members, then points its name and id at the copy
+    private boolean move(String channelName, int from, int to) {
+        Lock nameLock = lock(channelName.hashCode()).writeLock();
+        nameLock.lock();
+        try {
+            ChannelInfo channel = shards[from].getChannelByName(channelName);
+            if (channel == null || moved.contains(channelName)) {
+                return false;
+            }
+            int oldLocation = encode(from, channel.channelId);
+            int channelId = originalIds.getOrDefault(oldLocation, oldLocation);
+            Lock idLock = lock(channelId).writeLock();
+            idLock.lock();
+            try {
+                Map<String, Boolean> members = new HashMap<>();
+                for (ChannelUser user : shards[from].getChannelUsers(channel.channelId)) {
+                    members.put(user.slackName, user.isAdmin);
+                }
+                int shardId = shards[to].addChannel(channelName, channel.jiraProject, channel.restricted);
+                if (!members.isEmpty()) {
+                    shards[to].addChannelUsers(shardId, members);
+                }
+                int newLocation = encode(to, shardId);
+                originalIds.putIfAbsent(oldLocation, channelId);
+                originalIds.put(newLocation, channelId);
+                forwardedIds.put(channelId, newLocation);
+                moved.add(channelName);
+                moves.incrementAndGet();
+                return true;
+            } finally {
+                idLock.unlock();
+            }
+        } finally {
+            nameLock.unlock();
+        }
+    }
+
+    //---- Routing
+
+    private int shardFor(String channelName) {
+        Routing current = routing;
+        int owner = current.owner(channelName);
+        if (current.previous != null && owner == current.addedShard && !moved.contains(channelName)) {
+            return current.previous.owner(channelName);
+        }
+        return owner;
+    }
+
+    // As shardFor, but a new channel for the shard being added is created there, rather than on its previous owner
+    private int shardForNewChannel(String channelName) {
+        Routing current = routing;
+        int owner = current.owner(channelName);
+        if (current.previous == null || owner != current.addedShard || moved.contains(channelName)) {
+            return owner;
+        }
+        int previousOwner = current.previous.owner(channelName);
+        if (shards[previousOwner].isExistingChannel(channelName)) {
+            return previousOwner;
+        }
+        moved.add(channelName);
+        return owner;
+    }
+
+    // Where the channel is now, encoded like an id
+    private int location(int channelId) {
+        if (forwardedIds.isEmpty()) {
+            return channelId;
+        }
+        Integer forwarded = forwardedIds.get(channelId);
+        return forwarded == null ? channelId : forwarded;
+    }
+
+    private int channelId(int shard, int shardChannelId) {
+        int location = encode(shard, shardChannelId);
+        if (originalIds.isEmpty()) {
+            return location;
+        }
+        Integer original = originalIds.get(location);
+        return original == null ? location : original;
+    }
+
+    static int encode(int shard, int shardChannelId) {
+        if (shardChannelId < 0 || shardChannelId > (Integer.MAX_VALUE >>> SHARD_BITS)) {
+            throw new IllegalStateException("Shard " + shard + " channel id out of range: " + shardChannelId);
+        }
+        return shardChannelId << SHARD_BITS | shard;
+    }
+
+    private ReentrantReadWriteLock lock(int hash) {
+        return locks[hash(hash) & (locks.length - 1)];
+    }
+
+    // Spreads the bits of a hash code (the MurmurHash3 finaliser)
+    static int hash(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private ChannelInfo translate(int shard, ChannelInfo channel) {
+        if (channel == null) {
+            return null;
+        }
+        ChannelInfo translated = new ChannelInfo();
+        translated.channelId = channelId(shard, channel.channelId);
+        translated.channelName = channel.channelName;
+        translated.jiraProject = channel.jiraProject;
+        translated.restricted = channel.restricted;
+        return translated;
+    }
+
+    private static ChannelUser translate(int channelId, ChannelUser user) {
+        if (user == null) {
+            return null;
+        }
+        ChannelUser translated = new ChannelUser();
+        translated.channelId = channelId;
+        translated.slackName = user.slackName;
+        translated.isAdmin = user.isAdmin;
+        return translated;
+    }
+
+    //---- Operations on one channel, by name
+
+    @Override
+    public ChannelInfo getChannelByName(String channelName) {
+        Lock lock = lock(channelName.hashCode()).readLock();
+        lock.lock();
+        try {
+            int shard = shardFor(channelName);
+            return translate(shard, shards[shard].getChannelByName(channelName));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isExistingChannel(String channelName) {
+        Lock lock = lock(channelName.hashCode()).readLock();
+        lock.lock();
+        try {
+            return shards[shardFor(channelName)].isExistingChannel(channelName);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int addChannel(String channelName, String jiraProject, boolean isRestricted) {
+        Lock lock = lock(channelName.hashCode()).readLock();
+        lock.lock();
+        try {
+            int shard = shardForNewChannel(channelName);
+            return channelId(shard, shards[shard].addChannel(channelName, jiraProject, isRestricted));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ChannelInfo createChannelIfAbsent(String channelName, String jiraProject, boolean isRestricted, String adminUser) {
+        Lock lock = lock(channelName.hashCode()).readLock();
+        lock.lock();
+        try {
+            int shard = shardForNewChannel(channelName);
+            return translate(shard, shards[shard].createChannelIfAbsent(channelName, jiraProject, isRestricted, adminUser));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ChannelAccess getChannelAccess(String channelName, String callingUser, String targetUser) {
+        Lock lock = lock(channelName.hashCode()).readLock();
+        lock.lock();
+        try {
+            int shard = shardFor(channelName);
+            ChannelAccess access = shards[shard].getChannelAccess(channelName, callingUser, targetUser);
+            ChannelInfo channel = translate(shard, access.channelInfo);
+            if (channel == null) {
+                return access;
+            }
+            return new ChannelAccess(channel, translate(channel.channelId, access.callingUser),
+                    translate(channel.channelId, access.targetUser));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //---- Operations on one channel, by id
+
+    @Override
+    public ChannelInfo getChannelById(int channelId) {
+        Lock lock = lock(channelId).readLock();
+        lock.lock();
+        try {
+            int location = location(channelId);
+            ChannelInfo channel = shards[location & SHARD_MASK].getChannelById(location >>> SHARD_BITS);
+            return translate(location & SHARD_MASK, channel);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isChannelAdmin(String slackUser, int channelId) {
+        Lock lock = lock(channelId).readLock();
+        lock.lock();
+        try {
+            int location = location(channelId);
+            return shards[location & SHARD_MASK].isChannelAdmin(slackUser, location >>> SHARD_BITS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void updateChannelDetails(int channelId, String jiraProject, boolean isRestricted) {
+        Lock lock = lock(channelId).readLock();
+        lock.lock();
+        try {
+            int location = location(channelId);
+            shards[location & SHARD_MASK].updateChannelDetails(location >>> SHARD_BITS, jiraProject, isRestricted);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addChannelUser(int channelId, String slackUser, boolean isAdmin) {
+        Lock lock = lock(channelId).readLock();
+        lock.lock();
+        try {
+            int location = location(channelId);
+            shards[location & SHARD_MASK].addChannelUser(location >>> SHARD_BITS, slackUser, isAdmin);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void addChannelUsers(int channelId, Map<String, Boolean> slackUsers) {
+        Lock lock = lock(channelId).readLock();
+        lock.lock();
+        try {
+            int location = location(channelId);
+            shards[location & SHARD_MASK].addChannelUsers(location >>> SHARD_BITS, slackUsers);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Set<ChannelUser> getChannelUsers(int channelId) {
+        Lock lock = lock(channelId).readLock();
+        lock.lock();
+        try {
+            int location = location(channelId);
+            Set<ChannelUser> users = new HashSet<>();
+            for (ChannelUser user : shards[location & SHARD_MASK].getChannelUsers(location >>> SHARD_BITS)) {
+                users.add(translate(channelId, user));
+            }
+            return users;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public MemberPage getChannelUsersPage(int channelId, String afterCursor, boolean adminsOnly, int pageSize) {
+        Lock lock = lock(channelId).readLock();
+        lock.lock();
+        try {
+            int location = location(channelId);
+            MemberPage page = shards[location & SHARD_MASK]
+                    .getChannelUsersPage(location >>> SHARD_BITS, afterCursor, adminsOnly, pageSize);
+            List<ChannelUser> users = new ArrayList<>(page.users.size());
+            for (ChannelUser user : page.users) {
+                users.add(translate(channelId, user));
+            }
+            return new MemberPage(users, page.nextCursor);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ChannelUser getChannelUser(int channelId, String slackUser) {
+        Lock lock = lock(channelId).readLock();
+        lock.lock();
+        try {
+            int location = location(channelId);
+            return translate(channelId, shards[location & SHARD_MASK].getChannelUser(location >>> SHARD_BITS, slackUser));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Map<String, ChannelUser> getChannelUsersByName(int channelId, Collection<String> slackUsers) {
+        Lock lock = lock(channelId).readLock();
+        lock.lock();
+        try {
+            int location = location(channelId);
+            Map<String, ChannelUser> users = new HashMap<>();
+            shards[location & SHARD_MASK].getChannelUsersByName(location >>> SHARD_BITS, slackUsers)
+                    .forEach((slackUser, user) -> users.put(slackUser, translate(channelId, user)));
+            return users;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean addChannelUserIfAbsent(int channelId, String slackUser, boolean isAdmin) {
+        Lock lock = lock(channelId).readLock();
+        lock.lock();
+        try {
+            int location = location(channelId);
+            return shards[location & SHARD_MASK].addChannelUserIfAbsent(location >>> SHARD_BITS, slackUser, isAdmin);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Set<String> addChannelUsersIfAbsent(int channelId, Map<String, Boolean> slackUsers) {
+        Lock lock = lock(channelId).readLock();
+        lock.lock();
+        try {
+            int location = location(channelId);
+            return shards[location & SHARD_MASK].addChannelUsersIfAbsent(location >>> SHARD_BITS, slackUsers);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean compareAndSetAdmin(int channelId, String slackUser, boolean expectedAdmin, boolean newAdmin) {
+        Lock lock = lock(channelId).readLock();
+        lock.lock();
+        try {
+            int location = location(channelId);
+            return shards[location & SHARD_MASK].compareAndSetAdmin(location >>> SHARD_BITS, slackUser, expectedAdmin, newAdmin);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //---- Listings, from every shard
+
+    @Override
+    public Set<ChannelInfo> getChannelsForUser(String slackUser) {
+        return fromEveryShard(shard -> shard.getChannelsForUser(slackUser));
+    }
+
+    @Override
+    public Set<ChannelInfo> getAdminChannelsForUser(String slackUser) {
+        return fromEveryShard(shard -> shard.getAdminChannelsForUser(slackUser));
+    }
+
+    @Override
+    public Set<ChannelInfo> getAllChannels() {
+        return fromEveryShard(JiraBotDataManager::getAllChannels);
+    }
+
+    // Keeps only each channel's current copy. Reads again if a channel moved meanwhile, as it could have been missed.
+    private Set<ChannelInfo> fromEveryShard(Function<JiraBotDataManager, Set<ChannelInfo>> read) {
+        while (true) {
+            long movesBefore = moves.get();
+            JiraBotDataManager[] current = shards;
+            List<ChannelInfo> found = new ArrayList<>();
+            for (int shard = 0; shard < current.length; shard++) {
+                for (ChannelInfo channel : read.apply(current[shard])) {
+                    ChannelInfo translated = translate(shard, channel);
+                    if (location(translated.channelId) == encode(shard, channel.channelId)) {
+                        found.add(translated);
+                    }
+                }
+            }
+            if (moves.get() == movesBefore) {
+                return new HashSet<>(found);
+            }
+        }
+    }
+}
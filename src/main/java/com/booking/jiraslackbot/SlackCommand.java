@@ -0,0 +1,114 @@
+package com.booking.jiraslackbot;
+
+/**
+ * A parsed '/jira' slash command, e.g. '/jira adduser @martha admin' typed in #team-channel.
+ *
+ * Supported commands:
+ *   project PROJECTKEY [restricted]
+ *   adduser @user [admin]
+ *   makeadmin @user
+ *   removeadmin @user
+ *   ticket summary of the ticket...
+ */
+public class SlackCommand {
+
+    public static final String USAGE = "Usage: /jira project PROJECTKEY [restricted] | adduser @user [admin] | " +
+            "makeadmin @user | removeadmin @user | ticket SUMMARY";
+
+    public enum Type {
+        PROJECT,
+        ADDUSER,
+        MAKEADMIN,
+        REMOVEADMIN,
+        TICKET
+    }
+
+    public Type type;
+    public String channelName;
+    public String callingUser;
+    // The Jira project for 'project', the summary for 'ticket', otherwise the target Slack user
+    public String argument;
+    // 'restricted' for 'project', 'admin' for 'adduser'
+    public boolean flag;
+    // Where to post the reply if it is not ready within Slack's reply window
+    public String responseUrl;
+    // Identifies the command across Slack's redeliveries of it (the trigger_id), or null if not known
+    public String requestId;
+
+    /**
+     * Parses the text typed after the slash command.
+     * @throws IllegalArgumentException with a usage message if the text is not a valid command
+     */
+    public static SlackCommand parse(String channelName, String callingUser, String text, String responseUrl) {
+        String[] words = text == null ? new String[0] : text.trim().split("\\s+");
+        // The summary is free text, so 'ticket' takes the rest of the line
+        if (words.length >= 2 && words[0].equalsIgnoreCase("ticket")) {
+            SlackCommand command = new SlackCommand();
+            command.type = Type.TICKET;
+            command.channelName = channelName;
+            command.callingUser = callingUser;
+            command.responseUrl = responseUrl;
+            command.argument = text.trim().substring(words[0].length()).trim();
+            return command;
+        }
+        if (words.length < 2 || words.length > 3) {
+            throw new IllegalArgumentException(USAGE);
+        }
+        SlackCommand command = new SlackCommand();
+        command.channelName = channelName;
+        command.callingUser = callingUser;
+        command.responseUrl = responseUrl;
+        switch (words[0].toLowerCase()) {
+            case "project":
+                command.type = Type.PROJECT;
+                command.argument = words[1];
+                command.flag = parseFlag(words, "restricted");
+                break;
+            case "adduser":
+                command.type = Type.ADDUSER;
+                command.argument = userName(words[1]);
+                command.flag = parseFlag(words, "admin");
+                break;
+            case "makeadmin":
+                command.type = Type.MAKEADMIN;
+                command.argument = userName(words[1]);
+                command.flag = parseFlag(words, null);
+                break;
+            case "removeadmin":
+                command.type = Type.REMOVEADMIN;
+                command.argument = userName(words[1]);
+                command.flag = parseFlag(words, null);
+                break;
+            default:
+                throw new IllegalArgumentException(USAGE);
+        }
+        return command;
+    }
+
+    // The optional third word must be the given flag
+    private static boolean parseFlag(String[] words, String flag) {
+        if (words.length < 3) {
+            return false;
+        }
+        if (flag == null || !flag.equalsIgnoreCase(words[2])) {
+            throw new IllegalArgumentException(USAGE);
+        }
+        return true;
+    }
+
+    // Accepts '@martha', 'martha', or Slack's escaped form '<@U024BE7LH|martha>'
+    private static String userName(String word) {
+        String name = word;
+        if (name.startsWith("<@") && name.endsWith(">")) {
+            int separator = name.indexOf('|');
+            name = separator < 0 ? name.substring(2, name.length() - 1) : name.substring(separator + 1, name.length() - 1);
+        }
+        if (name.startsWith("@")) {
+            name = name.substring(1);
+        }
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException(USAGE);
+        }
+        return name;
+    }
+}
@@ -0,0 +1,338 @@
+package com.booking.jiraslackbot;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs Slack commands against JiraBotActions, off the thread that received the request.
+ *
+ * Slack expects a reply within 3 seconds. Each command runs on its own (virtual, where available) thread,
+ * and the caller waits for at most the ack window: if the command has finished its result is the reply,
+ * otherwise the reply is an acknowledgement and the result is posted to the command's response_url when ready.
+ * At most maxInFlight commands run at once; beyond that, commands are turned away straight away, rather than
+ * queueing behind a slow data store. A command that runs past its timeout is interrupted and reported as timed out.
+ * Optional rate limits per Slack user and per channel turn away commands from whoever sends too many,
+ * before they take an in-flight slot or reach the data store, so one noisy user or channel can not crowd out the rest.
+ * With an IdempotencyCache set, a command redelivered by Slack with the same request id is not run again:
+ * it gets the first delivery's reply, or waits for it if that is still running.
+ * The data manager behind the actions must be safe for concurrent use.
+ */
+public class SlackCommandDispatcher implements AutoCloseable {
+
+    static final String BUSY_REPLY = "JiraBot is busy right now. Please try again in a moment.";
+    static final String WORKING_REPLY = "Working on it...";
+    static final String TIMEOUT_REPLY = "Sorry, that took too long. Please try again.";
+    static final String ERROR_REPLY = "Sorry, something went wrong. Please try again.";
+    static final String USER_RATE_LIMITED_REPLY = "You are sending commands too quickly. Please wait a moment and try again.";
+    static final String CHANNEL_RATE_LIMITED_REPLY = "This channel is sending commands too quickly. Please wait a moment and try again.";
+
+    // Leaves time within Slack's 3 second window to send the reply
+    static final long DEFAULT_ACK_WINDOW_MILLIS = 2000;
+
+    private final JiraBotActions actions;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final long ackWindowNanos;
+    private final long defaultTimeoutNanos;
+    private final Map<SlackCommand.Type, Long> timeoutNanos = new ConcurrentHashMap<>();
+    private volatile RateLimiter userRateLimiter;
+    private volatile RateLimiter channelRateLimiter;
+    private volatile IdempotencyCache<CompletableFuture<String>> replies;
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder responseFailures = new LongAdder();
+
+    public SlackCommandDispatcher(JiraBotActions actions, int maxInFlight, long commandTimeout, TimeUnit timeoutUnit) {
+        this(actions, newCommandExecutor(), maxInFlight, timeoutUnit.toNanos(commandTimeout),
+                TimeUnit.MILLISECONDS.toNanos(DEFAULT_ACK_WINDOW_MILLIS));
+    }
+
+    SlackCommandDispatcher(JiraBotActions actions, ExecutorService executor, int maxInFlight,
+                           long defaultTimeoutNanos, long ackWindowNanos) {
+        this.actions = actions;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.defaultTimeoutNanos = defaultTimeoutNanos;
+        this.ackWindowNanos = ackWindowNanos;
+    }
+
+    /**
+     * Overrides the timeout for one type of command, e.g. to give 'project' longer than the others.
+     */
+    public void setCommandTimeout(SlackCommand.Type type, long timeout, TimeUnit timeoutUnit) {
+        timeoutNanos.put(type, timeoutUnit.toNanos(timeout));
+    }
+
+    /**
+     * Limits the commands each Slack user and each channel may send. Either limiter may be null for no limit.
+     */
+    public void setRateLimiters(RateLimiter perUser, RateLimiter perChannel) {
+        this.userRateLimiter = perUser;
+        this.channelRateLimiter = perChannel;
+    }
+
+    /**
+     * Remembers each command's reply by its request id, so a redelivered command is answered without running again.
+     * May be null to run every delivery.
+     */
+    public void setIdempotencyCache(IdempotencyCache<CompletableFuture<String>> replies) {
+        this.replies = replies;
+    }
+
+    /**
+     * Starts the command, and waits at most the ack window for it.
+     * @return The reply to send to Slack straight away
+     */
+    public String dispatch(SlackCommand command) {
+        IdempotencyCache<CompletableFuture<String>> cache = replies;
+        String requestId = cache == null ? null : command.requestId;
+        if (requestId != null) {
+            // Checked first, so a redelivery does not use up the sender's rate limit either
+            CompletableFuture<String> earlier = cache.get(requestId);
+            if (earlier != null) {
+                duplicates.increment();
+                return awaitReply(earlier, null);
+            }
+        }
+        RateLimiter perUser = userRateLimiter;
+        if (perUser != null && !perUser.tryAcquire(command.callingUser)) {
+            rateLimited.increment();
+            return USER_RATE_LIMITED_REPLY;
+        }
+        RateLimiter perChannel = channelRateLimiter;
+        if (perChannel != null && !perChannel.tryAcquire(command.channelName)) {
+            rateLimited.increment();
+            return CHANNEL_RATE_LIMITED_REPLY;
+        }
+        if (!inFlight.tryAcquire()) {
+            rejected.increment();
+            return BUSY_REPLY;
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        if (requestId != null) {
+            CompletableFuture<String> earlier = cache.putIfAbsent(requestId, result);
+            if (earlier != null) {
+                // Another delivery of the same command got here first
+                inFlight.release();
+                duplicates.increment();
+                return awaitReply(earlier, null);
+            }
+            // Only replies from commands that ran are kept, so a delivery that failed or was turned away can be retried
+            result.whenComplete((reply, error) -> {
+                if (error != null || ERROR_REPLY.equals(reply) || BUSY_REPLY.equals(reply)) {
+                    cache.remove(requestId, result);
+                }
+            });
+        }
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                try {
+                    result.complete(execute(command));
+                } finally {
+                    // Only released when the command really stops, so a timed out command still counts until then
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            rejected.increment();
+            // Also answers any redelivery already waiting on this one
+            result.complete(BUSY_REPLY);
+            return BUSY_REPLY;
+        }
+        result.orTimeout(timeoutNanos.getOrDefault(command.type, defaultTimeoutNanos), TimeUnit.NANOSECONDS)
+                .whenComplete((reply, error) -> {
+                    if (error instanceof TimeoutException) {
+                        timedOut.increment();
+                        task.cancel(true);
+                    }
+                });
+        return awaitReply(result, command.responseUrl);
+    }
+
+    /**
+     * Waits at most the ack window for the reply.
+     * @param responseUrl Where to post the reply if it is not ready in time, or null if someone else posts it
+     */
+    private String awaitReply(CompletableFuture<String> result, String responseUrl) {
+        try {
+            return replyFor(result.get(ackWindowNanos, TimeUnit.NANOSECONDS), null);
+        } catch (TimeoutException e) {
+            // Not ready in time: acknowledge now, and post the result when it is ready
+            if (responseUrl != null) {
+                result.whenComplete((reply, error) -> postResponse(responseUrl, replyFor(reply, error)));
+            }
+            return WORKING_REPLY;
+        } catch (ExecutionException e) {
+            return replyFor(null, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return WORKING_REPLY;
+        }
+    }
+
+    private static String replyFor(String reply, Throwable error) {
+        if (error == null) {
+            return reply;
+        }
+        return error instanceof TimeoutException ? TIMEOUT_REPLY : ERROR_REPLY;
+    }
+
+    /**
+     * Runs the command, turning a rejection into a reply for the user.
+     */
+    String execute(SlackCommand command) {
+        try {
+            ActionOutcome outcome;
+            switch (command.type) {
+                case PROJECT:
+                    outcome = actions.tryRegisterProject(command.channelName, command.argument, command.flag,
+                            command.callingUser).outcome;
+                    return outcome.isSuccess() ? "#" + command.channelName + " is now linked to Jira project " + command.argument
+                            + (command.flag ? ". Only registered users can create tickets." : ".")
+                            : outcome.message(command.callingUser);
+                case ADDUSER:
+                    outcome = actions.tryAddUser(command.channelName, command.callingUser, command.argument, command.flag);
+                    return outcome.isSuccess() ? "Added @" + command.argument + " to #" + command.channelName
+                            + (command.flag ? " as an admin." : ".") : outcome.message(command.callingUser);
+                case MAKEADMIN:
+                    outcome = actions.tryMakeAdmin(command.channelName, command.callingUser, command.argument);
+                    return outcome.isSuccess() ? "@" + command.argument + " is now an admin of #" + command.channelName + "."
+                            : outcome.message(command.callingUser);
+                case REMOVEADMIN:
+                    outcome = actions.tryRemoveAdmin(command.channelName, command.callingUser, command.argument);
+                    return outcome.isSuccess() ? "@" + command.argument + " is no longer an admin of #" + command.channelName + "."
+                            : outcome.message(command.callingUser);
+                case TICKET:
+                    // Waits for the ticket's batch to reach Jira; past the ack window the reply goes to response_url
+                    return ticketReply(actions.createTicket(command.channelName, command.callingUser, command.argument, null)
+                            .get(), command.callingUser);
+                default:
+                    return SlackCommand.USAGE;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ERROR_REPLY;
+        } catch (RuntimeException | ExecutionException e) {
+            return ERROR_REPLY;
+        }
+    }
+
+    private static String ticketReply(TicketResult result, String slackUser) {
+        switch (result.status) {
+            case CREATED:
+                return "Created " + result.issueKey + ".";
+            case REJECTED:
+                return result.rejection.message(slackUser);
+            case BUSY:
+                return BUSY_REPLY;
+            default:
+                return "Jira could not create the ticket: " + result.error;
+        }
+    }
+
+    private void postResponse(String responseUrl, String text) {
+        // Sending may block, so it runs on a command thread rather than the thread that completed the command
+        try {
+            executor.execute(() -> {
+                try {
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(responseUrl))
+                            .timeout(Duration.ofSeconds(10))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(ephemeralMessage(text)))
+                            .build();
+                    HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() / 100 != 2) {
+                        responseFailures.increment();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    responseFailures.increment();
+                } catch (InterruptedException e) {
+                    responseFailures.increment();
+                    Thread.currentThread().interrupt();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            responseFailures.increment();
+        }
+    }
+
+    /**
+     * A Slack message that only the user who typed the command can see.
+     */
+    static String ephemeralMessage(String text) {
+        return "{\"response_type\":\"ephemeral\",\"text\":" + Json.quote(text) + "}";
+    }
+
+    // Virtual threads where the runtime has them (Java 21+), otherwise platform threads.
+    // Either way the number of running commands is bounded by maxInFlight.
+    static ExecutorService newCommandExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "jirabot-command");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public int getInFlightCount() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return The commands turned away by the per-user or per-channel rate limits
+     */
+    public long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    /**
+     * @return The redelivered commands answered with an earlier delivery's reply
+     */
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timedOut.sum();
+    }
+
+    public long getResponseFailureCount() {
+        return responseFailures.sum();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
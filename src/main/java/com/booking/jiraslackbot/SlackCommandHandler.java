@@ -0,0 +1,110 @@
+package com.booking.jiraslackbot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HTTP endpoint for the '/jira' slash command, e.g. registered on a com.sun.net.httpserver.HttpServer.
+ * Checks Slack's request signature, parses the form body and hands the command to the dispatcher,
+ * replying within Slack's 3 second window.
+ */
+public class SlackCommandHandler implements HttpHandler {
+
+    // Slash command bodies are a few KB at most. Anything larger is refused before the signature is checked,
+    // so unauthenticated clients can not make the bot buffer arbitrary amounts.
+    static final int MAX_BODY_BYTES = 16 * 1024;
+
+    private final SlackSignatureVerifier verifier;
+    private final SlackCommandDispatcher dispatcher;
+
+    public SlackCommandHandler(SlackSignatureVerifier verifier, SlackCommandDispatcher dispatcher) {
+        this.verifier = verifier;
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "");
+                return;
+            }
+            String length = exchange.getRequestHeaders().getFirst("Content-Length");
+            if (length != null && isTooLong(length)) {
+                send(exchange, 413, "");
+                return;
+            }
+            // Reads one byte past the cap, to tell a body of exactly the cap from a longer one without a length
+            byte[] bytes = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                send(exchange, 413, "");
+                return;
+            }
+            String body = new String(bytes, StandardCharsets.UTF_8);
+            if (!verifier.verify(exchange.getRequestHeaders().getFirst(SlackSignatureVerifier.TIMESTAMP_HEADER),
+                    exchange.getRequestHeaders().getFirst(SlackSignatureVerifier.SIGNATURE_HEADER), body)) {
+                send(exchange, 401, "");
+                return;
+            }
+            Map<String, String> form = parseForm(body);
+            String reply;
+            try {
+                SlackCommand command = SlackCommand.parse(form.get("channel_name"), form.get("user_name"),
+                        form.get("text"), form.get("response_url"));
+                command.requestId = form.get("trigger_id");
+                reply = dispatcher.dispatch(command);
+            } catch (IllegalArgumentException e) {
+                reply = e.getMessage();
+            }
+            send(exchange, 200, SlackCommandDispatcher.ephemeralMessage(reply));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static boolean isTooLong(String contentLength) {
+        try {
+            return Long.parseLong(contentLength.trim()) > MAX_BODY_BYTES;
+        } catch (NumberFormatException e) {
+            // Left to the capped read
+            return false;
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+        }
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Parses an application/x-www-form-urlencoded body, as Slack sends for slash commands.
+     */
+    static Map<String, String> parseForm(String body) {
+        Map<String, String> form = new HashMap<>();
+        for (String pair : body.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            form.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return form;
+    }
+}
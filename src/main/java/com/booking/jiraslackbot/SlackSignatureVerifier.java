@@ -0,0 +1,69 @@
+package com.booking.jiraslackbot;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.function.LongSupplier;
+
+/**
+ * Checks that a request really comes from Slack, using the app's signing secret.
+ * Slack sends X-Slack-Signature: "v0=" + hex(HMAC-SHA256(secret, "v0:" + timestamp + ":" + body)),
+ * and X-Slack-Request-Timestamp. Requests older than five minutes are rejected, so they cannot be replayed.
+ */
+public class SlackSignatureVerifier {
+
+    public static final String SIGNATURE_HEADER = "X-Slack-Signature";
+    public static final String TIMESTAMP_HEADER = "X-Slack-Request-Timestamp";
+
+    private static final long MAX_AGE_SECONDS = 5 * 60;
+
+    private final byte[] signingSecret;
+    private final LongSupplier epochSeconds;
+
+    public SlackSignatureVerifier(String signingSecret) {
+        this(signingSecret, () -> System.currentTimeMillis() / 1000);
+    }
+
+    SlackSignatureVerifier(String signingSecret, LongSupplier epochSeconds) {
+        this.signingSecret = signingSecret.getBytes(StandardCharsets.UTF_8);
+        this.epochSeconds = epochSeconds;
+    }
+
+    public boolean verify(String timestamp, String signature, String body) {
+        if (timestamp == null || signature == null) {
+            return false;
+        }
+        long requestTime;
+        try {
+            requestTime = Long.parseLong(timestamp);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (Math.abs(epochSeconds.getAsLong() - requestTime) > MAX_AGE_SECONDS) {
+            return false;
+        }
+        // Constant time comparison, so the signature cannot be guessed byte by byte
+        return MessageDigest.isEqual(sign(timestamp, body).getBytes(StandardCharsets.UTF_8),
+                signature.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Computes the signature Slack would send for this request.
+     */
+    public String sign(String timestamp, String body) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(signingSecret, "HmacSHA256"));
+            byte[] digest = mac.doFinal(("v0:" + timestamp + ":" + body).getBytes(StandardCharsets.UTF_8));
+            StringBuilder signature = new StringBuilder("v0=");
+            for (byte b : digest) {
+                signature.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return signature.toString();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Unable to sign Slack request", e);
+        }
+    }
+}
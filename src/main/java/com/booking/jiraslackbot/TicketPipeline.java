@@ -0,0 +1,339 @@
+package com.booking.jiraslackbot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends tickets to Jira in bulk-create calls rather than one call per ticket.
+ *
+ * Submitted tickets wait in a bounded queue. A batcher thread takes up to maxBatchSize of them, waiting at most
+ * lingerMillis for a batch to fill, and hands each batch to one of maxConcurrentBatches senders.
+ * When all senders are busy the batcher waits, the queue fills, and new tickets are turned away as BUSY (backpressure).
+ * A ticket identical to one submitted within dedupWindowMillis (same project, summary, description and reporter)
+ * is not sent again: it shares the first ticket's result.
+ * Calls that fail with 429 or 5xx, or do not reach Jira, are retried with exponential backoff and jitter,
+ * honouring Retry-After, up to maxAttempts times. A Retry-After longer than maxBackoffMillis fails the batch
+ * instead, so a sender, and the tickets waiting on it, are never held for longer than that between attempts.
+ */
+public class TicketPipeline implements AutoCloseable {
+
+    public static class Settings {
+        public int queueCapacity = 1000;
+        // Jira accepts at most 50 issues per bulk call
+        public int maxBatchSize = 50;
+        public long lingerMillis = 100;
+        public int maxConcurrentBatches = 2;
+        public long dedupWindowMillis = 10_000;
+        public int maxAttempts = 5;
+        public long baseBackoffMillis = 200;
+        public long maxBackoffMillis = 10_000;
+    }
+
+    private static class Pending {
+        final TicketRequest ticket;
+        final String dedupKey;
+        final long submittedAt;
+        final CompletableFuture<TicketResult> result = new CompletableFuture<>();
+
+        Pending(TicketRequest ticket, String dedupKey, long submittedAt) {
+            this.ticket = ticket;
+            this.dedupKey = dedupKey;
+            this.submittedAt = submittedAt;
+        }
+    }
+
+    private final JiraClient jiraClient;
+    private final Settings settings;
+    private final BlockingQueue<Pending> queue;
+    // Recently submitted tickets, by dedup key
+    private final ConcurrentMap<String, Pending> recent = new ConcurrentHashMap<>();
+    private final Semaphore senderPermits;
+    private final ExecutorService senders;
+    private final Thread batcher;
+    private volatile boolean running = true;
+    private long lastPurge;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public TicketPipeline(JiraClient jiraClient) {
+        this(jiraClient, new Settings());
+    }
+
+    public TicketPipeline(JiraClient jiraClient, Settings settings) {
+        this.jiraClient = jiraClient;
+        this.settings = settings;
+        this.queue = new ArrayBlockingQueue<>(settings.queueCapacity);
+        this.senderPermits = new Semaphore(settings.maxConcurrentBatches);
+        this.senders = Executors.newFixedThreadPool(settings.maxConcurrentBatches, runnable -> {
+            Thread thread = new Thread(runnable, "jira-ticket-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batcher = new Thread(this::runBatcher, "jira-ticket-batcher");
+        this.batcher.setDaemon(true);
+        this.batcher.start();
+    }
+
+    /**
+     * Queues the ticket for creation.
+     * @return The ticket's result, once Jira has answered (or straight away, if the pipeline is full)
+     */
+    public CompletableFuture<TicketResult> submit(TicketRequest ticket) {
+        submitted.increment();
+        long now = System.nanoTime();
+        long window = TimeUnit.MILLISECONDS.toNanos(settings.dedupWindowMillis);
+        Pending fresh = new Pending(ticket, dedupKey(ticket), now);
+        Pending pending = recent.compute(fresh.dedupKey,
+                (key, existing) -> existing != null && now - existing.submittedAt < window ? existing : fresh);
+        if (pending != fresh) {
+            duplicates.increment();
+            return pending.result;
+        }
+        if (!running || !queue.offer(fresh)) {
+            turnAway(fresh);
+            return fresh.result;
+        }
+        // close() may have drained the queue between the check and the offer. Whoever takes the ticket out answers it.
+        if (!running && queue.remove(fresh)) {
+            turnAway(fresh);
+        }
+        return fresh.result;
+    }
+
+    private void turnAway(Pending pending) {
+        recent.remove(pending.dedupKey, pending);
+        rejected.increment();
+        pending.result.complete(TicketResult.busy());
+    }
+
+    private static String dedupKey(TicketRequest ticket) {
+        return ticket.jiraProject + '\u0000' + ticket.summary + '\u0000' + ticket.description + '\u0000' + ticket.reporter;
+    }
+
+    private void runBatcher() {
+        while (running) {
+            // Held here until a sender takes it, so closing can answer it
+            List<Pending> batch = null;
+            try {
+                Pending first = queue.poll(1, TimeUnit.SECONDS);
+                purgeRecent();
+                if (first == null) {
+                    continue;
+                }
+                batch = new ArrayList<>(settings.maxBatchSize);
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.lingerMillis);
+                while (batch.size() < settings.maxBatchSize) {
+                    queue.drainTo(batch, settings.maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= settings.maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // Waits for a free sender, so a slow Jira backs up into the queue
+                senderPermits.acquire();
+                try {
+                    senders.execute(new SendTask(batch));
+                } catch (RejectedExecutionException e) {
+                    // Closed while waiting for the sender
+                    senderPermits.release();
+                    answerBusy(batch);
+                    return;
+                }
+                batches.increment();
+            } catch (InterruptedException e) {
+                // Closed while gathering the batch or waiting for a sender
+                Thread.currentThread().interrupt();
+                if (batch != null) {
+                    answerBusy(batch);
+                }
+                return;
+            }
+        }
+    }
+
+    private final class SendTask implements Runnable {
+        final List<Pending> batch;
+
+        SendTask(List<Pending> batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void run() {
+            try {
+                send(batch);
+            } finally {
+                senderPermits.release();
+            }
+        }
+    }
+
+    private void send(List<Pending> batch) {
+        List<TicketRequest> tickets = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            tickets.add(pending.ticket);
+        }
+        String lastError = null;
+        for (int attempt = 1; attempt <= settings.maxAttempts; attempt++) {
+            long retryAfterMillis = -1;
+            try {
+                JiraClient.BulkResponse response = jiraClient.bulkCreate(tickets);
+                if (!response.isRetryable()) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        complete(batch.get(i), response.issueKeys[i] != null
+                                ? TicketResult.created(response.issueKeys[i]) : TicketResult.failed(response.errors[i]));
+                    }
+                    return;
+                }
+                lastError = "Jira returned " + response.status;
+                retryAfterMillis = response.retryAfterMillis;
+                if (retryAfterMillis > settings.maxBackoffMillis) {
+                    for (Pending pending : batch) {
+                        complete(pending, TicketResult.failed(
+                                lastError + " and asked to retry after " + retryAfterMillis / 1000 + "s"));
+                    }
+                    return;
+                }
+            } catch (IOException e) {
+                lastError = "Unable to reach Jira: " + e.getMessage();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lastError = "Interrupted";
+                break;
+            } catch (RuntimeException e) {
+                // Not something a retry would fix. Every ticket is answered, so none is left waiting, nor its duplicates.
+                for (Pending pending : batch) {
+                    complete(pending, TicketResult.failed("Unable to create tickets in Jira: " + e));
+                }
+                return;
+            }
+            if (attempt < settings.maxAttempts) {
+                retries.increment();
+                try {
+                    Thread.sleep(Math.max(retryAfterMillis, backoffMillis(attempt)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        for (Pending pending : batch) {
+            complete(pending, TicketResult.failed(lastError + " after retrying"));
+        }
+    }
+
+    // Exponential backoff with "equal jitter": half the delay is fixed, half random, so concurrent senders spread out
+    long backoffMillis(int attempt) {
+        long cap = Math.min(settings.maxBackoffMillis, settings.baseBackoffMillis << Math.min(attempt - 1, 20));
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    private void complete(Pending pending, TicketResult result) {
+        if (result.status == TicketResult.Status.CREATED) {
+            created.increment();
+        } else {
+            failed.increment();
+            // A failed ticket may be submitted again straight away
+            recent.remove(pending.dedupKey, pending);
+        }
+        pending.result.complete(result);
+    }
+
+    // Forgets tickets older than the dedup window. Only called from the batcher thread.
+    private void purgeRecent() {
+        long now = System.nanoTime();
+        long window = TimeUnit.MILLISECONDS.toNanos(settings.dedupWindowMillis);
+        if (now - lastPurge < window / 2) {
+            return;
+        }
+        lastPurge = now;
+        recent.values().removeIf(pending -> now - pending.submittedAt >= window);
+    }
+
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Stops taking tickets. Batches being sent are interrupted and fail; every other ticket is answered as BUSY,
+     * so no result is left pending.
+     */
+    @Override
+    public void close() {
+        running = false;
+        batcher.interrupt();
+        try {
+            // Once the batcher has stopped, nothing else is handed to the senders
+            batcher.join();
+        } catch (InterruptedException e) {
+            // The batcher answers its own batch if the senders refuse it
+            Thread.currentThread().interrupt();
+        }
+        for (Runnable unsent : senders.shutdownNow()) {
+            answerBusy(((SendTask) unsent).batch);
+        }
+        List<Pending> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        answerBusy(remaining);
+    }
+
+    private void answerBusy(List<Pending> batch) {
+        for (Pending pending : batch) {
+            recent.remove(pending.dedupKey, pending);
+            pending.result.complete(TicketResult.busy());
+        }
+    }
+}
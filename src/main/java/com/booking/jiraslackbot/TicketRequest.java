@@ -0,0 +1,20 @@
+package com.booking.jiraslackbot;
+
+/**
+ * A ticket to create in Jira, once the channel's project has been resolved and the reporter authorised.
+ */
+public class TicketRequest {
+    public String jiraProject;
+    public String summary;
+    public String description;
+    public String channelName;
+    public String reporter;
+
+    public TicketRequest(String jiraProject, String summary, String description, String channelName, String reporter) {
+        this.jiraProject = jiraProject;
+        this.summary = summary;
+        this.description = description;
+        this.channelName = channelName;
+        this.reporter = reporter;
+    }
+}
@@ -0,0 +1,55 @@
+package com.booking.jiraslackbot;
+
+/**
+ * What happened to one ticket: created (with its Jira key), rejected before reaching Jira,
+ * turned away because the pipeline was full, or failed in Jira.
+ */
+public final class TicketResult {
+
+    public enum Status {
+        CREATED,
+        REJECTED,
+        BUSY,
+        FAILED
+    }
+
+    private static final TicketResult BUSY = new TicketResult(Status.BUSY, null, null, null);
+    private static final TicketResult[] REJECTED = new TicketResult[ActionOutcome.values().length];
+
+    static {
+        for (ActionOutcome outcome : ActionOutcome.values()) {
+            REJECTED[outcome.ordinal()] = new TicketResult(Status.REJECTED, null, outcome, null);
+        }
+    }
+
+    public final Status status;
+    // Set when CREATED, e.g. "OPS-123"
+    public final String issueKey;
+    // Set when REJECTED
+    public final ActionOutcome rejection;
+    // Set when FAILED
+    public final String error;
+
+    private TicketResult(Status status, String issueKey, ActionOutcome rejection, String error) {
+        this.status = status;
+        this.issueKey = issueKey;
+        this.rejection = rejection;
+        this.error = error;
+    }
+
+    static TicketResult created(String issueKey) {
+        return new TicketResult(Status.CREATED, issueKey, null, null);
+    }
+
+    static TicketResult rejected(ActionOutcome outcome) {
+        return REJECTED[outcome.ordinal()];
+    }
+
+    static TicketResult busy() {
+        return BUSY;
+    }
+
+    static TicketResult failed(String error) {
+        return new TicketResult(Status.FAILED, null, null, error);
+    }
+}
@@ -0,0 +1,59 @@
+package com.booking.jiraslackbot;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps Slack user names to dense int ids, starting at 1, so each name is stored once
+ * no matter how many channels the user belongs to. Ids are never reused or removed.
+ */
+class UserDictionary {
+
+    static final int UNKNOWN = 0;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    // Index: user id. Only replaced or written while holding the lock on this.
+    private volatile String[] names = new String[1024];
+    private int size;
+
+    /**
+     * @return The id of the user, or UNKNOWN if the user has never been added
+     */
+    int idOf(String slackUser) {
+        Integer id = ids.get(slackUser);
+        return id == null ? UNKNOWN : id;
+    }
+
+    /**
+     * @return The id of the user, adding the user if needed
+     */
+    int intern(String slackUser) {
+        Integer id = ids.get(slackUser);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(slackUser);
+            if (id != null) {
+                return id;
+            }
+            int newId = ++size;
+            if (newId >= names.length) {
+                names = Arrays.copyOf(names, names.length * 2);
+            }
+            names[newId] = slackUser;
+            // Published last, so anyone who can see the id can also see the name
+            ids.put(slackUser, newId);
+            return newId;
+        }
+    }
+
+    String nameOf(int userId) {
+        return names[userId];
+    }
+
+    int size() {
+        return ids.size();
+    }
+}
@@ -98,6 +98,58 @@ public class MemorySetDataManager implements JiraBotDataManager {
         return users.stream().filter(u -> u.channelId == channelId).collect(Collectors.toSet());
     }
 
+    @Override
+    public MemberPage getChannelUsersPage(int channelId, String afterCursor, boolean adminsOnly, int pageSize) {
+        MemberPage.Collector page = new MemberPage.Collector(afterCursor, pageSize);
+        users.stream().filter(u -> u.channelId == channelId && (u.isAdmin || !adminsOnly)).forEach(page::offer);
+        return page.toPage();
+    }
+
+    @Override
+    public Set<ChannelInfo> getChannelsForUser(String slackUser) {
+        return users.stream().filter(u -> slackUser.equals(u.slackName))
+                .map(u -> getChannelById(u.channelId)).collect(Collectors.toSet());
+    }
+
+    @Override
+    public Set<ChannelInfo> getAdminChannelsForUser(String slackUser) {
+        return users.stream().filter(u -> slackUser.equals(u.slackName) && u.isAdmin)
+                .map(u -> getChannelById(u.channelId)).collect(Collectors.toSet());
+    }
+
+    @Override
+    public Set<ChannelInfo> getAllChannels() {
+        return new HashSet<>(channels);
+    }
+
+    @Override
+    public ChannelInfo createChannelIfAbsent(String channelName, String jiraProject, boolean isRestricted, String adminUser) {
+        if (isExistingChannel(channelName)) {
+            return null;
+        }
+        int channelId = addChannel(channelName, jiraProject, isRestricted);
+        addChannelUser(channelId, adminUser, true);
+        return getChannelById(channelId);
+    }
+
+    @Override
+    public boolean addChannelUserIfAbsent(int channelId, String slackUser, boolean isAdmin) {
+        if (getChannelUser(channelId, slackUser) != null) {
+            return false;
+        }
+        addChannelUser(channelId, slackUser, isAdmin);
+        return true;
+    }
+
+    @Override
+    public boolean compareAndSetAdmin(int channelId, String slackUser, boolean expectedAdmin, boolean newAdmin) {
+        if (isChannelAdmin(slackUser, channelId) != expectedAdmin) {
+            return false;
+        }
+        addChannelUser(channelId, slackUser, newAdmin);
+        return true;
+    }
+
     private int getNewChannelId() {
         return ++lastChannelId;
     }
@@ -0,0 +1,125 @@
+package com.booking.jiraslackbot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@SuppressWarnings("SimplifiableAssertion")
+public class TestAsyncJiraBotActions {
+
+    ExecutorService executor;
+    IndexedMemoryDataManager dataManager;
+    AsyncJiraBotActions actions;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        dataManager = new IndexedMemoryDataManager();
+        actions = new AsyncJiraBotActions(new AsyncDataManagerAdapter(dataManager, executor));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testActionsCompleteAgainstTheStore() throws Exception {
+        int channelId = actions.registerProject("test-channel", "JiraProject1", false, "admin").get();
+        assertTrue(dataManager.isChannelAdmin("admin", channelId));
+
+        actions.addUser("test-channel", "admin", "martha", false).get();
+        assertFalse(dataManager.isChannelAdmin("martha", channelId));
+        actions.makeAdmin("test-channel", "admin", "martha").get();
+        assertTrue(dataManager.isChannelAdmin("martha", channelId));
+        actions.removeAdmin("test-channel", "martha", "admin").get();
+        assertFalse(dataManager.isChannelAdmin("admin", channelId));
+
+        Map<String, Boolean> newUsers = new LinkedHashMap<>();
+        newUsers.put("admin", true);
+        newUsers.put("bob", false);
+        Map<String, JiraBotActions.AddUserOutcome> outcomes = actions.addUsers("test-channel", "martha", newUsers).get();
+        assertEquals(JiraBotActions.AddUserOutcome.ALREADY_REGISTERED, outcomes.get("admin"));
+        assertEquals(JiraBotActions.AddUserOutcome.ADDED, outcomes.get("bob"));
+
+        assertEquals(channelId, (int) actions.registerProject("test-channel", "JiraProject2", true, "martha").get());
+        assertEquals("JiraProject2", dataManager.getChannelById(channelId).jiraProject);
+        assertEquals(1, actions.getAdminChannelsForUser("martha").get().size());
+    }
+
+    @Test
+    public void testActionsFailWithTheSameErrors() throws Exception {
+        assertFailsWith(JiraBotActions.UnregisteredChannelError.class, actions.addUser("test-channel", "admin", "martha", false));
+        actions.registerProject("test-channel", "JiraProject1", false, "admin").get();
+
+        assertFailsWith(JiraBotActions.UnauthorisedAccessError.class,
+                actions.registerProject("test-channel", "JiraProject2", false, "martha"));
+        assertFailsWith(JiraBotActions.UnauthorisedAccessError.class, actions.makeAdmin("test-channel", "martha", "martha"));
+        assertFailsWith(JiraBotActions.InvalidActionError.class, actions.makeAdmin("test-channel", "admin", "admin"));
+        assertFailsWith(JiraBotActions.InvalidActionError.class, actions.removeAdmin("test-channel", "admin", "martha"));
+        actions.addUser("test-channel", "admin", "martha", false).get();
+        assertFailsWith(JiraBotActions.InvalidActionError.class, actions.addUser("test-channel", "admin", "martha", true));
+    }
+
+    @Test
+    public void testCallerAndTargetLookupsRunConcurrently() throws Exception {
+        // A store without a combined query: each membership lookup only completes once both have been issued
+        CountDownLatch bothIssued = new CountDownLatch(2);
+        AsyncDataManagerAdapter separateLookups = new AsyncDataManagerAdapter(dataManager, executor) {
+            @Override
+            public CompletableFuture<ChannelAccess> getChannelAccess(String channelName, String callingUser, String targetUser) {
+                return AsyncJiraBotDataManager.composeChannelAccess(this, channelName, callingUser, targetUser);
+            }
+
+            @Override
+            public CompletableFuture<Map<String, ChannelUser>> getChannelUsersByName(int channelId,
+                                                                                     Collection<String> slackUsers) {
+                return AsyncJiraBotDataManager.composeChannelUsersByName(this, channelId, slackUsers);
+            }
+
+            @Override
+            public CompletableFuture<ChannelUser> getChannelUser(int channelId, String slackUser) {
+                bothIssued.countDown();
+                return super.getChannelUser(channelId, slackUser).thenApplyAsync(user -> {
+                    try {
+                        if (!bothIssued.await(5, TimeUnit.SECONDS)) {
+                            throw new IllegalStateException("Lookups were issued one after the other");
+                        }
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return user;
+                }, executor);
+            }
+        };
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+        dataManager.addChannelUser(channelId, "admin", true);
+        dataManager.addChannelUser(channelId, "martha", false);
+
+        new AsyncJiraBotActions(separateLookups).makeAdmin("test-channel", "admin", "martha").get(10, TimeUnit.SECONDS);
+
+        assertTrue(dataManager.isChannelAdmin("martha", channelId));
+    }
+
+    private static void assertFailsWith(Class<? extends Throwable> expected, CompletableFuture<?> action)
+            throws InterruptedException {
+        try {
+            action.get();
+            fail("Expected " + expected.getSimpleName());
+        } catch (ExecutionException e) {
+            assertEquals(expected, e.getCause().getClass());
+        }
+    }
+}
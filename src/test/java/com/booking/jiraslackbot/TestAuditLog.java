@@ -0,0 +1,212 @@
+package com.booking.jiraslackbot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class TestAuditLog {
+
+    Path directory;
+    List<AuditLog> logs = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("jirabot-audit");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        logs.forEach(AuditLog::close);
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private AuditLog open(AuditLog.Settings settings) throws IOException {
+        AuditLog log = new AuditLog(directory, settings);
+        logs.add(log);
+        return log;
+    }
+
+    private List<AuditEntry> query(String channel, String user) throws IOException {
+        List<AuditEntry> entries = new ArrayList<>();
+        AuditLogQuery.query(directory, channel, user, entries::add);
+        return entries;
+    }
+
+    private static AuditEntry entry(String actor, String channel, String target) {
+        return new AuditEntry(System.currentTimeMillis(), actor, AuditEntry.Action.ADD_USER, channel, target,
+                AuditEntry.NONE, AuditEntry.MEMBER);
+    }
+
+    @Test
+    public void testActionsAreAuditedWithBeforeAndAfterState() throws Throwable {
+        AuditLog log = open(new AuditLog.Settings());
+        JiraBotActions actions = new JiraBotActions(new IndexedMemoryDataManager());
+        actions.setAuditLog(log);
+
+        actions.registerProject("team-channel", "JIRA1", false, "olivia");
+        actions.registerProject("team-channel", "JIRA2", true, "olivia");
+        actions.addUser("team-channel", "olivia", "martha", false);
+        actions.makeAdmin("team-channel", "olivia", "martha");
+        actions.removeAdmin("team-channel", "martha", "olivia");
+        Map<String, Boolean> team = new LinkedHashMap<>();
+        team.put("jack", false);
+        team.put("martha", false);
+        actions.addUsers("team-channel", "martha", team);
+        actions.registerProject("other-channel", "JIRA3", false, "jack");
+        // Rejected commands change nothing, so are not audited
+        assertFalse(actions.tryAddUser("team-channel", "jack", "rose", false).isSuccess());
+        log.close();
+
+        List<AuditEntry> entries = query("team-channel", null);
+        assertEquals(6, entries.size());
+        assertEquals(AuditEntry.Action.REGISTER_PROJECT, entries.get(0).action);
+        assertEquals("none", entries.get(0).before);
+        assertEquals("project=JIRA1 restricted=false", entries.get(0).after);
+        assertEquals(AuditEntry.Action.UPDATE_PROJECT, entries.get(1).action);
+        assertEquals("project=JIRA1 restricted=false", entries.get(1).before);
+        assertEquals("project=JIRA2 restricted=true", entries.get(1).after);
+        assertEquals("martha", entries.get(2).target);
+        assertEquals("member", entries.get(2).after);
+        assertEquals(AuditEntry.Action.MAKE_ADMIN, entries.get(3).action);
+        assertEquals("member", entries.get(3).before);
+        assertEquals(AuditEntry.Action.REMOVE_ADMIN, entries.get(4).action);
+        assertEquals("martha", entries.get(4).actor);
+        assertEquals("olivia", entries.get(4).target);
+        assertEquals("jack", entries.get(5).target);
+        assertTrue(entries.get(0).timestamp <= entries.get(5).timestamp);
+
+        // A user's entries include the changes they made and the changes made to them
+        assertEquals(2, query(null, "jack").size());
+        assertEquals(1, query("other-channel", "jack").size());
+        assertEquals(0, query("no-channel", null).size());
+        assertEquals(7, log.getWrittenCount());
+        assertEquals(0, log.getDroppedCount());
+    }
+
+    @Test
+    public void testAsyncActionsAreAudited() throws Throwable {
+        AuditLog log = open(new AuditLog.Settings());
+        AsyncJiraBotActions actions = new AsyncJiraBotActions(new AsyncDataManagerAdapter(new IndexedMemoryDataManager(), Runnable::run));
+        actions.setAuditLog(log);
+
+        actions.registerProject("team-channel", "JIRA1", false, "olivia").get();
+        actions.registerProject("team-channel", "JIRA2", true, "olivia").get();
+        actions.addUser("team-channel", "olivia", "martha", false).get();
+        actions.makeAdmin("team-channel", "olivia", "martha").get();
+        actions.removeAdmin("team-channel", "martha", "olivia").get();
+        Map<String, Boolean> team = new LinkedHashMap<>();
+        team.put("jack", false);
+        team.put("martha", false);
+        actions.addUsers("team-channel", "martha", team).get();
+        // Rejected commands change nothing, so are not audited
+        assertFalse(actions.tryAddUser("team-channel", "jack", "rose", false).get().isSuccess());
+        assertFalse(actions.tryRemoveAdmin("team-channel", "martha", "jack").get().isSuccess());
+        log.close();
+
+        List<AuditEntry> entries = query("team-channel", null);
+        assertEquals(6, entries.size());
+        assertEquals(AuditEntry.Action.REGISTER_PROJECT, entries.get(0).action);
+        assertEquals(AuditEntry.Action.UPDATE_PROJECT, entries.get(1).action);
+        assertEquals("project=JIRA1 restricted=false", entries.get(1).before);
+        assertEquals(AuditEntry.Action.ADD_USER, entries.get(2).action);
+        assertEquals(AuditEntry.Action.MAKE_ADMIN, entries.get(3).action);
+        assertEquals("member", entries.get(3).before);
+        assertEquals(AuditEntry.Action.REMOVE_ADMIN, entries.get(4).action);
+        assertEquals("jack", entries.get(5).target);
+    }
+
+    @Test
+    public void testUnwritableEntryDoesNotStopTheWriter() throws IOException {
+        AuditLog log = open(new AuditLog.Settings());
+        assertTrue(log.record(entry("olivia", "team-channel", "martha")));
+        // No action, so it can not be turned into JSON
+        assertTrue(log.record(new AuditEntry(System.currentTimeMillis(), "olivia", null, "team-channel", "jack",
+                AuditEntry.NONE, AuditEntry.MEMBER)));
+        assertTrue(log.record(entry("olivia", "team-channel", "rose")));
+        log.close();
+
+        assertEquals(2, query("team-channel", null).size());
+        assertEquals(2, log.getWrittenCount());
+        assertEquals(1, log.getDroppedCount());
+        assertEquals(1, log.getWriteFailureCount());
+        // Closed, so turned away rather than left unwritten in the queue
+        assertFalse(log.record(entry("olivia", "team-channel", "amy")));
+        assertEquals(2, log.getDroppedCount());
+    }
+
+    @Test
+    public void testFilesRotateAndAreReadInOrder() throws IOException {
+        AuditLog.Settings settings = new AuditLog.Settings();
+        settings.maxFileBytes = 1000;
+        AuditLog log = open(settings);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(log.record(entry("olivia", "channel" + (i % 2), "user" + i)));
+        }
+        log.close();
+
+        assertTrue(AuditLog.listFiles(directory).size() > 5);
+        List<AuditEntry> entries = query("channel1", null);
+        assertEquals(50, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals("user" + (2 * i + 1), entries.get(i).target);
+        }
+
+        // A restart carries on from the last file, and a line torn by a crash is skipped
+        long lastFile = AuditLog.listFiles(directory).get(AuditLog.listFiles(directory).size() - 1);
+        Files.write(AuditLog.filePath(directory, lastFile), "{\"time\":\"20".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        // Files that only look like audit files are ignored
+        Files.write(directory.resolve("audit-old.log"), "not an entry\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("audit-99999999999999999999.log"), new byte[0]);
+        log = open(settings);
+        log.record(entry("olivia", "channel1", "late"));
+        log.close();
+        entries = query("channel1", null);
+        assertEquals(51, entries.size());
+        assertEquals("late", entries.get(50).target);
+    }
+
+    @Test
+    public void testFullBufferDropsOrBlocks() throws Exception {
+        AuditLog.Settings settings = new AuditLog.Settings();
+        settings.bufferCapacity = 5;
+        settings.maxBatchSize = 1000;
+        settings.flushIntervalMillis = 60_000;
+        AuditLog dropping = open(settings);
+        // Lets the writer go idle, so nothing is written until the flush interval
+        Thread.sleep(200);
+        for (int i = 0; i < 8; i++) {
+            dropping.record(entry("olivia", "channel", "user" + i));
+        }
+        assertEquals(5, dropping.getRecordedCount());
+        assertEquals(3, dropping.getDroppedCount());
+
+        settings.overflowPolicy = AuditLog.OverflowPolicy.BLOCK;
+        settings.blockTimeoutMillis = 10_000;
+        AuditLog blocking = open(settings);
+        Thread.sleep(200);
+        for (int i = 0; i < 8; i++) {
+            // Past the fifth, each waits for the writer to make room
+            assertTrue(blocking.record(entry("olivia", "channel", "user" + i)));
+        }
+        assertEquals(0, blocking.getDroppedCount());
+        blocking.close();
+        assertEquals(8, blocking.getWrittenCount());
+    }
+}
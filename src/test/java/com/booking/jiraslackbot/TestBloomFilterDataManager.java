@@ -0,0 +1,188 @@
+package com.booking.jiraslackbot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestBloomFilterDataManager {
+
+    final AtomicInteger storeLookups = new AtomicInteger();
+    IndexedMemoryDataManager store;
+    List<BloomFilterDataManager> managers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        store = new IndexedMemoryDataManager() {
+            @Override
+            public ChannelInfo getChannelByName(String channelName) {
+                storeLookups.incrementAndGet();
+                return super.getChannelByName(channelName);
+            }
+
+            @Override
+            public ChannelAccess getChannelAccess(String channelName, String callingUser, String targetUser) {
+                storeLookups.incrementAndGet();
+                return super.getChannelAccess(channelName, callingUser, targetUser);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        managers.forEach(BloomFilterDataManager::close);
+    }
+
+    private BloomFilterDataManager open(int expectedChannels) {
+        BloomFilterDataManager.Settings settings = new BloomFilterDataManager.Settings();
+        settings.expectedChannels = expectedChannels;
+        BloomFilterDataManager dataManager = new BloomFilterDataManager(store, settings);
+        managers.add(dataManager);
+        return dataManager;
+    }
+
+    private void awaitRebuilds(BloomFilterDataManager dataManager, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (dataManager.getRebuildCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(dataManager.getRebuildCount() >= count);
+    }
+
+    @Test
+    public void testFilterHasNoFalseNegativesAndFewFalsePositives() {
+        ChannelNameFilter filter = new ChannelNameFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("channel-" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(filter.mightContain("channel-" + (i % 10_000)));
+            if (filter.mightContain("other-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("False positives: " + falsePositives, falsePositives < 2_000);
+        assertEquals(0.01, filter.estimatedFalsePositiveRate(), 0.005);
+        assertEquals(7, filter.getHashCount());
+    }
+
+    @Test
+    public void testUnregisteredChannelsAreAnsweredWithoutTheStore() {
+        for (int i = 0; i < 500; i++) {
+            store.createChannelIfAbsent("existing-" + i, "JIRA", false, "olivia");
+        }
+        BloomFilterDataManager dataManager = open(1000);
+        dataManager.createChannelIfAbsent("team-channel", "JIRA1", false, "olivia");
+
+        for (int i = 0; i < 10_000; i++) {
+            assertNull(dataManager.getChannelByName("unknown-" + i));
+            assertFalse(dataManager.getChannelAccess("unknown-" + i, "olivia", null).isRegisteredChannel());
+        }
+        assertTrue("Store lookups: " + storeLookups.get(), storeLookups.get() < 400);
+        assertEquals(storeLookups.get(), dataManager.getFalsePositiveCount());
+        assertEquals(20_000, dataManager.getFilteredCount() + dataManager.getFalsePositiveCount());
+        assertTrue(dataManager.getObservedFalsePositiveRate() < 0.02);
+
+        // Registered channels always reach the store
+        assertTrue(dataManager.getChannelAccess("team-channel", "olivia", null).isCallerAdmin());
+        assertTrue(dataManager.isExistingChannel("existing-42"));
+        assertEquals("JIRA", dataManager.getChannelByName("existing-499").jiraProject);
+    }
+
+    @Test
+    public void testFilterIsRebuiltLargerOnceFull() throws InterruptedException {
+        BloomFilterDataManager dataManager = open(100);
+        for (int i = 0; i < 250; i++) {
+            dataManager.addChannel("channel-" + i, "JIRA", false);
+        }
+        awaitRebuilds(dataManager, 2);
+        // Names added while the first rebuild ran may fill its filter too, and trigger another
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (dataManager.getEstimatedFalsePositiveRate() >= 0.02 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, dataManager.getRebuildFailureCount());
+        for (int i = 0; i < 250; i++) {
+            assertNotNull(dataManager.getChannelByName("channel-" + i));
+        }
+        assertTrue(dataManager.getEstimatedFalsePositiveRate() < 0.02);
+    }
+
+    @Test
+    public void testChannelsCreatedElsewhereAreFoundByThePeriodicRebuild() throws InterruptedException {
+        BloomFilterDataManager.Settings settings = new BloomFilterDataManager.Settings();
+        settings.expectedChannels = 1000;
+        settings.rebuildIntervalMillis = 20;
+        BloomFilterDataManager dataManager = new BloomFilterDataManager(store, settings);
+        managers.add(dataManager);
+        // Written by another bot instance, with no feed between them
+        store.addChannel("remote-channel", "JIRA1", false);
+
+        awaitRebuilds(dataManager, 3);
+        assertNotNull(dataManager.getChannelByName("remote-channel"));
+    }
+
+    @Test
+    public void testChannelsCreatedElsewhereArriveByChangeFeed() throws InterruptedException {
+        BloomFilterDataManager dataManager = open(1000);
+        // Written by another bot instance, straight to the shared store
+        int channelId = store.addChannel("remote-channel", "JIRA1", false);
+        assertNull(dataManager.getChannelByName("remote-channel"));
+
+        dataManager.onChanges(Collections.singletonList(ChangeEvent.channelCreated(channelId, "remote-channel")));
+        assertNotNull(dataManager.getChannelByName("remote-channel"));
+
+        // After a gap every lookup goes to the store, until a rebuild has read the missed channels
+        store.addChannel("missed-channel", "JIRA2", false);
+        dataManager.onGap(1);
+        awaitRebuilds(dataManager, 2);
+        assertNotNull(dataManager.getChannelByName("missed-channel"));
+        long filtered = dataManager.getFilteredCount();
+        assertNull(dataManager.getChannelByName("unknown-channel"));
+        assertEquals(filtered + 1, dataManager.getFilteredCount());
+    }
+
+    @Test
+    public void testChannelsCreatedDuringRebuildsAreKept() throws Exception {
+        BloomFilterDataManager dataManager = open(100_000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        String name = "channel-" + thread + "-" + i;
+                        dataManager.createChannelIfAbsent(name, "JIRA", false, "olivia");
+                        assertNotNull(name, dataManager.getChannelByName(name));
+                    }
+                }));
+            }
+            while (!writers.stream().allMatch(Future::isDone)) {
+                dataManager.rebuild();
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        dataManager.rebuild();
+        for (int t = 0; t < 4; t++) {
+            for (int i = 0; i < 2000; i++) {
+                assertNotNull(dataManager.getChannelByName("channel-" + t + "-" + i));
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.booking.jiraslackbot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+@SuppressWarnings("SimplifiableAssertion")
+public class TestCachingDataManager {
+
+    IndexedMemoryDataManager store;
+    AtomicLong clock;
+    CachingDataManager dataManager;
+
+    @Before
+    public void setUp() {
+        store = spy(new IndexedMemoryDataManager());
+        clock = new AtomicLong();
+        dataManager = new CachingDataManager(store, 3, 1000, clock::get);
+    }
+
+    @Test
+    public void testRepeatedLookupsAreServedFromCache() {
+        int channelId = store.addChannel("test-channel", "JiraProject1", false);
+        store.addChannelUser(channelId, "martha", true);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(channelId, dataManager.getChannelByName("test-channel").channelId);
+            assertTrue(dataManager.isChannelAdmin("martha", channelId));
+        }
+
+        verify(store, times(1)).getChannelByName("test-channel");
+        verify(store, times(1)).getChannelUser(channelId, "martha");
+        // Two repeats, each a hit on name -> id, id -> channel and the user
+        assertEquals(6, dataManager.getHitCount());
+    }
+
+    @Test
+    public void testUnregisteredChannelIsCachedUntilAdded() {
+        assertNull(dataManager.getChannelByName("test-channel"));
+        assertNull(dataManager.getChannelByName("test-channel"));
+        verify(store, times(1)).getChannelByName("test-channel");
+
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+
+        assertEquals(channelId, dataManager.getChannelByName("test-channel").channelId);
+    }
+
+    @Test
+    public void testWritesInvalidateExactEntries() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+        dataManager.addChannelUser(channelId, "martha", false);
+        assertEquals("JiraProject1", dataManager.getChannelById(channelId).jiraProject);
+        assertFalse(dataManager.isChannelAdmin("martha", channelId));
+
+        dataManager.updateChannelDetails(channelId, "JiraProject2", true);
+        dataManager.addChannelUser(channelId, "martha", true);
+
+        assertEquals("JiraProject2", dataManager.getChannelByName("test-channel").jiraProject);
+        assertTrue(dataManager.isChannelAdmin("martha", channelId));
+    }
+
+    @Test
+    public void testConditionalWritesInvalidateExactEntries() {
+        assertFalse(dataManager.isExistingChannel("test-channel"));
+        int channelId = dataManager.createChannelIfAbsent("test-channel", "JiraProject1", false, "admin").channelId;
+        assertTrue(dataManager.isExistingChannel("test-channel"));
+        assertTrue(dataManager.isChannelAdmin("admin", channelId));
+
+        assertFalse(dataManager.isChannelAdmin("martha", channelId));
+        assertTrue(dataManager.compareAndSetAdmin(channelId, "martha", false, true));
+        assertTrue(dataManager.isChannelAdmin("martha", channelId));
+        assertFalse(dataManager.addChannelUserIfAbsent(channelId, "martha", false));
+        assertTrue(dataManager.isChannelAdmin("martha", channelId));
+    }
+
+    @Test
+    public void testChannelAccessIsServedFromCacheAfterFirstRead() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+        dataManager.addChannelUser(channelId, "admin", true);
+
+        ChannelAccess first = dataManager.getChannelAccess("test-channel", "admin", "martha");
+        ChannelAccess second = dataManager.getChannelAccess("test-channel", "admin", "martha");
+
+        verify(store, times(1)).getChannelAccess("test-channel", "admin", "martha");
+        assertTrue(first.isCallerAdmin());
+        assertTrue(second.isCallerAdmin());
+        assertFalse(second.isTargetRegistered());
+    }
+
+    @Test
+    public void testEntriesExpireAndLeastRecentlyUsedAreEvicted() {
+        for (int i = 0; i < 4; i++) {
+            store.addChannel("channel-" + i, "JiraProject", false);
+            dataManager.getChannelById(i + 1);
+        }
+        // Size bound is 3, so channel 1 was evicted
+        assertEquals(1, dataManager.getEvictionCount());
+        dataManager.getChannelById(1);
+        verify(store, times(2)).getChannelById(1);
+
+        // Time-to-live passes
+        clock.addAndGet(1001);
+        dataManager.getChannelById(4);
+        verify(store, times(2)).getChannelById(4);
+        assertEquals(1, dataManager.getExpirationCount());
+    }
+}
@@ -0,0 +1,253 @@
+package com.booking.jiraslackbot;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestChangeFeed {
+
+    ChangeFeed feed = new ChangeFeed(100);
+    IndexedMemoryDataManager store = new IndexedMemoryDataManager();
+    ChangeFeedDataManager dataManager = new ChangeFeedDataManager(store, feed);
+    List<ChangeFeed.Subscription> subscriptions = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        subscriptions.forEach(ChangeFeed.Subscription::close);
+    }
+
+    // Collects the delivered batches, and the sequence seen before each gap
+    static class RecordingListener implements ChangeListener {
+        final BlockingQueue<List<ChangeEvent>> batches = new LinkedBlockingQueue<>();
+        final BlockingQueue<Long> gaps = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onChanges(List<ChangeEvent> events) {
+            batches.add(events);
+        }
+
+        @Override
+        public void onGap(long lastSequenceSeen) {
+            gaps.add(lastSequenceSeen);
+        }
+
+        List<ChangeEvent> next() throws InterruptedException {
+            List<ChangeEvent> batch = batches.poll(10, TimeUnit.SECONDS);
+            assertNotNull("No changes delivered", batch);
+            return batch;
+        }
+    }
+
+    private ChangeFeed.Subscription subscribe(long afterSequence, int maxBatchSize, ChangeListener listener) {
+        ChangeFeed.Subscription subscription = feed.subscribe(afterSequence, maxBatchSize, listener);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    private static void awaitPosition(ChangeFeed.Subscription subscription, long sequence) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (subscription.getPosition() < sequence && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(sequence, subscription.getPosition());
+    }
+
+    @Test
+    public void testWritesArePublishedInOrder() {
+        ChannelInfo channel = dataManager.createChannelIfAbsent("test-channel", "JIRA1", false, "admin");
+        dataManager.updateChannelDetails(channel.channelId, "JIRA2", true);
+        dataManager.addChannelUserIfAbsent(channel.channelId, "martha", false);
+        dataManager.compareAndSetAdmin(channel.channelId, "martha", false, true);
+
+        List<ChangeEvent> events = feed.readFrom(0, 10);
+        assertEquals(5, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(i + 1, events.get(i).sequence);
+        }
+        assertEquals(ChangeEvent.Type.CHANNEL_CREATED, events.get(0).type);
+        assertEquals("test-channel", events.get(0).channelName);
+        assertEquals(ChangeEvent.Type.MEMBERSHIP_CHANGED, events.get(1).type);
+        assertEquals("admin", events.get(1).slackUser);
+        assertEquals(ChangeEvent.Type.CHANNEL_UPDATED, events.get(2).type);
+        assertEquals(channel.channelId, events.get(2).channelId);
+        assertEquals("martha", events.get(3).slackUser);
+        assertEquals(ChangeEvent.Type.MEMBERSHIP_CHANGED, events.get(4).type);
+        assertEquals("martha", events.get(4).slackUser);
+        assertEquals(5, feed.getLastSequence());
+    }
+
+    @Test
+    public void testWritesThatChangeNothingAreNotPublished() {
+        ChannelInfo channel = dataManager.createChannelIfAbsent("test-channel", "JIRA1", false, "admin");
+        long sequence = feed.getLastSequence();
+
+        assertNull(dataManager.createChannelIfAbsent("test-channel", "JIRA2", false, "olivia"));
+        assertFalse(dataManager.addChannelUserIfAbsent(channel.channelId, "admin", false));
+        assertFalse(dataManager.compareAndSetAdmin(channel.channelId, "admin", false, true));
+        assertTrue(dataManager.addChannelUsersIfAbsent(channel.channelId, Collections.singletonMap("admin", false)).isEmpty());
+
+        assertEquals(sequence, feed.getLastSequence());
+    }
+
+    @Test
+    public void testReadFromResumesAfterASequence() {
+        int channelId = dataManager.addChannel("test-channel", "JIRA1", false);
+        for (int i = 0; i < 5; i++) {
+            dataManager.addChannelUser(channelId, "user" + i, false);
+        }
+
+        List<ChangeEvent> first = feed.readFrom(0, 3);
+        assertEquals(3, first.size());
+        List<ChangeEvent> rest = feed.readFrom(first.get(2).sequence, 10);
+        assertEquals(3, rest.size());
+        assertEquals(4, rest.get(0).sequence);
+        assertEquals("user4", rest.get(2).slackUser);
+        assertTrue(feed.readFrom(6, 10).isEmpty());
+    }
+
+    @Test
+    public void testSubscriptionDeliversBatchesAndResumes() throws InterruptedException {
+        int channelId = dataManager.addChannel("test-channel", "JIRA1", false);
+        Map<String, Boolean> users = new LinkedHashMap<>();
+        for (int i = 0; i < 7; i++) {
+            users.put("user" + i, false);
+        }
+        dataManager.addChannelUsers(channelId, users);
+
+        RecordingListener listener = new RecordingListener();
+        ChangeFeed.Subscription subscription = subscribe(0, 3, listener);
+        List<ChangeEvent> delivered = new ArrayList<>();
+        while (delivered.size() < 8) {
+            List<ChangeEvent> batch = listener.next();
+            assertTrue(batch.size() <= 3);
+            delivered.addAll(batch);
+        }
+        for (int i = 0; i < delivered.size(); i++) {
+            assertEquals(i + 1, delivered.get(i).sequence);
+        }
+        awaitPosition(subscription, 8);
+        subscription.close();
+
+        // Changes made while unsubscribed are delivered on resuming from the saved position
+        dataManager.updateChannelDetails(channelId, "JIRA2", true);
+        RecordingListener resumed = new RecordingListener();
+        subscribe(subscription.getPosition(), 10, resumed);
+        List<ChangeEvent> batch = resumed.next();
+        assertEquals(1, batch.size());
+        assertEquals(9, batch.get(0).sequence);
+        assertEquals(ChangeEvent.Type.CHANNEL_UPDATED, batch.get(0).type);
+        assertTrue(resumed.gaps.isEmpty());
+    }
+
+    @Test
+    public void testFallingBehindTheFeedIsReportedAsAGap() throws InterruptedException {
+        feed = new ChangeFeed(4);
+        dataManager = new ChangeFeedDataManager(store, feed);
+        int channelId = dataManager.addChannel("test-channel", "JIRA1", false);
+        for (int i = 0; i < 9; i++) {
+            dataManager.addChannelUser(channelId, "user" + i, false);
+        }
+        assertEquals(7, feed.getOldestSequence());
+
+        RecordingListener listener = new RecordingListener();
+        ChangeFeed.Subscription subscription = subscribe(2, 10, listener);
+
+        assertEquals(Long.valueOf(2), listener.gaps.poll(10, TimeUnit.SECONDS));
+        List<ChangeEvent> batch = listener.next();
+        assertEquals(7, batch.get(0).sequence);
+        assertEquals(10, batch.get(3).sequence);
+        awaitPosition(subscription, 10);
+        assertEquals(1, subscription.getGapCount());
+    }
+
+    @Test
+    public void testResumingAheadOfARestartedFeedIsReportedAsAGap() throws InterruptedException {
+        // A consumer saw up to 50 on the feed before a restart; the new feed numbers from 1 again
+        long earlierEpoch = feed.getEpoch();
+        feed = new ChangeFeed(100);
+        dataManager = new ChangeFeedDataManager(store, feed);
+        assertNotEquals(earlierEpoch, feed.getEpoch());
+        assertTrue(feed.readFrom(50, 10).isEmpty());
+
+        RecordingListener listener = new RecordingListener();
+        ChangeFeed.Subscription subscription = subscribe(50, 10, listener);
+        int channelId = dataManager.addChannel("test-channel", "JIRA1", false);
+        dataManager.addChannelUser(channelId, "martha", false);
+
+        // Polling: the first event is not 51, so the poller knows it has a gap
+        List<ChangeEvent> polled = feed.readFrom(50, 10);
+        assertEquals(1, polled.get(0).sequence);
+        assertEquals(2, polled.size());
+
+        assertEquals(Long.valueOf(50), listener.gaps.poll(10, TimeUnit.SECONDS));
+        List<ChangeEvent> delivered = new ArrayList<>(listener.next());
+        while (delivered.size() < 2) {
+            delivered.addAll(listener.next());
+        }
+        assertEquals(1, delivered.get(0).sequence);
+        assertEquals(2, delivered.get(1).sequence);
+        awaitPosition(subscription, 2);
+        assertEquals(1, subscription.getGapCount());
+    }
+
+    @Test
+    public void testCachesOnOtherInstancesAreInvalidated() throws InterruptedException {
+        // Two bot instances, each with its own long-lived cache, sharing the store and its feed
+        CachingDataManager nodeA = new CachingDataManager(dataManager, 100, 1, TimeUnit.HOURS);
+        CachingDataManager nodeB = new CachingDataManager(dataManager, 100, 1, TimeUnit.HOURS);
+        ChangeFeed.Subscription subscriptionB = subscribe(feed.getLastSequence(), 100, nodeB);
+
+        assertFalse(nodeB.isExistingChannel("test-channel"));
+        ChannelInfo channel = nodeA.createChannelIfAbsent("test-channel", "JIRA1", false, "admin");
+        awaitPosition(subscriptionB, feed.getLastSequence());
+        assertEquals("JIRA1", nodeB.getChannelByName("test-channel").jiraProject);
+
+        assertNull(nodeB.getChannelUser(channel.channelId, "martha"));
+        nodeA.updateChannelDetails(channel.channelId, "JIRA2", true);
+        nodeA.addChannelUserIfAbsent(channel.channelId, "martha", false);
+        awaitPosition(subscriptionB, feed.getLastSequence());
+
+        assertEquals("JIRA2", nodeB.getChannelByName("test-channel").jiraProject);
+        assertNotNull(nodeB.getChannelUser(channel.channelId, "martha"));
+        assertFalse(nodeB.isChannelAdmin("martha", channel.channelId));
+
+        nodeA.compareAndSetAdmin(channel.channelId, "martha", false, true);
+        awaitPosition(subscriptionB, feed.getLastSequence());
+        assertTrue(nodeB.isChannelAdmin("martha", channel.channelId));
+    }
+
+    @Test
+    public void testFailingListenerIsRetried() throws InterruptedException {
+        dataManager.addChannel("test-channel", "JIRA1", false);
+        RecordingListener recording = new RecordingListener();
+        ChangeFeed.Subscription subscription = subscribe(0, 10, new ChangeListener() {
+            boolean failed;
+
+            @Override
+            public void onChanges(List<ChangeEvent> events) {
+                if (!failed) {
+                    failed = true;
+                    throw new IllegalStateException("Cache unavailable");
+                }
+                recording.onChanges(events);
+            }
+
+            @Override
+            public void onGap(long lastSequenceSeen) {
+            }
+        });
+
+        assertEquals(1, recording.next().get(0).sequence);
+        assertEquals(1, subscription.getListenerFailureCount());
+    }
+}
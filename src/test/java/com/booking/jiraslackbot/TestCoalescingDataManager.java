@@ -0,0 +1,200 @@
+package com.booking.jiraslackbot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestCoalescingDataManager {
+
+    // Holds reads until released, so concurrent callers pile up behind the first
+    volatile CountDownLatch readsReleased;
+    final AtomicInteger backendReads = new AtomicInteger();
+    volatile RuntimeException failure;
+    volatile Error fatal;
+    IndexedMemoryDataManager store;
+    CoalescingDataManager dataManager;
+    ExecutorService executor = Executors.newCachedThreadPool();
+
+    @Before
+    public void setUp() {
+        readsReleased = new CountDownLatch(0);
+        store = new IndexedMemoryDataManager() {
+            @Override
+            public ChannelInfo getChannelByName(String channelName) {
+                slowRead();
+                return super.getChannelByName(channelName);
+            }
+
+            @Override
+            public ChannelAccess getChannelAccess(String channelName, String callingUser, String targetUser) {
+                slowRead();
+                return super.getChannelAccess(channelName, callingUser, targetUser);
+            }
+        };
+        dataManager = new CoalescingDataManager(store);
+    }
+
+    @After
+    public void tearDown() {
+        readsReleased.countDown();
+        executor.shutdownNow();
+    }
+
+    private void slowRead() {
+        backendReads.incrementAndGet();
+        try {
+            readsReleased.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted", e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (fatal != null) {
+            throw fatal;
+        }
+    }
+
+    private void awaitBackendReads(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (backendReads.get() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, backendReads.get());
+    }
+
+    private void awaitCoalesced(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (dataManager.getCoalescedCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, dataManager.getCoalescedCount());
+    }
+
+    @Test
+    public void testConcurrentIdenticalReadsShareOneCall() throws Exception {
+        store.createChannelIfAbsent("busy-channel", "JIRA1", false, "olivia");
+        readsReleased = new CountDownLatch(1);
+
+        List<Future<ChannelAccess>> readers = new ArrayList<>();
+        readers.add(executor.submit(() -> dataManager.getChannelAccess("busy-channel", "olivia", null)));
+        awaitBackendReads(1);
+        for (int i = 0; i < 19; i++) {
+            readers.add(executor.submit(() -> dataManager.getChannelAccess("busy-channel", "olivia", null)));
+        }
+        awaitCoalesced(19);
+        // A different key is not held up by the first
+        Future<ChannelAccess> other = executor.submit(() -> dataManager.getChannelAccess("busy-channel", "martha", null));
+        awaitBackendReads(2);
+        readsReleased.countDown();
+
+        for (Future<ChannelAccess> reader : readers) {
+            assertTrue(reader.get().isCallerAdmin());
+        }
+        assertFalse(other.get().isCallerRegistered());
+        assertEquals(2, dataManager.getCallCount());
+        assertEquals(19, dataManager.getCoalescedCount());
+    }
+
+    @Test
+    public void testReadAfterAWriteDoesNotJoinAnOlderCall() throws Exception {
+        ChannelInfo channel = store.createChannelIfAbsent("busy-channel", "JIRA1", false, "olivia");
+        readsReleased = new CountDownLatch(1);
+        Future<ChannelAccess> before = executor.submit(() -> dataManager.getChannelAccess("busy-channel", "martha", null));
+        awaitBackendReads(1);
+
+        // Learns the channel's name from the write's own read, as JiraBotActions does before writing by id
+        readsReleased.countDown();
+        assertFalse(before.get().isCallerRegistered());
+        readsReleased = new CountDownLatch(1);
+        before = executor.submit(() -> dataManager.getChannelAccess("busy-channel", "martha", null));
+        awaitBackendReads(2);
+
+        dataManager.addChannelUser(channel.channelId, "martha", false);
+        Future<ChannelAccess> after = executor.submit(() -> dataManager.getChannelAccess("busy-channel", "martha", null));
+        // Makes its own call, rather than sharing the one that started before the write
+        awaitBackendReads(3);
+        readsReleased.countDown();
+
+        assertTrue(after.get().isCallerRegistered());
+        assertEquals(0, dataManager.getCoalescedCount());
+        before.get();
+    }
+
+    @Test
+    public void testWriteByIdOfAnUnknownChannelStopsSharingByName() throws Exception {
+        ChannelInfo channel = store.createChannelIfAbsent("busy-channel", "JIRA1", false, "olivia");
+        readsReleased = new CountDownLatch(1);
+        Future<ChannelInfo> before = executor.submit(() -> dataManager.getChannelByName("busy-channel"));
+        awaitBackendReads(1);
+
+        // Nothing read through the wrapper has finished yet, so the id's name is not known
+        dataManager.updateChannelDetails(channel.channelId, "JIRA2", false);
+        Future<ChannelInfo> after = executor.submit(() -> dataManager.getChannelByName("busy-channel"));
+        awaitBackendReads(2);
+        readsReleased.countDown();
+
+        assertEquals("JIRA2", after.get().jiraProject);
+        before.get();
+        assertEquals(0, dataManager.getCoalescedCount());
+    }
+
+    @Test
+    public void testFailureIsSharedAndNotRemembered() throws Exception {
+        failure = new IllegalStateException("Store unavailable");
+        readsReleased = new CountDownLatch(1);
+        List<Future<ChannelInfo>> readers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            readers.add(executor.submit(() -> dataManager.getChannelByName("busy-channel")));
+        }
+        awaitBackendReads(1);
+        awaitCoalesced(4);
+        readsReleased.countDown();
+        for (Future<ChannelInfo> reader : readers) {
+            try {
+                reader.get();
+                fail("Expected the store's error");
+            } catch (ExecutionException e) {
+                assertEquals("Store unavailable", e.getCause().getMessage());
+            }
+        }
+
+        failure = null;
+        assertNull(dataManager.getChannelByName("busy-channel"));
+        assertEquals(2, backendReads.get());
+    }
+
+    @Test
+    public void testErrorIsSharedWithTheCallersThatJoined() throws Exception {
+        fatal = new AssertionError("Store broken");
+        readsReleased = new CountDownLatch(1);
+        List<Future<ChannelInfo>> readers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            readers.add(executor.submit(() -> dataManager.getChannelByName("broken-channel")));
+        }
+        awaitBackendReads(1);
+        awaitCoalesced(4);
+        readsReleased.countDown();
+        for (Future<ChannelInfo> reader : readers) {
+            try {
+                reader.get(10, TimeUnit.SECONDS);
+                fail("Expected the store's error");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof AssertionError);
+                assertEquals("Store broken", e.getCause().getMessage());
+            }
+        }
+    }
+}
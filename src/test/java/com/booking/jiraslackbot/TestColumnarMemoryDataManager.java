@@ -0,0 +1,241 @@
+package com.booking.jiraslackbot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class TestColumnarMemoryDataManager {
+
+    ColumnarMemoryDataManager dataManager;
+
+    @Before
+    public void setUp() {
+        dataManager = new ColumnarMemoryDataManager();
+    }
+
+    @Test
+    public void testChannelsAreFoundByNameAndIdAcrossGrowth() {
+        List<Integer> channelIds = new ArrayList<>();
+        for (int c = 0; c < 5000; c++) {
+            channelIds.add(dataManager.addChannel("channel-" + c, "JiraProject" + (c % 10), c % 2 == 0));
+        }
+        for (int c = 0; c < 5000; c++) {
+            ChannelInfo byName = dataManager.getChannelByName("channel-" + c);
+            assertEquals((int) channelIds.get(c), byName.channelId);
+            assertEquals("JiraProject" + (c % 10), byName.jiraProject);
+            assertEquals(c % 2 == 0, dataManager.getChannelById(byName.channelId).restricted);
+        }
+        assertNull(dataManager.getChannelByName("channel-5000"));
+        assertNull(dataManager.getChannelById(5001));
+        assertEquals(5000, dataManager.getAllChannels().size());
+
+        dataManager.updateChannelDetails(channelIds.get(7), "JiraProject99", true);
+        ChannelInfo updated = dataManager.getChannelByName("channel-7");
+        assertEquals("JiraProject99", updated.jiraProject);
+        assertTrue(updated.restricted);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUpdateUnknownChannelThrows() {
+        dataManager.updateChannelDetails(42, "JiraProject1", false);
+    }
+
+    @Test
+    public void testAddChannelUserOverwritesExistingUser() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+
+        dataManager.addChannelUser(channelId, "martha", false);
+        assertFalse(dataManager.isChannelAdmin("martha", channelId));
+        assertNotNull(dataManager.getChannelUser(channelId, "martha"));
+
+        dataManager.addChannelUser(channelId, "martha", true);
+        assertTrue(dataManager.isChannelAdmin("martha", channelId));
+        assertEquals(1, dataManager.getChannelUsers(channelId).size());
+        assertNull(dataManager.getChannelUser(channelId, "nobody"));
+        assertNull(dataManager.getChannelUser(channelId + 1, "martha"));
+    }
+
+    @Test
+    public void testChannelAccessAndChannelsForUser() {
+        int first = dataManager.addChannel("first-channel", "JiraProject1", false);
+        int second = dataManager.addChannel("second-channel", "JiraProject2", false);
+        dataManager.addChannelUser(first, "alice", true);
+        dataManager.addChannelUsers(second, Collections.singletonMap("alice", false));
+        dataManager.addChannelUser(second, "bob", true);
+
+        ChannelAccess access = dataManager.getChannelAccess("second-channel", "bob", "alice");
+        assertTrue(access.isCallerAdmin());
+        assertTrue(access.isTargetRegistered());
+        assertFalse(access.isTargetAdmin());
+        assertFalse(dataManager.getChannelAccess("no-channel", "bob", null).isRegisteredChannel());
+
+        assertEquals(new HashSet<>(Arrays.asList("first-channel", "second-channel")),
+                dataManager.getChannelsForUser("alice").stream().map(c -> c.channelName).collect(Collectors.toSet()));
+        assertEquals(Collections.singleton("first-channel"),
+                dataManager.getAdminChannelsForUser("alice").stream().map(c -> c.channelName).collect(Collectors.toSet()));
+        dataManager.addChannelUser(first, "alice", false);
+        assertTrue(dataManager.getAdminChannelsForUser("alice").isEmpty());
+        assertTrue(dataManager.getChannelsForUser("nobody").isEmpty());
+    }
+
+    @Test
+    public void testConditionalWrites() {
+        ChannelInfo created = dataManager.createChannelIfAbsent("test-channel", "JiraProject1", false, "admin");
+        assertTrue(dataManager.isChannelAdmin("admin", created.channelId));
+        assertNull(dataManager.createChannelIfAbsent("test-channel", "JiraProject2", true, "martha"));
+
+        assertTrue(dataManager.addChannelUserIfAbsent(created.channelId, "martha", false));
+        assertFalse(dataManager.addChannelUserIfAbsent(created.channelId, "martha", true));
+        assertFalse(dataManager.compareAndSetAdmin(created.channelId, "martha", true, false));
+        assertTrue(dataManager.compareAndSetAdmin(created.channelId, "martha", false, true));
+        assertEquals(Collections.singleton("test-channel"),
+                dataManager.getAdminChannelsForUser("martha").stream().map(c -> c.channelName).collect(Collectors.toSet()));
+
+    }
+
+    @Test
+    public void testSwapsRewriteTheMembersRowAndFailedSwapsWriteNone() {
+        ChannelInfo created = dataManager.createChannelIfAbsent("test-channel", "JiraProject1", false, "admin");
+        dataManager.addChannelUser(created.channelId, "martha", false);
+        ColumnarMemoryDataManager.MemberView members = dataManager.newMemberView();
+
+        assertFalse(dataManager.compareAndSetAdmin(created.channelId, "stranger", true, false));
+        assertTrue(dataManager.compareAndSetAdmin(created.channelId, "martha", false, true));
+        assertEquals(Arrays.asList("martha:true", "admin:true"), rows(members, created.channelId));
+        members.openUser("stranger");
+        assertFalse(members.next());
+
+        // A name with no row yet gets one, on the channel's chain and on its own
+        assertTrue(dataManager.compareAndSetAdmin(created.channelId, "newcomer", false, true));
+        assertEquals(Arrays.asList("newcomer:true", "martha:true", "admin:true"), rows(members, created.channelId));
+        members.openUser("newcomer");
+        assertTrue(members.next());
+        assertEquals(created.channelId, members.getChannelId());
+        assertFalse(members.next());
+    }
+
+    // The channel's rows, most recently added first
+    private static List<String> rows(ColumnarMemoryDataManager.MemberView members, int channelId) {
+        List<String> rows = new ArrayList<>();
+        members.openChannel(channelId);
+        while (members.next()) {
+            rows.add(members.getSlackName() + ":" + members.isAdmin());
+        }
+        return rows;
+    }
+
+    @Test
+    public void testChannelUsersArePagedInNameOrder() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+        for (int i = 0; i < 30; i++) {
+            dataManager.addChannelUser(channelId, String.format("user%02d", 29 - i), i % 3 == 0);
+        }
+
+        MemberPage page = dataManager.getChannelUsersPage(channelId, "user09", false, 5);
+        assertEquals(Arrays.asList("user10", "user11", "user12", "user13", "user14"),
+                page.users.stream().map(user -> user.slackName).collect(Collectors.toList()));
+
+        MemberPage admins = dataManager.getChannelUsersPage(channelId, null, true, 100);
+        assertTrue(admins.isLastPage());
+        assertEquals(10, admins.users.size());
+    }
+
+    @Test
+    public void testViewsReadTheColumns() {
+        int first = dataManager.addChannel("first-channel", "JiraProject1", true);
+        int second = dataManager.addChannel("second-channel", "JiraProject1", false);
+        for (int u = 0; u < 3000; u++) {
+            dataManager.addChannelUser(first, "user-" + u, u % 100 == 0);
+            if (u % 3 == 0) {
+                dataManager.addChannelUser(second, "user-" + u, false);
+            }
+        }
+
+        ColumnarMemoryDataManager.ChannelView channel = dataManager.newChannelView();
+        assertTrue(channel.moveTo("first-channel"));
+        assertEquals(first, channel.getChannelId());
+        assertEquals("JiraProject1", channel.getJiraProject());
+        assertTrue(channel.isRestricted());
+        // The view follows the store rather than copying from it
+        dataManager.updateChannelDetails(first, "JiraProject2", false);
+        assertEquals("JiraProject2", channel.getJiraProject());
+        assertFalse(channel.isRestricted());
+        assertFalse(channel.moveTo("no-channel"));
+        assertTrue(channel.moveTo(second));
+        assertEquals("second-channel", channel.getChannelName());
+
+        ColumnarMemoryDataManager.MemberView members = dataManager.newMemberView();
+        members.openChannel(first);
+        int count = 0;
+        int admins = 0;
+        while (members.next()) {
+            count++;
+            admins += members.isAdmin() ? 1 : 0;
+            assertEquals(first, members.getChannelId());
+        }
+        assertEquals(3000, count);
+        assertEquals(30, admins);
+
+        members.openUser("user-300");
+        Set<Integer> channels = new HashSet<>();
+        while (members.next()) {
+            assertEquals("user-300", members.getSlackName());
+            channels.add(members.getChannelId());
+        }
+        assertEquals(new HashSet<>(Arrays.asList(first, second)), channels);
+        members.openUser("nobody");
+        assertFalse(members.next());
+    }
+
+    @Test
+    public void testReadersSeeCompleteRowsWhileColumnsGrow() throws Exception {
+        int channelId = dataManager.addChannel("busy-channel", "JiraProject1", false);
+        dataManager.addChannelUser(channelId, "admin", true);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                readers.add(executor.submit(() -> {
+                    ColumnarMemoryDataManager.MemberView members = dataManager.newMemberView();
+                    while (writing.get()) {
+                        assertTrue(dataManager.isChannelAdmin("admin", channelId));
+                        members.openChannel(channelId);
+                        while (members.next()) {
+                            assertNotNull(members.getSlackName());
+                        }
+                        ChannelInfo latest = dataManager.getChannelById(channelId);
+                        assertEquals("busy-channel", latest.channelName);
+                    }
+                }));
+            }
+            for (int u = 0; u < 50_000; u++) {
+                dataManager.addChannelUser(channelId, "user-" + u, false);
+                if (u % 1000 == 0) {
+                    dataManager.addChannel("channel-" + u, "JiraProject" + u, false);
+                }
+            }
+            writing.set(false);
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(50_001, dataManager.getChannelUsers(channelId).size());
+        assertEquals(51, dataManager.getAllChannels().size());
+    }
+}
@@ -0,0 +1,144 @@
+package com.booking.jiraslackbot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+@SuppressWarnings("SimplifiableAssertion")
+public class TestCompactMemoryDataManager {
+
+    CompactMemoryDataManager dataManager;
+
+    @Before
+    public void setUp() {
+        dataManager = new CompactMemoryDataManager();
+    }
+
+    @Test
+    public void testAddChannelUserOverwritesExistingUser() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+
+        dataManager.addChannelUser(channelId, "martha", false);
+        assertFalse(dataManager.isChannelAdmin("martha", channelId));
+        assertNotNull(dataManager.getChannelUser(channelId, "martha"));
+
+        dataManager.addChannelUser(channelId, "martha", true);
+        assertTrue(dataManager.isChannelAdmin("martha", channelId));
+        assertEquals(1, dataManager.getChannelUsers(channelId).size());
+        assertNull(dataManager.getChannelUser(channelId, "nobody"));
+        assertNull(dataManager.getChannelUser(channelId + 1, "martha"));
+    }
+
+    @Test
+    public void testManyMembersAcrossChannelsShareNames() {
+        int first = dataManager.addChannel("first-channel", "JiraProject1", false);
+        int second = dataManager.addChannel("second-channel", "JiraProject1", false);
+        for (int u = 0; u < 5000; u++) {
+            dataManager.addChannelUser(first, "user-" + u, u % 3 == 0);
+            if (u % 2 == 0) {
+                dataManager.addChannelUser(second, "user-" + u, false);
+            }
+        }
+
+        assertEquals(5000, dataManager.getChannelUsers(first).size());
+        assertEquals(2500, dataManager.getChannelUsers(second).size());
+        // 7500 memberships, but each name is held once
+        assertEquals(5000, dataManager.getUserCount());
+        assertTrue(dataManager.isChannelAdmin("user-3", first));
+        assertFalse(dataManager.isChannelAdmin("user-4", first));
+        assertFalse(dataManager.isChannelAdmin("user-3", second));
+        assertNull(dataManager.getChannelUser(second, "user-3"));
+
+        // The same String instance is shared by every membership of a user
+        Set<ChannelUser> firstUsers = dataManager.getChannelUsers(first);
+        ChannelUser fromFirst = firstUsers.stream().filter(u -> u.slackName.equals("user-10")).findFirst().get();
+        assertSame(fromFirst.slackName, dataManager.getChannelUser(second, "user-10").slackName);
+    }
+
+    @Test
+    public void testChannelAccessAndBatchedReads() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+        dataManager.addChannelUser(channelId, "admin", true);
+        dataManager.addChannelUser(channelId, "martha", false);
+
+        ChannelAccess access = dataManager.getChannelAccess("test-channel", "admin", "martha");
+        assertTrue(access.isCallerAdmin());
+        assertTrue(access.isTargetRegistered());
+        assertFalse(access.isTargetAdmin());
+
+        assertEquals(Arrays.asList("martha"), dataManager.getChannelUsersByName(channelId, Arrays.asList("martha", "nobody"))
+                .keySet().stream().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testChannelsForUser() {
+        int first = dataManager.addChannel("first-channel", "JiraProject1", false);
+        int second = dataManager.addChannel("second-channel", "JiraProject2", false);
+        dataManager.addChannel("third-channel", "JiraProject3", false);
+        dataManager.addChannelUser(first, "alice", true);
+        dataManager.addChannelUsers(second, Collections.singletonMap("alice", false));
+        dataManager.addChannelUser(second, "bob", true);
+
+        assertEquals(new HashSet<>(Arrays.asList("first-channel", "second-channel")),
+                dataManager.getChannelsForUser("alice").stream().map(c -> c.channelName).collect(Collectors.toSet()));
+        assertEquals(Collections.singleton("first-channel"),
+                dataManager.getAdminChannelsForUser("alice").stream().map(c -> c.channelName).collect(Collectors.toSet()));
+        // Losing admin rights is reflected in the reverse index
+        dataManager.addChannelUser(first, "alice", false);
+        assertTrue(dataManager.getAdminChannelsForUser("alice").isEmpty());
+        assertTrue(dataManager.getChannelsForUser("nobody").isEmpty());
+    }
+
+    @Test
+    public void testConditionalWrites() {
+        ChannelInfo created = dataManager.createChannelIfAbsent("test-channel", "JiraProject1", false, "admin");
+        assertTrue(dataManager.isChannelAdmin("admin", created.channelId));
+        assertNull(dataManager.createChannelIfAbsent("test-channel", "JiraProject2", true, "martha"));
+
+        assertTrue(dataManager.addChannelUserIfAbsent(created.channelId, "martha", false));
+        assertFalse(dataManager.addChannelUserIfAbsent(created.channelId, "martha", true));
+        assertFalse(dataManager.compareAndSetAdmin(created.channelId, "martha", true, false));
+        assertTrue(dataManager.compareAndSetAdmin(created.channelId, "martha", false, true));
+        assertEquals(Collections.singleton("test-channel"),
+                dataManager.getAdminChannelsForUser("martha").stream().map(c -> c.channelName).collect(Collectors.toSet()));
+
+        // Failed swaps for names never seen do not add them to the dictionary, which never shrinks
+        assertEquals(2, dataManager.getUserCount());
+        for (int i = 0; i < 100; i++) {
+            assertFalse(dataManager.compareAndSetAdmin(created.channelId, "stranger-" + i, true, false));
+        }
+        assertEquals(2, dataManager.getUserCount());
+        assertTrue(dataManager.compareAndSetAdmin(created.channelId, "newcomer", false, true));
+        assertTrue(dataManager.isChannelAdmin("newcomer", created.channelId));
+        assertEquals(3, dataManager.getUserCount());
+    }
+
+    @Test
+    public void testChannelUsersArePagedInNameOrder() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+        for (int i = 0; i < 30; i++) {
+            dataManager.addChannelUser(channelId, String.format("user%02d", 29 - i), i % 3 == 0);
+        }
+
+        MemberPage page = dataManager.getChannelUsersPage(channelId, "user09", false, 5);
+        assertEquals(Arrays.asList("user10", "user11", "user12", "user13", "user14"),
+                page.users.stream().map(user -> user.slackName).collect(Collectors.toList()));
+        assertEquals(channelId, page.users.get(0).channelId);
+
+        MemberPage admins = dataManager.getChannelUsersPage(channelId, null, true, 100);
+        assertTrue(admins.isLastPage());
+        assertEquals(10, admins.users.size());
+        assertTrue(admins.users.stream().allMatch(user -> user.isAdmin));
+
+        Set<String> iterated = new HashSet<>();
+        dataManager.iterateChannelUsers(channelId, false, 7).forEachRemaining(user -> iterated.add(user.slackName));
+        assertEquals(30, iterated.size());
+    }
+}
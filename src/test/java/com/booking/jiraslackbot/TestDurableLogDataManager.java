@@ -0,0 +1,186 @@
+package com.booking.jiraslackbot;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+@SuppressWarnings("SimplifiableAssertion")
+public class TestDurableLogDataManager {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWritesSurviveRestart() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        int channelId;
+        try (DurableLogDataManager dataManager = new DurableLogDataManager(directory)) {
+            channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+            dataManager.addChannelUser(channelId, "admin", true);
+            dataManager.addChannelUser(channelId, "martha", false);
+            dataManager.updateChannelDetails(channelId, "JiraProject2", true);
+        }
+
+        try (DurableLogDataManager dataManager = new DurableLogDataManager(directory)) {
+            ChannelInfo channelInfo = dataManager.getChannelByName("test-channel");
+            assertEquals(channelId, channelInfo.channelId);
+            assertEquals("JiraProject2", channelInfo.jiraProject);
+            assertEquals(true, channelInfo.restricted);
+            assertTrue(dataManager.isChannelAdmin("admin", channelId));
+            assertFalse(dataManager.isChannelAdmin("martha", channelId));
+            assertEquals(2, dataManager.getChannelUsers(channelId).size());
+            // New channels do not reuse ids
+            assertNotEquals(channelId, dataManager.addChannel("other-channel", "JiraProject1", false));
+        }
+    }
+
+    @Test
+    public void testStateIsRestoredFromSnapshotPlusLogTail() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        int channelId;
+        try (DurableLogDataManager dataManager = new DurableLogDataManager(directory)) {
+            channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+            dataManager.addChannelUser(channelId, "admin", true);
+            dataManager.compact();
+            // Written after the snapshot, so only in the log
+            dataManager.addChannelUser(channelId, "admin", false);
+            dataManager.addChannelUser(channelId, "martha", true);
+        }
+
+        try (DurableLogDataManager dataManager = new DurableLogDataManager(directory)) {
+            assertEquals("JiraProject1", dataManager.getChannelById(channelId).jiraProject);
+            assertFalse(dataManager.isChannelAdmin("admin", channelId));
+            assertTrue(dataManager.isChannelAdmin("martha", channelId));
+        }
+    }
+
+    @Test
+    public void testTornRecordAtEndOfLogIsDiscarded() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        int channelId;
+        try (DurableLogDataManager dataManager = new DurableLogDataManager(directory)) {
+            channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+            dataManager.addChannelUser(channelId, "admin", true);
+        }
+        // Simulate a crash part way through writing a record
+        Path log = directory.resolve("wal-0.log");
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (DurableLogDataManager dataManager = new DurableLogDataManager(directory)) {
+            assertNotNull(dataManager.getChannelById(channelId));
+            assertFalse(dataManager.isChannelAdmin("admin", channelId));
+            // The log is usable again after recovery
+            dataManager.addChannelUser(channelId, "martha", true);
+        }
+        try (DurableLogDataManager dataManager = new DurableLogDataManager(directory)) {
+            assertTrue(dataManager.isChannelAdmin("martha", channelId));
+        }
+    }
+
+    @Test
+    public void testChannelCreatedWithItsAdminIsNotRestoredWithoutIt() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (DurableLogDataManager dataManager = new DurableLogDataManager(directory)) {
+            assertNotNull(dataManager.createChannelIfAbsent("first-channel", "JiraProject1", false, "admin"));
+            assertNotNull(dataManager.createChannelIfAbsent("second-channel", "JiraProject1", false, "admin"));
+        }
+        // Simulate a crash after the channel was written but before its admin: the admin's name ends the log
+        Path log = directory.resolve("wal-0.log");
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - Integer.BYTES - "admin".length());
+        }
+
+        try (DurableLogDataManager dataManager = new DurableLogDataManager(directory)) {
+            ChannelInfo first = dataManager.getChannelByName("first-channel");
+            assertNotNull(first);
+            assertTrue(dataManager.isChannelAdmin("admin", first.channelId));
+            assertNull(dataManager.getChannelByName("second-channel"));
+            // The name is free again, and the channel is created in full
+            ChannelInfo second = dataManager.createChannelIfAbsent("second-channel", "JiraProject2", true, "martha");
+            assertNotNull(second);
+        }
+        try (DurableLogDataManager dataManager = new DurableLogDataManager(directory)) {
+            ChannelInfo second = dataManager.getChannelByName("second-channel");
+            assertEquals("JiraProject2", second.jiraProject);
+            assertTrue(dataManager.isChannelAdmin("martha", second.channelId));
+            assertFalse(dataManager.isChannelAdmin("admin", second.channelId));
+        }
+    }
+
+    @Test
+    public void testConcurrentWritersWithBackgroundCompaction() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        int threads = 8;
+        int usersPerThread = 200;
+        int channelId;
+        try (DurableLogDataManager dataManager = new DurableLogDataManager(directory, 100)) {
+            channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int thread = t;
+                    futures.add(executor.submit(() -> {
+                        for (int u = 0; u < usersPerThread; u++) {
+                            dataManager.addChannelUser(channelId, "user-" + thread + "-" + u, u % 2 == 0);
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            assertNull(dataManager.getLastCompactionFailure());
+        }
+
+        try (DurableLogDataManager dataManager = new DurableLogDataManager(directory)) {
+            assertEquals(threads * usersPerThread, dataManager.getChannelUsers(channelId).size());
+            assertTrue(dataManager.isChannelAdmin("user-3-0", channelId));
+            assertFalse(dataManager.isChannelAdmin("user-3-1", channelId));
+        }
+    }
+
+    @Test
+    public void testConditionalWritesSurviveRestart() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        int channelId;
+        try (DurableLogDataManager dataManager = new DurableLogDataManager(directory)) {
+            channelId = dataManager.createChannelIfAbsent("test-channel", "JiraProject1", false, "admin").channelId;
+            assertNull(dataManager.createChannelIfAbsent("test-channel", "JiraProject2", false, "martha"));
+            assertTrue(dataManager.addChannelUserIfAbsent(channelId, "martha", true));
+            assertFalse(dataManager.addChannelUserIfAbsent(channelId, "martha", false));
+            assertTrue(dataManager.compareAndSetAdmin(channelId, "martha", true, false));
+            assertFalse(dataManager.compareAndSetAdmin(channelId, "martha", true, false));
+            Map<String, Boolean> newUsers = new HashMap<>();
+            newUsers.put("martha", true);
+            newUsers.put("bob", false);
+            assertEquals(Collections.singleton("bob"), dataManager.addChannelUsersIfAbsent(channelId, newUsers));
+        }
+
+        try (DurableLogDataManager dataManager = new DurableLogDataManager(directory)) {
+            assertEquals("JiraProject1", dataManager.getChannelByName("test-channel").jiraProject);
+            assertTrue(dataManager.isChannelAdmin("admin", channelId));
+            assertFalse(dataManager.isChannelAdmin("martha", channelId));
+            assertEquals(3, dataManager.getChannelUsers(channelId).size());
+        }
+    }
+}
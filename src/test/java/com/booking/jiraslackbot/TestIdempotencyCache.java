@@ -0,0 +1,116 @@
+package com.booking.jiraslackbot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class TestIdempotencyCache {
+
+    final AtomicLong now = new AtomicLong();
+
+    private IdempotencyCache<String> cache(int maxEntries, long windowMillis) {
+        IdempotencyCache.Settings settings = new IdempotencyCache.Settings();
+        settings.maxEntries = maxEntries;
+        settings.windowMillis = windowMillis;
+        return new IdempotencyCache<>(settings, now::get);
+    }
+
+    @Test
+    public void testFirstValueIsKeptUntilTheWindowPasses() {
+        IdempotencyCache<String> cache = cache(1024, 1000);
+        assertNull(cache.putIfAbsent("request-1", "first"));
+        assertEquals("first", cache.putIfAbsent("request-1", "second"));
+        assertEquals("first", cache.get("request-1"));
+        assertNull(cache.get("request-2"));
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertEquals("first", cache.get("request-1"));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        // Gone as soon as the window passes, even though nothing has been added to its bucket since
+        assertNull(cache.get("request-1"));
+        assertNull(cache.putIfAbsent("request-1", "third"));
+        assertEquals("third", cache.get("request-1"));
+        assertEquals(4, cache.getHitCount());
+    }
+
+    @Test
+    public void testRemoveOnlyForgetsTheGivenValue() {
+        IdempotencyCache<String> cache = cache(1024, 1000);
+        cache.putIfAbsent("request-1", "first");
+        assertFalse(cache.remove("request-1", "other"));
+        assertTrue(cache.remove("request-1", "first"));
+        assertNull(cache.get("request-1"));
+        assertFalse(cache.remove("request-1", "first"));
+    }
+
+    @Test
+    public void testSizeIsBoundedByDroppingExpiredThenOldest() {
+        IdempotencyCache<String> cache = cache(64, 1000);
+        assertEquals(64, cache.getCapacity());
+        for (int i = 0; i < 10_000; i++) {
+            cache.putIfAbsent("request-" + i, "reply-" + i);
+        }
+        int remembered = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (cache.get("request-" + i) != null) {
+                remembered++;
+            }
+        }
+        assertEquals(64, remembered);
+        assertEquals(10_000 - 64, cache.getEvictionCount());
+        // The newest of each bucket are the ones kept
+        assertEquals("reply-9999", cache.get("request-9999"));
+
+        // Once expired, entries make way without counting as evictions. Eight new entries can not fill any bucket.
+        long evictions = cache.getEvictionCount();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        for (int i = 0; i < IdempotencyCache.WAYS; i++) {
+            assertNull(cache.putIfAbsent("later-" + i, "reply"));
+        }
+        assertEquals(evictions, cache.getEvictionCount());
+        assertNull(cache.get("request-9999"));
+    }
+
+    @Test
+    public void testConcurrentPutsForOneIdStoreExactlyOnce() throws Exception {
+        IdempotencyCache<String> cache = cache(1024, 60_000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 200; round++) {
+                String key = "request-" + round;
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<String>> puts = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    String value = "value-" + t;
+                    puts.add(executor.submit(() -> {
+                        start.await();
+                        return cache.putIfAbsent(key, value);
+                    }));
+                }
+                start.countDown();
+                int stored = 0;
+                for (Future<String> put : puts) {
+                    String earlier = put.get();
+                    if (earlier == null) {
+                        stored++;
+                    } else {
+                        assertEquals(cache.get(key), earlier);
+                    }
+                }
+                assertEquals(1, stored);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(200, cache.getStoredCount());
+    }
+}
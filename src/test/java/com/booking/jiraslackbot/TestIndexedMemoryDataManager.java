@@ -0,0 +1,264 @@
+package com.booking.jiraslackbot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+@SuppressWarnings("SimplifiableAssertion")
+public class TestIndexedMemoryDataManager {
+
+    IndexedMemoryDataManager dataManager;
+
+    @Before
+    public void setUp() {
+        dataManager = new IndexedMemoryDataManager();
+    }
+
+    @Test
+    public void testChannelCanBeFoundByNameAndById() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", true);
+
+        ChannelInfo byName = dataManager.getChannelByName("test-channel");
+        ChannelInfo byId = dataManager.getChannelById(channelId);
+        assertEquals(channelId, byName.channelId);
+        assertEquals("JiraProject1", byId.jiraProject);
+        assertEquals(true, byId.restricted);
+        assertTrue(dataManager.isExistingChannel("test-channel"));
+        assertFalse(dataManager.isExistingChannel("other-channel"));
+        assertNull(dataManager.getChannelByName("other-channel"));
+    }
+
+    @Test
+    public void testUpdateChannelDetailsIsVisibleFromBothIndexes() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+
+        dataManager.updateChannelDetails(channelId, "JiraProject2", true);
+
+        assertEquals("JiraProject2", dataManager.getChannelById(channelId).jiraProject);
+        assertEquals("JiraProject2", dataManager.getChannelByName("test-channel").jiraProject);
+        assertEquals(true, dataManager.getChannelByName("test-channel").restricted);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUpdateUnknownChannelThrows() {
+        dataManager.updateChannelDetails(42, "JiraProject1", false);
+    }
+
+    @Test
+    public void testAddChannelUserOverwritesExistingUser() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+
+        dataManager.addChannelUser(channelId, "martha", false);
+        assertFalse(dataManager.isChannelAdmin("martha", channelId));
+
+        dataManager.addChannelUser(channelId, "martha", true);
+        assertTrue(dataManager.isChannelAdmin("martha", channelId));
+        assertEquals(1, dataManager.getChannelUsers(channelId).size());
+        assertNull(dataManager.getChannelUser(channelId + 1, "martha"));
+    }
+
+    @Test
+    public void testChannelAccessReturnsChannelAndBothMemberships() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+        dataManager.addChannelUser(channelId, "admin", true);
+        dataManager.addChannelUser(channelId, "martha", false);
+
+        ChannelAccess access = dataManager.getChannelAccess("test-channel", "admin", "martha");
+        assertEquals(channelId, access.channelInfo.channelId);
+        assertTrue(access.isCallerAdmin());
+        assertTrue(access.isTargetRegistered());
+        assertFalse(access.isTargetAdmin());
+
+        access = dataManager.getChannelAccess("test-channel", "martha", "nobody");
+        assertFalse(access.isCallerAdmin());
+        assertFalse(access.isTargetRegistered());
+
+        access = dataManager.getChannelAccess("other-channel", "admin", null);
+        assertFalse(access.isRegisteredChannel());
+    }
+
+    @Test
+    public void testBatchedUserReadAndWrite() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+        Map<String, Boolean> newUsers = new HashMap<>();
+        newUsers.put("admin", true);
+        newUsers.put("martha", false);
+
+        dataManager.addChannelUsers(channelId, newUsers);
+
+        Map<String, ChannelUser> found = dataManager.getChannelUsersByName(channelId, Arrays.asList("martha", "nobody"));
+        assertEquals(1, found.size());
+        assertFalse(found.get("martha").isAdmin);
+        assertTrue(dataManager.isChannelAdmin("admin", channelId));
+    }
+
+    @Test
+    public void testConcurrentAddsAreAllRecorded() throws Exception {
+        int channelCount = 8;
+        int usersPerChannel = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(channelCount);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < channelCount; c++) {
+                String channelName = "channel-" + c;
+                futures.add(executor.submit(() -> {
+                    int channelId = dataManager.addChannel(channelName, "JiraProject", false);
+                    for (int u = 0; u < usersPerChannel; u++) {
+                        dataManager.addChannelUser(channelId, "user-" + u, u % 2 == 0);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int c = 0; c < channelCount; c++) {
+            ChannelInfo channelInfo = dataManager.getChannelByName("channel-" + c);
+            assertEquals(usersPerChannel, dataManager.getChannelUsers(channelInfo.channelId).size());
+            assertTrue(dataManager.isChannelAdmin("user-0", channelInfo.channelId));
+            assertFalse(dataManager.isChannelAdmin("user-1", channelInfo.channelId));
+        }
+    }
+
+    @Test
+    public void testChannelsForUser() {
+        int first = dataManager.addChannel("first-channel", "JiraProject1", false);
+        int second = dataManager.addChannel("second-channel", "JiraProject2", false);
+        dataManager.addChannel("third-channel", "JiraProject3", false);
+        dataManager.addChannelUser(first, "alice", true);
+        dataManager.addChannelUsers(second, Collections.singletonMap("alice", false));
+        dataManager.addChannelUser(second, "bob", true);
+
+        assertEquals(new HashSet<>(Arrays.asList("first-channel", "second-channel")),
+                dataManager.getChannelsForUser("alice").stream().map(c -> c.channelName).collect(Collectors.toSet()));
+        assertEquals(Collections.singleton("first-channel"),
+                dataManager.getAdminChannelsForUser("alice").stream().map(c -> c.channelName).collect(Collectors.toSet()));
+        // Losing admin rights is reflected in the reverse index
+        dataManager.addChannelUser(first, "alice", false);
+        assertTrue(dataManager.getAdminChannelsForUser("alice").isEmpty());
+        assertTrue(dataManager.getChannelsForUser("nobody").isEmpty());
+    }
+
+    @Test
+    public void testConditionalWrites() {
+        ChannelInfo created = dataManager.createChannelIfAbsent("test-channel", "JiraProject1", false, "admin");
+        assertTrue(dataManager.isChannelAdmin("admin", created.channelId));
+        assertNull(dataManager.createChannelIfAbsent("test-channel", "JiraProject2", true, "martha"));
+        assertEquals("JiraProject1", dataManager.getChannelByName("test-channel").jiraProject);
+
+        assertTrue(dataManager.addChannelUserIfAbsent(created.channelId, "martha", false));
+        assertFalse(dataManager.addChannelUserIfAbsent(created.channelId, "martha", true));
+        assertFalse(dataManager.isChannelAdmin("martha", created.channelId));
+
+        assertFalse(dataManager.compareAndSetAdmin(created.channelId, "martha", true, false));
+        assertTrue(dataManager.compareAndSetAdmin(created.channelId, "martha", false, true));
+        assertTrue(dataManager.isChannelAdmin("martha", created.channelId));
+        // An unregistered user counts as a basic user
+        assertTrue(dataManager.compareAndSetAdmin(created.channelId, "bob", false, true));
+        assertEquals(1, dataManager.getAdminChannelsForUser("bob").size());
+    }
+
+    @Test
+    public void testConcurrentConditionalWritesSucceedOnce() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> creates = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String adminUser = "admin-" + t;
+                creates.add(executor.submit(() ->
+                        dataManager.createChannelIfAbsent("test-channel", "JiraProject", false, adminUser) != null));
+            }
+            assertEquals(1, countSuccesses(creates));
+            int channelId = dataManager.getChannelByName("test-channel").channelId;
+            // Exactly one admin, and it is visible as soon as the channel is
+            assertEquals(1, dataManager.getChannelUsers(channelId).size());
+
+            List<Future<Boolean>> adds = new ArrayList<>();
+            List<Future<Boolean>> upgrades = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                adds.add(executor.submit(() -> dataManager.addChannelUserIfAbsent(channelId, "martha", false)));
+            }
+            assertEquals(1, countSuccesses(adds));
+            for (int t = 0; t < threads; t++) {
+                upgrades.add(executor.submit(() -> dataManager.compareAndSetAdmin(channelId, "martha", false, true)));
+            }
+            assertEquals(1, countSuccesses(upgrades));
+            assertTrue(dataManager.isChannelAdmin("martha", channelId));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static int countSuccesses(List<Future<Boolean>> futures) throws Exception {
+        int successes = 0;
+        for (Future<Boolean> future : futures) {
+            if (future.get()) {
+                successes++;
+            }
+        }
+        return successes;
+    }
+
+    @Test
+    public void testChannelUsersArePagedInNameOrder() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+        for (int i = 0; i < 25; i++) {
+            dataManager.addChannelUser(channelId, String.format("user%02d", 24 - i), i % 5 == 0);
+        }
+        // Updated, not added again, so it is listed once
+        dataManager.addChannelUser(channelId, "user03", true);
+
+        List<String> names = new ArrayList<>();
+        MemberPage page = dataManager.getChannelUsersPage(channelId, null, false, 10);
+        assertEquals(10, page.users.size());
+        assertEquals("user09", page.nextCursor);
+        page.users.forEach(user -> names.add(user.slackName));
+        page = dataManager.getChannelUsersPage(channelId, page.nextCursor, false, 10);
+        page.users.forEach(user -> names.add(user.slackName));
+        // Added between pages, after the cursor, so it shows up on the last page
+        dataManager.addChannelUser(channelId, "user99", false);
+        page = dataManager.getChannelUsersPage(channelId, page.nextCursor, false, 10);
+        assertTrue(page.isLastPage());
+        page.users.forEach(user -> names.add(user.slackName));
+
+        assertEquals(26, names.size());
+        List<String> sorted = new ArrayList<>(names);
+        Collections.sort(sorted);
+        assertEquals(sorted, names);
+        assertEquals("user99", names.get(25));
+    }
+
+    @Test
+    public void testIteratingAdminsReadsPageByPage() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+        for (int i = 0; i < 25; i++) {
+            dataManager.addChannelUser(channelId, String.format("user%02d", i), i % 5 == 0);
+        }
+
+        List<String> admins = new ArrayList<>();
+        dataManager.iterateChannelUsers(channelId, true, 2).forEachRemaining(user -> {
+            assertTrue(user.isAdmin);
+            admins.add(user.slackName);
+        });
+        assertEquals(Arrays.asList("user00", "user05", "user10", "user15", "user20"), admins);
+        assertTrue(dataManager.getChannelUsersPage(channelId + 1, null, false, 10).users.isEmpty());
+        assertFalse(dataManager.iterateChannelUsers(channelId + 1, false, 10).hasNext());
+    }
+}
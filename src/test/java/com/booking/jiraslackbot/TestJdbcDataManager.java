@@ -0,0 +1,181 @@
+package com.booking.jiraslackbot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+@SuppressWarnings("SimplifiableAssertion")
+public class TestJdbcDataManager {
+
+    JdbcDataManager dataManager;
+
+    @Before
+    public void setUp() {
+        // A fresh embedded database for every test
+        dataManager = JdbcDataManager.pooled("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "", 4);
+    }
+
+    @After
+    public void tearDown() {
+        dataManager.close();
+    }
+
+    @Test
+    public void testAddAndUpdateChannel() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+        assertEquals(channelId, dataManager.getChannelByName("test-channel").channelId);
+        assertTrue(dataManager.isExistingChannel("test-channel"));
+        assertNull(dataManager.getChannelByName("other-channel"));
+
+        dataManager.updateChannelDetails(channelId, "JiraProject2", true);
+
+        ChannelInfo channelInfo = dataManager.getChannelById(channelId);
+        assertEquals("JiraProject2", channelInfo.jiraProject);
+        assertEquals(true, channelInfo.restricted);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testUpdateUnknownChannelThrows() {
+        dataManager.updateChannelDetails(42, "JiraProject1", false);
+    }
+
+    @Test
+    public void testAddChannelUserIsAnUpsert() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+
+        dataManager.addChannelUser(channelId, "martha", false);
+        assertFalse(dataManager.isChannelAdmin("martha", channelId));
+        dataManager.addChannelUser(channelId, "martha", true);
+        assertTrue(dataManager.isChannelAdmin("martha", channelId));
+        assertEquals(1, dataManager.getChannelUsers(channelId).size());
+    }
+
+    @Test
+    public void testChannelAccessInOneQuery() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+        dataManager.addChannelUser(channelId, "admin", true);
+        dataManager.addChannelUser(channelId, "martha", false);
+
+        ChannelAccess access = dataManager.getChannelAccess("test-channel", "admin", "martha");
+        assertEquals(channelId, access.channelInfo.channelId);
+        assertTrue(access.isCallerAdmin());
+        assertTrue(access.isTargetRegistered());
+        assertFalse(access.isTargetAdmin());
+
+        access = dataManager.getChannelAccess("test-channel", "admin", null);
+        assertTrue(access.isCallerAdmin());
+        assertFalse(access.isTargetRegistered());
+
+        access = dataManager.getChannelAccess("test-channel", "nobody", "admin");
+        assertFalse(access.isCallerAdmin());
+        assertTrue(access.isTargetAdmin());
+
+        assertFalse(dataManager.getChannelAccess("other-channel", "admin", null).isRegisteredChannel());
+    }
+
+    @Test
+    public void testBatchedUsersAndStreaming() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+        Map<String, Boolean> users = new LinkedHashMap<>();
+        for (int i = 0; i < 1200; i++) {
+            users.put("user-" + i, i == 0);
+        }
+
+        dataManager.addChannelUsers(channelId, users);
+
+        Map<String, ChannelUser> found = dataManager.getChannelUsersByName(channelId, Arrays.asList("user-0", "user-7", "nobody"));
+        assertEquals(2, found.size());
+        assertTrue(found.get("user-0").isAdmin);
+        try (Stream<ChannelUser> stream = dataManager.streamChannelUsers(channelId)) {
+            assertEquals(1200, stream.count());
+        }
+        // Every pooled connection was returned, so the pool is still usable
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1200, dataManager.getChannelUsers(channelId).size());
+        }
+    }
+
+    @Test
+    public void testChannelsForUser() {
+        int first = dataManager.addChannel("first-channel", "JiraProject1", false);
+        int second = dataManager.addChannel("second-channel", "JiraProject2", false);
+        dataManager.addChannel("third-channel", "JiraProject3", false);
+        dataManager.addChannelUser(first, "alice", true);
+        dataManager.addChannelUsers(second, Collections.singletonMap("alice", false));
+        dataManager.addChannelUser(second, "bob", true);
+
+        assertEquals(new HashSet<>(Arrays.asList("first-channel", "second-channel")),
+                dataManager.getChannelsForUser("alice").stream().map(c -> c.channelName).collect(Collectors.toSet()));
+        assertEquals(Collections.singleton("first-channel"),
+                dataManager.getAdminChannelsForUser("alice").stream().map(c -> c.channelName).collect(Collectors.toSet()));
+        // Losing admin rights is reflected in the reverse index
+        dataManager.addChannelUser(first, "alice", false);
+        assertTrue(dataManager.getAdminChannelsForUser("alice").isEmpty());
+        assertTrue(dataManager.getChannelsForUser("nobody").isEmpty());
+    }
+
+    @Test
+    public void testConditionalWrites() {
+        ChannelInfo created = dataManager.createChannelIfAbsent("test-channel", "JiraProject1", false, "admin");
+        assertTrue(dataManager.isChannelAdmin("admin", created.channelId));
+        // The duplicate name is rejected by the unique index, and nothing is left behind
+        assertNull(dataManager.createChannelIfAbsent("test-channel", "JiraProject2", true, "martha"));
+        assertEquals("JiraProject1", dataManager.getChannelByName("test-channel").jiraProject);
+        assertEquals(1, dataManager.getChannelUsers(created.channelId).size());
+
+        assertTrue(dataManager.addChannelUserIfAbsent(created.channelId, "martha", false));
+        assertFalse(dataManager.addChannelUserIfAbsent(created.channelId, "martha", true));
+        assertFalse(dataManager.compareAndSetAdmin(created.channelId, "martha", true, false));
+        assertTrue(dataManager.compareAndSetAdmin(created.channelId, "martha", false, true));
+        assertTrue(dataManager.isChannelAdmin("martha", created.channelId));
+        assertTrue(dataManager.compareAndSetAdmin(created.channelId, "bob", false, false));
+        assertFalse(dataManager.isChannelAdmin("bob", created.channelId));
+
+        Map<String, Boolean> newUsers = new LinkedHashMap<>();
+        newUsers.put("martha", false);
+        newUsers.put("carol", true);
+        assertEquals(Collections.singleton("carol"), dataManager.addChannelUsersIfAbsent(created.channelId, newUsers));
+        assertTrue(dataManager.isChannelAdmin("martha", created.channelId));
+    }
+
+    @Test
+    public void testChannelUsersArePagedInNameOrder() {
+        int channelId = dataManager.addChannel("test-channel", "JiraProject1", false);
+        Map<String, Boolean> users = new LinkedHashMap<>();
+        for (int i = 0; i < 12; i++) {
+            users.put(String.format("user%02d", 11 - i), i % 4 == 0);
+        }
+        dataManager.addChannelUsers(channelId, users);
+
+        MemberPage first = dataManager.getChannelUsersPage(channelId, null, false, 5);
+        assertEquals("user00", first.users.get(0).slackName);
+        assertEquals("user04", first.nextCursor);
+        MemberPage second = dataManager.getChannelUsersPage(channelId, first.nextCursor, false, 5);
+        assertEquals("user05", second.users.get(0).slackName);
+        MemberPage last = dataManager.getChannelUsersPage(channelId, second.nextCursor, false, 5);
+        assertEquals(2, last.users.size());
+        assertTrue(last.isLastPage());
+
+        MemberPage admins = dataManager.getChannelUsersPage(channelId, null, true, 3);
+        assertEquals(Arrays.asList("user03", "user07", "user11"),
+                admins.users.stream().map(user -> user.slackName).collect(Collectors.toList()));
+        assertTrue(admins.isLastPage());
+        int iterated = 0;
+        for (Iterator<ChannelUser> iterator = dataManager.iterateChannelUsers(channelId, false, 5); iterator.hasNext(); iterator.next()) {
+            iterated++;
+        }
+        assertEquals(12, iterated);
+    }
+}
@@ -6,6 +6,14 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
@@ -37,15 +45,37 @@ public class TestJiraBotActions {
         String jiraProject = "JiraProj";
         boolean isRestricted = false;       // <- Creating tickets restricted to registered users?
         // State: Channel DOES NOT previously exist
-        when(dataManagerMock.getChannelByName(any())).thenReturn(null);
+        when(dataManagerMock.getChannelAccess(any(), any(), any())).thenReturn(unregisteredAccess());
+        when(dataManagerMock.createChannelIfAbsent(channelName, jiraProject, isRestricted, callingUser))
+                .thenReturn(channelInfoObj(1, channelName));
 
         // Test Execution
         int channelId = jiraBotActions.registerProject(channelName, jiraProject, isRestricted, callingUser);
 
-        // Verify it called jbdm.createProject()
-        verify(dataManagerMock).addChannel(channelName, jiraProject, isRestricted);
-        // Verify it called jbdm.addUser();
-        verify(dataManagerMock).addChannelUser(channelId, callingUser, true);
+        // Verify it created the channel together with the calling user as its admin - in a single write
+        assertEquals(1, channelId);
+        verify(dataManagerMock).createChannelIfAbsent(channelName, jiraProject, isRestricted, callingUser);
+        verify(dataManagerMock, never()).updateChannelDetails(anyInt(), any(), anyBoolean());
+    }
+
+    @Test
+    public void testConcurrentlyCreatedProjectIsUpdatedByItsAdmin() throws JiraBotActions.UnauthorisedAccessError {
+        // Test Setup
+        String channelName = "test-channel";
+        String callingUser = "calling-user";
+        String jiraProject = "JiraProj";
+        // State: Channel did not exist when read, but someone else registered it (with this caller as admin) before the write
+        when(dataManagerMock.getChannelAccess(channelName, callingUser, null))
+                .thenReturn(unregisteredAccess())
+                .thenReturn(accessObj(channelInfoObj(1, channelName), channelUserObj(callingUser, true), null));
+        when(dataManagerMock.createChannelIfAbsent(channelName, jiraProject, false, callingUser)).thenReturn(null);
+
+        // Test Execution
+        int channelId = jiraBotActions.registerProject(channelName, jiraProject, false, callingUser);
+
+        // Verify it falls back to updating the existing channel
+        assertEquals(1, channelId);
+        verify(dataManagerMock, times(1)).updateChannelDetails(1, jiraProject, false);
     }
 
     @Test
@@ -55,9 +85,9 @@ public class TestJiraBotActions {
         String callingUser = "calling-user";
         String jiraProject = "JiraProj";
         boolean isRestricted = false;       // <- Creating tickets restricted to registered users?
-        // Test scenario: Channel was previously defined
-        when(dataManagerMock.getChannelByName(any())).thenReturn(new ChannelInfo());
-        when(dataManagerMock.isChannelAdmin(any(), anyInt())).thenReturn(false);
+        // Test scenario: Channel was previously defined. The caller is not an admin user.
+        when(dataManagerMock.getChannelAccess(channelName, callingUser, null))
+                .thenReturn(accessObj(new ChannelInfo(), channelUserObj(callingUser, false), null));
 
         // Test Execution
         try {
@@ -68,8 +98,7 @@ public class TestJiraBotActions {
         }
 
         // Verification
-//        verify(dataManagerMock, times(1)).getChannelByName("test-channel");
-//        verify(dataManagerMock, times(1)).isChannelAdmin("test-user", channelId);
+//        verify(dataManagerMock, times(1)).getChannelAccess("test-channel", "calling-user", null);
         // Verify it never calls jbdm.createProject()
         verify(dataManagerMock, never()).addChannel(any(), any(), anyBoolean());
         // Verify it never calls jbdm.addUser();
@@ -84,16 +113,16 @@ public class TestJiraBotActions {
         String callingUser = "calling-user";
         String jiraProject = "JiraProj";
         boolean isRestricted = false;       // <- Creating tickets restricted to registered users?
-        // Test scenario: Channel was previously defined
-        when(dataManagerMock.getChannelByName(any())).thenReturn(new ChannelInfo());
-        when(dataManagerMock.isChannelAdmin(any(), anyInt())).thenReturn(true);
+        // Test scenario: Channel was previously defined. The caller is an admin user.
+        when(dataManagerMock.getChannelAccess(channelName, callingUser, null))
+                .thenReturn(accessObj(new ChannelInfo(), channelUserObj(callingUser, true), null));
 
         // Test Execution
         int channelId = jiraBotActions.registerProject(channelName, jiraProject, isRestricted, callingUser);
 
         // Verification
-        verify(dataManagerMock, times(1)).getChannelByName(channelName);
-        verify(dataManagerMock, times(1)).isChannelAdmin(callingUser, channelId);
+        // A single read to fetch the channel and the caller's role
+        verify(dataManagerMock, times(1)).getChannelAccess(channelName, callingUser, null);
         // Verify it calls UpdateProject
         verify(dataManagerMock, times(1)).updateChannelDetails(channelId, jiraProject, isRestricted);
         // Verify it never calls AddUser or AddChannel;
@@ -113,7 +142,8 @@ public class TestJiraBotActions {
         String testChannelName = "test-channel";
         String callingUser = "calling-user";
         String newUserName = "new-user";
-        when(dataManagerMock.getChannelByName(testChannelName)).thenReturn(null);     // <-- Channel not registered
+        when(dataManagerMock.getChannelAccess(testChannelName, callingUser, newUserName))
+                .thenReturn(unregisteredAccess());     // <-- Channel not registered
 
         // Test Execution
         try {
@@ -124,10 +154,8 @@ public class TestJiraBotActions {
         }
 
         // What should it do?
-        // Check if the channel is registered
-        verify(dataManagerMock, times(1)).getChannelByName(testChannelName);
-        // It will not check if the user is a channel admin
-        verify(dataManagerMock, never()).isChannelAdmin(any(), anyInt());
+        // Check if the channel is registered - a single read
+        verify(dataManagerMock, times(1)).getChannelAccess(testChannelName, callingUser, newUserName);
         // Verify it never calls addChannel or addUser;
         verify(dataManagerMock, never()).addChannel(any(), any(), anyBoolean());
         verify(dataManagerMock, never()).addChannelUser(anyInt(), any(), anyBoolean());
@@ -144,9 +172,9 @@ public class TestJiraBotActions {
         String newUserName = "new-user";
         // State: Channel is registered
         ChannelInfo channelInfo = channelInfoObj(channelId, testChannelName);
-        when(dataManagerMock.getChannelByName(testChannelName)).thenReturn(channelInfo);
         // State: Calling user is NOT a channel admin
-        when(dataManagerMock.isChannelAdmin(callingUser, channelId)).thenReturn(false);
+        when(dataManagerMock.getChannelAccess(testChannelName, callingUser, newUserName))
+                .thenReturn(accessObj(channelInfo, channelUserObj(callingUser, false), null));
 
         // Test Execution
         // Attempts to make ADMIN user - expected: UnauthorisedAccess
@@ -178,11 +206,10 @@ public class TestJiraBotActions {
         String callingUser = "calling-user";
         String newUserName = "new-user";
         ChannelInfo channelInfo = channelInfoObj(channelId, testChannelName);
-        when(dataManagerMock.getChannelByName(any())).thenReturn(channelInfo);
-        when(dataManagerMock.isChannelAdmin(callingUser, channelId)).thenReturn(true);
         // State: New user IS previously added
         ChannelUser user = new ChannelUser();
-        when(dataManagerMock.getChannelUser(channelId, newUserName)).thenReturn(user);
+        when(dataManagerMock.getChannelAccess(testChannelName, callingUser, newUserName))
+                .thenReturn(accessObj(channelInfo, channelUserObj(callingUser, true), user));
 
         // Expecting: Cannot add user; user already exists.
         try {
@@ -203,24 +230,21 @@ public class TestJiraBotActions {
         String newUserName = "new-user";
         // State: Channel is registered
         ChannelInfo channelInfo = channelInfoObj(channelId, testChannelName);
-        when(dataManagerMock.getChannelByName(testChannelName)).thenReturn(channelInfo);
-        // State: Calling user IS a channel admin
-        when(dataManagerMock.isChannelAdmin(callingUser, channelId)).thenReturn(true);
-        // State: New user NOT previously added
-        when(dataManagerMock.getChannelUser(channelId, newUserName)).thenReturn(null);
+        // State: Calling user IS a channel admin. New user NOT previously added
+        when(dataManagerMock.getChannelAccess(testChannelName, callingUser, newUserName))
+                .thenReturn(accessObj(channelInfo, channelUserObj(callingUser, true), null));
+        when(dataManagerMock.addChannelUserIfAbsent(channelId, newUserName, false)).thenReturn(true);
 
         // Test Execution
         // Adding a BASIC user (not an admin)
         jiraBotActions.addUser(testChannelName, callingUser, newUserName, false);
 
         // What should it do?
-        // Check if the caller is an admin user.
-        verify(dataManagerMock, times(1)).getChannelByName(testChannelName);
-        verify(dataManagerMock, times(1)).getChannelUser(channelId, newUserName);
-        verify(dataManagerMock, times(1)).isChannelAdmin(callingUser, channelId);
+        // Check the channel, the caller's role and the new user's membership - in a single read.
+        verify(dataManagerMock, times(1)).getChannelAccess(testChannelName, callingUser, newUserName);
         // Verify it calls jbdm to add the channel user - and verify values;
         // Most important! Check that it adds the user WITHOUT admin rights
-        verify(dataManagerMock, times(1)).addChannelUser(channelId, newUserName, false);
+        verify(dataManagerMock, times(1)).addChannelUserIfAbsent(channelId, newUserName, false);
         // Verify it never calls addChannel;
         verify(dataManagerMock, never()).addChannel(any(), any(), anyBoolean());
         verifyNoMoreInteractions(dataManagerMock);
@@ -235,24 +259,21 @@ public class TestJiraBotActions {
         String newUserName = "new-user";
         // State: Channel is registered
         ChannelInfo channelInfo = channelInfoObj(channelId, testChannelName);
-        when(dataManagerMock.getChannelByName(testChannelName)).thenReturn(channelInfo);
-        // State: Calling user IS a channel admin
-        when(dataManagerMock.isChannelAdmin(callingUser, channelId)).thenReturn(true);
-        // State: New user NOT previously added
-        when(dataManagerMock.getChannelUser(channelId, newUserName)).thenReturn(null);
+        // State: Calling user IS a channel admin. New user NOT previously added
+        when(dataManagerMock.getChannelAccess(testChannelName, callingUser, newUserName))
+                .thenReturn(accessObj(channelInfo, channelUserObj(callingUser, true), null));
+        when(dataManagerMock.addChannelUserIfAbsent(channelId, newUserName, true)).thenReturn(true);
 
         // Test Execution
         // Adding an ADMIN user
         jiraBotActions.addUser(testChannelName, callingUser, newUserName, true);
 
         // What should it do?
-        // Check if the caller is an admin user.
-        verify(dataManagerMock, times(1)).getChannelByName(testChannelName);
-        verify(dataManagerMock, times(1)).getChannelUser(channelId, newUserName);
-        verify(dataManagerMock, times(1)).isChannelAdmin(callingUser, channelId);
+        // Check the channel, the caller's role and the new user's membership - in a single read.
+        verify(dataManagerMock, times(1)).getChannelAccess(testChannelName, callingUser, newUserName);
         // Verify it calls jbdm to add the channel user - and verify values;
         // Most important! Check that it adds the user WITH admin rights
-        verify(dataManagerMock, times(1)).addChannelUser(channelId, newUserName, true);
+        verify(dataManagerMock, times(1)).addChannelUserIfAbsent(channelId, newUserName, true);
         // Verify it never calls addChannel;
         verify(dataManagerMock, never()).addChannel(any(), any(), anyBoolean());
         verifyNoMoreInteractions(dataManagerMock);
@@ -267,25 +288,133 @@ public class TestJiraBotActions {
         String newUserName = "new-user";
         // State: Channel is registered
         ChannelInfo channelInfo = channelInfoObj(channelId, testChannelName);
-        when(dataManagerMock.getChannelByName(testChannelName)).thenReturn(channelInfo);
         // State: Calling user IS a channel admin
-        when(dataManagerMock.isChannelAdmin(callingUser, channelId)).thenReturn(true);
         // State: New user WAS previously added - as BASIC user
         ChannelUser existingUser = new ChannelUser();
         existingUser.isAdmin = false;   // <-- User starts as a BASIC user (not Admin)
-        when(dataManagerMock.getChannelUser(channelId, newUserName)).thenReturn(existingUser);
+        when(dataManagerMock.getChannelAccess(testChannelName, callingUser, newUserName))
+                .thenReturn(accessObj(channelInfo, channelUserObj(callingUser, true), existingUser));
+        when(dataManagerMock.compareAndSetAdmin(channelId, newUserName, false, true)).thenReturn(true);
 
         // Test Execution
         // Upgrading to an ADMIN user
         jiraBotActions.makeAdmin(testChannelName, callingUser, newUserName);
 
         // What should it do?
-        // Check that it adds the user with ADMIN rights
-        verify(dataManagerMock, times(1)).addChannelUser(channelId, newUserName, true);
+        // Check that it upgrades the user to ADMIN rights - only if they are still a BASIC user
+        verify(dataManagerMock, times(1)).compareAndSetAdmin(channelId, newUserName, false, true);
+    }
+
+    @Test
+    public void testAdminUserCanDowngradeAdminUserToBasic() throws Throwable {
+        // Test Setup
+        int channelId = 1;
+        String testChannelName = "test-channel";
+        String callingUser = "calling-user";
+        String adminUserName = "admin-user";
+        // State: Calling user IS a channel admin. Target user IS a channel admin
+        ChannelInfo channelInfo = channelInfoObj(channelId, testChannelName);
+        when(dataManagerMock.getChannelAccess(testChannelName, callingUser, adminUserName))
+                .thenReturn(accessObj(channelInfo, channelUserObj(callingUser, true), channelUserObj(adminUserName, true)));
+        when(dataManagerMock.compareAndSetAdmin(channelId, adminUserName, true, false)).thenReturn(true);
+
+        // Test Execution
+        jiraBotActions.removeAdmin(testChannelName, callingUser, adminUserName);
+
+        // Check that it downgrades the user to a BASIC user
+        verify(dataManagerMock, times(1)).compareAndSetAdmin(channelId, adminUserName, true, false);
+        verify(dataManagerMock, never()).addChannelUser(anyInt(), any(), anyBoolean());
     }
 
     @Test
-    public void testAdminUserCanDowngradeAdminUserToBasic(){}
+    public void testConcurrentlyDowngradedAdmin_returnsInvalidActionError() throws Throwable {
+        // Test Setup
+        int channelId = 1;
+        String testChannelName = "test-channel";
+        String callingUser = "calling-user";
+        String adminUserName = "admin-user";
+        // State: Target user was an admin when read, but was downgraded by someone else before the write
+        ChannelInfo channelInfo = channelInfoObj(channelId, testChannelName);
+        when(dataManagerMock.getChannelAccess(testChannelName, callingUser, adminUserName))
+                .thenReturn(accessObj(channelInfo, channelUserObj(callingUser, true), channelUserObj(adminUserName, true)));
+        when(dataManagerMock.compareAndSetAdmin(channelId, adminUserName, true, false)).thenReturn(false);
+
+        // Test Execution
+        try {
+            jiraBotActions.removeAdmin(testChannelName, callingUser, adminUserName);
+            fail("Test should have failed by this point due to invalid action");
+        } catch (JiraBotActions.InvalidActionError e) {
+            // This is expected!
+        }
+    }
+
+    //=================================
+    // --- Add Users (bulk)
+    //=================================
+
+    @Test
+    public void testAdminUserCanAddManyUsers_skipsExistingUsers() throws Throwable {
+        // Test Setup
+        int channelId = 1;
+        String testChannelName = "test-channel";
+        String callingUser = "calling-user";
+        Map<String, Boolean> newUsers = new LinkedHashMap<>();
+        newUsers.put("new-user", false);
+        newUsers.put("existing-user", false);
+        newUsers.put("new-admin", true);
+        // State: Calling user IS a channel admin
+        ChannelInfo channelInfo = channelInfoObj(channelId, testChannelName);
+        when(dataManagerMock.getChannelAccess(testChannelName, callingUser, null))
+                .thenReturn(accessObj(channelInfo, channelUserObj(callingUser, true), null));
+        // State: One of the users is already registered
+        when(dataManagerMock.getChannelUsersByName(channelId, newUsers.keySet()))
+                .thenReturn(Collections.singletonMap("existing-user", channelUserObj("existing-user", false)));
+        // State: "new-admin" is added concurrently by someone else, between the read and the write
+        Map<String, Boolean> expectedWrite = new LinkedHashMap<>();
+        expectedWrite.put("new-user", false);
+        expectedWrite.put("new-admin", true);
+        when(dataManagerMock.addChannelUsersIfAbsent(channelId, expectedWrite))
+                .thenReturn(Collections.singleton("new-user"));
+
+        // Test Execution
+        Map<String, JiraBotActions.AddUserOutcome> outcomes =
+                jiraBotActions.addUsers(testChannelName, callingUser, newUsers);
+
+        // Verify the report - in the order requested
+        assertEquals(Arrays.asList("new-user", "existing-user", "new-admin"), Arrays.asList(outcomes.keySet().toArray()));
+        assertEquals(JiraBotActions.AddUserOutcome.ADDED, outcomes.get("new-user"));
+        assertEquals(JiraBotActions.AddUserOutcome.ALREADY_REGISTERED, outcomes.get("existing-user"));
+        assertEquals(JiraBotActions.AddUserOutcome.ALREADY_REGISTERED, outcomes.get("new-admin"));
+        // Verify one read for access, one batched read for existing users and one batched write for new users
+        verify(dataManagerMock, times(1)).getChannelAccess(testChannelName, callingUser, null);
+        verify(dataManagerMock, times(1)).getChannelUsersByName(channelId, newUsers.keySet());
+        verify(dataManagerMock, times(1)).addChannelUsersIfAbsent(channelId, expectedWrite);
+        verifyNoMoreInteractions(dataManagerMock);
+    }
+
+    @Test
+    public void testBasicUserCannotAddManyUsers_returnsUnauthorisedAccessError() throws Throwable {
+        // Test Setup
+        int channelId = 1;
+        String testChannelName = "test-channel";
+        String callingUser = "calling-user";
+        // State: Calling user is NOT a channel admin
+        ChannelInfo channelInfo = channelInfoObj(channelId, testChannelName);
+        when(dataManagerMock.getChannelAccess(testChannelName, callingUser, null))
+                .thenReturn(accessObj(channelInfo, channelUserObj(callingUser, false), null));
+
+        // Test Execution
+        try {
+            jiraBotActions.addUsers(testChannelName, callingUser, Collections.singletonMap("new-user", false));
+            fail("Test should have failed by this point due to unauthorised access");
+        } catch (JiraBotActions.UnauthorisedAccessError e) {
+            // This is expected!
+        }
+
+        // Verify it never writes any users
+        verify(dataManagerMock, never()).addChannelUsersIfAbsent(anyInt(), any());
+        verify(dataManagerMock, never()).addChannelUser(anyInt(), any(), anyBoolean());
+    }
 
     //=================================
     // --- Make Admin
@@ -298,7 +427,8 @@ public class TestJiraBotActions {
         String callingUser = "calling-user";
         String newUserName = "new-user";
         // State: Channel is NOT registered
-        when(dataManagerMock.getChannelByName(testChannelName)).thenReturn(null);
+        when(dataManagerMock.getChannelAccess(testChannelName, callingUser, newUserName))
+                .thenReturn(unregisteredAccess());
 
         // Test Execution
         // Upgrading to an ADMIN user
@@ -310,7 +440,6 @@ public class TestJiraBotActions {
         }
 
         // Verify
-        verify(dataManagerMock, never()).isChannelAdmin(any(), anyInt());
         verify(dataManagerMock, never()).addChannelUser(anyInt(), any(), anyBoolean());
     }
 
@@ -327,8 +456,8 @@ public class TestJiraBotActions {
         channelInfo.channelId = channelId;
         channelInfo.channelName = testChannelName;
         channelInfo.jiraProject = jiraProject;
-        when(dataManagerMock.getChannelByName(testChannelName)).thenReturn(channelInfo);
-        when(dataManagerMock.isChannelAdmin(callingUser, channelId)).thenReturn(false); // <- Not a channel admin
+        when(dataManagerMock.getChannelAccess(testChannelName, callingUser, newUserName))
+                .thenReturn(accessObj(channelInfo, channelUserObj(callingUser, false), null)); // <- Not a channel admin
 
         // Test Execution
         // Upgrading to an ADMIN user
@@ -340,10 +469,60 @@ public class TestJiraBotActions {
         }
 
         // Verify
-        verify(dataManagerMock, times(1)).isChannelAdmin(callingUser, channelId);
+        verify(dataManagerMock, times(1)).getChannelAccess(testChannelName, callingUser, newUserName);
         verify(dataManagerMock, never()).addChannelUser(anyInt(), any(), anyBoolean());
     }
 
+    //=================================
+    // --- Result-typed API
+    //=================================
+
+    @Test
+    public void testRejectionsAreSharedOutcomesWithoutExceptions() {
+        // Test Setup
+        String testChannelName = "test-channel";
+        String callingUser = "calling-user";
+        String newUserName = "new-user";
+        ChannelInfo channelInfo = channelInfoObj(1, testChannelName);
+        when(dataManagerMock.getChannelAccess(testChannelName, callingUser, newUserName))
+                .thenReturn(accessObj(channelInfo, channelUserObj(callingUser, false), null));
+        when(dataManagerMock.getChannelAccess(testChannelName, callingUser, null))
+                .thenReturn(accessObj(channelInfo, channelUserObj(callingUser, false), null));
+        when(dataManagerMock.getChannelAccess("other-channel", callingUser, newUserName)).thenReturn(unregisteredAccess());
+
+        // Test Execution and Verification
+        assertSame(ActionOutcome.UNAUTHORISED, jiraBotActions.tryAddUser(testChannelName, callingUser, newUserName, false));
+        assertSame(ActionOutcome.UNAUTHORISED, jiraBotActions.tryMakeAdmin(testChannelName, callingUser, newUserName));
+        assertSame(ActionOutcome.UNREGISTERED_CHANNEL, jiraBotActions.tryRemoveAdmin("other-channel", callingUser, newUserName));
+        // The same result object every time
+        assertSame(jiraBotActions.tryRegisterProject(testChannelName, "JiraProj", false, callingUser),
+                jiraBotActions.tryRegisterProject(testChannelName, "JiraProj", false, callingUser));
+        // Messages are only built when asked for
+        assertTrue(ActionOutcome.UNAUTHORISED.message(callingUser).contains("'calling-user'"));
+        verify(dataManagerMock, never()).addChannelUserIfAbsent(anyInt(), any(), anyBoolean());
+        verify(dataManagerMock, never()).compareAndSetAdmin(anyInt(), any(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    public void testExceptionApiWrapsOutcomesWithoutStackTraces() {
+        // Test Setup
+        String testChannelName = "test-channel";
+        String callingUser = "calling-user";
+        String newUserName = "new-user";
+        when(dataManagerMock.getChannelAccess(testChannelName, callingUser, newUserName)).thenReturn(unregisteredAccess());
+
+        // Test Execution
+        try {
+            jiraBotActions.makeAdmin(testChannelName, callingUser, newUserName);
+            fail("Expecting UnregisteredChannelError.");
+        } catch (JiraBotActions.UnregisteredChannelError e) {
+            assertEquals(ActionOutcome.UNREGISTERED_CHANNEL.message(callingUser), e.getMessage());
+            assertEquals(0, e.getStackTrace().length);
+        } catch (Throwable e) {
+            fail("Unexpected error: " + e);
+        }
+    }
+
     //-----------------------------------------------
     // -- RemoveUser tests
     //-----------------------------------------------
@@ -365,4 +544,19 @@ public class TestJiraBotActions {
         return channelInfo;
     }
 
+    private ChannelUser channelUserObj(String slackName, boolean isAdmin) {
+        ChannelUser channelUser = new ChannelUser();
+        channelUser.slackName = slackName;
+        channelUser.isAdmin = isAdmin;
+        return channelUser;
+    }
+
+    private ChannelAccess accessObj(ChannelInfo channelInfo, ChannelUser callingUser, ChannelUser targetUser) {
+        return new ChannelAccess(channelInfo, callingUser, targetUser);
+    }
+
+    private ChannelAccess unregisteredAccess() {
+        return new ChannelAccess(null, null, null);
+    }
+
 }
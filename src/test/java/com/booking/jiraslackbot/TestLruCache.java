@@ -0,0 +1,42 @@
+package com.booking.jiraslackbot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestLruCache {
+
+    @Test
+    public void testInvalidationOnlyDiscardsLoadsOfItsOwnStripe() {
+        LruCache<String, String> cache = new LruCache<>(1024, 1000, () -> 0);
+        long stamp = cache.stamp();
+        cache.invalidate("written");
+
+        cache.put("written", "stale", stamp);
+        assertNull(cache.get("written"));
+        // Keys are spread over 16 stripes, so only about one in 16 shares the written key's stripe
+        for (int i = 0; i < 100; i++) {
+            cache.put("channel-" + i, "loaded", stamp);
+        }
+        assertTrue(cache.size() >= 80);
+        assertTrue(cache.size() < 100);
+
+        cache.clear();
+        cache.put("channel-1", "loaded", stamp);
+        assertEquals(0, cache.size());
+        cache.put("channel-1", "loaded", cache.stamp());
+        assertEquals("loaded", cache.get("channel-1").value);
+    }
+
+    @Test
+    public void testSizeBoundHoldsAcrossStripes() {
+        LruCache<Integer, Integer> cache = new LruCache<>(1000, 1000, () -> 0);
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(i, i, cache.stamp());
+        }
+        assertTrue(cache.size() <= 1000);
+        assertEquals(10_000 - cache.size(), cache.evictions.sum());
+        // The latest key is the most recently used in its stripe, so it is never the one evicted
+        assertEquals(Integer.valueOf(9_999), cache.get(9_999).value);
+    }
+}
@@ -0,0 +1,209 @@
+package com.booking.jiraslackbot;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestMetrics {
+
+    MetricsRecorder metrics = new MetricsRecorder();
+
+    @Test
+    public void testHistogramPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+        for (long i = 1; i <= 100_000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000_000, histogram.getMax());
+        assertEquals(50_000_000, histogram.getPercentile(50), 50_000_000 * 0.04);
+        assertEquals(99_000_000, histogram.getPercentile(99), 99_000_000 * 0.04);
+        assertEquals(99_900_000, histogram.getPercentile(99.9), 99_900_000 * 0.04);
+        assertEquals(100_000_000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testHistogramCountsAtOrBelowBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertArrayEquals(new long[]{0, 0, 0}, histogram.getCumulativeCounts(new long[]{1000, 1_000_000}));
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        histogram.record(Long.MAX_VALUE);
+        long[] counts = histogram.getCumulativeCounts(new long[]{0, 10_000, 100_000, 1_000_000, 10_000_000});
+        assertEquals(0, counts[0]);
+        // Each count is within bucket precision of the exact one, and never above it.
+        // A value just at a bound shares a bucket with values above it, so is counted from the next bound
+        assertEquals(9, counts[1]);
+        assertEquals(100, counts[2], 4);
+        assertTrue(counts[2] <= 100);
+        assertEquals(999, counts[3]);
+        assertEquals(1000, counts[4]);
+        assertEquals(1001, counts[5]);
+    }
+
+    @Test
+    public void testHistogramBucketsCoverEveryValue() {
+        long[] values = {0, 1, 31, 32, 33, 63, 64, 1000, 123_456_789, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(value + " is above its bucket", value <= LatencyHistogram.highestValue(bucket));
+            assertTrue(value + " is below its bucket", bucket == 0 || value > LatencyHistogram.highestValue(bucket - 1));
+        }
+    }
+
+    @Test
+    public void testHistogramRecordsConcurrently() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(500);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40_000, histogram.getCount());
+        assertEquals(40_000 * 500L, histogram.getSum());
+        assertEquals(500, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void testActionsRecordOutcomesAndDataManagerCalls() throws Throwable {
+        JiraBotActions actions = new InstrumentedJiraBotActions(new IndexedMemoryDataManager(), metrics);
+        actions.registerProject("test-channel", "JIRA1", false, "admin");
+        actions.addUser("test-channel", "admin", "martha", false);
+        assertEquals(ActionOutcome.UNAUTHORISED, actions.tryMakeAdmin("test-channel", "martha", "martha"));
+        assertEquals(ActionOutcome.SUCCESS, actions.tryMakeAdmin("test-channel", "admin", "martha"));
+        try {
+            actions.makeAdmin("test-channel", "admin", "martha");
+            fail("Expected InvalidActionError");
+        } catch (JiraBotActions.InvalidActionError expected) {
+        }
+
+        MetricsRecorder.OperationStats makeAdmin = metrics.getActionStats("makeAdmin");
+        assertEquals(3, makeAdmin.getCount());
+        assertEquals(1, makeAdmin.getOutcomeCount(ActionOutcome.SUCCESS));
+        assertEquals(1, makeAdmin.getOutcomeCount(ActionOutcome.UNAUTHORISED));
+        assertEquals(1, makeAdmin.getOutcomeCount(ActionOutcome.ALREADY_ADMIN));
+        // One lookup each, plus the write for the one that succeeded
+        assertEquals(4, makeAdmin.getDataManagerCalls());
+
+        MetricsRecorder.OperationStats registerProject = metrics.getActionStats("registerProject");
+        assertEquals(1, registerProject.getCount());
+        assertEquals(2, registerProject.getDataManagerCalls());
+
+        assertEquals(5, metrics.getDataManagerStats("getChannelAccess").getCount());
+        assertEquals(1, metrics.getDataManagerStats("createChannelIfAbsent").getCount());
+        assertEquals(1, metrics.getDataManagerStats("compareAndSetAdmin").getCount());
+        assertTrue(metrics.getDataManagerStats("getChannelAccess").latency.getMax() > 0);
+    }
+
+    @Test
+    public void testBusyTicketIsNotCountedAsSuccess() throws Throwable {
+        TicketPipeline pipeline = new TicketPipeline(new JiraClient(URI.create("http://127.0.0.1:1"), "Bearer test", "Task"));
+        // A closed pipeline turns every ticket away as BUSY
+        pipeline.close();
+        JiraBotActions actions = new InstrumentedJiraBotActions(new IndexedMemoryDataManager(), pipeline, metrics);
+        actions.registerProject("test-channel", "JIRA1", false, "admin");
+        assertSame(TicketResult.busy(), actions.createTicket("test-channel", "admin", "Summary", null).getNow(null));
+        assertSame(ActionOutcome.UNREGISTERED_CHANNEL,
+                actions.createTicket("other-channel", "admin", "Summary", null).getNow(null).rejection);
+
+        MetricsRecorder.OperationStats createTicket = metrics.getActionStats("createTicket");
+        assertEquals(2, createTicket.getCount());
+        assertEquals(1, createTicket.getBusyCount());
+        assertEquals(0, createTicket.getOutcomeCount(ActionOutcome.SUCCESS));
+        assertEquals(1, createTicket.getOutcomeCount(ActionOutcome.UNREGISTERED_CHANNEL));
+        assertTrue(new PrometheusExporter(metrics).scrape()
+                .contains("jirabot_action_outcomes_total{action=\"createTicket\",outcome=\"busy\"} 1\n"));
+    }
+
+    @Test
+    public void testDataManagerErrorsAreCountedByType() {
+        JiraBotDataManager failing = new IndexedMemoryDataManager() {
+            @Override
+            public ChannelAccess getChannelAccess(String channelName, String callingUser, String targetUser) {
+                throw new IllegalStateException("Store unavailable");
+            }
+        };
+        JiraBotActions actions = new InstrumentedJiraBotActions(failing, metrics);
+        for (int i = 0; i < 2; i++) {
+            try {
+                actions.tryAddUser("test-channel", "admin", "martha", false);
+                fail("Expected IllegalStateException");
+            } catch (IllegalStateException expected) {
+            }
+        }
+
+        assertEquals(Long.valueOf(2), metrics.getDataManagerStats("getChannelAccess").getErrorCounts().get("IllegalStateException"));
+        MetricsRecorder.OperationStats addUser = metrics.getActionStats("addUser");
+        assertEquals(Long.valueOf(2), addUser.getErrorCounts().get("IllegalStateException"));
+        assertEquals(2, addUser.getDataManagerCalls());
+        assertEquals(0, addUser.getOutcomeCount(ActionOutcome.SUCCESS));
+    }
+
+    @Test
+    public void testExporterWritesPrometheusText() throws Throwable {
+        JiraBotActions actions = new InstrumentedJiraBotActions(new IndexedMemoryDataManager(), metrics);
+        actions.registerProject("test-channel", "JIRA1", false, "admin");
+        actions.tryRemoveAdmin("test-channel", "admin", "martha");
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/metrics", new PrometheusExporter(metrics));
+        server.start();
+        try {
+            HttpResponse<String> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(
+                    URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/metrics"))
+                    .timeout(Duration.ofSeconds(10)).build(), HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(200, response.statusCode());
+            assertEquals(PrometheusExporter.CONTENT_TYPE, response.headers().firstValue("Content-Type").orElse(null));
+            String text = response.body();
+            assertTrue(text, text.contains("# TYPE jirabot_action_latency_seconds histogram\n"));
+            assertTrue(text, text.contains("jirabot_action_latency_seconds_bucket{action=\"removeAdmin\",le=\"0.0005\"} "));
+            assertTrue(text, text.contains("jirabot_action_latency_seconds_bucket{action=\"removeAdmin\",le=\"10\"} 1\n"));
+            assertTrue(text, text.contains("jirabot_action_latency_seconds_bucket{action=\"removeAdmin\",le=\"+Inf\"} 1\n"));
+            assertTrue(text, text.contains("jirabot_action_latency_seconds_count{action=\"removeAdmin\"} 1\n"));
+            assertTrue(text, text.contains("jirabot_action_outcomes_total{action=\"removeAdmin\",outcome=\"not_admin\"} 1\n"));
+            assertTrue(text, text.contains("jirabot_action_datamanager_calls_total{action=\"registerProject\"} 2\n"));
+            assertTrue(text, text.contains("jirabot_datamanager_latency_seconds_count{operation=\"getChannelAccess\"} 2\n"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testCountsAreExactAcrossThreads() throws InterruptedException {
+        JiraBotActions actions = new InstrumentedJiraBotActions(new IndexedMemoryDataManager(), metrics);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    actions.tryMakeAdmin("unknown-channel", "admin", "martha");
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(8000, metrics.getActionStats("makeAdmin").getOutcomeCount(ActionOutcome.UNREGISTERED_CHANNEL));
+        assertEquals(8000, metrics.getDataManagerStats("getChannelAccess").getCount());
+    }
+}
@@ -0,0 +1,107 @@
+package com.booking.jiraslackbot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestProjectRouter {
+
+    ProjectRouter router;
+
+    @Before
+    public void setUp() {
+        router = new ProjectRouter();
+    }
+
+    @Test
+    public void testPrefixAndGlobRules() {
+        router.addRule("team-payments-*", "PAY");
+        router.addRule("inc-2026-*", "INC");
+        router.addRule("*-oncall", "OPS");
+        router.addRule("build-??", "CI");
+
+        assertEquals("PAY", router.resolve("team-payments-checkout"));
+        assertEquals("PAY", router.resolve("team-payments-"));
+        assertEquals("INC", router.resolve("inc-2026-0412-db-outage"));
+        assertEquals("OPS", router.resolve("search-oncall"));
+        assertEquals("CI", router.resolve("build-42"));
+        assertNull(router.resolve("build-123"));
+        assertNull(router.resolve("team-payment"));
+        assertNull(router.resolve("inc-2025-0101"));
+        assertNull(router.resolve(""));
+    }
+
+    @Test
+    public void testPrecedenceIsPriorityThenSpecificityThenOrder() {
+        router.addRule("team-*", "TEAM");
+        router.addRule("team-payments-*", "PAY");
+        // More literal characters wins at equal priority
+        assertEquals("PAY", router.resolve("team-payments-checkout"));
+        assertEquals("TEAM", router.resolve("team-search"));
+
+        // A match found deeper in the trie still loses to a higher priority rule found earlier
+        router.addRule("team-*", "TEAM", 1);
+        assertEquals("TEAM", router.resolve("team-payments-checkout"));
+
+        // Equally specific rules: the first one added wins
+        router.addRule("*-inc", "FIRST");
+        router.addRule("ops-*", "SECOND");
+        assertEquals(4, router.getRules().size());
+        assertEquals("FIRST", router.resolve("ops-inc"));
+    }
+
+    @Test
+    public void testResultsAreCachedUntilTheRulesChange() {
+        router.addRule("team-*", "TEAM");
+        assertEquals("TEAM", router.resolve("team-search"));
+        assertNull(router.resolve("other-channel"));
+        assertEquals("TEAM", router.resolve("team-search"));
+        assertNull(router.resolve("other-channel"));
+        assertEquals(2, router.getCacheHitCount());
+
+        router.addRule("other-*", "OTHER");
+        assertEquals("OTHER", router.resolve("other-channel"));
+        assertTrue(router.removeRule("team-*"));
+        assertFalse(router.removeRule("team-*"));
+        assertNull(router.resolve("team-search"));
+        assertEquals(2, router.getCacheHitCount());
+    }
+
+    @Test
+    public void testManyRulesOnlyTheNamesPathIsSearched() {
+        for (int i = 0; i < 10_000; i++) {
+            router.addRule("team-" + i + "-*", "TEAM" + i);
+        }
+        assertEquals("TEAM1234", router.resolve("team-1234-backend"));
+        // "team-12-*" also matches the name's prefix, but is less specific
+        assertEquals("TEAM12", router.resolve("team-12-backend"));
+        assertNull(router.resolve("team-99999"));
+    }
+
+    @Test
+    public void testManySuffixRulesOnlyTheNamesPathIsSearched() {
+        for (int i = 0; i < 10_000; i++) {
+            router.addRule("*-" + i + "-oncall", "ONCALL" + i);
+        }
+        router.addRule("*-?-oncall", "SHORT", 1);
+        assertEquals("ONCALL1234", router.resolve("payments-1234-oncall"));
+        assertEquals("SHORT", router.resolve("payments-7-oncall"));
+        assertNull(router.resolve("payments-1234-oncall-old"));
+
+        router.addRule("*-1234-oncall", "REPLACED");
+        assertEquals("REPLACED", router.resolve("payments-1234-oncall"));
+        assertTrue(router.removeRule("*-1234-oncall"));
+        assertNull(router.resolve("payments-1234-oncall"));
+        assertEquals(10_000, router.getRules().size());
+    }
+
+    @Test
+    public void testGlobBacktracksToTheLastStar() {
+        assertTrue(ProjectRouter.glob("a*b*c", 0, "axxbyybzc", 0));
+        assertTrue(ProjectRouter.glob("*", 0, "", 0));
+        assertTrue(ProjectRouter.glob("a**", 0, "a", 0));
+        assertFalse(ProjectRouter.glob("a*b", 0, "axxbc", 0));
+        assertFalse(ProjectRouter.glob("a?", 0, "a", 0));
+    }
+}
@@ -0,0 +1,106 @@
+package com.booking.jiraslackbot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestRateLimiter {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static RateLimiter limiter(double permitsPerSecond, int burst, int maxBuckets) {
+        RateLimiter.Settings settings = new RateLimiter.Settings();
+        settings.permitsPerSecond = permitsPerSecond;
+        settings.burst = burst;
+        settings.maxBuckets = maxBuckets;
+        return new RateLimiter(settings);
+    }
+
+    @Test
+    public void testBurstThenSteadyRate() {
+        RateLimiter limiter = limiter(2, 3, 100);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire("martha", now));
+        }
+        assertFalse(limiter.tryAcquire("martha", now));
+        // Half a second gives back one token at 2 per second
+        assertTrue(limiter.tryAcquire("martha", now + SECOND / 2));
+        assertFalse(limiter.tryAcquire("martha", now + SECOND / 2));
+        // Idle for long enough refills the bucket, but never past the burst
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire("martha", now + 60 * SECOND));
+        }
+        assertFalse(limiter.tryAcquire("martha", now + 60 * SECOND));
+
+        assertEquals(7, limiter.getAdmittedCount());
+        assertEquals(3, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testKeysHaveTheirOwnBuckets() {
+        RateLimiter limiter = limiter(1, 1, 100);
+        long now = System.nanoTime();
+
+        assertTrue(limiter.tryAcquire("martha", now));
+        assertFalse(limiter.tryAcquire("martha", now));
+        assertTrue(limiter.tryAcquire("olivia", now));
+        assertEquals(2, limiter.getBucketCount());
+    }
+
+    @Test
+    public void testIdleBucketsAreDroppedToStayWithinTheBound() {
+        RateLimiter limiter = limiter(1, 1, 10);
+        long now = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire("user" + i, now));
+        }
+
+        // All still busy, so a new key shares the overflow bucket rather than growing the map
+        assertTrue(limiter.tryAcquire("late1", now));
+        assertFalse(limiter.tryAcquire("late2", now));
+        assertEquals(10, limiter.getBucketCount());
+
+        // Once they have refilled they are dropped to make room
+        assertTrue(limiter.tryAcquire("late2", now + 2 * SECOND));
+        assertEquals(1, limiter.getBucketCount());
+        assertEquals(10, limiter.getEvictedCount());
+    }
+
+    @Test
+    public void testConcurrentCallersNeverExceedTheBurst() throws Exception {
+        RateLimiter limiter = limiter(0.001, 100, 100);
+        long now = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> admitted = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                admitted.add(executor.submit(() -> {
+                    int count = 0;
+                    for (int i = 0; i < 1000; i++) {
+                        if (limiter.tryAcquire("martha", now)) {
+                            count++;
+                        }
+                    }
+                    return count;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> future : admitted) {
+                total += future.get();
+            }
+            assertEquals(100, total);
+            assertEquals(7900, limiter.getRejectedCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
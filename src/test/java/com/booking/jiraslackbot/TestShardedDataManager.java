@@ -0,0 +1,264 @@
+package com.booking.jiraslackbot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class TestShardedDataManager {
+
+    List<IndexedMemoryDataManager> shards;
+    ShardedDataManager dataManager;
+
+    @Before
+    public void setUp() {
+        shards = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            shards.add(new IndexedMemoryDataManager());
+        }
+        dataManager = new ShardedDataManager(shards);
+    }
+
+    // Registers channel0..channel(count-1), each with an admin and a member
+    private Map<String, Integer> addChannels(int count) {
+        Map<String, Integer> channelIds = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            ChannelInfo channel = dataManager.createChannelIfAbsent("channel" + i, "JIRA" + i, i % 2 == 0, "admin" + i);
+            dataManager.addChannelUser(channel.channelId, "member", false);
+            channelIds.put(channel.channelName, channel.channelId);
+        }
+        return channelIds;
+    }
+
+    @Test
+    public void testChannelsAreSpreadOverTheShards() {
+        addChannels(1000);
+
+        int total = 0;
+        for (IndexedMemoryDataManager shard : shards) {
+            int count = shard.getAllChannels().size();
+            assertTrue("Unbalanced shard with " + count + " channels", count > 150 && count < 350);
+            total += count;
+        }
+        assertEquals(1000, total);
+    }
+
+    @Test
+    public void testChannelIdsRouteToTheirShard() {
+        Map<String, Integer> channelIds = addChannels(100);
+
+        for (Map.Entry<String, Integer> channel : channelIds.entrySet()) {
+            int shard = dataManager.shardOf(channel.getValue());
+            assertTrue(shards.get(shard).isExistingChannel(channel.getKey()));
+
+            ChannelInfo byId = dataManager.getChannelById(channel.getValue());
+            assertEquals(channel.getKey(), byId.channelName);
+            assertEquals(channel.getValue().intValue(), dataManager.getChannelByName(channel.getKey()).channelId);
+            assertNotNull(dataManager.getChannelUser(channel.getValue(), "member"));
+            assertEquals(channel.getValue().intValue(), dataManager.getChannelUser(channel.getValue(), "member").channelId);
+        }
+        assertEquals(100, new HashSet<>(channelIds.values()).size());
+        assertNull(dataManager.getChannelByName("unknown"));
+    }
+
+    @Test
+    public void testListingsCoverEveryShard() {
+        Map<String, Integer> channelIds = addChannels(50);
+
+        Set<ChannelInfo> memberOf = dataManager.getChannelsForUser("member");
+        assertEquals(50, memberOf.size());
+        for (ChannelInfo channel : memberOf) {
+            assertEquals(channelIds.get(channel.channelName).intValue(), channel.channelId);
+        }
+        Set<ChannelInfo> adminOf = dataManager.getAdminChannelsForUser("admin7");
+        assertEquals(1, adminOf.size());
+        assertEquals(channelIds.get("channel7").intValue(), adminOf.iterator().next().channelId);
+        assertEquals(50, dataManager.getAllChannels().size());
+    }
+
+    @Test
+    public void testAddingAShardMovesAShareOfChannelsAndKeepsTheirIds() {
+        Map<String, Integer> channelIds = addChannels(1000);
+        dataManager.compareAndSetAdmin(channelIds.get("channel3"), "member", false, true);
+
+        IndexedMemoryDataManager added = new IndexedMemoryDataManager();
+        int moved = dataManager.addShard(added);
+
+        // Only the channels the new shard owns move: about 1 in 5
+        assertTrue("Moved " + moved + " channels", moved > 100 && moved < 300);
+        assertEquals(moved, added.getAllChannels().size());
+        assertEquals(5, dataManager.getShardCount());
+        for (Map.Entry<String, Integer> channel : channelIds.entrySet()) {
+            int channelId = channel.getValue();
+            ChannelInfo byName = dataManager.getChannelByName(channel.getKey());
+            assertEquals(channelId, byName.channelId);
+            assertEquals(channel.getKey(), dataManager.getChannelById(channelId).channelName);
+            assertEquals(2, dataManager.getChannelUsers(channelId).size());
+            String index = channel.getKey().substring("channel".length());
+            assertTrue(dataManager.isChannelAdmin("admin" + index, channelId));
+            assertEquals("JIRA" + index, byName.jiraProject);
+        }
+        assertTrue(dataManager.isChannelAdmin("member", channelIds.get("channel3")));
+        assertEquals(1000, dataManager.getAllChannels().size());
+        assertEquals(1000, dataManager.getChannelsForUser("member").size());
+
+        // Moved channels take writes on their new shard
+        for (Map.Entry<String, Integer> channel : channelIds.entrySet()) {
+            if (dataManager.shardOf(channel.getValue()) == 4) {
+                dataManager.updateChannelDetails(channel.getValue(), "MOVED", false);
+                assertEquals("MOVED", added.getChannelByName(channel.getKey()).jiraProject);
+                assertEquals("MOVED", dataManager.getChannelByName(channel.getKey()).jiraProject);
+                break;
+            }
+        }
+    }
+
+    @Test
+    public void testChannelsMovedTwiceKeepTheirIds() {
+        Map<String, Integer> channelIds = addChannels(500);
+
+        dataManager.addShard(new IndexedMemoryDataManager());
+        int newChannelId = dataManager.addChannel("channel-new", "JIRA", false);
+        dataManager.addShard(new IndexedMemoryDataManager());
+        dataManager.addShard(new IndexedMemoryDataManager());
+
+        channelIds.put("channel-new", newChannelId);
+        for (Map.Entry<String, Integer> channel : channelIds.entrySet()) {
+            assertEquals(channel.getValue().intValue(), dataManager.getChannelByName(channel.getKey()).channelId);
+            assertEquals(channel.getKey(), dataManager.getChannelById(channel.getValue()).channelName);
+        }
+        assertEquals(501, dataManager.getAllChannels().size());
+        assertEquals(500, dataManager.getChannelsForUser("member").size());
+    }
+
+    @Test
+    public void testRequestsAreServedWhileAShardIsAdded() throws Exception {
+        Map<String, Integer> channelIds = addChannels(1000);
+        AtomicBoolean rebalancing = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> writers = new ArrayList<>();
+            for (int w = 0; w < 3; w++) {
+                String user = "writer" + w;
+                writers.add(executor.submit(() -> {
+                    int added = 0;
+                    // Keeps writing until the rebalance is over, then one more pass
+                    boolean lastPass = false;
+                    while (!lastPass) {
+                        lastPass = !rebalancing.get();
+                        for (int i = 0; i < 1000; i++) {
+                            if (dataManager.addChannelUserIfAbsent(channelIds.get("channel" + i), user, false)) {
+                                added++;
+                            }
+                        }
+                    }
+                    return added;
+                }));
+            }
+            Future<Integer> creator = executor.submit(() -> {
+                int created = 0;
+                while (rebalancing.get()) {
+                    if (dataManager.createChannelIfAbsent("late" + created, "JIRA", false, "admin") != null) {
+                        created++;
+                    }
+                }
+                return created;
+            });
+
+            dataManager.addShard(new IndexedMemoryDataManager());
+            rebalancing.set(false);
+
+            for (Future<Integer> writer : writers) {
+                assertEquals(1000, writer.get().intValue());
+            }
+            int created = creator.get();
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(5, dataManager.getChannelUsers(channelIds.get("channel" + i)).size());
+            }
+            for (int i = 0; i < created; i++) {
+                assertTrue(dataManager.isExistingChannel("late" + i));
+            }
+            assertEquals(1000 + created, dataManager.getAllChannels().size());
+            assertEquals(1000, dataManager.getChannelsForUser("writer0").size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testChannelsCreatedWhileAShardIsAddedAreFound() throws Exception {
+        // Creations on the only shard are held until released, so they span the start of addShard
+        CountDownLatch creationsStarted = new CountDownLatch(20);
+        CountDownLatch creationsReleased = new CountDownLatch(1);
+        IndexedMemoryDataManager slowShard = new IndexedMemoryDataManager() {
+            @Override
+            public int addChannel(String channelName, String jiraProject, boolean isRestricted) {
+                creationsStarted.countDown();
+                try {
+                    creationsReleased.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException("Interrupted", e);
+                }
+                return super.addChannel(channelName, jiraProject, isRestricted);
+            }
+        };
+        dataManager = new ShardedDataManager(Collections.singletonList(slowShard));
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            List<Future<Integer>> created = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                String channelName = "channel" + i;
+                created.add(executor.submit(() -> dataManager.addChannel(channelName, "JIRA", false)));
+            }
+            assertTrue(creationsStarted.await(10, TimeUnit.SECONDS));
+            Future<Integer> moved = executor.submit(() -> dataManager.addShard(new IndexedMemoryDataManager()));
+            Thread.sleep(100);
+            creationsReleased.countDown();
+            moved.get(10, TimeUnit.SECONDS);
+
+            for (int i = 0; i < 20; i++) {
+                int channelId = created.get(i).get(10, TimeUnit.SECONDS);
+                ChannelInfo channel = dataManager.getChannelByName("channel" + i);
+                assertNotNull("channel" + i + " was lost", channel);
+                assertEquals(channelId, channel.channelId);
+                assertNull(dataManager.createChannelIfAbsent("channel" + i, "JIRA", false, "admin"));
+            }
+            assertTrue(dataManager.getMovedChannelCount() > 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWorksBehindJiraBotActions() throws Throwable {
+        JiraBotActions actions = new JiraBotActions(dataManager);
+        for (int i = 0; i < 20; i++) {
+            actions.registerProject("channel" + i, "JIRA" + i, true, "olivia");
+            actions.addUser("channel" + i, "olivia", "martha", false);
+        }
+        dataManager.addShard(new IndexedMemoryDataManager());
+
+        actions.makeAdmin("channel5", "olivia", "martha");
+        assertEquals(20, actions.getChannelsForUser("martha").size());
+        assertEquals(1, actions.getAdminChannelsForUser("martha").size());
+        // Re-registering updates the channel where it now lives, under the same id
+        int channelId = dataManager.getChannelByName("channel9").channelId;
+        assertEquals(channelId, actions.tryRegisterProject("channel9", "JIRA", false, "olivia").channelId);
+        assertEquals("JIRA", dataManager.getChannelById(channelId).jiraProject);
+        assertEquals(ActionOutcome.UNAUTHORISED, actions.tryRegisterProject("channel9", "JIRA", false, "martha").outcome);
+    }
+}
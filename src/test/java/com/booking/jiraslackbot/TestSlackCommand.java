@@ -0,0 +1,52 @@
+package com.booking.jiraslackbot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+@SuppressWarnings("SimplifiableAssertion")
+public class TestSlackCommand {
+
+    @Test
+    public void testParsesEachCommand() {
+        SlackCommand command = SlackCommand.parse("test-channel", "admin", "project JIRA1 restricted", null);
+        assertEquals(SlackCommand.Type.PROJECT, command.type);
+        assertEquals("JIRA1", command.argument);
+        assertEquals(true, command.flag);
+        assertEquals("test-channel", command.channelName);
+        assertEquals("admin", command.callingUser);
+
+        command = SlackCommand.parse("test-channel", "admin", "  adduser   @martha admin ", null);
+        assertEquals(SlackCommand.Type.ADDUSER, command.type);
+        assertEquals("martha", command.argument);
+        assertEquals(true, command.flag);
+
+        command = SlackCommand.parse("test-channel", "admin", "makeadmin <@U024BE7LH|martha>", null);
+        assertEquals(SlackCommand.Type.MAKEADMIN, command.type);
+        assertEquals("martha", command.argument);
+
+        command = SlackCommand.parse("test-channel", "admin", "RemoveAdmin martha", "http://localhost/response");
+        assertEquals(SlackCommand.Type.REMOVEADMIN, command.type);
+        assertEquals("martha", command.argument);
+        assertEquals(false, command.flag);
+        assertEquals("http://localhost/response", command.responseUrl);
+
+        command = SlackCommand.parse("test-channel", "martha", " ticket  Checkout is down in eu-west ", null);
+        assertEquals(SlackCommand.Type.TICKET, command.type);
+        assertEquals("Checkout is down in eu-west", command.argument);
+    }
+
+    @Test
+    public void testInvalidCommandsGiveUsage() {
+        String[] invalid = {null, "", "project", "adduser @martha owner", "makeadmin @martha admin", "dance @martha",
+                "adduser @", "ticket"};
+        for (String text : invalid) {
+            try {
+                SlackCommand.parse("test-channel", "admin", text, null);
+                fail("Expected a usage error for: " + text);
+            } catch (IllegalArgumentException e) {
+                assertEquals(SlackCommand.USAGE, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.booking.jiraslackbot;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the dispatcher behind a local HTTP server, with a second local endpoint standing in for Slack's response_url.
+ */
+public class TestSlackCommandDispatcher {
+
+    private static final String SIGNING_SECRET = "test-signing-secret";
+    private static final long ACK_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    // Blocks reads until released, to stand in for a slow data store
+    CountDownLatch dataStoreAvailable;
+    final AtomicInteger accessReads = new AtomicInteger();
+    IndexedMemoryDataManager dataManager;
+    SlackCommandDispatcher dispatcher;
+    SlackSignatureVerifier verifier = new SlackSignatureVerifier(SIGNING_SECRET);
+    HttpServer server;
+    BlockingQueue<String> responses = new LinkedBlockingQueue<>();
+    HttpClient client = HttpClient.newHttpClient();
+
+    @Before
+    public void setUp() throws IOException {
+        dataStoreAvailable = new CountDownLatch(0);
+        dataManager = new IndexedMemoryDataManager() {
+            @Override
+            public ChannelAccess getChannelAccess(String channelName, String callingUser, String targetUser) {
+                accessReads.incrementAndGet();
+                try {
+                    dataStoreAvailable.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException("Interrupted", e);
+                }
+                return super.getChannelAccess(channelName, callingUser, targetUser);
+            }
+        };
+        startDispatcher(4, TimeUnit.SECONDS.toNanos(10));
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/response", exchange -> {
+            responses.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.createContext("/slack/command", exchange -> new SlackCommandHandler(verifier, dispatcher).handle(exchange));
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        dataStoreAvailable = new CountDownLatch(0);
+        server.stop(0);
+        dispatcher.close();
+    }
+
+    private void startDispatcher(int maxInFlight, long timeoutNanos) {
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+        dispatcher = new SlackCommandDispatcher(new JiraBotActions(dataManager),
+                SlackCommandDispatcher.newCommandExecutor(), maxInFlight, timeoutNanos, ACK_WINDOW_NANOS);
+    }
+
+    @Test
+    public void testSignedCommandIsAnsweredInline() throws Exception {
+        HttpResponse<String> response = post(signedRequest("project JIRA1 restricted", "admin"));
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body(), response.body().contains("is now linked to Jira project JIRA1"));
+        assertTrue(dataManager.getChannelByName("test-channel").restricted);
+        assertTrue(dataManager.isChannelAdmin("admin", dataManager.getChannelByName("test-channel").channelId));
+
+        // The action's own errors are replies too
+        response = post(signedRequest("adduser @martha", "martha"));
+        assertTrue(response.body(), response.body().contains("Unauthorised access"));
+        // And so are usage errors
+        response = post(signedRequest("deleteeverything", "admin"));
+        assertTrue(response.body(), response.body().contains("Usage"));
+        assertTrue(responses.isEmpty());
+    }
+
+    @Test
+    public void testUnsignedOrStaleRequestsAreRejected() throws Exception {
+        String body = form("project JIRA1", "admin");
+        HttpRequest unsigned = HttpRequest.newBuilder(uri("/slack/command"))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        assertEquals(401, post(unsigned).statusCode());
+
+        String timestamp = String.valueOf(System.currentTimeMillis() / 1000 - 10 * 60);
+        HttpRequest stale = HttpRequest.newBuilder(uri("/slack/command"))
+                .header(SlackSignatureVerifier.TIMESTAMP_HEADER, timestamp)
+                .header(SlackSignatureVerifier.SIGNATURE_HEADER, verifier.sign(timestamp, body))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        assertEquals(401, post(stale).statusCode());
+
+        assertFalse(dataManager.isExistingChannel("test-channel"));
+    }
+
+    @Test
+    public void testOversizedBodyIsRefusedBeforeTheSignatureIsChecked() throws Exception {
+        String body = form("project JIRA1", "admin") + "&padding=" + "x".repeat(SlackCommandHandler.MAX_BODY_BYTES);
+        String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
+        HttpRequest oversized = HttpRequest.newBuilder(uri("/slack/command"))
+                .header(SlackSignatureVerifier.TIMESTAMP_HEADER, timestamp)
+                .header(SlackSignatureVerifier.SIGNATURE_HEADER, verifier.sign(timestamp, body))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        assertEquals(413, post(oversized).statusCode());
+        assertFalse(dataManager.isExistingChannel("test-channel"));
+    }
+
+    @Test
+    public void testSlowCommandIsAcknowledgedThenPostedToResponseUrl() throws Exception {
+        dataStoreAvailable = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+        HttpResponse<String> response = post(signedRequest("project JIRA1", "admin"));
+        // Acknowledged well within Slack's 3 seconds
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+        assertTrue(response.body(), response.body().contains(SlackCommandDispatcher.WORKING_REPLY));
+
+        dataStoreAvailable.countDown();
+        String posted = responses.poll(5, TimeUnit.SECONDS);
+        assertNotNull(posted);
+        assertTrue(posted, posted.contains("\"response_type\":\"ephemeral\""));
+        assertTrue(posted, posted.contains("is now linked to Jira project JIRA1"));
+    }
+
+    @Test
+    public void testCommandsBeyondMaxInFlightAreTurnedAway() throws Exception {
+        startDispatcher(1, TimeUnit.SECONDS.toNanos(10));
+        dataStoreAvailable = new CountDownLatch(1);
+
+        assertTrue(post(signedRequest("project JIRA1", "admin")).body().contains(SlackCommandDispatcher.WORKING_REPLY));
+        assertTrue(post(signedRequest("project JIRA2", "admin")).body().contains(SlackCommandDispatcher.BUSY_REPLY));
+        assertEquals(1, dispatcher.getRejectedCount());
+        assertEquals(1, dispatcher.getInFlightCount());
+
+        dataStoreAvailable.countDown();
+        assertNotNull(responses.poll(5, TimeUnit.SECONDS));
+        assertEquals("JIRA1", dataManager.getChannelByName("test-channel").jiraProject);
+    }
+
+    @Test
+    public void testNoisyUserIsRateLimitedBeforeReachingTheDataStore() throws Exception {
+        RateLimiter.Settings perUser = new RateLimiter.Settings();
+        perUser.permitsPerSecond = 0.01;
+        perUser.burst = 2;
+        RateLimiter.Settings perChannel = new RateLimiter.Settings();
+        perChannel.permitsPerSecond = 0.01;
+        perChannel.burst = 3;
+        dispatcher.setRateLimiters(new RateLimiter(perUser), new RateLimiter(perChannel));
+
+        assertTrue(post(signedRequest("project JIRA1", "admin")).body().contains("is now linked"));
+        assertTrue(post(signedRequest("adduser @martha", "admin")).body().contains("Added @martha"));
+        assertTrue(post(signedRequest("adduser @olivia", "admin")).body().contains(SlackCommandDispatcher.USER_RATE_LIMITED_REPLY));
+        assertNull(dataManager.getChannelUser(dataManager.getChannelByName("test-channel").channelId, "olivia"));
+
+        // Another user still gets through, until the channel as a whole has sent too many
+        assertTrue(post(signedRequest("makeadmin @martha", "martha")).body().contains("Unauthorised access"));
+        assertTrue(post(signedRequest("makeadmin @martha", "olivia")).body().contains(SlackCommandDispatcher.CHANNEL_RATE_LIMITED_REPLY));
+        assertEquals(2, dispatcher.getRateLimitedCount());
+        assertEquals(0, dispatcher.getRejectedCount());
+    }
+
+    @Test
+    public void testRedeliveredCommandGetsTheFirstReplyWithoutRunningAgain() throws Exception {
+        dispatcher.setIdempotencyCache(new IdempotencyCache<>(new IdempotencyCache.Settings()));
+        assertTrue(post(signedRequest(form("project JIRA1", "admin", "trigger-1"))).body().contains("is now linked"));
+        String added = post(signedRequest(form("adduser @martha", "admin", "trigger-2"))).body();
+        assertTrue(added, added.contains("Added @martha"));
+        int reads = accessReads.get();
+
+        // Rather than "already registered", the retry gets the same reply, and the data store is not read
+        assertEquals(added, post(signedRequest(form("adduser @martha", "admin", "trigger-2"))).body());
+        assertEquals(reads, accessReads.get());
+        assertEquals(1, dispatcher.getDuplicateCount());
+
+        // A retry that arrives while the first delivery is still running waits for it, and is not posted twice
+        dataStoreAvailable = new CountDownLatch(1);
+        assertTrue(post(signedRequest(form("adduser @olivia", "admin", "trigger-3"))).body()
+                .contains(SlackCommandDispatcher.WORKING_REPLY));
+        assertTrue(post(signedRequest(form("adduser @olivia", "admin", "trigger-3"))).body()
+                .contains(SlackCommandDispatcher.WORKING_REPLY));
+        dataStoreAvailable.countDown();
+        String posted = responses.poll(5, TimeUnit.SECONDS);
+        assertTrue(posted, posted.contains("Added @olivia"));
+        assertEquals(reads + 1, accessReads.get());
+        assertTrue(post(signedRequest(form("adduser @olivia", "admin", "trigger-3"))).body().contains("Added @olivia"));
+        assertNull(responses.poll(200, TimeUnit.MILLISECONDS));
+
+        // Without a request id, every delivery runs
+        assertTrue(post(signedRequest("adduser @martha", "admin")).body().contains("already registered"));
+    }
+
+    @Test
+    public void testCommandPastItsTimeoutIsInterruptedAndReported() throws Exception {
+        startDispatcher(4, TimeUnit.SECONDS.toNanos(10));
+        dispatcher.setCommandTimeout(SlackCommand.Type.PROJECT, 500, TimeUnit.MILLISECONDS);
+        dataStoreAvailable = new CountDownLatch(1);
+
+        assertTrue(post(signedRequest("project JIRA1", "admin")).body().contains(SlackCommandDispatcher.WORKING_REPLY));
+
+        String posted = responses.poll(5, TimeUnit.SECONDS);
+        assertNotNull(posted);
+        assertTrue(posted, posted.contains(SlackCommandDispatcher.TIMEOUT_REPLY));
+        assertEquals(1, dispatcher.getTimeoutCount());
+        // The interrupted command gives back its slot
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (dispatcher.getInFlightCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, dispatcher.getInFlightCount());
+        assertFalse(dataManager.isExistingChannel("test-channel"));
+    }
+
+    private HttpRequest signedRequest(String text, String callingUser) {
+        return signedRequest(form(text, callingUser));
+    }
+
+    private HttpRequest signedRequest(String body) {
+        String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
+        return HttpRequest.newBuilder(uri("/slack/command"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header(SlackSignatureVerifier.TIMESTAMP_HEADER, timestamp)
+                .header(SlackSignatureVerifier.SIGNATURE_HEADER, verifier.sign(timestamp, body))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private String form(String text, String callingUser) {
+        return "command=" + encode("/jira") + "&text=" + encode(text) + "&channel_name=test-channel" +
+                "&user_name=" + encode(callingUser) + "&response_url=" + encode(uri("/response").toString());
+    }
+
+    private String form(String text, String callingUser, String triggerId) {
+        return form(text, callingUser) + "&trigger_id=" + encode(triggerId);
+    }
+
+    private HttpResponse<String> post(HttpRequest request) throws Exception {
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,448 @@
+package com.booking.jiraslackbot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the pipeline against a local stub of Jira's bulk-create endpoint.
+ * The stub creates every issue whose summary does not contain "INVALID", unless a status or body has been scripted for the call.
+ */
+public class TestTicketPipeline {
+
+    HttpServer jira;
+    // Statuses to answer the next calls with, instead of creating the issues
+    Queue<Integer> scriptedStatuses = new ConcurrentLinkedQueue<>();
+    // The Retry-After header sent with scripted statuses, in seconds
+    volatile String retryAfter = "0";
+    // Bodies to answer the next calls with, with a 201, instead of creating the issues
+    Queue<String> scriptedBodies = new ConcurrentLinkedQueue<>();
+    // Each call's tickets, as "PROJECT:summary"
+    Queue<List<String>> calls = new ConcurrentLinkedQueue<>();
+    AtomicInteger nextIssue = new AtomicInteger(1);
+    // Holds calls until released, to stand in for a slow Jira
+    volatile CountDownLatch jiraAvailable = new CountDownLatch(0);
+    CountDownLatch firstCall = new CountDownLatch(1);
+    TicketPipeline pipeline;
+
+    @Before
+    public void setUp() throws IOException {
+        jira = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        jira.createContext(JiraClient.BULK_CREATE_PATH, this::handleBulkCreate);
+        jira.setExecutor(Executors.newCachedThreadPool());
+        jira.start();
+    }
+
+    @After
+    public void tearDown() {
+        jiraAvailable.countDown();
+        if (pipeline != null) {
+            pipeline.close();
+        }
+        jira.stop(0);
+    }
+
+    private void handleBulkCreate(HttpExchange exchange) throws IOException {
+        Map<?, ?> request = (Map<?, ?>) Json.parse(
+                new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        List<String> tickets = new ArrayList<>();
+        for (Object update : (List<?>) request.get("issueUpdates")) {
+            Map<?, ?> fields = (Map<?, ?>) ((Map<?, ?>) update).get("fields");
+            tickets.add(((Map<?, ?>) fields.get("project")).get("key") + ":" + fields.get("summary"));
+        }
+        calls.add(tickets);
+        firstCall.countDown();
+        try {
+            jiraAvailable.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Integer scripted = scriptedStatuses.poll();
+        if (scripted != null) {
+            exchange.getResponseHeaders().add("Retry-After", retryAfter);
+            exchange.sendResponseHeaders(scripted, -1);
+            exchange.close();
+            return;
+        }
+        String scriptedBody = scriptedBodies.poll();
+        if (scriptedBody != null) {
+            byte[] body = scriptedBody.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(201, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            return;
+        }
+        StringBuilder issues = new StringBuilder();
+        StringBuilder errors = new StringBuilder();
+        for (int i = 0; i < tickets.size(); i++) {
+            if (tickets.get(i).contains("INVALID")) {
+                errors.append(errors.length() > 0 ? "," : "").append("{\"status\":400,\"failedElementNumber\":").append(i)
+                        .append(",\"elementErrors\":{\"errorMessages\":[],\"errors\":{\"summary\":\"Summary is not valid\"}}}");
+            } else {
+                String project = tickets.get(i).substring(0, tickets.get(i).indexOf(':'));
+                issues.append(issues.length() > 0 ? "," : "").append("{\"id\":\"1\",\"key\":\"")
+                        .append(project).append('-').append(nextIssue.getAndIncrement()).append("\"}");
+            }
+        }
+        byte[] body = ("{\"issues\":[" + issues + "],\"errors\":[" + errors + "]}").getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(issues.length() > 0 ? 201 : 400, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private TicketPipeline startPipeline(TicketPipeline.Settings settings) {
+        JiraClient client = new JiraClient(URI.create("http://127.0.0.1:" + jira.getAddress().getPort()), "Bearer test", "Task");
+        pipeline = new TicketPipeline(client, settings);
+        return pipeline;
+    }
+
+    private static TicketPipeline.Settings settings(long lingerMillis) {
+        TicketPipeline.Settings settings = new TicketPipeline.Settings();
+        settings.lingerMillis = lingerMillis;
+        settings.baseBackoffMillis = 10;
+        settings.maxBackoffMillis = 50;
+        return settings;
+    }
+
+    private static TicketRequest ticket(String summary) {
+        return new TicketRequest("OPS", summary, "Details", "incidents", "martha");
+    }
+
+    private static TicketResult result(CompletableFuture<TicketResult> future) throws Exception {
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testTicketsAreBatchedIntoOneBulkCall() throws Exception {
+        startPipeline(settings(500));
+        List<CompletableFuture<TicketResult>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            results.add(pipeline.submit(ticket("Disk full on db-" + i)));
+        }
+
+        List<String> keys = new ArrayList<>();
+        for (CompletableFuture<TicketResult> future : results) {
+            TicketResult result = result(future);
+            assertEquals(TicketResult.Status.CREATED, result.status);
+            assertFalse(keys.contains(result.issueKey));
+            keys.add(result.issueKey);
+        }
+        assertEquals(1, calls.size());
+        assertEquals(20, calls.peek().size());
+        assertEquals("OPS:Disk full on db-0", calls.peek().get(0));
+        assertEquals(1, pipeline.getBatchCount());
+        assertEquals(20, pipeline.getCreatedCount());
+    }
+
+    @Test
+    public void testBatchesAreLimitedToMaxBatchSize() throws Exception {
+        TicketPipeline.Settings settings = settings(500);
+        settings.maxBatchSize = 3;
+        startPipeline(settings);
+        List<CompletableFuture<TicketResult>> results = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            results.add(pipeline.submit(ticket("Alert " + i)));
+        }
+        for (CompletableFuture<TicketResult> future : results) {
+            assertEquals(TicketResult.Status.CREATED, result(future).status);
+        }
+        for (List<String> call : calls) {
+            assertTrue(call.size() <= 3);
+        }
+        assertEquals(3, calls.size());
+    }
+
+    @Test
+    public void testIdenticalSubmissionsShareOneTicket() throws Exception {
+        startPipeline(settings(200));
+        CompletableFuture<TicketResult> first = pipeline.submit(ticket("Site is down"));
+        CompletableFuture<TicketResult> second = pipeline.submit(ticket("Site is down"));
+        CompletableFuture<TicketResult> other = pipeline.submit(new TicketRequest("OPS", "Site is down", "Details",
+                "incidents", "olivia"));
+
+        assertSame(first, second);
+        assertEquals(result(first).issueKey, result(second).issueKey);
+        assertNotEquals(result(first).issueKey, result(other).issueKey);
+        assertEquals(1, pipeline.getDuplicateCount());
+        assertEquals(2, calls.peek().size());
+
+        // Still within the window, after the ticket was created
+        assertEquals(result(first).issueKey, result(pipeline.submit(ticket("Site is down"))).issueKey);
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void testSubmissionsOutsideTheWindowAreNotDeduplicated() throws Exception {
+        TicketPipeline.Settings settings = settings(0);
+        settings.dedupWindowMillis = 0;
+        startPipeline(settings);
+        TicketResult first = result(pipeline.submit(ticket("Site is down")));
+        TicketResult second = result(pipeline.submit(ticket("Site is down")));
+
+        assertNotEquals(first.issueKey, second.issueKey);
+        assertEquals(0, pipeline.getDuplicateCount());
+    }
+
+    @Test
+    public void testRateLimitedCallIsRetried() throws Exception {
+        scriptedStatuses.add(429);
+        scriptedStatuses.add(503);
+        startPipeline(settings(0));
+
+        TicketResult result = result(pipeline.submit(ticket("Latency spike")));
+
+        assertEquals(TicketResult.Status.CREATED, result.status);
+        assertEquals("OPS-1", result.issueKey);
+        assertEquals(3, calls.size());
+        assertEquals(2, pipeline.getRetryCount());
+    }
+
+    @Test
+    public void testRetryAfterLongerThanTheMaxBackoffFailsTheBatch() throws Exception {
+        retryAfter = "3600";
+        scriptedStatuses.add(429);
+        startPipeline(settings(0));
+
+        long start = System.nanoTime();
+        TicketResult result = result(pipeline.submit(ticket("Latency spike")));
+
+        assertEquals(TicketResult.Status.FAILED, result.status);
+        assertTrue(result.error, result.error.contains("429") && result.error.contains("3600s"));
+        assertEquals(1, calls.size());
+        assertEquals(0, pipeline.getRetryCount());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testTicketsFailOnceRetriesAreExhausted() throws Exception {
+        TicketPipeline.Settings settings = settings(0);
+        settings.maxAttempts = 3;
+        startPipeline(settings);
+        for (int i = 0; i < 3; i++) {
+            scriptedStatuses.add(503);
+        }
+
+        CompletableFuture<TicketResult> future = pipeline.submit(ticket("Latency spike"));
+        TicketResult result = result(future);
+
+        assertEquals(TicketResult.Status.FAILED, result.status);
+        assertTrue(result.error, result.error.contains("503"));
+        assertEquals(3, calls.size());
+        assertEquals(1, pipeline.getFailedCount());
+
+        // A failed ticket is not deduplicated, so it can be submitted again
+        CompletableFuture<TicketResult> retried = pipeline.submit(ticket("Latency spike"));
+        assertNotSame(future, retried);
+        assertEquals(TicketResult.Status.CREATED, result(retried).status);
+    }
+
+    @Test
+    public void testEachTicketGetsItsOwnResult() throws Exception {
+        startPipeline(settings(500));
+        CompletableFuture<TicketResult> valid = pipeline.submit(ticket("Queue backlog"));
+        CompletableFuture<TicketResult> invalid = pipeline.submit(ticket("INVALID"));
+        CompletableFuture<TicketResult> alsoValid = pipeline.submit(ticket("Cache misses"));
+
+        assertEquals("OPS-1", result(valid).issueKey);
+        assertEquals(TicketResult.Status.FAILED, result(invalid).status);
+        assertEquals("summary: Summary is not valid", result(invalid).error);
+        assertEquals("OPS-2", result(alsoValid).issueKey);
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void testMalformedResponseFailsTheTickets() throws Exception {
+        TicketPipeline.Settings settings = settings(500);
+        startPipeline(settings);
+        scriptedBodies.add("{\"issues\":[\"OPS-1\",{\"key\":\"OPS-2\"}],\"errors\":[42,{\"failedElementNumber\":-1}]}");
+        CompletableFuture<TicketResult> first = pipeline.submit(ticket("Queue backlog"));
+        CompletableFuture<TicketResult> second = pipeline.submit(ticket("Cache misses"));
+        CompletableFuture<TicketResult> third = pipeline.submit(ticket("Disk full"));
+
+        assertEquals(TicketResult.Status.FAILED, result(first).status);
+        assertTrue(result(first).error, result(first).error.contains("Unreadable"));
+        assertEquals("OPS-2", result(second).issueKey);
+        assertEquals(TicketResult.Status.FAILED, result(third).status);
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void testUnexpectedErrorFailsTheWholeBatch() throws Exception {
+        JiraClient failing = new JiraClient(URI.create("http://127.0.0.1:" + jira.getAddress().getPort()), "Bearer test", "Task") {
+            @Override
+            BulkResponse bulkCreate(List<TicketRequest> tickets) {
+                throw new IllegalStateException("Broken client");
+            }
+        };
+        pipeline = new TicketPipeline(failing, settings(200));
+        CompletableFuture<TicketResult> first = pipeline.submit(ticket("Queue backlog"));
+        CompletableFuture<TicketResult> second = pipeline.submit(ticket("Cache misses"));
+
+        assertEquals(TicketResult.Status.FAILED, result(first).status);
+        assertTrue(result(first).error, result(first).error.contains("Broken client"));
+        assertEquals(TicketResult.Status.FAILED, result(second).status);
+        assertEquals(0, pipeline.getRetryCount());
+        // Failed tickets are forgotten, so a duplicate does not join the failed result
+        assertNotSame(first, pipeline.submit(ticket("Queue backlog")));
+    }
+
+    @Test
+    public void testFullPipelineTurnsTicketsAway() throws Exception {
+        TicketPipeline.Settings settings = settings(0);
+        settings.maxBatchSize = 1;
+        settings.maxConcurrentBatches = 1;
+        settings.queueCapacity = 2;
+        jiraAvailable = new CountDownLatch(1);
+        startPipeline(settings);
+
+        // The first ticket holds the only sender, and the batcher waits for it with the second
+        CompletableFuture<TicketResult> sending = pipeline.submit(ticket("Ticket 1"));
+        assertTrue(firstCall.await(10, TimeUnit.SECONDS));
+        CompletableFuture<TicketResult> batched = pipeline.submit(ticket("Ticket 2"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (pipeline.getQueuedCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        List<CompletableFuture<TicketResult>> queued = new ArrayList<>();
+        queued.add(pipeline.submit(ticket("Ticket 3")));
+        queued.add(pipeline.submit(ticket("Ticket 4")));
+
+        assertSame(TicketResult.busy(), result(pipeline.submit(ticket("Ticket 5"))));
+        assertEquals(1, pipeline.getRejectedCount());
+
+        jiraAvailable.countDown();
+        assertEquals(TicketResult.Status.CREATED, result(sending).status);
+        assertEquals(TicketResult.Status.CREATED, result(batched).status);
+        for (CompletableFuture<TicketResult> future : queued) {
+            assertEquals(TicketResult.Status.CREATED, result(future).status);
+        }
+        // A busy ticket was not remembered, so it can be submitted again
+        assertEquals(TicketResult.Status.CREATED, result(pipeline.submit(ticket("Ticket 5"))).status);
+    }
+
+    @Test
+    public void testCloseAnswersEveryTicket() throws Exception {
+        TicketPipeline.Settings settings = settings(0);
+        settings.maxBatchSize = 1;
+        settings.maxConcurrentBatches = 1;
+        jiraAvailable = new CountDownLatch(1);
+        startPipeline(settings);
+
+        // The first ticket holds the only sender, the batcher waits for it with the second, and the third is queued
+        CompletableFuture<TicketResult> sending = pipeline.submit(ticket("Ticket 1"));
+        assertTrue(firstCall.await(10, TimeUnit.SECONDS));
+        CompletableFuture<TicketResult> batched = pipeline.submit(ticket("Ticket 2"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (pipeline.getQueuedCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        CompletableFuture<TicketResult> queued = pipeline.submit(ticket("Ticket 3"));
+
+        pipeline.close();
+        assertEquals(TicketResult.Status.FAILED, result(sending).status);
+        assertSame(TicketResult.busy(), result(batched));
+        assertSame(TicketResult.busy(), result(queued));
+        assertSame(TicketResult.busy(), result(pipeline.submit(ticket("Ticket 4"))));
+    }
+
+    @Test
+    public void testActionsCreateTicketsInTheChannelsProject() throws Throwable {
+        startPipeline(settings(0));
+        IndexedMemoryDataManager dataManager = new IndexedMemoryDataManager();
+        JiraBotActions actions = new JiraBotActions(dataManager, pipeline);
+        actions.registerProject("open-channel", "OPEN", false, "admin");
+        actions.registerProject("restricted-channel", "SECRET", true, "admin");
+
+        TicketResult open = result(actions.createTicket("open-channel", "visitor", "Printer on fire", null));
+        assertEquals(TicketResult.Status.CREATED, open.status);
+        assertTrue(open.issueKey, open.issueKey.startsWith("OPEN-"));
+
+        TicketResult restricted = result(actions.createTicket("restricted-channel", "admin", "Rotate keys", "Soon"));
+        assertEquals(TicketResult.Status.CREATED, restricted.status);
+        assertTrue(restricted.issueKey, restricted.issueKey.startsWith("SECRET-"));
+        assertEquals(2, calls.size());
+    }
+
+    @Test
+    public void testUnregisteredChannelsAreRoutedByPattern() throws Throwable {
+        startPipeline(settings(0));
+        IndexedMemoryDataManager dataManager = new IndexedMemoryDataManager();
+        JiraBotActions actions = new JiraBotActions(dataManager, pipeline);
+        ProjectRouter router = new ProjectRouter();
+        router.addRule("team-payments-*", "PAY");
+        actions.setProjectRouter(router);
+        // An exact registration takes precedence over any rule
+        actions.registerProject("team-payments-secret", "SECRET", true, "admin");
+
+        TicketResult routed = result(actions.createTicket("team-payments-checkout", "visitor", "Refunds failing", null));
+        assertEquals(TicketResult.Status.CREATED, routed.status);
+        assertTrue(routed.issueKey, routed.issueKey.startsWith("PAY-"));
+        assertEquals(ActionOutcome.NOT_REGISTERED_USER,
+                result(actions.createTicket("team-payments-secret", "visitor", "Rotate keys", null)).rejection);
+        assertEquals(ActionOutcome.UNREGISTERED_CHANNEL,
+                result(actions.createTicket("team-search", "visitor", "Slow queries", null)).rejection);
+    }
+
+    @Test
+    public void testRejectedTicketsNeverReachJira() throws Throwable {
+        startPipeline(settings(0));
+        IndexedMemoryDataManager dataManager = new IndexedMemoryDataManager();
+        JiraBotActions actions = new JiraBotActions(dataManager, pipeline);
+        actions.registerProject("restricted-channel", "SECRET", true, "admin");
+
+        TicketResult unregisteredUser = result(actions.createTicket("restricted-channel", "visitor", "Rotate keys", null));
+        assertEquals(TicketResult.Status.REJECTED, unregisteredUser.status);
+        assertEquals(ActionOutcome.NOT_REGISTERED_USER, unregisteredUser.rejection);
+        assertTrue(unregisteredUser.rejection.message("visitor").contains("'visitor'"));
+
+        TicketResult unregisteredChannel = result(actions.createTicket("unknown-channel", "admin", "Rotate keys", null));
+        assertEquals(ActionOutcome.UNREGISTERED_CHANNEL, unregisteredChannel.rejection);
+
+        assertEquals(0, pipeline.getSubmittedCount());
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCreateTicketNeedsAPipeline() {
+        new JiraBotActions(new IndexedMemoryDataManager()).createTicket("channel", "user", "Summary", null);
+    }
+
+    @Test
+    public void testBackoffGrowsAndIsCapped() {
+        TicketPipeline.Settings settings = settings(0);
+        settings.baseBackoffMillis = 100;
+        settings.maxBackoffMillis = 1000;
+        startPipeline(settings);
+        for (int i = 0; i < 100; i++) {
+            long first = pipeline.backoffMillis(1);
+            assertTrue(first >= 50 && first <= 100);
+            long third = pipeline.backoffMillis(3);
+            assertTrue(third >= 200 && third <= 400);
+            long capped = pipeline.backoffMillis(30);
+            assertTrue(capped >= 500 && capped <= 1000);
+        }
+    }
+}